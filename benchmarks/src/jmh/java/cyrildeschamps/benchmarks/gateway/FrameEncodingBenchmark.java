@@ -0,0 +1,93 @@
+package cyrildeschamps.benchmarks.gateway;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.DTO.BodyDTO;
+import cyrildeschamps.gateway.websocket.broadcast.EncodedFrame;
+import cyrildeschamps.gateway.websocket.protocol.BinaryFrameEncoder;
+import cyrildeschamps.gateway.websocket.protocol.DeltaFrameEncoder;
+import cyrildeschamps.gateway.websocket.protocol.JsonFrameEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Encodage d'un snapshot par la gateway : liste de {@link BodyDTO} en JSON (chemin historique)
+ * et les trois formats de frame. Le delta alterne entre deux snapshots pour encoder un vrai déplacement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FrameEncodingBenchmark {
+
+    @Param({"1000", "10000"})
+    int bodies;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonFrameEncoder jsonEncoder = new JsonFrameEncoder();
+    private final BinaryFrameEncoder binaryEncoder = new BinaryFrameEncoder();
+    private DeltaFrameEncoder deltaEncoder;
+    private WorldSnapshot[] snapshots;
+    private long frame;
+
+    @Setup
+    public void setUp() {
+        BodyStore store = new BodyStore(bodies);
+        SplittableRandom rand = new SplittableRandom(42);
+        for (int i = 0; i < bodies; i++) {
+            store.add(
+                (float) rand.nextDouble(-300, 300),
+                (float) rand.nextDouble(-300, 300),
+                (float) rand.nextDouble(-300, 300),
+                (float) rand.nextDouble(-4, 4),
+                (float) rand.nextDouble(-4, 4),
+                (float) rand.nextDouble(-4, 4),
+                1f, i == 0);
+        }
+        WorldSnapshot first = WorldSnapshot.capture(store, 0, 0);
+        for (int i = 0; i < bodies; i++) {
+            store.getX()[i] += store.getVx()[i] * 0.05f;
+            store.getY()[i] += store.getVy()[i] * 0.05f;
+            store.getZ()[i] += store.getVz()[i] * 0.05f;
+        }
+        snapshots = new WorldSnapshot[]{first, WorldSnapshot.capture(store, 0, 0)};
+        deltaEncoder = new DeltaFrameEncoder(false, false);
+    }
+
+    @Benchmark
+    public String bodyDtoJson() throws JsonProcessingException {
+        WorldSnapshot snapshot = snapshots[0];
+        List<BodyDTO> dtos = IntStream.range(0, snapshot.size())
+            .mapToObj(i -> new BodyDTO(snapshot, i))
+            .toList();
+        return objectMapper.writeValueAsString(dtos);
+    }
+
+    @Benchmark
+    public EncodedFrame jsonFrame() throws IOException {
+        return jsonEncoder.encode(snapshots[0]);
+    }
+
+    @Benchmark
+    public EncodedFrame binaryFrame() {
+        return binaryEncoder.encode(snapshots[0]);
+    }
+
+    @Benchmark
+    public EncodedFrame deltaFrame() {
+        return deltaEncoder.encode(snapshots[(int) (frame++ & 1)]);
+    }
+}
@@ -0,0 +1,64 @@
+package cyrildeschamps.benchmarks.physics;
+
+import cyrildeschamps.core.service.simulation.Body;
+import cyrildeschamps.core.service.simulation.BodyStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit de {@link Body#addForce(Body)} entre deux vues, et sur une cible contre 1024 sources d'un même stockage
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BodyBenchmark {
+    private static final int SOURCES = 1024;
+
+    private Body target;
+    private Body other;
+    private Body[] sources;
+
+    @Setup
+    public void setUp() {
+        target = new Body();
+        other = new Body();
+        other.setX(10f);
+        other.setY(-5f);
+        other.setMass(5e5f);
+
+        BodyStore store = new BodyStore(SOURCES);
+        SplittableRandom rand = new SplittableRandom(42);
+        for (int i = 0; i < SOURCES; i++) {
+            store.add(
+                (float) rand.nextDouble(-300, 300),
+                (float) rand.nextDouble(-300, 300),
+                (float) rand.nextDouble(-300, 300),
+                0, 0, 0, 1f, false);
+        }
+        sources = store.asList().toArray(new Body[0]);
+    }
+
+    @Benchmark
+    public Body addForce() {
+        target.addForce(other);
+        return target;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SOURCES)
+    public Body addForceFromStore() {
+        for (Body source : sources) {
+            target.addForce(source);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,66 @@
+package cyrildeschamps.benchmarks.physics;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.force.ForceKernel;
+import cyrildeschamps.core.service.simulation.physics.force.ForceKernels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit des noyaux de force scalaire et SIMD, en interactions par seconde.
+ * Le noyau SIMD est remplacé par le scalaire si jdk.incubator.vector n'est pas activé.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ForceKernelBenchmark {
+    private static final int TARGETS = 64;
+    private static final int SOURCES = 16_384;
+
+    private BodyStore store;
+    private ForceKernel scalar;
+    private ForceKernel vector;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = new BodyStore(SOURCES);
+        SplittableRandom rand = new SplittableRandom(42);
+        for (int i = 0; i < SOURCES; i++) {
+            store.add(
+                (float) rand.nextDouble(-300, 300),
+                (float) rand.nextDouble(-300, 300),
+                (float) rand.nextDouble(-300, 300),
+                0, 0, 0, 1f, false);
+        }
+        scalar = ForceKernels.scalar();
+        vector = ForceKernels.preferred();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TARGETS * SOURCES)
+    public BodyStore scalar() {
+        for (int target = 0; target < TARGETS; target++) {
+            scalar.accumulate(store, target, 0, SOURCES);
+        }
+        return store;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TARGETS * SOURCES)
+    public BodyStore vector() {
+        for (int target = 0; target < TARGETS; target++) {
+            vector.accumulate(store, target, 0, SOURCES);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,100 @@
+package cyrildeschamps.benchmarks.physics;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.SimulationCheckpoint;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+import cyrildeschamps.core.service.simulation.physics.integration.Integrators;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Précision contre coût des intégrateurs : chaque opération simule SPAN ticks de l'anneau autour du trou noir,
+ * sur des orbites excentriques, à partir du même état initial.
+ * Le temps par opération donne le coût, les compteurs 'energyDriftPpm' (dérive relative de l'énergie en fin de
+ * simulation), 'forceEvaluationsPerTick' et 'bodyForceEvaluationsPerTick' donnent la précision obtenue et le nombre
+ * d'évaluations des forces, complètes ou corps par corps (les pas individuels n'évaluent que les corps actifs).
+ * Lancer avec -Pjmh.includes=IntegratorBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IntegratorBenchmark {
+    private static final int SPAN = 1000;
+    private static final int STARS = 500;
+
+    @Param({Integrators.EULER, Integrators.VERLET, Integrators.YOSHIDA4, Integrators.BLOCK})
+    String integrator;
+
+    @Param({"1", "3"})
+    int substeps;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Accuracy {
+        public double energyDriftPpm;
+        public double forceEvaluationsPerTick;
+        public double bodyForceEvaluationsPerTick;
+    }
+
+    private final BodyStore store = new BodyStore(STARS + 1);
+    private ByteBuffer initial;
+    private double initialEnergy;
+    private PhysicsEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        BodyStore ring = new BodyStore(STARS + 1);
+        ring.add(0, 0, 0, 0, 0, 0, 5e5f, true);
+        SplittableRandom rand = new SplittableRandom(42);
+        for (int i = 0; i < STARS; i++) {
+            double r = rand.nextDouble(50, 300);
+            double angle = rand.nextDouble(2 * Math.PI);
+            // Below the circular speed, so every star dives towards the black hole
+            double speed = 0.7 * Math.sqrt(PhysicsEngine.G * 5e5 / r);
+            ring.add((float) (r * Math.cos(angle)), (float) (r * Math.sin(angle)), 0,
+                (float) (-speed * Math.sin(angle)), (float) (speed * Math.cos(angle)), 0, 1f, false);
+        }
+        WorldSnapshot snapshot = WorldSnapshot.capture(ring, 0, 0);
+        initial = ByteBuffer.allocate((STARS + 1) * SimulationCheckpoint.BYTES_PER_BODY).order(ByteOrder.LITTLE_ENDIAN);
+        snapshot.writeArrays(initial);
+        initial.flip();
+
+        engine = new PhysicsEngine();
+        engine.setIntegrator(Integrators.byName(integrator));
+        engine.setSubsteps(substeps);
+        initialEnergy = engine.totalEnergy(ring);
+    }
+
+    // Same starting state for every operation, so the drift only depends on the integrator
+    @Setup(Level.Invocation)
+    public void reset() {
+        store.load(STARS + 1, initial.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    @Benchmark
+    public BodyStore simulate(Accuracy accuracy) {
+        long evaluations = engine.getForceEvaluations();
+        long bodyEvaluations = engine.getBodyForceEvaluations();
+        for (int i = 0; i < SPAN; i++) {
+            engine.step(store);
+        }
+        accuracy.forceEvaluationsPerTick = (double) (engine.getForceEvaluations() - evaluations) / SPAN;
+        accuracy.bodyForceEvaluationsPerTick = (double) (engine.getBodyForceEvaluations() - bodyEvaluations) / SPAN;
+        accuracy.energyDriftPpm = Math.abs((engine.totalEnergy(store) - initialEnergy) / initialEnergy) * 1e6;
+        return store;
+    }
+}
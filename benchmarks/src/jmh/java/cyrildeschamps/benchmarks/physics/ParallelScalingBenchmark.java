@@ -0,0 +1,70 @@
+package cyrildeschamps.benchmarks.physics;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+import cyrildeschamps.core.service.simulation.physics.force.BarnesHutForceSolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalabilité d'un tick complet (positions, forces Barnes-Hut, vitesses) selon le nombre de threads.
+ * Lancer avec -Pjmh.includes=ParallelScalingBenchmark, ou fixer les threads avec -p threads=1,2,4.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParallelScalingBenchmark {
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    int threads;
+
+    @Param({"200000"})
+    int bodies;
+
+    private BodyStore store;
+    private PhysicsEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUpEngine() {
+        engine = new PhysicsEngine(new BarnesHutForceSolver());
+        engine.setParallelism(threads);
+    }
+
+    // Fresh bodies each iteration so the cloud does not collapse over the run
+    @Setup(Level.Iteration)
+    public void setUpBodies() {
+        store = new BodyStore(bodies);
+        SplittableRandom rand = new SplittableRandom(42);
+        for (int i = 0; i < bodies; i++) {
+            store.add(
+                (float) rand.nextDouble(-300, 300),
+                (float) rand.nextDouble(-300, 300),
+                (float) rand.nextDouble(-300, 300),
+                0, 0, 0, 1f, false);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public BodyStore tick() {
+        engine.updatePositions(store);
+        engine.calculateGravitationalForces(store);
+        engine.updateVelocities(store);
+        return store;
+    }
+}
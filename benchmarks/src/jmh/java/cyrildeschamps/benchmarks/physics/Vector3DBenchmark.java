@@ -0,0 +1,59 @@
+package cyrildeschamps.benchmarks.physics;
+
+import cyrildeschamps.core.service.simulation.physics.Vector3D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût des opérations de {@link Vector3D}, qui allouent un nouveau vecteur à chaque appel.
+ * Le profileur gc (actif par défaut) montre l'allocation par opération.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Vector3DBenchmark {
+
+    private Vector3D a;
+    private Vector3D b;
+    private float scalar;
+
+    @Setup
+    public void setUp() {
+        a = new Vector3D(1.5f, -2.25f, 3.125f);
+        b = new Vector3D(-0.5f, 4.75f, 0.25f);
+        scalar = 0.05f;
+    }
+
+    @Benchmark
+    public Vector3D add() {
+        return a.add(b);
+    }
+
+    @Benchmark
+    public Vector3D subtract() {
+        return a.subtract(b);
+    }
+
+    @Benchmark
+    public Vector3D multiply() {
+        return a.multiply(scalar);
+    }
+
+    @Benchmark
+    public float distance() {
+        return a.distance(b);
+    }
+
+    // Shape of the legacy Euler step: position + velocity * dt
+    @Benchmark
+    public Vector3D integrate() {
+        return a.add(b.multiply(scalar));
+    }
+}
@@ -0,0 +1,59 @@
+package cyrildeschamps.benchmarks.simulation;
+
+import cyrildeschamps.core.service.simulation.BodyBatch;
+import cyrildeschamps.core.service.simulation.NBodyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tick complet de {@link NBodyService} (commandes, physique, publication du snapshot) sans boucle de simulation,
+ * avec un trou noir central et un anneau de corps en orbite comme au démarrage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UpdateSimulationBenchmark {
+    private static final float BLACK_HOLE_MASS = 5e5f;
+    private static final float R_MIN = 50;
+    private static final float R_MAX = 300;
+
+    @Param({"1000", "10000", "100000"})
+    int bodies;
+
+    private NBodyService service;
+
+    // Fresh ring each iteration so every iteration measures the same state
+    @Setup(Level.Iteration)
+    public void setUp() {
+        service = new NBodyService();
+        BodyBatch batch = new BodyBatch(bodies).add(0, 0, 0, 0, 0, 0, BLACK_HOLE_MASS, true);
+        SplittableRandom rand = new SplittableRandom(42);
+        for (int i = 1; i < bodies; i++) {
+            float r = (float) rand.nextDouble(R_MIN, R_MAX);
+            double angle = rand.nextDouble(2 * Math.PI);
+            float speed = (float) Math.sqrt(0.1 * BLACK_HOLE_MASS / r);
+            batch.add(
+                (float) (r * Math.cos(angle)), (float) (r * Math.sin(angle)), 0,
+                (float) (-speed * Math.sin(angle)), (float) (speed * Math.cos(angle)), 0,
+                1f, false);
+        }
+        // No simulation loop is running, the batch is inserted right away
+        service.createBodies(batch).join();
+    }
+
+    @Benchmark
+    public NBodyService tick() {
+        service.updateSimulation();
+        return service;
+    }
+}
@@ -0,0 +1,122 @@
+package cyrildeschamps.core.metrics;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Construit une page au format texte de Prometheus (version 0.0.4).
+ * Les échantillons d'une même métrique peuvent être ajoutés dans n'importe quel ordre : ils sont regroupés
+ * sous un seul en-tête HELP / TYPE au rendu. Les durées sont exposées en secondes.
+ */
+public final class PrometheusWriter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private record Family(String type, String help, StringBuilder samples) { }
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * @param labels Paires nom, valeur
+     */
+    public PrometheusWriter counter(String name, String help, double value, String... labels) {
+        sample(family(name, "counter", help), name, labels, null, value);
+        return this;
+    }
+
+    public PrometheusWriter gauge(String name, String help, double value, String... labels) {
+        sample(family(name, "gauge", help), name, labels, null, value);
+        return this;
+    }
+
+    public PrometheusWriter summary(String name, String help, Timer timer, String... labels) {
+        return summary(name, help, timer.getHistogram(), timer.getTotalNanos(), labels);
+    }
+
+    /**
+     * Résumé d'un histogramme en nanosecondes dont la somme exacte n'est pas connue (estimée par la moyenne)
+     */
+    public PrometheusWriter summary(String name, String help, Histogram nanos, String... labels) {
+        return summary(name, help, nanos, nanos.getMean() * nanos.getTotalCount(), labels);
+    }
+
+    private PrometheusWriter summary(String name, String help, Histogram nanos, double totalNanos, String... labels) {
+        Family family = family(name, "summary", help);
+        for (double quantile : QUANTILES) {
+            double value = nanos.getTotalCount() == 0 ? Double.NaN
+                : nanos.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND;
+            sample(family, name, labels, String.valueOf(quantile), value);
+        }
+        sample(family, name + "_sum", labels, null, totalNanos / NANOS_PER_SECOND);
+        sample(family, name + "_count", labels, null, nanos.getTotalCount());
+        return this;
+    }
+
+    private Family family(String name, String type, String help) {
+        Family family = families.computeIfAbsent(name, n -> new Family(type, help, new StringBuilder()));
+        if (!family.type().equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already a " + family.type());
+        }
+        return family;
+    }
+
+    private static void sample(Family family, String name, String[] labels, String quantile, double value) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name, value pairs");
+        }
+        StringBuilder out = family.samples().append(name);
+        if (labels.length > 0 || quantile != null) {
+            out.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                appendLabel(out, labels[i], labels[i + 1]).append(',');
+            }
+            if (quantile != null) {
+                appendLabel(out, "quantile", quantile).append(',');
+            }
+            out.setCharAt(out.length() - 1, '}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static StringBuilder appendLabel(StringBuilder out, String name, String value) {
+        out.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '"' -> out.append("\\\"");
+                case '\n' -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+        return out.append('"');
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return String.format(Locale.ROOT, "%.9g", value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        families.forEach((name, family) -> out
+            .append("# HELP ").append(name).append(' ').append(family.help()).append('\n')
+            .append("# TYPE ").append(name).append(' ').append(family.type()).append('\n')
+            .append(family.samples()));
+        return out.toString();
+    }
+}
@@ -0,0 +1,53 @@
+package cyrildeschamps.core.metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chronomètre d'un chemin critique : histogramme HdrHistogram des durées en nanosecondes et leur somme.
+ * L'enregistrement est sans verrou et sans allocation, depuis n'importe quel thread.
+ * Précision de deux chiffres significatifs au-delà de la microseconde.
+ * Les durées au-delà de dix secondes sont comptées pour dix secondes dans l'histogramme, pas dans la somme.
+ */
+public final class Timer {
+    // A fixed range: an auto-resizing histogram reallocates its counts on every new maximum, mid-tick.
+    // Each room owns several timers, this range keeps the two count arrays of one at about 40 KB.
+    private static final long RESOLUTION_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final ConcurrentHistogram histogram = new ConcurrentHistogram(RESOLUTION_NANOS, MAX_NANOS, SIGNIFICANT_DIGITS);
+    private final LongAdder totalNanos = new LongAdder();
+
+    public void record(long nanos) {
+        if (nanos >= 0) {
+            histogram.recordValue(Math.min(nanos, MAX_NANOS));
+            totalNanos.add(nanos);
+        }
+    }
+
+    /**
+     * Enregistre le temps écoulé depuis 'startNanos', une valeur de {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return histogram.getTotalCount();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @return Copie de l'histogramme, en nanosecondes
+     */
+    public Histogram getHistogram() {
+        return histogram.copy();
+    }
+}
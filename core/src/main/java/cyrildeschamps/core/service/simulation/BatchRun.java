@@ -0,0 +1,216 @@
+package cyrildeschamps.core.service.simulation;
+
+import cyrildeschamps.core.service.simulation.distribution.Distribution;
+import cyrildeschamps.core.service.simulation.distribution.Distributions;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+import cyrildeschamps.core.service.simulation.physics.force.ForceSolver;
+import cyrildeschamps.core.service.simulation.physics.force.ForceSolvers;
+import cyrildeschamps.core.service.simulation.physics.integration.Integrators;
+import cyrildeschamps.core.service.simulation.recording.SimulationRecorder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Simulation hors ligne, sans Quarkus ni websocket : N ticks enchaînés sans attente entre eux, des snapshots
+ * échantillonnés écrits dans un enregistrement (.nbrec, relisible par les sessions de replay) et un bilan de débit.
+ * Sert au pré-calcul de scènes et de test de performance de bout en bout reproductible.
+ * <pre>
+ * ./gradlew :core:batch -Pargs="--steps=2000 --bodies=100000 --distribution=plummer --solver=barnes-hut --sample-every=10 --output=run.nbrec"
+ * </pre>
+ */
+@Slf4j
+public final class BatchRun {
+    public static final String SOLVER_BLACK_HOLE = ForceSolvers.BLACK_HOLE;
+    public static final String SOLVER_DIRECT = ForceSolvers.DIRECT;
+    public static final String SOLVER_BARNES_HUT = ForceSolvers.BARNES_HUT;
+
+    private static final float BLACK_HOLE_MASS = Simulation.BLACK_HOLE_MASS;
+
+    /**
+     * @param bodies Nombre de corps de départ, trou noir central compris, 0 pour la taille du monde par défaut du service
+     * @param distribution Distribution des étoiles autour du trou noir, voir {@link Distributions#byName}
+     * @param radius Taille caractéristique de la distribution
+     * @param checkpoint Checkpoint de départ, prioritaire sur 'bodies'
+     * @param sampleEvery Ticks entre deux snapshots écrits dans 'output'
+     * @param output Enregistrement à écrire, null pour ne rien écrire
+     * @param save Checkpoint écrit à la fin du calcul, null pour ne rien écrire
+     */
+    public record Options(long steps, long warmup, int bodies, String distribution, float radius, long seed,
+                          Path checkpoint,
+                          String solver, String integrator, int substeps, int parallelism,
+                          int sampleEvery, Path output, Path save) {
+
+        public Options {
+            if (steps < 1 || warmup < 0) {
+                throw new IllegalArgumentException("steps must be at least 1 and warmup not negative");
+            }
+            if (bodies < 0 || substeps < 1 || parallelism < 1 || sampleEvery < 1) {
+                throw new IllegalArgumentException("bodies, substeps, parallelism and sampleEvery must be positive");
+            }
+            ForceSolvers.byName(solver);
+            Integrators.byName(integrator);
+            Distributions.byName(distribution, radius, BLACK_HOLE_MASS);
+        }
+
+        /**
+         * Lit des arguments de la forme --nom=valeur, les options absentes gardent leur valeur par défaut
+         * @throws IllegalArgumentException pour une option inconnue ou mal formée
+         */
+        public static Options parse(String... args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+                }
+                values.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+            Options options = new Options(
+                Long.parseLong(values.getOrDefault("steps", "1000")),
+                Long.parseLong(values.getOrDefault("warmup", "0")),
+                Integer.parseInt(values.getOrDefault("bodies", "0")),
+                values.getOrDefault("distribution", Distributions.RING),
+                Float.parseFloat(values.getOrDefault("radius", String.valueOf(Simulation.R_MAX))),
+                Long.parseLong(values.getOrDefault("seed", "42")),
+                path(values.get("checkpoint")),
+                values.getOrDefault("solver", SOLVER_BLACK_HOLE),
+                values.getOrDefault("integrator", Integrators.VERLET),
+                Integer.parseInt(values.getOrDefault("substeps", "1")),
+                Integer.parseInt(values.getOrDefault("parallelism", "1")),
+                Integer.parseInt(values.getOrDefault("sample-every", "1")),
+                path(values.get("output")),
+                path(values.get("save")));
+            values.keySet().removeAll(List.of("steps", "warmup", "bodies", "distribution", "radius", "seed", "checkpoint",
+                "solver", "integrator", "substeps", "parallelism", "sample-every", "output", "save"));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown options: " + values.keySet());
+            }
+            return options;
+        }
+
+        private static Path path(String value) {
+            return value == null || value.isEmpty() ? null : Path.of(value);
+        }
+    }
+
+    /**
+     * Bilan de la partie mesurée du calcul, échauffement exclu
+     * @param bodyForces Forces calculées corps par corps (une évaluation complète en compte 'bodies')
+     * @param interactions Paires source - corps évaluées, en équivalent somme directe pour Barnes-Hut
+     *                     (voir {@link ForceSolver#sourcesPerBody(BodyStore)})
+     */
+    public record Report(long steps, int bodies, long elapsedNanos, long bodyForces, long interactions,
+                         long framesWritten, long framesDropped) {
+
+        public double stepsPerSecond() {
+            return elapsedNanos == 0 ? 0 : steps * 1e9 / elapsedNanos;
+        }
+
+        public double interactionsPerSecond() {
+            return elapsedNanos == 0 ? 0 : interactions * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "%d steps of %d bodies in %.3f s: %.1f steps/s, %.4g interactions/s, %d frames written, %d dropped",
+                steps, bodies, elapsedNanos / 1e9, stepsPerSecond(), interactionsPerSecond(), framesWritten, framesDropped);
+        }
+    }
+
+    private BatchRun() { }
+
+    public static void main(String[] args) throws IOException {
+        run(Options.parse(args));
+    }
+
+    /**
+     * Exécute le calcul complet sur le thread appelant
+     * @throws IOException si le checkpoint de départ est illisible ou si une sortie ne peut pas être écrite
+     */
+    public static Report run(Options options) throws IOException {
+        Simulation simulation = new Simulation("batch");
+        PhysicsEngine engine = simulation.getPhysicsEngine();
+        engine.setForceSolver(ForceSolvers.byName(options.solver()));
+        simulation.configureIntegration(options.integrator(), options.substeps());
+        engine.setParallelism(options.parallelism());
+        try {
+            populate(simulation, options);
+            int bodies = simulation.getStore().size();
+            log.info("Calcul hors ligne : {} corps, {} ticks (+{} d'échauffement), solveur {}, intégrateur {} en {} pas, {} threads",
+                bodies, options.steps(), options.warmup(), options.solver(), options.integrator(), options.substeps(),
+                options.parallelism());
+
+            // Warm-up ticks let the JIT compile the hot loops, they are neither recorded nor measured
+            simulation.setPublishInterval(Integer.MAX_VALUE);
+            for (long s = 0; s < options.warmup(); s++) {
+                simulation.updateSimulation();
+            }
+
+            SimulationRecorder recorder = options.output() == null ? null : new SimulationRecorder(options.output(),
+                simulation.getTickPeriodNanos(), SimulationRecorder.DEFAULT_KEYFRAME_INTERVAL,
+                SimulationRecorder.DEFAULT_BUFFER_CAPACITY, true);
+            if (recorder != null) {
+                // The initial state is the first frame of the recording
+                simulation.publishPendingSnapshot();
+                recorder.onSnapshot(simulation.getSnapshot());
+                simulation.addListener(recorder);
+            }
+            // Without an output, the world is only copied once at the end
+            simulation.setPublishInterval(recorder != null ? options.sampleEvery() : Integer.MAX_VALUE);
+
+            long forcesBefore = engine.getBodyForceEvaluations();
+            long progressEvery = Math.max(1, options.steps() / 10);
+            long start = System.nanoTime();
+            for (long s = 1; s <= options.steps(); s++) {
+                simulation.updateSimulation();
+                if (s % progressEvery == 0) {
+                    log.info("Tick {} / {} ({} corps)", s, options.steps(), simulation.getStore().size());
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            long bodyForces = engine.getBodyForceEvaluations() - forcesBefore;
+            long interactions = bodyForces * engine.getForceSolver().sourcesPerBody(simulation.getStore());
+
+            long framesWritten = 0;
+            long framesDropped = 0;
+            if (recorder != null) {
+                // The last state is part of the output even when it does not fall on a sample
+                simulation.publishPendingSnapshot();
+                simulation.removeListener(recorder);
+                recorder.close();
+                framesWritten = recorder.getFrameCount();
+                framesDropped = recorder.getDroppedCount();
+            }
+            if (options.save() != null) {
+                simulation.publishPendingSnapshot();
+                simulation.checkpoint(options.save());
+            }
+
+            Report report = new Report(options.steps(), bodies, elapsed, bodyForces, interactions, framesWritten, framesDropped);
+            log.info("Calcul hors ligne terminé : {}", report);
+            return report;
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    private static void populate(Simulation simulation, Options options) throws IOException {
+        if (options.checkpoint() != null) {
+            simulation.restore(options.checkpoint());
+        } else {
+            // Seeded even for the default world, so two runs with the same options compute the same ticks
+            int bodies = options.bodies() > 0 ? options.bodies() : Simulation.NB_PARTICLES + 1;
+            // No tick loop is running, the batches are inserted right away
+            Distribution distribution = Distributions.byName(options.distribution(), options.radius(), BLACK_HOLE_MASS);
+            simulation.createBodies(new BodyBatch(1).add(0, 0, 0, 0, 0, 0, BLACK_HOLE_MASS, true)).join();
+            simulation.createBodies(Distributions.generate(distribution, bodies - 1, options.seed())).join();
+        }
+    }
+}
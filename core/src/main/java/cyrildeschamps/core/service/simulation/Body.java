@@ -1,26 +1,53 @@
 package cyrildeschamps.core.service.simulation;
 
 import cyrildeschamps.core.service.simulation.physics.Vector3D;
-import lombok.Data;
 
-@Data
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.G;
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.SOFTENING;
+
+/**
+ * Vue (flyweight) sur un corps stocké dans un {@link BodyStore}.
+ * Un corps créé avec le constructeur par défaut possède son propre stockage d'un seul élément.
+ */
 public class Body {
-    private Vector3D position;
-    private Vector3D velocity;
-    private Vector3D force;
-    private float mass;
-    private boolean blackHole;
+    private BodyStore store;
+    private int index;
 
     public Body() {
-        this.position = new Vector3D();
-        this.velocity = new Vector3D();
-        this.force = new Vector3D();
-        this.mass = 1.0F;
-        this.blackHole = false;
+        this.store = new BodyStore(1);
+        this.index = store.add(0, 0, 0, 0, 0, 0, 1.0F, false);
+    }
+
+    Body(BodyStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    /**
+     * Appelé par le stockage quand le corps change de slot
+     */
+    void moveTo(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Appelé par le stockage quand le corps est supprimé : la vue garde une copie privée de ses valeurs
+     */
+    void detach() {
+        BodyStore own = new BodyStore(1);
+        own.add(getX(), getY(), getZ(), getVx(), getVy(), getVz(), getMass(), isBlackHole());
+        own.getFx()[0] = store.getFx()[index];
+        own.getFy()[0] = store.getFy()[index];
+        own.getFz()[0] = store.getFz()[index];
+        own.relabel(0, getId());
+        this.store = own;
+        this.index = 0;
     }
 
     public void resetForce() {
-        this.force = new Vector3D();
+        store.getFx()[index] = 0;
+        store.getFy()[index] = 0;
+        store.getFz()[index] = 0;
     }
 
     /**
@@ -28,13 +55,16 @@ public class Body {
      * If you want to keep the Z axis, you can keep it, otherwise ignore it
      */
     public void addForce(Body other) {
-        float G = 0.1F;
-        Vector3D direction = other.position.subtract(this.position);
-        float distance = (float) (this.position.distance(other.position) + 1e-3); // softening
-        float forceMagnitude = (G * this.mass * other.mass) / (distance * distance);
-        
-        Vector3D forceVector = direction.multiply(forceMagnitude / distance);
-        this.force = this.force.add(forceVector);
+        float dx = other.getX() - getX();
+        float dy = other.getY() - getY();
+        float dz = other.getZ() - getZ();
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) + SOFTENING;
+        float forceMagnitude = (G * getMass() * other.getMass()) / (distance * distance);
+
+        float scale = forceMagnitude / distance;
+        store.getFx()[index] += dx * scale;
+        store.getFy()[index] += dy * scale;
+        store.getFz()[index] += dz * scale;
     }
 
     /**
@@ -42,7 +72,9 @@ public class Body {
      * If you have a storage of acceleration, adapt it here (Verlet).
      */
     public void updatePosition(float dt) {
-        this.position = this.position.add(velocity.multiply(dt));
+        store.getX()[index] += store.getVx()[index] * dt;
+        store.getY()[index] += store.getVy()[index] * dt;
+        store.getZ()[index] += store.getVz()[index] * dt;
     }
 
     /**
@@ -50,21 +82,74 @@ public class Body {
      * If you have a storage of acceleration, adapt it here (Verlet).
      */
     public void updateVelocity(float dt) {
-        Vector3D acceleration = force.multiply((float) (1.0 / mass));
-        this.velocity = this.velocity.add(acceleration.multiply(dt));
+        float invMass = (float) (1.0 / getMass());
+        store.getVx()[index] += store.getFx()[index] * invMass * dt;
+        store.getVy()[index] += store.getFy()[index] * invMass * dt;
+        store.getVz()[index] += store.getFz()[index] * invMass * dt;
+    }
+
+    public Vector3D getPosition() {
+        return new Vector3D(getX(), getY(), getZ());
+    }
+
+    public void setPosition(Vector3D position) {
+        setX(position.getX());
+        setY(position.getY());
+        setZ(position.getZ());
+    }
+
+    public Vector3D getVelocity() {
+        return new Vector3D(getVx(), getVy(), getVz());
+    }
+
+    public void setVelocity(Vector3D velocity) {
+        setVx(velocity.getX());
+        setVy(velocity.getY());
+        setVz(velocity.getZ());
+    }
+
+    public Vector3D getForce() {
+        return new Vector3D(store.getFx()[index], store.getFy()[index], store.getFz()[index]);
     }
 
+    public void setForce(Vector3D force) {
+        store.getFx()[index] = force.getX();
+        store.getFy()[index] = force.getY();
+        store.getFz()[index] = force.getZ();
+    }
+
+    /**
+     * @return L'id stable du corps, inchangé quand il change de slot
+     */
+    public int getId() { return store.idOf(index); }
+
+    public float getMass() { return store.getMass()[index]; }
+    public void setMass(float mass) { store.setMass(index, mass); }
+
+    public boolean isBlackHole() { return store.isBlackHole(index); }
+    public void setBlackHole(boolean blackHole) { store.setBlackHole(index, blackHole); }
+
     // Getters for frontend compatibility
-    public float getX() { return position.getX(); }
-    public float getY() { return position.getY(); }
-    public float getZ() { return position.getZ(); }
-    
+    public float getX() { return store.getX()[index]; }
+    public float getY() { return store.getY()[index]; }
+    public float getZ() { return store.getZ()[index]; }
+
+    public float getVx() { return store.getVx()[index]; }
+    public float getVy() { return store.getVy()[index]; }
+    public float getVz() { return store.getVz()[index]; }
+
     // Setters for frontend compatibility
-    public void setX(float x) { position = new Vector3D(x, position.getY(), position.getZ()); }
-    public void setY(float y) { position = new Vector3D(position.getX(), y, position.getZ()); }
-    public void setZ(float z) { position = new Vector3D(position.getX(), position.getY(), z); }
-    
-    public void setVx(float vx) { velocity = new Vector3D(vx, velocity.getY(), velocity.getZ()); }
-    public void setVy(float vy) { velocity = new Vector3D(velocity.getX(), vy, velocity.getZ()); }
-    public void setVz(float vz) { velocity = new Vector3D(velocity.getX(), velocity.getY(), vz); }
+    public void setX(float x) { store.getX()[index] = x; }
+    public void setY(float y) { store.getY()[index] = y; }
+    public void setZ(float z) { store.getZ()[index] = z; }
+
+    public void setVx(float vx) { store.getVx()[index] = vx; }
+    public void setVy(float vy) { store.getVy()[index] = vy; }
+    public void setVz(float vz) { store.getVz()[index] = vz; }
+
+    @Override
+    public String toString() {
+        return "Body(position=" + getPosition() + ", velocity=" + getVelocity() + ", mass=" + getMass()
+                + ", blackHole=" + isBlackHole() + ")";
+    }
 }
@@ -0,0 +1,70 @@
+package cyrildeschamps.core.service.simulation;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Lot de corps à insérer en une seule fois dans un {@link BodyStore}, au même format tableaux primitifs
+ */
+@Getter
+public class BodyBatch {
+    private float[] x, y, z;
+    private float[] vx, vy, vz;
+    private float[] mass;
+    private byte[] flags;
+    @Getter(lombok.AccessLevel.NONE)
+    private int size;
+
+    public BodyBatch(int capacity) {
+        int c = Math.max(1, capacity);
+        x = new float[c];
+        y = new float[c];
+        z = new float[c];
+        vx = new float[c];
+        vy = new float[c];
+        vz = new float[c];
+        mass = new float[c];
+        flags = new byte[c];
+    }
+
+    /**
+     * Lot de 'size' corps à zéro, à remplir directement dans les tableaux (par exemple en parallèle, par tranches)
+     */
+    public static BodyBatch ofSize(int size) {
+        BodyBatch batch = new BodyBatch(size);
+        batch.size = size;
+        return batch;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public BodyBatch add(float px, float py, float pz, float pvx, float pvy, float pvz, float m, boolean blackHole) {
+        if (size == x.length) {
+            grow(size * 2);
+        }
+        int i = size++;
+        x[i] = px;
+        y[i] = py;
+        z[i] = pz;
+        vx[i] = pvx;
+        vy[i] = pvy;
+        vz[i] = pvz;
+        mass[i] = m;
+        flags[i] = blackHole ? BodyStore.FLAG_BLACK_HOLE : 0;
+        return this;
+    }
+
+    private void grow(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        vz = Arrays.copyOf(vz, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+}
@@ -0,0 +1,456 @@
+package cyrildeschamps.core.service.simulation;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Stockage "structure of arrays" des corps de la simulation.
+ * Toutes les données vivent dans des tableaux primitifs, les {@link Body} ne sont que des vues.
+ * Chaque corps reçoit un id stable, jamais réutilisé, retrouvé en O(1) grâce à un index id → slot.
+ */
+@Getter
+public class BodyStore {
+    public static final byte FLAG_BLACK_HOLE = 1;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private float[] x, y, z;
+    private float[] vx, vy, vz;
+    private float[] fx, fy, fz;
+    private float[] mass;
+    private byte[] flags;
+    /** Id stable de chaque slot */
+    private int[] ids;
+
+    @Getter(lombok.AccessLevel.NONE)
+    private Body[] views;
+    @Getter(lombok.AccessLevel.NONE)
+    private final IdIndex slots;
+    @Getter(lombok.AccessLevel.NONE)
+    private int nextId;
+    @Getter(lombok.AccessLevel.NONE)
+    private int size;
+
+    /**
+     * Incrémenté à chaque ajout, suppression, vidage ou changement de masse ou de flags : deux états de même version
+     * contiennent les mêmes corps aux mêmes index, avec les mêmes masses et flags.
+     */
+    private long structureVersion;
+
+    @Getter(lombok.AccessLevel.NONE)
+    private final List<Body> bodyList = new BodyListView();
+
+    public BodyStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BodyStore(int capacity) {
+        allocate(Math.max(1, capacity));
+        slots = new IdIndex(capacity);
+    }
+
+    private void allocate(int capacity) {
+        x = new float[capacity];
+        y = new float[capacity];
+        z = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        vz = new float[capacity];
+        fx = new float[capacity];
+        fy = new float[capacity];
+        fz = new float[capacity];
+        mass = new float[capacity];
+        flags = new byte[capacity];
+        ids = new int[capacity];
+        views = new Body[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return x.length;
+    }
+
+    /**
+     * Ajoute un corps à la fin du stockage
+     * @return L'index (slot) du corps ajouté
+     */
+    public synchronized int add(float px, float py, float pz, float pvx, float pvy, float pvz, float m, boolean blackHole) {
+        ensureCapacity(size + 1);
+        int i = size++;
+        x[i] = px;
+        y[i] = py;
+        z[i] = pz;
+        vx[i] = pvx;
+        vy[i] = pvy;
+        vz[i] = pvz;
+        fx[i] = 0;
+        fy[i] = 0;
+        fz[i] = 0;
+        mass[i] = m;
+        flags[i] = blackHole ? FLAG_BLACK_HOLE : 0;
+        views[i] = null;
+        assignId(i, nextId++);
+        structureVersion++;
+        return i;
+    }
+
+    /**
+     * Ajoute un corps qui garde l'id qu'il avait ailleurs, par exemple dans un autre domaine d'une simulation répartie
+     * @return L'index (slot) du corps ajouté
+     * @throws IllegalArgumentException si l'id est déjà présent
+     */
+    public synchronized int addWithId(int id, float px, float py, float pz, float pvx, float pvy, float pvz, float m,
+                                      byte bodyFlags) {
+        if (id < 0 || slots.get(id) >= 0) {
+            throw new IllegalArgumentException("Id " + id + " is negative or already present");
+        }
+        ensureCapacity(size + 1);
+        int i = size++;
+        x[i] = px;
+        y[i] = py;
+        z[i] = pz;
+        vx[i] = pvx;
+        vy[i] = pvy;
+        vz[i] = pvz;
+        fx[i] = 0;
+        fy[i] = 0;
+        fz[i] = 0;
+        mass[i] = m;
+        flags[i] = bodyFlags;
+        views[i] = null;
+        assignId(i, id);
+        structureVersion++;
+        return i;
+    }
+
+    /**
+     * Vide le stockage puis le dimensionne à n corps sans id, dont l'appelant remplit directement les tableaux.
+     * Sert de stockage de travail pour un calcul de forces : {@link #slotOf(int)} ne trouve pas ces corps.
+     */
+    public synchronized void resetUnlabelled(int n) {
+        clear();
+        ensureCapacity(n);
+        Arrays.fill(flags, 0, n, (byte) 0);
+        size = n;
+    }
+
+    /**
+     * Ajoute tous les corps d'un lot en une seule passe
+     * @return L'index du premier corps ajouté
+     */
+    public synchronized int addAll(BodyBatch batch) {
+        int n = batch.size();
+        ensureCapacity(size + n);
+        int first = size;
+        System.arraycopy(batch.getX(), 0, x, first, n);
+        System.arraycopy(batch.getY(), 0, y, first, n);
+        System.arraycopy(batch.getZ(), 0, z, first, n);
+        System.arraycopy(batch.getVx(), 0, vx, first, n);
+        System.arraycopy(batch.getVy(), 0, vy, first, n);
+        System.arraycopy(batch.getVz(), 0, vz, first, n);
+        System.arraycopy(batch.getMass(), 0, mass, first, n);
+        System.arraycopy(batch.getFlags(), 0, flags, first, n);
+        Arrays.fill(fx, first, first + n, 0);
+        Arrays.fill(fy, first, first + n, 0);
+        Arrays.fill(fz, first, first + n, 0);
+        Arrays.fill(views, first, first + n, null);
+        for (int i = first; i < first + n; i++) {
+            assignId(i, nextId++);
+        }
+        size += n;
+        structureVersion++;
+        return first;
+    }
+
+    /**
+     * @return L'id stable du corps au slot donné
+     */
+    public int idOf(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @return Le slot courant du corps d'id donné, -1 s'il n'existe pas (ou plus)
+     */
+    public synchronized int slotOf(int id) {
+        return slots.get(id);
+    }
+
+    /**
+     * Supprime le corps d'id donné en O(1) : le dernier corps prend sa place, l'ordre des slots n'est pas conservé.
+     * La vue éventuellement associée est détachée, celle du corps déplacé suit son nouveau slot.
+     * @return false si aucun corps ne porte cet id
+     */
+    public synchronized boolean removeById(int id) {
+        int index = slots.get(id);
+        if (index < 0) {
+            return false;
+        }
+        Body removed = views[index];
+        if (removed != null) {
+            removed.detach();
+        }
+        slots.remove(id);
+
+        int last = size - 1;
+        if (index != last) {
+            x[index] = x[last];
+            y[index] = y[last];
+            z[index] = z[last];
+            vx[index] = vx[last];
+            vy[index] = vy[last];
+            vz[index] = vz[last];
+            fx[index] = fx[last];
+            fy[index] = fy[last];
+            fz[index] = fz[last];
+            mass[index] = mass[last];
+            flags[index] = flags[last];
+            views[index] = views[last];
+            if (views[index] != null) {
+                views[index].moveTo(index);
+            }
+            assignId(index, ids[last]);
+        }
+        size = last;
+        views[last] = null;
+        structureVersion++;
+        return true;
+    }
+
+    /**
+     * Supprime le corps à l'index donné en conservant l'ordre des autres corps (O(n), préférer {@link #removeById(int)}).
+     * La vue éventuellement associée est détachée et garde une copie de ses valeurs.
+     */
+    public synchronized boolean remove(int index) {
+        if (index < 0 || index >= size) {
+            return false;
+        }
+        Body removed = views[index];
+        if (removed != null) {
+            removed.detach();
+        }
+        slots.remove(ids[index]);
+
+        int tail = size - index - 1;
+        if (tail > 0) {
+            System.arraycopy(x, index + 1, x, index, tail);
+            System.arraycopy(y, index + 1, y, index, tail);
+            System.arraycopy(z, index + 1, z, index, tail);
+            System.arraycopy(vx, index + 1, vx, index, tail);
+            System.arraycopy(vy, index + 1, vy, index, tail);
+            System.arraycopy(vz, index + 1, vz, index, tail);
+            System.arraycopy(fx, index + 1, fx, index, tail);
+            System.arraycopy(fy, index + 1, fy, index, tail);
+            System.arraycopy(fz, index + 1, fz, index, tail);
+            System.arraycopy(mass, index + 1, mass, index, tail);
+            System.arraycopy(flags, index + 1, flags, index, tail);
+            System.arraycopy(ids, index + 1, ids, index, tail);
+            System.arraycopy(views, index + 1, views, index, tail);
+            for (int i = index; i < index + tail; i++) {
+                slots.put(ids[i], i);
+                if (views[i] != null) {
+                    views[i].moveTo(i);
+                }
+            }
+        }
+        size--;
+        views[size] = null;
+        structureVersion++;
+        return true;
+    }
+
+    /**
+     * Supprime en une seule passe tous les corps marqués, en conservant l'ordre des autres corps.
+     * Les vues des corps supprimés sont détachées, celles des autres suivent leur nouveau slot.
+     * @param marked marked[i] vrai pour supprimer le corps i, au moins size() éléments
+     * @return Le nombre de corps supprimés
+     */
+    public synchronized int removeMarked(boolean[] marked) {
+        int write = 0;
+        for (int read = 0; read < size; read++) {
+            if (marked[read]) {
+                if (views[read] != null) {
+                    views[read].detach();
+                }
+                slots.remove(ids[read]);
+                continue;
+            }
+            if (write != read) {
+                x[write] = x[read];
+                y[write] = y[read];
+                z[write] = z[read];
+                vx[write] = vx[read];
+                vy[write] = vy[read];
+                vz[write] = vz[read];
+                fx[write] = fx[read];
+                fy[write] = fy[read];
+                fz[write] = fz[read];
+                mass[write] = mass[read];
+                flags[write] = flags[read];
+                assignId(write, ids[read]);
+                views[write] = views[read];
+                if (views[write] != null) {
+                    views[write].moveTo(write);
+                }
+            }
+            write++;
+        }
+        int removed = size - write;
+        if (removed > 0) {
+            Arrays.fill(views, write, size, null);
+            size = write;
+            structureVersion++;
+        }
+        return removed;
+    }
+
+    /**
+     * Vide le stockage, les vues existantes sont détachées. Les ids ne sont pas réutilisés ensuite.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < size; i++) {
+            if (views[i] != null) {
+                views[i].detach();
+                views[i] = null;
+            }
+        }
+        size = 0;
+        slots.clear();
+        structureVersion++;
+    }
+
+    /**
+     * Remplace tout le contenu par n corps lus à la position courante du tampon, dans l'ordre écrit par
+     * {@link WorldSnapshot#writeArrays(ByteBuffer)}. Les ids sont conservés, les forces repartent de zéro,
+     * les vues existantes sont détachées.
+     */
+    public synchronized void load(int n, ByteBuffer src) {
+        clear();
+        ensureCapacity(n);
+        src.asIntBuffer().get(ids, 0, n);
+        src.position(src.position() + n * Integer.BYTES);
+        for (int i = 0; i < n; i++) {
+            assignId(i, ids[i]);
+        }
+        for (float[] array : new float[][]{x, y, z, vx, vy, vz, mass}) {
+            src.asFloatBuffer().get(array, 0, n);
+            src.position(src.position() + n * Float.BYTES);
+        }
+        src.get(flags, 0, n);
+        Arrays.fill(fx, 0, n, 0);
+        Arrays.fill(fy, 0, n, 0);
+        Arrays.fill(fz, 0, n, 0);
+        size = n;
+    }
+
+    /**
+     * Redonne au corps du slot un id existant, par exemple celui d'un corps détaché
+     */
+    void relabel(int index, int id) {
+        slots.remove(ids[index]);
+        assignId(index, id);
+    }
+
+    private void assignId(int index, int id) {
+        ids[index] = id;
+        slots.put(id, index);
+        nextId = Math.max(nextId, id + 1);
+    }
+
+    public boolean isBlackHole(int index) {
+        return (flags[index] & FLAG_BLACK_HOLE) != 0;
+    }
+
+    public void setBlackHole(int index, boolean blackHole) {
+        setFlags(index, (byte) (blackHole ? flags[index] | FLAG_BLACK_HOLE : flags[index] & ~FLAG_BLACK_HOLE));
+    }
+
+    public void setFlags(int index, byte bodyFlags) {
+        if (flags[index] != bodyFlags) {
+            flags[index] = bodyFlags;
+            structureVersion++;
+        }
+    }
+
+    public void setMass(int index, float m) {
+        if (mass[index] != m) {
+            mass[index] = m;
+            structureVersion++;
+        }
+    }
+
+    /**
+     * @return L'index du premier trou noir, ou -1 s'il n'y en a pas
+     */
+    public int firstBlackHole() {
+        for (int i = 0; i < size; i++) {
+            if (isBlackHole(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retourne la vue (flyweight) associée à un index. La même instance est renvoyée
+     * tant que le corps reste dans le stockage.
+     */
+    public synchronized Body view(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        Body body = views[index];
+        if (body == null) {
+            body = new Body(this, index);
+            views[index] = body;
+        }
+        return body;
+    }
+
+    /**
+     * Vue en lecture seule des corps sous forme de liste, compatible avec l'ancienne API
+     */
+    public List<Body> asList() {
+        return bodyList;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= x.length) {
+            return;
+        }
+        int capacity = Math.max(required, x.length * 2);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        vz = Arrays.copyOf(vz, capacity);
+        fx = Arrays.copyOf(fx, capacity);
+        fy = Arrays.copyOf(fy, capacity);
+        fz = Arrays.copyOf(fz, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        views = Arrays.copyOf(views, capacity);
+    }
+
+    private class BodyListView extends AbstractList<Body> implements RandomAccess {
+        @Override
+        public Body get(int index) {
+            return view(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
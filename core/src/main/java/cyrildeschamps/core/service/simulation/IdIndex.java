@@ -0,0 +1,111 @@
+package cyrildeschamps.core.service.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Table de hachage primitive id → slot (adressage ouvert, sondage linéaire), sans boxing.
+ * Les ids et les slots sont positifs ou nuls. Non thread-safe : protégée par le verrou du {@link BodyStore}.
+ */
+final class IdIndex {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    IdIndex(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(2, expected) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return Le slot associé à l'id, -1 s'il est absent
+     */
+    int get(int id) {
+        if (id < 0) {
+            return -1;
+        }
+        for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+            int key = keys[i];
+            if (key == id) {
+                return values[i];
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    void put(int id, int slot) {
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        int i = hash(id) & mask;
+        while (keys[i] != EMPTY && keys[i] != id) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY) {
+            keys[i] = id;
+            size++;
+        }
+        values[i] = slot;
+    }
+
+    void remove(int id) {
+        if (id < 0) {
+            return;
+        }
+        int i = hash(id) & mask;
+        while (keys[i] != id) {
+            if (keys[i] == EMPTY) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        // Backward shift: no tombstones, lookups stay short after many deletions
+        for (int next = (i + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - i) & mask)) {
+                keys[i] = keys[next];
+                values[i] = values[next];
+                i = next;
+            }
+        }
+        keys[i] = EMPTY;
+        size--;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    // Ids are sequential: spread them so neighbours do not cluster
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,144 +1,359 @@
 package cyrildeschamps.core.service.simulation;
 
-import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
-import cyrildeschamps.core.service.simulation.physics.Vector3D;
+import cyrildeschamps.core.metrics.PrometheusWriter;
+import cyrildeschamps.core.service.simulation.cluster.DomainCoordinator;
+import cyrildeschamps.core.service.simulation.cluster.DomainWorker;
+import cyrildeschamps.core.service.simulation.cluster.Transport;
+import cyrildeschamps.core.service.simulation.cluster.Transports;
+import cyrildeschamps.core.service.simulation.physics.collision.CollisionResolver;
+import cyrildeschamps.core.service.simulation.distribution.Distributions;
+import cyrildeschamps.core.service.simulation.physics.force.ForceSolvers;
+import cyrildeschamps.core.service.simulation.physics.integration.Integrators;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
-import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Simulation par défaut, partagée par les sessions qui ne demandent pas de room.
+ * Elle tourne sur son propre thread et peut utiliser la physique parallèle.
+ * Avec 'nbody.cluster.domains' au-dessus de 0, le calcul est réparti entre des processus {@link DomainWorker}
+ * et cette simulation ne fait que rassembler leurs corps dans un seul flux de snapshots. Tant que les domaines
+ * ne répondent pas tous, ou après une panne, elle calcule elle-même et réessaie toutes les 'retry-interval-s' secondes.
+ */
+@Slf4j
 @ApplicationScoped
-public class NBodyService {
-    protected static final int UPDATE_DELAY_MS = 15; // ~60 FPS
-    protected static final int NB_PARTICLES = 500;
-    protected static final float BLACK_HOLE_MASS = 5e5F;
-    protected static final float R_MIN = 50;
-    protected static final float R_MAX = 300;
-
-    @Getter
-    private final List<Body> bodies = Collections.synchronizedList(new ArrayList<>());
-    private final PhysicsEngine physicsEngine = new PhysicsEngine();
-    volatile boolean running = true;
+public class NBodyService extends Simulation {
+    public static final String DEFAULT_ROOM = "default";
+    private static final long CLUSTER_CONNECT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    @ConfigProperty(name = "nbody.physics.parallelism", defaultValue = "1")
+    int parallelism;
+
+    @ConfigProperty(name = "nbody.physics.collisions", defaultValue = "false")
+    boolean collisions;
+
+    @ConfigProperty(name = "nbody.physics.solver", defaultValue = ForceSolvers.BLACK_HOLE)
+    String solver;
+
+    @ConfigProperty(name = "nbody.physics.integrator", defaultValue = Integrators.VERLET)
+    String integrator;
+
+    @ConfigProperty(name = "nbody.physics.substeps", defaultValue = "1")
+    int substeps;
+
+    @ConfigProperty(name = "nbody.simulation.initial-distribution", defaultValue = Distributions.RING)
+    String initialDistribution;
+
+    @ConfigProperty(name = "nbody.simulation.initial-bodies", defaultValue = "500")
+    int initialBodies;
+
+    // Real time between two ticks, each tick advances the physics by PhysicsEngine.getTimeStep()
+    @ConfigProperty(name = "nbody.simulation.tick-period-ms", defaultValue = "15")
+    int tickPeriodMs;
+
+    @ConfigProperty(name = "nbody.simulation.max-catch-up-steps", defaultValue = "4")
+    int maxCatchUpSteps;
+
+    // Restored on startup when the file exists, then rewritten periodically and on shutdown
+    @ConfigProperty(name = "nbody.checkpoint.path")
+    Optional<String> checkpointPath;
+
+    @ConfigProperty(name = "nbody.checkpoint.interval-s", defaultValue = "60")
+    int checkpointIntervalS;
+
+    // Spatial decomposition across worker processes, 0 to compute everything here
+    @ConfigProperty(name = "nbody.cluster.domains", defaultValue = "0")
+    int clusterDomains;
+
+    @ConfigProperty(name = "nbody.cluster.transport", defaultValue = Transports.MAPPED_FILE)
+    String clusterTransport;
+
+    // host:port of the coordinator then of each domain, for the socket transport
+    @ConfigProperty(name = "nbody.cluster.addresses", defaultValue = "")
+    String clusterAddresses;
+
+    @ConfigProperty(name = "nbody.cluster.dir", defaultValue = "cluster")
+    String clusterDir;
+
+    // Defaults to nbody.physics.solver, which also runs the room while the domains are away
+    @ConfigProperty(name = "nbody.cluster.solver")
+    Optional<String> clusterSolver;
+
+    @ConfigProperty(name = "nbody.cluster.rebalance-interval", defaultValue = "10")
+    int clusterRebalanceInterval;
+
+    // Runs the domains as threads of this JVM, to try the cluster without starting the workers
+    @ConfigProperty(name = "nbody.cluster.local-workers", defaultValue = "false")
+    boolean clusterLocalWorkers;
+
+    // Seconds between two attempts to gather the domains again while the room runs here, 0 to never retry
+    @ConfigProperty(name = "nbody.cluster.retry-interval-s", defaultValue = "30")
+    int clusterRetryIntervalS;
+
+    // Set by the cluster thread once every domain answered, cleared by the tick that sees it fail
+    private volatile DomainCoordinator cluster;
+    // Cluster thread only, after startup: the coordinator waiting for its domains and the local domains
+    private DomainCoordinator connecting;
+    private final List<Transport> localTransports = new ArrayList<>();
+    private final List<Thread> localWorkers = new ArrayList<>();
+    private ScheduledExecutorService clusterExecutor;
+
+    private ScheduledExecutorService checkpointer;
+    private long lastCheckpointTick = -1;
+
+    public NBodyService() {
+        super(DEFAULT_ROOM);
+    }
 
     @PostConstruct
     void init() {
-        initBodies();
-        startSimulationLoop();
+        getPhysicsEngine().setParallelism(parallelism);
+        if (collisions) {
+            getPhysicsEngine().setCollisionResolver(new CollisionResolver());
+        }
+        configureSolver(solver);
+        configureIntegration(integrator, substeps);
+        configureInitialBodies(initialDistribution, initialBodies);
+        Path checkpoint = checkpointFile();
+        initialize(checkpoint);
+        if (clusterDomains > 0) {
+            startCluster();
+        }
+        startSimulationLoop(tickPeriodNanos(tickPeriodMs), catchUpSteps(maxCatchUpSteps));
+        log.info("Simulation {} démarrée : {} corps, tick toutes les {} ms, solveur {}, intégrateur {} en {} pas, {} threads",
+            getId(), getSnapshot().size(), TimeUnit.NANOSECONDS.toMillis(getTickPeriodNanos()),
+            getPhysicsEngine().getForceSolver().getClass().getSimpleName(),
+            getPhysicsEngine().getIntegrator().getClass().getSimpleName(), getPhysicsEngine().getSubsteps(),
+            getPhysicsEngine().getParallelism());
+        if (checkpoint != null && checkpointIntervalS > 0) {
+            checkpointer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "NBodyCheckpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checkpointer.scheduleWithFixedDelay(this::writeCheckpoint, checkpointIntervalS, checkpointIntervalS, TimeUnit.SECONDS);
+        }
     }
 
-    void initBodies() {
-        // Initialize black hole
-        Body blackHole = new Body();
-        blackHole.setMass(BLACK_HOLE_MASS);
-        blackHole.setBlackHole(true);
-        bodies.add(blackHole);
-
-        // Initialize particles in a ring
-        Random rand = new Random();
-        for (int i = 0; i < NB_PARTICLES; i++) {
-            float r = R_MIN + (R_MAX - R_MIN) * rand.nextFloat();
-            float angle = (float) (2 * Math.PI * rand.nextFloat());
-
-            // Calculate position
-            float x = (float) (r * Math.cos(angle));
-            float y = (float) (r * Math.sin(angle));
-
-            // Calculate initial velocity for circular orbit
-            float speed = (float) Math.sqrt((0.1 * BLACK_HOLE_MASS) / r);
-            float vx = (float) (-speed * Math.sin(angle));
-            float vy = (float) (speed * Math.cos(angle));
-
-            Body star = new Body();
-            star.setX(x);
-            star.setY(y);
-            star.setVx(vx);
-            star.setVy(vy);
-            bodies.add(star);
+    @PreDestroy
+    void shutdown() {
+        if (checkpointer != null) {
+            checkpointer.shutdownNow();
         }
+        stopSimulation();
+        stopCluster();
+        SimulationScheduler scheduler = getScheduler();
+        if (scheduler != null) {
+            log.info("Simulation {} arrêtée au tick {} : {} ticks, {} trop longs, {} abandonnés, tick p99 {} µs",
+                getId(), getSnapshot().getTick(), scheduler.getTickCount(), scheduler.getOverrunCount(),
+                scheduler.getSkippedTickCount(), scheduler.getTickDurationHistogram().getValueAtPercentile(99) / 1000);
+        }
+        writeCheckpoint();
     }
 
-    private void startSimulationLoop() {
-        new Thread(() -> {
-            while (running) {
-                updateSimulation();
-                try {
-                    Thread.sleep(UPDATE_DELAY_MS);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+    private void startCluster() {
+        if (collisions || !Integrators.VERLET.equals(integrator)) {
+            log.warn("Les domaines intègrent en kick-drift-kick sans collisions, l'intégrateur {} et les collisions sont ignorés",
+                integrator);
+        }
+        clusterExecutor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "NBodyCluster");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Opened here so a wrong configuration fails the startup, the domains are awaited on the cluster thread
+        openCluster();
+    }
+
+    /**
+     * Ouvre le transport du coordinateur (et les domaines locaux) puis attend les domaines sur le thread du cluster.
+     * La room tourne dans ce processus tant qu'ils n'ont pas tous répondu.
+     */
+    private void openCluster() {
+        try {
+            int size = clusterDomains + 1;
+            DomainCoordinator coordinator = new DomainCoordinator(
+                Transports.open(clusterTransport, 0, size, clusterAddresses, Path.of(clusterDir)), clusterSolver());
+            coordinator.setRebalanceInterval(clusterRebalanceInterval);
+            connecting = coordinator;
+            if (clusterLocalWorkers) {
+                for (int rank = 1; rank < size; rank++) {
+                    Transport transport = Transports.open(clusterTransport, rank, size, clusterAddresses, Path.of(clusterDir));
+                    localTransports.add(transport);
+                    Thread worker = new Thread(new DomainWorker(transport), "NBodyDomain-" + (rank - 1));
+                    worker.setDaemon(true);
+                    worker.start();
+                    localWorkers.add(worker);
                 }
             }
-        }, "NBodySimulationThread").start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the cluster transport", e);
+        }
+        clusterExecutor.execute(this::awaitCluster);
     }
 
-    void updateSimulation() {
-        synchronized (bodies) {
-            physicsEngine.updatePositions(bodies);
-            physicsEngine.calculateGravitationalForces(bodies);
-            physicsEngine.updateVelocities(bodies);
-            
-            // Keep black hole at center if it exists
-            bodies.stream()
-                .filter(Body::isBlackHole)
-                .findFirst()
-                .ifPresent(blackHole -> {
-                    blackHole.setPosition(new Vector3D());
-                    blackHole.setVelocity(new Vector3D());
-                });
+    private void awaitCluster() {
+        DomainCoordinator coordinator = connecting;
+        try {
+            if (coordinator.awaitDomains(CLUSTER_CONNECT_TIMEOUT_NANOS)) {
+                connecting = null;
+                cluster = coordinator;
+                log.info("Simulation {} répartie sur {} domaines, transport {}, solveur {}{}", getId(), clusterDomains,
+                    clusterTransport, clusterSolver(), clusterLocalWorkers ? " (threads locaux)" : "");
+                return;
+            }
+            log.warn("Domaines injoignables, la simulation {} continue dans ce processus", getId());
+        } catch (IOException e) {
+            log.warn("Domaines injoignables, la simulation {} continue dans ce processus : {}", getId(), e.getMessage());
         }
+        connecting = null;
+        closeCluster(coordinator, false);
+        scheduleClusterRetry();
     }
 
-    public void stopSimulation() {
-        running = false;
+    private void retryCluster() {
+        try {
+            openCluster();
+        } catch (UncheckedIOException e) {
+            log.warn("Transport du cluster indisponible : {}", e.getCause().getMessage());
+            scheduleClusterRetry();
+        }
     }
 
-    /**
-     * Crée et ajoute un nouveau corps à la simulation
-     * @param x Position x initiale
-     * @param y Position y initiale
-     * @param z Position z initiale
-     * @param mass Masse du corps
-     * @param blackHole Si c'est un trou noir
-     * @param vx Vitesse initiale en x
-     * @param vy Vitesse initiale en y
-     * @param vz Vitesse initiale en z
-     * @return Le corps créé
-     */
-    public Body createBody(float x, float y, float z, float mass, boolean blackHole, float vx, float vy, float vz) {
-        synchronized (bodies) {
-            Body body = new Body();
-            body.setPosition(new Vector3D(x, y, z));
-            body.setVelocity(new Vector3D(vx, vy, vz));
-            body.setMass(mass);
-            body.setBlackHole(blackHole);
-            bodies.add(body);
-            return body;
+    private void scheduleClusterRetry() {
+        if (clusterRetryIntervalS <= 0) {
+            return;
+        }
+        try {
+            clusterExecutor.schedule(this::retryCluster, clusterRetryIntervalS, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
         }
     }
 
     /**
-     * Supprime un corps de la simulation à l'index spécifié
-     * @param index L'index du corps à supprimer
-     * @return true si le corps a été supprimé, false sinon
+     * Ferme le coordinateur et les domaines locaux
+     * @param stopDomains true pour arrêter aussi les domaines, false pour qu'ils attendent un nouveau coordinateur
      */
-    public boolean deleteBody(int index) {
-        synchronized (bodies) {
-            if (index < 0 || index >= bodies.size()) {
-                return false;
+    private void closeCluster(DomainCoordinator coordinator, boolean stopDomains) {
+        try {
+            if (stopDomains) {
+                coordinator.close();
+                // Local domains get the time to read STOP before their transport closes
+                for (Thread worker : localWorkers) {
+                    worker.join(1000);
+                }
+            } else {
+                coordinator.abandon();
+            }
+            for (Transport transport : localTransports) {
+                transport.close();
             }
-            bodies.remove(index);
-            return true;
+            for (Thread worker : localWorkers) {
+                worker.join(1000);
+            }
+        } catch (IOException e) {
+            log.warn("Arrêt incomplet des domaines : {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        localTransports.clear();
+        localWorkers.clear();
+    }
+
+    private void stopCluster() {
+        if (clusterExecutor == null) {
+            return;
+        }
+        clusterExecutor.shutdownNow();
+        try {
+            clusterExecutor.awaitTermination(2 * CLUSTER_CONNECT_TIMEOUT_NANOS, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        DomainCoordinator current = cluster != null ? cluster : connecting;
+        cluster = null;
+        connecting = null;
+        if (current != null) {
+            closeCluster(current, true);
         }
     }
 
-    public void resetSimulation() {
-        synchronized (bodies) {
-            bodies.clear();
-            initBodies();
+    @Override
+    protected void advance() {
+        DomainCoordinator current = cluster;
+        if (current == null) {
+            super.advance();
+            return;
+        }
+        try {
+            current.step(getStore(), getPhysicsEngine().getTimeStep(), getPhysicsEngine().getSubsteps());
+        } catch (IOException e) {
+            // Logged once per failure: the room runs here until the domains answer again
+            log.error("Tick réparti abandonné, la simulation {} continue dans ce processus : {}", getId(), e.getMessage());
+            cluster = null;
+            try {
+                clusterExecutor.execute(() -> {
+                    closeCluster(current, false);
+                    scheduleClusterRetry();
+                });
+            } catch (RejectedExecutionException shuttingDown) {
+                // stopCluster closes it
+            }
+            // The domains moved the bodies since the engine last computed their forces
+            getPhysicsEngine().invalidateForces();
+            super.advance();
+        }
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter out) {
+        super.writeMetrics(out);
+        if (clusterDomains > 0) {
+            DomainCoordinator current = cluster;
+            out.gauge("nbody_cluster_connected", "1 while the domains compute the room, 0 while it runs here",
+                current != null ? 1 : 0, "room", getId());
+            if (current != null) {
+                current.writeMetrics(out, "room", getId());
+            }
+        }
+    }
+
+    private String clusterSolver() {
+        // Null fields when the service is created without CDI
+        String name = clusterSolver != null && clusterSolver.isPresent() ? clusterSolver.get() : solver;
+        return name != null ? name : ForceSolvers.BLACK_HOLE;
+    }
+
+    private Path checkpointFile() {
+        // Null when the service is created without CDI
+        return checkpointPath != null && checkpointPath.isPresent() ? Path.of(checkpointPath.get()) : null;
+    }
+
+    private synchronized void writeCheckpoint() {
+        Path checkpoint = checkpointFile();
+        long tick = getSnapshot().getTick();
+        if (checkpoint == null || tick == lastCheckpointTick) {
+            return;
+        }
+        try {
+            checkpoint(checkpoint);
+            lastCheckpointTick = tick;
+        } catch (IOException e) {
+            log.error("Échec du checkpoint {} : {}", checkpoint, e.getMessage());
         }
     }
 }
@@ -0,0 +1,480 @@
+package cyrildeschamps.core.service.simulation;
+
+import cyrildeschamps.core.metrics.PrometheusWriter;
+import cyrildeschamps.core.metrics.Timer;
+import cyrildeschamps.core.service.simulation.distribution.Distribution;
+import cyrildeschamps.core.service.simulation.distribution.Distributions;
+import cyrildeschamps.core.service.simulation.distribution.Ring;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+import cyrildeschamps.core.service.simulation.physics.force.ForceSolvers;
+import cyrildeschamps.core.service.simulation.physics.integration.Integrators;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Un monde simulé indépendant (une "room") : ses corps, son moteur, sa file de commandes et son dernier snapshot.
+ * Les ticks tournent soit sur un thread dédié, soit par tranches sur un pool partagé entre plusieurs simulations.
+ */
+@Slf4j
+public class Simulation implements SnapshotSource {
+    protected static final int UPDATE_DELAY_MS = 15; // ~66 ticks per second
+    protected static final int NB_PARTICLES = 500;
+    protected static final float BLACK_HOLE_MASS = 5e5F;
+    protected static final float R_MIN = 50;
+    protected static final float R_MAX = 300;
+    protected static final int MAX_COMMANDS_PER_TICK = 1024;
+
+    @Getter
+    private final String id;
+    @Getter
+    private final BodyStore store = new BodyStore();
+    @Getter
+    private final PhysicsEngine physicsEngine = new PhysicsEngine();
+    volatile boolean running;
+    private Thread simulationThread;
+    @Getter
+    private volatile SimulationScheduler scheduler;
+
+    // Mutations submitted by any thread, drained by the simulation thread at the start of each tick
+    private final Queue<SimulationCommand> commands = new ConcurrentLinkedQueue<>();
+
+    // Last published state, swapped atomically at the end of each tick
+    private volatile WorldSnapshot snapshot = WorldSnapshot.EMPTY;
+    private long tick;
+    // Ticks between two published snapshots, above 1 only for offline runs that nobody watches live
+    private int publishInterval = 1;
+
+    private Distribution initialDistribution = new Ring(R_MIN, R_MAX, BLACK_HOLE_MASS, 1);
+    private int initialBodies = NB_PARTICLES;
+
+    private final List<SimulationListener> listeners = new CopyOnWriteArrayList<>();
+    /** Copie du monde à chaque publication, hors listeners */
+    @Getter
+    private final Timer snapshotTimer = new Timer();
+    private final SnapshotBuffers snapshotBuffers = new SnapshotBuffers();
+
+    public Simulation(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Monde de départ et de réinitialisation : le trou noir central puis la distribution initiale
+     */
+    void initBodies() {
+        store.add(0, 0, 0, 0, 0, 0, BLACK_HOLE_MASS, true);
+        store.addAll(Distributions.generate(initialDistribution, initialBodies, ThreadLocalRandom.current().nextLong()));
+    }
+
+    /**
+     * Choisit la distribution (voir {@link Distributions#byName(String, float, float)}) et le nombre d'étoiles
+     * du monde de départ, autour du trou noir central. Les valeurs absentes gardent l'anneau de 500 étoiles.
+     */
+    void configureInitialBodies(String distribution, int count) {
+        if (distribution != null) {
+            initialDistribution = Distributions.byName(distribution, R_MAX, BLACK_HOLE_MASS);
+        }
+        if (count > 0) {
+            initialBodies = count;
+        }
+    }
+
+    // Config fields stay at 0 when the service is created without CDI
+    static long tickPeriodNanos(int tickPeriodMs) {
+        return TimeUnit.MILLISECONDS.toNanos(tickPeriodMs > 0 ? tickPeriodMs : UPDATE_DELAY_MS);
+    }
+
+    static int catchUpSteps(int maxCatchUpSteps) {
+        return maxCatchUpSteps > 0 ? maxCatchUpSteps : SimulationScheduler.DEFAULT_MAX_CATCH_UP_STEPS;
+    }
+
+    /**
+     * Choisit le solveur de forces (voir {@link ForceSolvers#byName(String)}), null garde celui du moteur
+     */
+    void configureSolver(String solver) {
+        if (solver != null) {
+            physicsEngine.setForceSolver(ForceSolvers.byName(solver));
+        }
+    }
+
+    /**
+     * Choisit l'intégrateur (voir {@link Integrators#byName(String)}) et le nombre de pas par tick.
+     * Les valeurs absentes gardent celles du moteur.
+     */
+    void configureIntegration(String integrator, int substeps) {
+        if (integrator != null) {
+            physicsEngine.setIntegrator(Integrators.byName(integrator));
+        }
+        if (substeps > 0) {
+            physicsEngine.setSubsteps(substeps);
+        }
+    }
+
+    /**
+     * Remplit le monde avec l'anneau initial et publie le premier snapshot, avant de démarrer les ticks
+     */
+    void initialize() {
+        initBodies();
+        publishSnapshot();
+    }
+
+    /**
+     * Restaure le monde depuis un checkpoint, ou crée l'anneau initial si le fichier est absent ou illisible
+     */
+    void initialize(Path checkpoint) {
+        if (checkpoint != null && Files.exists(checkpoint)) {
+            try {
+                long start = System.nanoTime();
+                restore(checkpoint);
+                log.info("Simulation {} restaurée depuis {} : {} corps, tick {} en {} ms", id, checkpoint,
+                    store.size(), tick, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return;
+            } catch (IOException e) {
+                log.warn("Checkpoint {} ignoré : {}", checkpoint, e.getMessage());
+                store.clear();
+            }
+        }
+        initialize();
+    }
+
+    /**
+     * Remplace le monde par celui d'un checkpoint, tick compris, et le publie
+     * @throws IOException si le fichier est absent ou illisible, le monde est alors vide
+     */
+    void restore(Path checkpoint) throws IOException {
+        synchronized (store) {
+            tick = SimulationCheckpoint.restore(checkpoint, store);
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * Écrit le dernier snapshot publié dans un checkpoint, sans bloquer les ticks
+     */
+    public void checkpoint(Path path) throws IOException {
+        SimulationCheckpoint.write(snapshot, path);
+    }
+
+    /**
+     * Démarre les ticks sur un thread dédié
+     */
+    void startSimulationLoop(long periodNanos, int maxCatchUpSteps) {
+        scheduler = new SimulationScheduler(this::updateSimulation, periodNanos, maxCatchUpSteps);
+        running = true;
+        simulationThread = new Thread(() -> {
+            scheduler.run();
+            drainCommands();
+            physicsEngine.shutdown();
+        }, "NBodySimulationThread");
+        simulationThread.start();
+    }
+
+    /**
+     * Démarre les ticks par tranches sur un pool partagé, sans thread dédié
+     */
+    void startSimulationLoop(ScheduledExecutorService pool, long periodNanos, int maxCatchUpSteps) {
+        scheduler = new SimulationScheduler(this::updatePooledSimulation, periodNanos, maxCatchUpSteps);
+        running = true;
+        scheduler.start(pool);
+    }
+
+    /**
+     * Applique les commandes soumises pendant l'arrêt de la boucle
+     */
+    private void drainCommands() {
+        synchronized (store) {
+            applyCommands(Integer.MAX_VALUE);
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * Exécute un tick complet : commandes en attente, physique, publication du snapshot.
+     * Appelé par le planificateur, ou directement quand la boucle ne tourne pas (benchmarks).
+     */
+    public void updateSimulation() {
+        synchronized (store) {
+            applyCommands(MAX_COMMANDS_PER_TICK);
+
+            advance();
+
+            tick++;
+            if (tick % publishInterval == 0) {
+                publishSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Tick d'une tranche du pool : une tranche déjà lancée quand la boucle s'arrête ne touche plus au monde,
+     * le verrou l'ordonne avec la dernière vidange des commandes de {@link #stopSimulation()}
+     */
+    private void updatePooledSimulation() {
+        synchronized (store) {
+            if (running) {
+                updateSimulation();
+            }
+        }
+    }
+
+    /**
+     * Avance le monde d'un tick, appelé avec le verrou du stockage entre les commandes et la publication.
+     * Une sous-classe peut déléguer le calcul ailleurs tant qu'elle laisse le résultat dans {@link #getStore()}.
+     */
+    protected void advance() {
+        physicsEngine.step(store);
+
+        // Keep black hole at center if it exists
+        int blackHole = store.firstBlackHole();
+        if (blackHole >= 0) {
+            if (store.getX()[blackHole] != 0 || store.getY()[blackHole] != 0 || store.getZ()[blackHole] != 0) {
+                physicsEngine.invalidateForces();
+            }
+            store.getX()[blackHole] = 0;
+            store.getY()[blackHole] = 0;
+            store.getZ()[blackHole] = 0;
+            store.getVx()[blackHole] = 0;
+            store.getVy()[blackHole] = 0;
+            store.getVz()[blackHole] = 0;
+        }
+    }
+
+    /**
+     * Ne publie qu'un snapshot tous les 'interval' ticks : la copie du monde est évitée entre deux échantillons
+     */
+    void setPublishInterval(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be at least 1");
+        }
+        publishInterval = interval;
+    }
+
+    /**
+     * Publie l'état courant s'il ne l'a pas encore été (voir {@link #setPublishInterval(int)})
+     */
+    void publishPendingSnapshot() {
+        synchronized (store) {
+            if (snapshot.getTick() != tick) {
+                publishSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Applique les commandes en attente, au plus 'max' pour ne pas retarder le tick indéfiniment.
+     * Appelé avec le verrou du stockage.
+     */
+    private void applyCommands(int max) {
+        SimulationCommand command;
+        for (int applied = 0; applied < max && (command = commands.poll()) != null; applied++) {
+            try {
+                switch (command) {
+                    case SimulationCommand.CreateBodies create -> create.result().complete(store.addAll(create.batch()));
+                    case SimulationCommand.DeleteBody delete -> delete.result().complete(store.removeById(delete.id()));
+                    case SimulationCommand.Reset reset -> {
+                        store.clear();
+                        initBodies();
+                        reset.result().complete(null);
+                    }
+                }
+            } catch (RuntimeException e) {
+                command.result().completeExceptionally(e);
+                continue;
+            }
+            notifyCommand(command);
+        }
+    }
+
+    /**
+     * Le résultat de la commande est déjà rendu : l'échec d'un listener est journalisé sans gêner les autres
+     */
+    private void notifyCommand(SimulationCommand command) {
+        for (SimulationListener listener : listeners) {
+            try {
+                listener.onCommand(tick, command);
+            } catch (RuntimeException e) {
+                log.error("Listener {} en échec sur une commande de la simulation {} : {}",
+                    listener.getClass().getSimpleName(), id, e.getMessage());
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(SimulationCommand command, CompletableFuture<T> result) {
+        commands.offer(command);
+        if (!running) {
+            // No tick loop to drain the queue, apply the command right away
+            synchronized (store) {
+                applyCommands(Integer.MAX_VALUE);
+                publishSnapshot();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Publie une copie immuable de l'état courant. Appelé avec le verrou du stockage.
+     */
+    private void publishSnapshot() {
+        long start = System.nanoTime();
+        WorldSnapshot published = WorldSnapshot.capture(store, tick, System.currentTimeMillis(),
+            snapshot, snapshotBuffers);
+        snapshot = published;
+        snapshotTimer.recordSince(start);
+        for (SimulationListener listener : listeners) {
+            listener.onSnapshot(published);
+        }
+    }
+
+    /**
+     * @return La période visée entre deux ticks, celle par défaut si la boucle n'a pas démarré
+     */
+    public long getTickPeriodNanos() {
+        SimulationScheduler current = scheduler;
+        return current != null ? current.getTargetPeriodNanos() : tickPeriodNanos(0);
+    }
+
+    /**
+     * @return Le nombre de commandes soumises et pas encore appliquées (parcourt la file : pour les métriques)
+     */
+    public int getPendingCommandCount() {
+        return commands.size();
+    }
+
+    /**
+     * Ajoute les métriques de la simulation (label room) : tick, phases du moteur, corps et file de commandes.
+     * Lit des compteurs sans verrou, les valeurs d'un même appel peuvent être décalées d'un tick.
+     */
+    public void writeMetrics(PrometheusWriter out) {
+        String[] room = {"room", id};
+        out.gauge("nbody_bodies", "Bodies in the last published snapshot", snapshot.size(), room)
+            .gauge("nbody_tick", "Last published tick", snapshot.getTick(), room)
+            .gauge("nbody_pending_commands", "Commands waiting for the next tick", getPendingCommandCount(), room)
+            .summary("nbody_snapshot_seconds", "Time to copy the world into a snapshot", snapshotTimer, room);
+        SimulationScheduler current = scheduler;
+        if (current != null) {
+            out.summary("nbody_tick_duration_seconds", "Duration of a full tick", current.getTickDurationHistogram(), room)
+                .summary("nbody_tick_lateness_seconds", "Delay between a tick deadline and its start",
+                    current.getTickLatenessHistogram(), room)
+                .counter("nbody_ticks_total", "Ticks run", current.getTickCount(), room)
+                .counter("nbody_tick_overruns_total", "Ticks longer than the period", current.getOverrunCount(), room)
+                .counter("nbody_ticks_skipped_total", "Deadlines dropped after a stall", current.getSkippedTickCount(), room)
+                .gauge("nbody_tick_rate_hz", "Ticks per second over the last window", current.getAchievedHz(), room);
+        }
+        PhysicsEngine engine = physicsEngine;
+        String[] phases = {"forces", "drift", "kick", "collisions"};
+        Timer[] timers = {engine.getForcesTimer(), engine.getDriftTimer(), engine.getKickTimer(), engine.getCollisionsTimer()};
+        for (int p = 0; p < phases.length; p++) {
+            out.summary("nbody_physics_phase_seconds", "Duration of a physics phase", timers[p], "room", id, "phase", phases[p]);
+        }
+        out.counter("nbody_force_evaluations_total", "Full force evaluations", engine.getForceEvaluations(), room)
+            .counter("nbody_partial_force_evaluations_total", "Partial force evaluations", engine.getPartialForceEvaluations(), room)
+            .counter("nbody_body_force_evaluations_total", "Forces computed body by body", engine.getBodyForceEvaluations(), room);
+    }
+
+    /**
+     * Abonne un observateur aux snapshots et aux commandes, à partir du prochain tick
+     */
+    public void addListener(SimulationListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SimulationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Dernier état publié par la simulation. Lecture sans verrou, l'instance retournée ne change jamais.
+     */
+    @Override
+    public WorldSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Vue des corps sous forme de liste (flyweights sur le {@link BodyStore})
+     */
+    public List<Body> getBodies() {
+        return store.asList();
+    }
+
+    /**
+     * Arrête la boucle de simulation et attend la fin du tick en cours
+     */
+    public void stopSimulation() {
+        running = false;
+        SimulationScheduler current = scheduler;
+        if (current != null) {
+            current.stop();
+        }
+        Thread thread = simulationThread;
+        if (thread == null) {
+            // Pooled loop: a slice may still be running, the store lock orders it with the drain and later slices
+            // see running == false
+            drainCommands();
+            physicsEngine.shutdown();
+        } else if (thread != Thread.currentThread()) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Crée et ajoute un nouveau corps à la simulation, au début du prochain tick
+     * @param x Position x initiale
+     * @param y Position y initiale
+     * @param z Position z initiale
+     * @param mass Masse du corps
+     * @param blackHole Si c'est un trou noir
+     * @param vx Vitesse initiale en x
+     * @param vy Vitesse initiale en y
+     * @param vz Vitesse initiale en z
+     * @return Le corps créé, une fois inséré
+     */
+    public CompletableFuture<Body> createBody(float x, float y, float z, float mass, boolean blackHole, float vx, float vy, float vz) {
+        BodyBatch batch = new BodyBatch(1).add(x, y, z, vx, vy, vz, mass, blackHole);
+        CompletableFuture<Integer> inserted = new CompletableFuture<>();
+        // Attached before submission so it runs right after insertion, while the index is still valid
+        CompletableFuture<Body> body = inserted.thenApply(store::view);
+        submit(new SimulationCommand.CreateBodies(batch, inserted), inserted);
+        return body;
+    }
+
+    /**
+     * Insère un lot de corps en une seule passe au début du prochain tick
+     * @return L'index du premier corps inséré
+     */
+    public CompletableFuture<Integer> createBodies(BodyBatch batch) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        return submit(new SimulationCommand.CreateBodies(batch, result), result);
+    }
+
+    /**
+     * Supprime un corps de la simulation d'après son id stable, qui ne dépend pas de l'ordre des corps
+     * @param id L'id du corps à supprimer (voir {@link Body#getId()})
+     * @return true si le corps a été supprimé, false s'il n'existe pas ou plus
+     */
+    public CompletableFuture<Boolean> deleteBody(int id) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        return submit(new SimulationCommand.DeleteBody(id, result), result);
+    }
+
+    public CompletableFuture<Void> resetSimulation() {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        return submit(new SimulationCommand.Reset(result), result);
+    }
+}
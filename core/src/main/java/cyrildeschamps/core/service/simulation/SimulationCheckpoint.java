@@ -0,0 +1,88 @@
+package cyrildeschamps.core.service.simulation;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Checkpoint binaire d'un monde, lu et écrit via un fichier mappé en mémoire.
+ * Little-endian : en-tête de {@link #HEADER_SIZE} octets (magic, version, nombre de corps, tick, timestamp)
+ * puis les ids en int, les tableaux x, y, z, vx, vy, vz, mass en float et les flags en octets.
+ */
+public final class SimulationCheckpoint {
+    public static final int MAGIC = 0x4B43424E; // "NBCK"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 32;
+    public static final int BYTES_PER_BODY = Integer.BYTES + 7 * Float.BYTES + 1;
+
+    private SimulationCheckpoint() {
+    }
+
+    public static long fileSize(int count) {
+        return HEADER_SIZE + (long) count * BYTES_PER_BODY;
+    }
+
+    /**
+     * Écrit le snapshot dans un fichier temporaire puis le renomme : un crash pendant l'écriture
+     * laisse le checkpoint précédent intact. Le snapshot étant immuable, la simulation continue pendant l'écriture.
+     */
+    public static void write(WorldSnapshot snapshot, Path path) throws IOException {
+        int n = snapshot.size();
+        long size = fileSize(n);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Checkpoint too large: " + n + " bodies");
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC);
+            buf.putInt(VERSION);
+            buf.putInt(n);
+            buf.putInt(0); // padding, keeps the longs and the arrays aligned
+            buf.putLong(snapshot.getTick());
+            buf.putLong(snapshot.getTimestamp());
+            snapshot.writeArrays(buf);
+            buf.force();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Remplace le contenu du stockage par celui du checkpoint
+     * @return Le tick enregistré dans le checkpoint
+     * @throws IOException si le fichier est illisible, d'une autre version ou tronqué
+     */
+    public static long restore(Path path, BodyStore store) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Invalid checkpoint size: " + fileSize);
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (buf.getInt() != MAGIC) {
+                throw new IOException("Not a checkpoint: " + path);
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+            int n = buf.getInt();
+            if (n < 0 || fileSize(n) != fileSize) {
+                throw new IOException("Truncated checkpoint: " + n + " bodies in " + fileSize + " bytes");
+            }
+            buf.getInt();
+            long tick = buf.getLong();
+            buf.getLong(); // timestamp, informative only
+            store.load(n, buf);
+            return tick;
+        }
+    }
+}
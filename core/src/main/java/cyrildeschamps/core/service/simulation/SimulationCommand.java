@@ -0,0 +1,24 @@
+package cyrildeschamps.core.service.simulation;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Mutation du monde soumise par un thread quelconque et appliquée par le thread de simulation
+ * au début du tick suivant. Le résultat est transmis via le {@link CompletableFuture} du message.
+ */
+public sealed interface SimulationCommand {
+
+    /**
+     * Insère tous les corps du lot en une passe, le résultat est l'index du premier corps inséré
+     */
+    record CreateBodies(BodyBatch batch, CompletableFuture<Integer> result) implements SimulationCommand { }
+
+    /**
+     * Supprime le corps d'id stable donné (voir {@link BodyStore#removeById(int)})
+     */
+    record DeleteBody(int id, CompletableFuture<Boolean> result) implements SimulationCommand { }
+
+    record Reset(CompletableFuture<Void> result) implements SimulationCommand { }
+
+    CompletableFuture<?> result();
+}
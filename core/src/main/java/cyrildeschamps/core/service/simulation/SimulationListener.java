@@ -0,0 +1,20 @@
+package cyrildeschamps.core.service.simulation;
+
+/**
+ * Observe une simulation depuis son thread de tick, avec le verrou du stockage.
+ * Les implémentations ne doivent jamais bloquer : au plus une copie de référence dans une file bornée.
+ */
+public interface SimulationListener {
+
+    /**
+     * Appelé à chaque snapshot publié
+     */
+    void onSnapshot(WorldSnapshot snapshot);
+
+    /**
+     * Appelé après chaque commande appliquée avec succès
+     * @param tick Dernier tick publié avant la commande
+     */
+    default void onCommand(long tick, SimulationCommand command) {
+    }
+}
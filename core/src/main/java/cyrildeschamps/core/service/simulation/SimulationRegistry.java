@@ -0,0 +1,179 @@
+package cyrildeschamps.core.service.simulation;
+
+import cyrildeschamps.core.service.simulation.distribution.Distributions;
+import cyrildeschamps.core.service.simulation.physics.force.ForceSolvers;
+import cyrildeschamps.core.service.simulation.physics.integration.Integrators;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Simulations nommées ("rooms") indépendantes : chacune a ses corps, sa boucle et ses commandes.
+ * Les rooms créées ici n'ont pas de thread dédié, leurs ticks sont intercalés sur un pool borné partagé.
+ * La room {@link NBodyService#DEFAULT_ROOM} est le {@link NBodyService} et ne peut pas être détruite.
+ */
+@Slf4j
+@ApplicationScoped
+public class SimulationRegistry {
+    public static final int DEFAULT_MAX_ROOMS = 500;
+
+    private static final Pattern ROOM_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    @Inject
+    NBodyService defaultSimulation;
+
+    // Worker threads shared by every room, 0 means one per core
+    @ConfigProperty(name = "nbody.rooms.pool-size", defaultValue = "0")
+    int poolSize;
+
+    @ConfigProperty(name = "nbody.rooms.max", defaultValue = "500")
+    int maxRooms;
+
+    @ConfigProperty(name = "nbody.simulation.tick-period-ms", defaultValue = "15")
+    int tickPeriodMs;
+
+    @ConfigProperty(name = "nbody.simulation.max-catch-up-steps", defaultValue = "4")
+    int maxCatchUpSteps;
+
+    @ConfigProperty(name = "nbody.physics.solver", defaultValue = ForceSolvers.BLACK_HOLE)
+    String solver;
+
+    @ConfigProperty(name = "nbody.physics.integrator", defaultValue = Integrators.VERLET)
+    String integrator;
+
+    @ConfigProperty(name = "nbody.physics.substeps", defaultValue = "1")
+    int substeps;
+
+    @ConfigProperty(name = "nbody.simulation.initial-distribution", defaultValue = Distributions.RING)
+    String initialDistribution;
+
+    @ConfigProperty(name = "nbody.simulation.initial-bodies", defaultValue = "500")
+    int initialBodies;
+
+    private final ConcurrentMap<String, Simulation> rooms = new ConcurrentHashMap<>();
+    private ScheduledExecutorService pool;
+
+    /**
+     * @return La room existante, ou une nouvelle room démarrée avec l'anneau initial
+     * @throws IllegalArgumentException si l'identifiant est invalide
+     * @throws IllegalStateException si le nombre maximum de rooms est atteint
+     */
+    public Simulation getOrCreate(String id) {
+        if (NBodyService.DEFAULT_ROOM.equals(id)) {
+            return defaultSimulation;
+        }
+        if (id == null || !ROOM_ID.matcher(id).matches()) {
+            throw new IllegalArgumentException("Invalid room id: " + id);
+        }
+        Simulation room = rooms.get(id);
+        if (room != null) {
+            return room;
+        }
+        // Seeding the world takes a while: it runs outside of the map, and a failure leaves nothing behind
+        checkRoomCount(rooms.size());
+        Simulation created = start(id);
+        room = rooms.putIfAbsent(id, created);
+        if (room != null) {
+            // Another caller started the same room first
+            created.stopSimulation();
+            return room;
+        }
+        try {
+            checkRoomCount(rooms.size() - 1);
+        } catch (IllegalStateException e) {
+            rooms.remove(id, created);
+            created.stopSimulation();
+            throw e;
+        }
+        log.info("Room {} créée", id);
+        return created;
+    }
+
+    private void checkRoomCount(int others) {
+        int max = maxRooms > 0 ? maxRooms : DEFAULT_MAX_ROOMS;
+        if (others >= max) {
+            throw new IllegalStateException("Too many rooms (" + max + ")");
+        }
+    }
+
+    /**
+     * @return La room, ou null si elle n'existe pas
+     */
+    public Simulation get(String id) {
+        return NBodyService.DEFAULT_ROOM.equals(id) ? defaultSimulation : rooms.get(id);
+    }
+
+    /**
+     * @return Les identifiants des rooms existantes, room par défaut comprise
+     */
+    public List<String> list() {
+        List<String> ids = new ArrayList<>(rooms.size() + 1);
+        ids.add(NBodyService.DEFAULT_ROOM);
+        ids.addAll(rooms.keySet());
+        return ids;
+    }
+
+    /**
+     * Arrête et supprime une room. La room par défaut n'est jamais détruite.
+     * @return true si la room existait
+     */
+    public boolean destroy(String id) {
+        Simulation room = NBodyService.DEFAULT_ROOM.equals(id) ? null : rooms.remove(id);
+        if (room == null) {
+            return false;
+        }
+        room.stopSimulation();
+        log.info("Room {} détruite", id);
+        return true;
+    }
+
+    private Simulation start(String id) {
+        Simulation room = new Simulation(id);
+        try {
+            room.configureSolver(solver);
+            room.configureIntegration(integrator, substeps);
+            room.configureInitialBodies(initialDistribution, initialBodies);
+            room.initialize();
+        } catch (RuntimeException e) {
+            // Releases the engine's workers, the loop is not started yet
+            room.stopSimulation();
+            throw e;
+        }
+        room.startSimulationLoop(pool(), Simulation.tickPeriodNanos(tickPeriodMs), Simulation.catchUpSteps(maxCatchUpSteps));
+        return room;
+    }
+
+    private synchronized ScheduledExecutorService pool() {
+        if (pool == null) {
+            int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+            pool = Executors.newScheduledThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "NBodyRooms-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        rooms.keySet().forEach(this::destroy);
+        synchronized (this) {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package cyrildeschamps.core.service.simulation;
+
+import cyrildeschamps.core.metrics.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cadence les ticks sur des échéances {@link System#nanoTime()} fixes plutôt qu'un sommeil après chaque tick,
+ * pour que la fréquence ne dérive pas avec le temps de calcul.
+ * Chaque tick avance la physique d'un pas fixe : un retard est rattrapé par au plus 'maxCatchUpSteps' ticks
+ * d'affilée, au-delà les échéances manquées sont abandonnées. Les ticks tournent sur un thread dédié
+ * ({@link #run()}) ou par tranches sur un pool partagé ({@link #start(ScheduledExecutorService)}). Si les ticks durent plus longtemps que la période,
+ * la fréquence est abaissée (jusqu'à 1/4 de la cible) puis remontée quand la charge baisse.
+ */
+@Slf4j
+public class SimulationScheduler {
+    public static final int DEFAULT_MAX_CATCH_UP_STEPS = 4;
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double MAX_SLOWDOWN = 4;
+    private static final double RATE_FACTOR = 1.25;
+    private static final double LOAD_SMOOTHING = 0.1;
+    // Degrade when ticks use 90% of the period, recover when they would use less than 50% of the faster one
+    private static final double OVERLOAD_THRESHOLD = 0.9;
+    private static final double RECOVERY_THRESHOLD = 0.5;
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final Runnable step;
+    @Getter
+    private final long targetPeriodNanos;
+    @Getter
+    private final int maxCatchUpSteps;
+
+    private volatile long periodNanos;
+    private volatile boolean stopped;
+    private volatile double achievedHz;
+    private double averageTickNanos;
+
+    // Only touched by the thread running the current step
+    private long deadline = UNSET;
+    private long windowStart;
+    private long windowTicks;
+    private int catchUpSteps;
+
+    private final Timer tickDurations = new Timer();
+    private final Timer tickLateness = new Timer();
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong skippedTicks = new AtomicLong();
+
+    /**
+     * @param step Un tick de simulation
+     * @param targetPeriodNanos Période visée entre deux débuts de tick
+     * @param maxCatchUpSteps Nombre maximum de ticks enchaînés sans attente pour rattraper un retard
+     */
+    public SimulationScheduler(Runnable step, long targetPeriodNanos, int maxCatchUpSteps) {
+        if (targetPeriodNanos <= 0 || maxCatchUpSteps < 1) {
+            throw new IllegalArgumentException("period and maxCatchUpSteps must be positive");
+        }
+        this.step = step;
+        this.targetPeriodNanos = targetPeriodNanos;
+        this.maxCatchUpSteps = maxCatchUpSteps;
+        this.periodNanos = targetPeriodNanos;
+    }
+
+    /**
+     * Exécute les ticks dans le thread appelant jusqu'à {@link #stop()} ou une interruption.
+     * Un planificateur arrêté ne peut pas être relancé.
+     */
+    public void run() {
+        while (!stopped) {
+            long wait = advance();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Exécute les ticks par tranches sur un pool partagé : chaque tâche fait au plus un tick puis se replanifie
+     * à la prochaine échéance, les simulations d'un même pool s'intercalent donc équitablement.
+     * Ne bloque pas, s'arrête avec {@link #stop()}.
+     */
+    public void start(ScheduledExecutorService pool) {
+        pool.execute(() -> slice(pool));
+    }
+
+    private void slice(ScheduledExecutorService pool) {
+        if (stopped) {
+            return;
+        }
+        long wait = advance();
+        if (!stopped) {
+            try {
+                pool.schedule(() -> slice(pool), Math.max(0, wait), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // Pool shut down underneath us
+                stopped = true;
+            }
+        }
+    }
+
+    /**
+     * Fait au plus un tick si son échéance est passée. Jamais appelé par deux threads à la fois.
+     * @return Le temps avant la prochaine échéance, négatif ou nul s'il faut enchaîner
+     */
+    private long advance() {
+        long now = System.nanoTime();
+        if (deadline == UNSET) {
+            deadline = now;
+            windowStart = now;
+        }
+        if (now < deadline) {
+            return deadline - now;
+        }
+        if (catchUpSteps >= maxCatchUpSteps) {
+            // Still late after the catch-up budget: drop the backlog instead of spiralling
+            long behind = (now - deadline) / periodNanos + 1;
+            skippedTicks.addAndGet(behind);
+            deadline += behind * periodNanos;
+            catchUpSteps = 0;
+            return deadline - now;
+        }
+
+        tickLateness.record(now - deadline);
+        step.run();
+        long end = System.nanoTime();
+        recordTick(end - now);
+        windowTicks++;
+        deadline += periodNanos;
+        catchUpSteps = end >= deadline ? catchUpSteps + 1 : 0;
+
+        if (end - windowStart >= WINDOW_NANOS) {
+            achievedHz = windowTicks * 1e9 / (end - windowStart);
+            windowStart = end;
+            windowTicks = 0;
+            adjustRate();
+        }
+        return deadline - end;
+    }
+
+    private void recordTick(long duration) {
+        tickDurations.record(duration);
+        ticks.incrementAndGet();
+        if (duration > periodNanos) {
+            overruns.incrementAndGet();
+        }
+        averageTickNanos += LOAD_SMOOTHING * (duration - averageTickNanos);
+    }
+
+    /**
+     * Appelé au plus une fois par seconde pour ne pas osciller
+     */
+    private void adjustRate() {
+        long slowest = (long) (targetPeriodNanos * MAX_SLOWDOWN);
+        if (averageTickNanos > periodNanos * OVERLOAD_THRESHOLD && periodNanos < slowest) {
+            periodNanos = Math.min(slowest, (long) (periodNanos * RATE_FACTOR));
+            log.warn("Simulation surchargée ({} ms par tick), fréquence abaissée à {} Hz",
+                String.format("%.2f", averageTickNanos / 1e6), String.format("%.1f", getCurrentHz()));
+        } else if (periodNanos > targetPeriodNanos
+            && averageTickNanos < periodNanos / RATE_FACTOR * RECOVERY_THRESHOLD) {
+            periodNanos = Math.max(targetPeriodNanos, (long) (periodNanos / RATE_FACTOR));
+            log.info("Charge revenue à la normale, fréquence remontée à {} Hz", String.format("%.1f", getCurrentHz()));
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public double getTargetHz() {
+        return 1e9 / targetPeriodNanos;
+    }
+
+    /**
+     * @return La fréquence visée actuellement, inférieure à la cible si la simulation est surchargée
+     */
+    public double getCurrentHz() {
+        return 1e9 / periodNanos;
+    }
+
+    /**
+     * @return La fréquence mesurée sur la dernière fenêtre d'une seconde
+     */
+    public double getAchievedHz() {
+        return achievedHz;
+    }
+
+    /**
+     * @return Copie de l'histogramme des durées de tick, en nanosecondes
+     */
+    public Histogram getTickDurationHistogram() {
+        return tickDurations.getHistogram();
+    }
+
+    /**
+     * @return Copie de l'histogramme des retards de début de tick par rapport à leur échéance, en nanosecondes
+     */
+    public Histogram getTickLatenessHistogram() {
+        return tickLateness.getHistogram();
+    }
+
+    public long getTickCount() {
+        return ticks.get();
+    }
+
+    /**
+     * @return Le nombre de ticks qui ont duré plus longtemps que la période
+     */
+    public long getOverrunCount() {
+        return overruns.get();
+    }
+
+    /**
+     * @return Le nombre d'échéances abandonnées faute de pouvoir les rattraper
+     */
+    public long getSkippedTickCount() {
+        return skippedTicks.get();
+    }
+}
@@ -0,0 +1,54 @@
+package cyrildeschamps.core.service.simulation;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Tableaux de positions et de vitesses des snapshots d'une simulation, recyclés plutôt que réalloués à chaque tick.
+ * Un jeu de tableaux revient dans le pool quand le snapshot qui le porte n'est plus atteignable,
+ * c'est-à-dire quand plus aucun lecteur ne le tient.
+ */
+final class SnapshotBuffers {
+    // x, y, z, vx, vy, vz
+    static final int ARRAYS = 6;
+    // A few ticks of buffers: above 500 KB a float array is a humongous allocation for G1
+    private static final int POOL_SIZE = 4;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final ArrayBlockingQueue<float[][]> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * @return Six tableaux de n floats au contenu quelconque, recyclés si possible
+     */
+    float[][] acquire(int n) {
+        float[][] buffers;
+        while ((buffers = pool.poll()) != null) {
+            // Buffers of another size are left to the GC
+            if (buffers[0].length == n) {
+                return buffers;
+            }
+        }
+        buffers = new float[ARRAYS][];
+        for (int i = 0; i < ARRAYS; i++) {
+            buffers[i] = new float[n];
+        }
+        return buffers;
+    }
+
+    /**
+     * Rend les tableaux au pool une fois 'owner' inatteignable. Ils ne doivent être lus qu'à travers lui.
+     */
+    void recycleWhenUnreachable(Object owner, float[][] buffers) {
+        // The action must not capture the owner, it would then never become unreachable
+        CLEANER.register(owner, () -> release(buffers));
+    }
+
+    private void release(float[][] buffers) {
+        // A full pool drops the buffers
+        pool.offer(buffers);
+    }
+
+    int pooled() {
+        return pool.size();
+    }
+}
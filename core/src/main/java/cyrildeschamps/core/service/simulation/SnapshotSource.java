@@ -0,0 +1,12 @@
+package cyrildeschamps.core.service.simulation;
+
+/**
+ * Fournit le dernier état à diffuser : une simulation en cours ou la relecture d'un enregistrement
+ */
+public interface SnapshotSource {
+
+    /**
+     * Lecture sans verrou bloquant, l'instance retournée ne change jamais
+     */
+    WorldSnapshot getSnapshot();
+}
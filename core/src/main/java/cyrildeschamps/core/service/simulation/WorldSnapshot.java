@@ -0,0 +1,153 @@
+package cyrildeschamps.core.service.simulation;
+
+import lombok.Getter;
+
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Copie immuable de l'état du monde à la fin d'un tick.
+ * Publiée par la simulation et lisible par n'importe quel nombre de threads sans verrou.
+ */
+public final class WorldSnapshot {
+    public static final WorldSnapshot EMPTY = new WorldSnapshot(0, 0, 0, 0,
+            new float[0], new float[0], new float[0],
+            new float[0], new float[0], new float[0],
+            new float[0], new byte[0], new int[0]);
+
+    /** Point agrégé d'une vue réduite, représentant plusieurs corps : jamais présent dans le stockage */
+    public static final byte FLAG_IMPOSTOR = 2;
+
+    @Getter
+    private final long tick;
+    @Getter
+    private final long timestamp;
+    /** Voir {@link BodyStore#getStructureVersion()} */
+    @Getter
+    private final long structureVersion;
+    private final int size;
+    private final float[] x, y, z;
+    private final float[] vx, vy, vz;
+    private final float[] mass;
+    private final byte[] flags;
+    private final int[] ids;
+
+    private WorldSnapshot(long tick, long timestamp, long structureVersion, int size,
+                          float[] x, float[] y, float[] z,
+                          float[] vx, float[] vy, float[] vz,
+                          float[] mass, byte[] flags, int[] ids) {
+        this.tick = tick;
+        this.timestamp = timestamp;
+        this.structureVersion = structureVersion;
+        this.size = size;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.vx = vx;
+        this.vy = vy;
+        this.vz = vz;
+        this.mass = mass;
+        this.flags = flags;
+        this.ids = ids;
+    }
+
+    /**
+     * Copie l'état courant du stockage. Doit être appelé par le thread qui possède le stockage.
+     * @param tick Numéro du tick qui vient de se terminer
+     * @param timestamp Horodatage en millisecondes epoch
+     */
+    public static WorldSnapshot capture(BodyStore store, long tick, long timestamp) {
+        int n = store.size();
+        return new WorldSnapshot(tick, timestamp, store.getStructureVersion(), n,
+                Arrays.copyOf(store.getX(), n), Arrays.copyOf(store.getY(), n), Arrays.copyOf(store.getZ(), n),
+                Arrays.copyOf(store.getVx(), n), Arrays.copyOf(store.getVy(), n), Arrays.copyOf(store.getVz(), n),
+                Arrays.copyOf(store.getMass(), n), Arrays.copyOf(store.getFlags(), n),
+                Arrays.copyOf(store.getIds(), n));
+    }
+
+    /**
+     * Comme {@link #capture(BodyStore, long, long)} sans copier ids, masses et flags tant que la structure du stockage
+     * n'a pas changé depuis 'previous' : ils sont partagés. Les positions et vitesses sont copiées dans des tableaux
+     * de 'buffers', qui y reviennent quand le snapshot n'est plus lu par personne.
+     */
+    static WorldSnapshot capture(BodyStore store, long tick, long timestamp, WorldSnapshot previous,
+                                 SnapshotBuffers buffers) {
+        int n = store.size();
+        long version = store.getStructureVersion();
+        float[][] motion = buffers.acquire(n);
+        float[][] source = {store.getX(), store.getY(), store.getZ(), store.getVx(), store.getVy(), store.getVz()};
+        for (int i = 0; i < SnapshotBuffers.ARRAYS; i++) {
+            System.arraycopy(source[i], 0, motion[i], 0, n);
+        }
+        boolean sameStructure = previous.size == n && previous.structureVersion == version;
+        WorldSnapshot snapshot = new WorldSnapshot(tick, timestamp, version, n,
+                motion[0], motion[1], motion[2], motion[3], motion[4], motion[5],
+                sameStructure ? previous.mass : Arrays.copyOf(store.getMass(), n),
+                sameStructure ? previous.flags : Arrays.copyOf(store.getFlags(), n),
+                sameStructure ? previous.ids : Arrays.copyOf(store.getIds(), n));
+        buffers.recycleWhenUnreachable(snapshot, motion);
+        return snapshot;
+    }
+
+    /**
+     * Snapshot construit à partir de tableaux déjà copiés, par exemple une vue réduite du monde.
+     * Les tableaux sont conservés tels quels et ne doivent plus être modifiés.
+     * @param structureVersion Doit changer dès que les corps (ou leur ordre) changent, voir {@link #getStructureVersion()}
+     */
+    public static WorldSnapshot of(long tick, long timestamp, long structureVersion,
+                                   float[] x, float[] y, float[] z,
+                                   float[] vx, float[] vy, float[] vz,
+                                   float[] mass, byte[] flags, int[] ids) {
+        return new WorldSnapshot(tick, timestamp, structureVersion, ids.length,
+                x, y, z, vx, vy, vz, mass, flags, ids);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float getX(int i) { return read(x, i); }
+    public float getY(int i) { return read(y, i); }
+    public float getZ(int i) { return read(z, i); }
+
+    public float getVx(int i) { return read(vx, i); }
+    public float getVy(int i) { return read(vy, i); }
+    public float getVz(int i) { return read(vz, i); }
+
+    // Positions and velocities may be recycled once this snapshot is unreachable: the fence keeps it reachable
+    // until the value is read, even when a caller's loop keeps only the hoisted array
+    private float read(float[] array, int i) {
+        float value = array[i];
+        Reference.reachabilityFence(this);
+        return value;
+    }
+
+    public float getMass(int i) { return mass[i]; }
+
+    /** Voir {@link BodyStore#idOf(int)} */
+    public int getId(int i) { return ids[i]; }
+
+    public boolean isBlackHole(int i) {
+        return (flags[i] & BodyStore.FLAG_BLACK_HOLE) != 0;
+    }
+
+    public boolean isImpostor(int i) {
+        return (flags[i] & FLAG_IMPOSTOR) != 0;
+    }
+
+    /**
+     * Écrit les tableaux à la position courante, dans l'ordre lu par {@link BodyStore#load(int, ByteBuffer)} :
+     * ids en int, x, y, z, vx, vy, vz, mass en float puis les flags. Le tampon doit être little-endian.
+     */
+    public void writeArrays(ByteBuffer dst) {
+        dst.asIntBuffer().put(ids, 0, size);
+        dst.position(dst.position() + size * Integer.BYTES);
+        for (float[] array : new float[][]{x, y, z, vx, vy, vz, mass}) {
+            dst.asFloatBuffer().put(array, 0, size);
+            dst.position(dst.position() + size * Float.BYTES);
+        }
+        dst.put(flags, 0, size);
+        Reference.reachabilityFence(this);
+    }
+}
@@ -0,0 +1,132 @@
+package cyrildeschamps.core.service.simulation.cluster;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Regroupe des corps lointains en cellules cubiques dont la taille double à chaque niveau.
+ * Chaque cellule n'est envoyée que par son monopôle (masse totale au centre de masse), comme un noeud de Barnes-Hut.
+ * La table à adressage ouvert est réutilisée d'un pas à l'autre : aucune allocation une fois chauffée.
+ */
+final class CellGrid {
+    static final int MAX_LEVEL = 31;
+    private static final int COORDINATE_BITS = 19;
+    private static final int COORDINATE_OFFSET = 1 << (COORDINATE_BITS - 1);
+    private static final int COORDINATE_MAX = (1 << COORDINATE_BITS) - 1;
+    private static final int EMPTY = -1;
+
+    private long[] keys = new long[1024];
+    private int[] cellOfKey = new int[1024];
+    private double[] mass = new double[512];
+    private double[] mx = new double[512];
+    private double[] my = new double[512];
+    private double[] mz = new double[512];
+    private int count;
+
+    CellGrid() {
+        Arrays.fill(cellOfKey, EMPTY);
+    }
+
+    void clear() {
+        if (count > 0) {
+            Arrays.fill(cellOfKey, EMPTY);
+            count = 0;
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Ajoute un corps à la cellule de côté 'cellSize' * 2^level qui le contient
+     */
+    void add(int level, float cellSize, float x, float y, float z, float m) {
+        float size = Math.scalb(cellSize, level);
+        long key = key(level, (int) Math.floor(x / size), (int) Math.floor(y / size), (int) Math.floor(z / size));
+        int cell = cellOf(key);
+        mass[cell] += m;
+        mx[cell] += (double) m * x;
+        my[cell] += (double) m * y;
+        mz[cell] += (double) m * z;
+    }
+
+    /**
+     * Écrit un fantôme par cellule de masse non nulle
+     * @return Le nombre de fantômes écrits
+     */
+    int write(ByteBuffer out) {
+        int written = 0;
+        for (int c = 0; c < count; c++) {
+            double m = mass[c];
+            if (m > 0) {
+                ClusterProtocol.putGhost(out, (float) (mx[c] / m), (float) (my[c] / m), (float) (mz[c] / m), (float) m, (byte) 0);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private int cellOf(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (cellOfKey[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return cellOfKey[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int cell = count++;
+        if (cell == mass.length) {
+            mass = Arrays.copyOf(mass, cell * 2);
+            mx = Arrays.copyOf(mx, cell * 2);
+            my = Arrays.copyOf(my, cell * 2);
+            mz = Arrays.copyOf(mz, cell * 2);
+        }
+        mass[cell] = 0;
+        mx[cell] = 0;
+        my[cell] = 0;
+        mz[cell] = 0;
+        keys[slot] = key;
+        cellOfKey[slot] = cell;
+        if (count * 2 > keys.length) {
+            rehash();
+        }
+        return cell;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldCells = cellOfKey;
+        keys = new long[oldKeys.length * 2];
+        cellOfKey = new int[oldKeys.length * 2];
+        Arrays.fill(cellOfKey, EMPTY);
+        int mask = keys.length - 1;
+        for (int s = 0; s < oldKeys.length; s++) {
+            if (oldCells[s] != EMPTY) {
+                int slot = hash(oldKeys[s]) & mask;
+                while (cellOfKey[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[s];
+                cellOfKey[slot] = oldCells[s];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    static long key(int level, int ix, int iy, int iz) {
+        return (long) level << (3 * COORDINATE_BITS)
+            | (long) coordinate(ix) << (2 * COORDINATE_BITS)
+            | (long) coordinate(iy) << COORDINATE_BITS
+            | coordinate(iz);
+    }
+
+    // Cells past the range share the border cell: still the right mass and centre of mass, only coarser
+    private static int coordinate(int index) {
+        return Math.max(0, Math.min(COORDINATE_MAX, index + COORDINATE_OFFSET));
+    }
+}
@@ -0,0 +1,106 @@
+package cyrildeschamps.core.service.simulation.cluster;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Messages entre le coordinateur (rang 0) et les domaines (rangs 1 à n), en petit boutiste.
+ * <ul>
+ *     <li>Coordinateur → domaine : SCATTER (solveur, corps du domaine), TICK (tick, pas, découpage), STOP
+ *     ou PING, auquel le domaine répond par {@link #PONG} à la place d'un tick.</li>
+ *     <li>Domaine → domaine, à chaque pas : corps qui changent de domaine puis fantômes (halo et cellules).</li>
+ *     <li>Domaine → coordinateur, à chaque tick : tick, temps de calcul, échantillon des x triés et tous les corps.</li>
+ * </ul>
+ * Un corps complet s'écrit id, x, y, z, vx, vy, vz, masse, drapeaux ; un fantôme, simple source de gravité,
+ * x, y, z, masse, drapeaux.
+ */
+final class ClusterProtocol {
+    static final byte SCATTER = 1;
+    static final byte TICK = 2;
+    static final byte STOP = 3;
+    static final byte PING = 4;
+    // Ticks start at 1, so a reply to PING is never mistaken for a report
+    static final long PONG = -1;
+
+    static final int BODY_BYTES = Integer.BYTES + 7 * Float.BYTES + 1;
+    static final int GHOST_BYTES = 4 * Float.BYTES + 1;
+
+    private ClusterProtocol() { }
+
+    /**
+     * @return Un tampon vidé d'au moins 'bytes' octets, 'buffer' lui-même s'il suffit
+     */
+    static ByteBuffer ensureCapacity(ByteBuffer buffer, int bytes) {
+        if (buffer == null || buffer.capacity() < bytes) {
+            int capacity = buffer == null ? bytes : Math.max(bytes, buffer.capacity() * 2);
+            return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return buffer.clear();
+    }
+
+    /**
+     * @return Le domaine qui possède l'abscisse x : le nombre de coupures inférieures ou égales à x
+     */
+    static int owner(float[] cuts, float x) {
+        int low = 0;
+        int high = cuts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cuts[mid] <= x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static void putBody(ByteBuffer out, BodyStore store, int i) {
+        out.putInt(store.idOf(i))
+            .putFloat(store.getX()[i]).putFloat(store.getY()[i]).putFloat(store.getZ()[i])
+            .putFloat(store.getVx()[i]).putFloat(store.getVy()[i]).putFloat(store.getVz()[i])
+            .putFloat(store.getMass()[i])
+            .put(store.getFlags()[i]);
+    }
+
+    /**
+     * Ajoute au stockage le corps lu à la position courante, avec son id
+     */
+    static void addBody(ByteBuffer in, BodyStore store) {
+        store.addWithId(in.getInt(), in.getFloat(), in.getFloat(), in.getFloat(),
+            in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat(), in.get());
+    }
+
+    /**
+     * Recopie le corps lu à la position courante dans le slot donné
+     */
+    static void readBody(ByteBuffer in, BodyStore store, int slot) {
+        in.getInt();
+        store.getX()[slot] = in.getFloat();
+        store.getY()[slot] = in.getFloat();
+        store.getZ()[slot] = in.getFloat();
+        store.getVx()[slot] = in.getFloat();
+        store.getVy()[slot] = in.getFloat();
+        store.getVz()[slot] = in.getFloat();
+        store.setMass(slot, in.getFloat());
+        store.setFlags(slot, in.get());
+    }
+
+    static void putGhost(ByteBuffer out, float x, float y, float z, float mass, byte flags) {
+        out.putFloat(x).putFloat(y).putFloat(z).putFloat(mass).put(flags);
+    }
+
+    static void putString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length).put(bytes);
+    }
+
+    static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,403 @@
+package cyrildeschamps.core.service.simulation.cluster;
+
+import cyrildeschamps.core.metrics.PrometheusWriter;
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.force.ForceSolvers;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static cyrildeschamps.core.service.simulation.cluster.ClusterProtocol.*;
+
+/**
+ * Coordinateur (rang 0) d'une simulation répartie entre plusieurs {@link DomainWorker} : découpe le monde en tranches
+ * de l'axe x, lance chaque tick sur tous les domaines et rassemble leurs corps dans un seul {@link BodyStore}.
+ * Les corps gardent leur slot tant que l'ensemble ne change pas, le monde rassemblé se diffuse donc comme un monde local.
+ * Toutes les 'rebalanceInterval' ticks, les coupures se déplacent vers les quantiles du temps de calcul de chaque
+ * domaine : un domaine lent rétrécit, un domaine rapide s'élargit.
+ */
+@Slf4j
+public class DomainCoordinator implements AutoCloseable {
+    public static final float DEFAULT_CELL_SIZE = 8;
+    public static final float DEFAULT_THETA = 0.5F;
+    public static final int DEFAULT_REBALANCE_INTERVAL = 10;
+    // Fraction of the way to the balanced cuts covered by one rebalance, the measures are noisy
+    static final float DAMPING = 0.5F;
+    private static final long REPORT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int INITIAL_SAMPLES = 4096;
+
+    private final Transport transport;
+    private final int domains;
+    private final String solver;
+    /** Côté des plus petites cellules envoyées aux autres domaines */
+    @Getter
+    @Setter
+    private float cellSize = DEFAULT_CELL_SIZE;
+    /** Angle d'ouverture : taille de cellule sur distance, le halo fait cellSize / theta */
+    @Getter
+    @Setter
+    private float theta = DEFAULT_THETA;
+    /** Ticks entre deux rééquilibrages, 0 pour garder les coupures de la répartition */
+    @Getter
+    @Setter
+    private int rebalanceInterval = DEFAULT_REBALANCE_INTERVAL;
+
+    private float[] cuts;
+    private final long[] computeNanos;
+    private final int[] bodies;
+    private final float[][] samples;
+    private final int[] sampleCounts;
+    private final ByteBuffer[] reports;
+    private final int[] bodiesAt;
+
+    // World last scattered, the domains hold exactly its bodies while its structure version does not change
+    private BodyStore scattered;
+    private long scatteredVersion = -1;
+    private boolean cutsInitialized;
+    @Getter
+    private long tick;
+    @Getter
+    private long rebalanceCount;
+    private ByteBuffer out;
+    private int[] owners = new int[0];
+    private int[] slots = new int[0];
+
+    /**
+     * @param transport Transport de rang 0, un domaine par autre rang
+     * @param solver Solveur de forces des domaines, voir {@link ForceSolvers#byName}
+     */
+    public DomainCoordinator(Transport transport, String solver) {
+        if (transport.rank() != 0) {
+            throw new IllegalArgumentException("The coordinator is rank 0");
+        }
+        ForceSolvers.byName(solver);
+        this.transport = transport;
+        this.solver = solver;
+        this.domains = transport.size() - 1;
+        this.cuts = new float[domains - 1];
+        this.computeNanos = new long[domains];
+        this.bodies = new int[domains];
+        this.samples = new float[domains][0];
+        this.sampleCounts = new int[domains];
+        this.reports = new ByteBuffer[domains];
+        this.bodiesAt = new int[domains];
+    }
+
+    public int getDomainCount() {
+        return domains;
+    }
+
+    /**
+     * @return Copie des coupures : le domaine d possède les x de cuts[d - 1] inclus à cuts[d] exclu
+     */
+    public float[] getCuts() {
+        return cuts.clone();
+    }
+
+    /**
+     * @return Temps de calcul du dernier tick de chaque domaine, attente des autres domaines exclue
+     */
+    public long[] getComputeNanos() {
+        return computeNanos.clone();
+    }
+
+    public int[] getDomainBodies() {
+        return bodies.clone();
+    }
+
+    /**
+     * @return Temps de calcul du domaine le plus lent sur la moyenne, 1 pour un équilibre parfait
+     */
+    public double getImbalance() {
+        long max = 0;
+        long total = 0;
+        for (long nanos : computeNanos) {
+            max = Math.max(max, nanos);
+            total += nanos;
+        }
+        return total == 0 ? 1 : max * (double) domains / total;
+    }
+
+    /**
+     * Avance le monde de dt, en 'substeps' pas, sur les domaines puis y recopie leurs corps.
+     * Le monde est d'abord réparti à nouveau si des corps y ont été ajoutés ou supprimés depuis la dernière fois.
+     * @throws IOException si un domaine ne répond pas : le monde reste dans son état précédent et sera réparti à nouveau
+     */
+    public void step(BodyStore world, float dt, int substeps) throws IOException {
+        try {
+            if (world != scattered || world.getStructureVersion() != scatteredVersion) {
+                scatter(world);
+            }
+            tick++;
+            out = ensureCapacity(out, 1 + Long.BYTES + 4 * Float.BYTES + 2 * Integer.BYTES + cuts.length * Float.BYTES);
+            out.put(TICK).putLong(tick).putFloat(dt).putInt(substeps).putFloat(cellSize).putFloat(theta).putInt(cuts.length);
+            for (float cut : cuts) {
+                out.putFloat(cut);
+            }
+            out.flip();
+            for (int d = 0; d < domains; d++) {
+                transport.send(d + 1, out.duplicate());
+            }
+            for (int d = 0; d < domains; d++) {
+                reports[d] = awaitReport(d);
+            }
+            gather(world);
+        } catch (IOException e) {
+            scattered = null;
+            throw e;
+        }
+        if (rebalanceInterval > 0 && tick % rebalanceInterval == 0) {
+            rebalance();
+        }
+    }
+
+    /**
+     * Envoie à chaque domaine les corps de sa tranche. La première fois, les coupures équilibrent le nombre de corps ;
+     * ensuite elles restent celles du rééquilibrage.
+     */
+    private void scatter(BodyStore world) throws IOException {
+        int n = world.size();
+        float[] x = world.getX();
+        if (!cutsInitialized && n > 0) {
+            int k = Math.min(INITIAL_SAMPLES, n);
+            float[] sample = new float[k];
+            float[] weights = new float[k];
+            for (int s = 0; s < k; s++) {
+                sample[s] = x[(int) ((long) s * n / k)];
+                weights[s] = 1;
+            }
+            cuts = balancedCuts(sample, weights, k, domains);
+            cutsInitialized = true;
+        }
+
+        if (owners.length < n) {
+            owners = new int[Math.max(n, owners.length * 2)];
+        }
+        for (int i = 0; i < n; i++) {
+            owners[i] = owner(cuts, x[i]);
+        }
+        for (int d = 0; d < domains; d++) {
+            out = ensureCapacity(out, 1 + 2 * Integer.BYTES + solver.length() * 4 + n * BODY_BYTES);
+            out.put(SCATTER);
+            putString(out, solver);
+            int countAt = out.position();
+            int count = 0;
+            out.putInt(0);
+            for (int i = 0; i < n; i++) {
+                if (owners[i] == d) {
+                    putBody(out, world, i);
+                    count++;
+                }
+            }
+            out.putInt(countAt, count);
+            transport.send(d + 1, out.flip());
+        }
+        scattered = world;
+        scatteredVersion = world.getStructureVersion();
+        log.info("Monde de {} corps réparti sur {} domaines, coupures {}", n, domains, Arrays.toString(cuts));
+    }
+
+    private ByteBuffer awaitReport(int d) throws IOException {
+        while (true) {
+            ByteBuffer report = transport.receive(d + 1, REPORT_TIMEOUT_NANOS);
+            // A report older than this tick belongs to a tick that timed out earlier
+            if (report.getLong() != tick) {
+                continue;
+            }
+            computeNanos[d] = report.getLong();
+            bodies[d] = report.getInt();
+            int k = report.getInt();
+            if (samples[d].length < k) {
+                samples[d] = new float[k];
+            }
+            report.asFloatBuffer().get(samples[d], 0, k);
+            report.position(report.position() + k * Float.BYTES);
+            sampleCounts[d] = k;
+            bodiesAt[d] = report.position();
+            return report;
+        }
+    }
+
+    /**
+     * Recopie les corps des domaines dans leurs slots du monde, ou reconstruit le monde si l'ensemble a changé
+     */
+    private void gather(BodyStore world) {
+        int total = 0;
+        for (int count : bodies) {
+            total += count;
+        }
+        boolean inPlace = total == world.size();
+        if (inPlace) {
+            if (slots.length < total) {
+                slots = new int[Math.max(total, slots.length * 2)];
+            }
+            int next = 0;
+            for (int d = 0; d < domains && inPlace; d++) {
+                ByteBuffer report = reports[d];
+                for (int b = 0; b < bodies[d]; b++) {
+                    int slot = world.slotOf(report.getInt(bodiesAt[d] + b * BODY_BYTES));
+                    if (slot < 0) {
+                        inPlace = false;
+                        break;
+                    }
+                    slots[next++] = slot;
+                }
+            }
+        }
+
+        if (inPlace) {
+            int next = 0;
+            for (int d = 0; d < domains; d++) {
+                ByteBuffer report = reports[d].position(bodiesAt[d]);
+                for (int b = 0; b < bodies[d]; b++) {
+                    readBody(report, world, slots[next++]);
+                }
+            }
+        } else {
+            // Only when the domains disagree with the world, e.g. a body lost with a domain
+            log.warn("Monde reconstruit : {} corps dans les domaines, {} attendus", total, world.size());
+            world.clear();
+            for (int d = 0; d < domains; d++) {
+                ByteBuffer report = reports[d].position(bodiesAt[d]);
+                for (int b = 0; b < bodies[d]; b++) {
+                    addBody(report, world);
+                }
+            }
+            scatteredVersion = world.getStructureVersion();
+        }
+    }
+
+    private void rebalance() {
+        int count = 0;
+        for (int d = 0; d < domains; d++) {
+            count += sampleCounts[d];
+        }
+        if (count == 0) {
+            return;
+        }
+        float[] x = new float[count];
+        float[] weights = new float[count];
+        int next = 0;
+        for (int d = 0; d < domains; d++) {
+            // Each sample stands for the same share of its domain's compute time
+            float weight = Math.max(1, computeNanos[d]) / (float) Math.max(1, sampleCounts[d]);
+            for (int s = 0; s < sampleCounts[d]; s++) {
+                x[next] = samples[d][s];
+                weights[next++] = weight;
+            }
+        }
+        float[] balanced = balancedCuts(x, weights, count, domains);
+        for (int c = 0; c < cuts.length; c++) {
+            cuts[c] += DAMPING * (balanced[c] - cuts[c]);
+            if (c > 0) {
+                cuts[c] = Math.max(cuts[c], cuts[c - 1]);
+            }
+        }
+        rebalanceCount++;
+        log.debug("Rééquilibrage au tick {} : déséquilibre {}, coupures {}", tick, getImbalance(), Arrays.toString(cuts));
+    }
+
+    /**
+     * Coupures qui partagent le poids total en 'domains' parts égales
+     * @param x Abscisses des échantillons, dans n'importe quel ordre
+     * @param weights Poids de chaque échantillon
+     */
+    static float[] balancedCuts(float[] x, float[] weights, int count, int domains) {
+        long[] order = new long[count];
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            int bits = Float.floatToIntBits(x[i]);
+            // Orders floats as signed ints, negative values included
+            int sortable = bits ^ ((bits >> 31) & 0x7FFFFFFF);
+            order[i] = (long) sortable << 32 | i;
+            total += weights[i];
+        }
+        Arrays.sort(order);
+
+        float[] cuts = new float[domains - 1];
+        int c = 0;
+        double cumulative = 0;
+        for (int k = 0; k < count && c < cuts.length; k++) {
+            int i = (int) order[k];
+            cumulative += weights[i];
+            while (c < cuts.length && cumulative >= total * (c + 1) / domains) {
+                cuts[c++] = x[i];
+            }
+        }
+        while (c < cuts.length) {
+            cuts[c++] = x[(int) order[count - 1]];
+        }
+        return cuts;
+    }
+
+    /**
+     * Corps et temps de calcul de chaque domaine, déséquilibre et nombre de rééquilibrages, avec les labels donnés
+     */
+    public void writeMetrics(PrometheusWriter out, String... labels) {
+        for (int d = 0; d < domains; d++) {
+            String[] domain = Arrays.copyOf(labels, labels.length + 2);
+            domain[labels.length] = "domain";
+            domain[labels.length + 1] = String.valueOf(d);
+            out.gauge("nbody_domain_bodies", "Bodies owned by a domain", bodies[d], domain)
+                .gauge("nbody_domain_compute_seconds", "Compute time of a domain in the last tick, waits excluded",
+                    computeNanos[d] / 1e9, domain);
+        }
+        out.gauge("nbody_domain_imbalance", "Slowest domain compute time over the mean", getImbalance(), labels)
+            .counter("nbody_domain_rebalances_total", "Cut updates from the domain compute times", rebalanceCount, labels);
+    }
+
+    /**
+     * Vérifie que chaque domaine répond, avant de lui confier le monde
+     * @return false si un domaine n'a pas répondu dans le délai
+     */
+    public boolean awaitDomains(long timeoutNanos) throws IOException {
+        ByteBuffer ping = ByteBuffer.allocate(1).put(PING).flip();
+        for (int d = 0; d < domains; d++) {
+            transport.send(d + 1, ping.duplicate());
+        }
+        long deadline = QueuedTransport.deadline(timeoutNanos);
+        try {
+            for (int d = 0; d < domains; d++) {
+                // A domain answers PING with PONG, anything else is not the answer
+                while (transport.receive(d + 1, Math.max(1, QueuedTransport.remaining(deadline))).getLong() != PONG) {
+                    if (QueuedTransport.expired(deadline)) {
+                        return false;
+                    }
+                }
+            }
+        } catch (InterruptedIOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ferme le transport sans arrêter les domaines : ils attendent un nouveau coordinateur
+     */
+    public void abandon() throws IOException {
+        scattered = null;
+        transport.close();
+    }
+
+    /**
+     * Arrête les domaines puis ferme le transport
+     */
+    @Override
+    public void close() throws IOException {
+        ByteBuffer stop = ByteBuffer.allocate(1).put(STOP).flip();
+        for (int d = 0; d < domains; d++) {
+            try {
+                transport.send(d + 1, stop.duplicate());
+            } catch (IOException e) {
+                log.warn("Domaine {} injoignable à l'arrêt : {}", d, e.getMessage());
+            }
+        }
+        transport.close();
+    }
+}
@@ -0,0 +1,378 @@
+package cyrildeschamps.core.service.simulation.cluster;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+import cyrildeschamps.core.service.simulation.physics.force.ForceSolvers;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static cyrildeschamps.core.service.simulation.cluster.ClusterProtocol.*;
+
+/**
+ * Un domaine d'une simulation répartie : la tranche de l'axe x entre deux coupures fixées par le coordinateur.
+ * Chaque pas suit le schéma kick-drift-kick, avec entre la dérive et le calcul des forces un échange avec chaque
+ * autre domaine : les corps sortis de la tranche partent chez leur nouveau propriétaire, les corps proches de la
+ * tranche du voisin lui sont envoyés tels quels (halo) et les plus lointains regroupés en cellules d'autant plus
+ * grandes qu'elles sont loin (voir {@link CellGrid}). Les forces des corps du domaine sont calculées sur ses corps
+ * plus ces fantômes. Les trous noirs sont toujours envoyés individuellement.
+ * <pre>
+ * ./gradlew :core:worker -Pargs="--rank=1 --domains=4 --transport=mmap --dir=/tmp/nbody-cluster"
+ * </pre>
+ */
+@Slf4j
+public class DomainWorker implements Runnable {
+    private static final long EXCHANGE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final int SAMPLES = 256;
+    private static final long RECONNECT_MS = 1000;
+
+    private final Transport transport;
+    private final int domain;
+    private final int domains;
+    @Getter
+    private final PhysicsEngine physicsEngine = new PhysicsEngine();
+    /** true si la boucle s'est terminée sur un STOP du coordinateur, false sur une erreur */
+    @Getter
+    private volatile boolean stopped;
+    @Getter
+    private final BodyStore store = new BodyStore();
+    // Bodies of the domain followed by the ghosts, rebuilt for each force evaluation
+    private final BodyStore field = new BodyStore();
+    private final CellGrid cells = new CellGrid();
+
+    private float[] cuts = new float[0];
+    private float cellSize;
+    private float theta;
+    private boolean forcesCurrent;
+    // Time spent waiting for the other domains during the current tick
+    private long waitNanos;
+
+    // Scratch buffers reused between steps, they only grow
+    private int[] owners = new int[0];
+    private boolean[] leaving = new boolean[0];
+    private int[] targets = new int[0];
+    private float[] ghostX = new float[0], ghostY = new float[0], ghostZ = new float[0], ghostMass = new float[0];
+    private byte[] ghostFlags = new byte[0];
+    private int ghostCount;
+    private final float[] samples = new float[SAMPLES];
+    private ByteBuffer out;
+
+    /**
+     * @param transport Transport de rang 1 à size() - 1, le domaine est rank() - 1
+     */
+    public DomainWorker(Transport transport) {
+        if (transport.rank() < 1) {
+            throw new IllegalArgumentException("Rank 0 is the coordinator");
+        }
+        this.transport = transport;
+        this.domain = transport.rank() - 1;
+        this.domains = transport.size() - 1;
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            values.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        int rank = Integer.parseInt(values.getOrDefault("rank", "1"));
+        int domains = Integer.parseInt(values.getOrDefault("domains", "1"));
+        String transportName = values.getOrDefault("transport", Transports.MAPPED_FILE);
+        int parallelism = Integer.parseInt(values.getOrDefault("parallelism", "1"));
+        Path dir = Path.of(values.getOrDefault("dir", "cluster"));
+        String addresses = values.getOrDefault("addresses", "");
+        values.keySet().removeAll(List.of("rank", "domains", "transport", "parallelism", "dir", "addresses"));
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + values.keySet());
+        }
+
+        serve(transportName, rank, domains, addresses, dir, parallelism);
+    }
+
+    /**
+     * Sert le domaine du rang donné jusqu'à un STOP du coordinateur. Après une panne (coordinateur perdu ou
+     * remplacé, autre domaine muet), le transport est rouvert pour attendre le prochain coordinateur.
+     */
+    public static void serve(String transportName, int rank, int domains, String addresses, Path dir, int parallelism) {
+        while (true) {
+            try (Transport transport = Transports.open(transportName, rank, domains + 1, addresses, dir)) {
+                DomainWorker worker = new DomainWorker(transport);
+                worker.getPhysicsEngine().setParallelism(parallelism);
+                log.info("Domaine {} sur {} en attente du coordinateur, transport {}, {} threads",
+                    rank - 1, domains, transportName, parallelism);
+                worker.run();
+                if (worker.isStopped()) {
+                    return;
+                }
+            } catch (IOException e) {
+                log.warn("Transport du domaine {} indisponible : {}", rank - 1, e.getMessage());
+            }
+            // The coordinator falls back to a local simulation and gathers the domains again once they all answer
+            try {
+                Thread.sleep(RECONNECT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Traite les messages du coordinateur jusqu'à STOP ou une erreur de transport (voir {@link #isStopped()}).
+     * Le transport reste ouvert, il appartient à l'appelant.
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                ByteBuffer message = transport.receive(0, QueuedTransport.NO_DEADLINE);
+                byte type = message.get();
+                switch (type) {
+                    case SCATTER -> scatter(message);
+                    case TICK -> tick(message);
+                    case PING -> transport.send(0, ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                        .putLong(PONG).flip());
+                    case STOP -> {
+                        log.info("Domaine {} arrêté par le coordinateur avec {} corps", domain, store.size());
+                        stopped = true;
+                        return;
+                    }
+                    default -> throw new IOException("Unknown message type " + type);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Domaine {} interrompu : {}", domain, e.getMessage());
+        } finally {
+            physicsEngine.shutdown();
+        }
+    }
+
+    private void scatter(ByteBuffer message) {
+        physicsEngine.setForceSolver(ForceSolvers.byName(getString(message)));
+        store.clear();
+        int n = message.getInt();
+        for (int i = 0; i < n; i++) {
+            addBody(message, store);
+        }
+        forcesCurrent = false;
+    }
+
+    private void tick(ByteBuffer message) throws IOException {
+        long tick = message.getLong();
+        float dt = message.getFloat();
+        int substeps = message.getInt();
+        cellSize = message.getFloat();
+        theta = message.getFloat();
+        int cutCount = message.getInt();
+        if (cutCount != domains - 1) {
+            throw new IOException("Expected " + (domains - 1) + " cuts, got " + cutCount);
+        }
+        if (cuts.length != cutCount) {
+            cuts = new float[cutCount];
+        }
+        message.asFloatBuffer().get(cuts);
+
+        long start = System.nanoTime();
+        waitNanos = 0;
+        for (int s = 0; s < substeps; s++) {
+            step(dt / substeps);
+        }
+        report(tick, System.nanoTime() - start - waitNanos);
+    }
+
+    /**
+     * Un pas kick-drift-kick. Les forces d'un pas servent au premier demi-kick du suivant.
+     * Après une répartition il faut d'abord les calculer : tous les domaines font alors le même échange en plus.
+     */
+    private void step(float dt) throws IOException {
+        if (!forcesCurrent) {
+            exchange();
+            computeForces();
+            forcesCurrent = true;
+        }
+        physicsEngine.kick(store, dt / 2);
+        physicsEngine.drift(store, dt);
+        exchange();
+        computeForces();
+        physicsEngine.kick(store, dt / 2);
+    }
+
+    private void exchange() throws IOException {
+        int n = store.size();
+        if (owners.length < n) {
+            owners = new int[Math.max(n, owners.length * 2)];
+            leaving = new boolean[owners.length];
+        }
+        float[] x = store.getX(), y = store.getY(), z = store.getZ();
+        float[] mass = store.getMass();
+        int migrating = 0;
+        for (int i = 0; i < n; i++) {
+            owners[i] = owner(cuts, x[i]);
+            leaving[i] = owners[i] != domain;
+            migrating += leaving[i] ? 1 : 0;
+        }
+
+        float halo = cellSize / theta;
+        for (int d = 0; d < domains; d++) {
+            if (d == domain) {
+                continue;
+            }
+            float low = d == 0 ? Float.NEGATIVE_INFINITY : cuts[d - 1];
+            float high = d == domains - 1 ? Float.POSITIVE_INFINITY : cuts[d];
+            out = ensureCapacity(out, 2 * Integer.BYTES + n * BODY_BYTES);
+
+            int migrantsAt = out.position();
+            int migrants = 0;
+            out.putInt(0);
+            for (int i = 0; i < n; i++) {
+                if (owners[i] == d) {
+                    putBody(out, store, i);
+                    migrants++;
+                }
+            }
+            out.putInt(migrantsAt, migrants);
+
+            int ghostsAt = out.position();
+            int ghosts = 0;
+            out.putInt(0);
+            cells.clear();
+            for (int i = 0; i < n; i++) {
+                if (owners[i] == d) {
+                    continue;
+                }
+                // Distance along x to the slab of d, a lower bound of the distance to any of its bodies
+                float distance = x[i] < low ? low - x[i] : x[i] - high;
+                if (distance < halo || store.isBlackHole(i)) {
+                    putGhost(out, x[i], y[i], z[i], mass[i], store.getFlags()[i]);
+                    ghosts++;
+                } else {
+                    // Largest cell that stays below the opening angle theta from the slab
+                    int level = Math.min(CellGrid.MAX_LEVEL, Math.max(0, Math.getExponent(theta * distance / cellSize)));
+                    cells.add(level, cellSize, x[i], y[i], z[i], mass[i]);
+                }
+            }
+            ghosts += cells.write(out);
+            out.putInt(ghostsAt, ghosts);
+            transport.send(d + 1, out.flip());
+        }
+
+        // Bodies leaving still pull on this domain during this step: the new owner has not sent them back yet
+        ghostCount = 0;
+        if (migrating > 0) {
+            ensureGhostCapacity(migrating);
+            for (int i = 0; i < n; i++) {
+                if (leaving[i]) {
+                    ghostX[ghostCount] = x[i];
+                    ghostY[ghostCount] = y[i];
+                    ghostZ[ghostCount] = z[i];
+                    ghostMass[ghostCount] = mass[i];
+                    ghostFlags[ghostCount] = store.getFlags()[i];
+                    ghostCount++;
+                }
+            }
+            store.removeMarked(leaving);
+        }
+
+        for (int d = 0; d < domains; d++) {
+            if (d == domain) {
+                continue;
+            }
+            long waitStart = System.nanoTime();
+            ByteBuffer in = transport.receive(d + 1, EXCHANGE_TIMEOUT_NANOS);
+            waitNanos += System.nanoTime() - waitStart;
+            int migrants = in.getInt();
+            for (int m = 0; m < migrants; m++) {
+                addBody(in, store);
+            }
+            int ghosts = in.getInt();
+            ensureGhostCapacity(ghostCount + ghosts);
+            for (int g = 0; g < ghosts; g++) {
+                ghostX[ghostCount] = in.getFloat();
+                ghostY[ghostCount] = in.getFloat();
+                ghostZ[ghostCount] = in.getFloat();
+                ghostMass[ghostCount] = in.getFloat();
+                ghostFlags[ghostCount] = in.get();
+                ghostCount++;
+            }
+        }
+    }
+
+    /**
+     * Forces des corps du domaine, sources : corps du domaine et fantômes reçus
+     */
+    private void computeForces() {
+        int n = store.size();
+        int total = n + ghostCount;
+        field.resetUnlabelled(total);
+        System.arraycopy(store.getX(), 0, field.getX(), 0, n);
+        System.arraycopy(store.getY(), 0, field.getY(), 0, n);
+        System.arraycopy(store.getZ(), 0, field.getZ(), 0, n);
+        System.arraycopy(store.getMass(), 0, field.getMass(), 0, n);
+        System.arraycopy(store.getFlags(), 0, field.getFlags(), 0, n);
+        System.arraycopy(ghostX, 0, field.getX(), n, ghostCount);
+        System.arraycopy(ghostY, 0, field.getY(), n, ghostCount);
+        System.arraycopy(ghostZ, 0, field.getZ(), n, ghostCount);
+        System.arraycopy(ghostMass, 0, field.getMass(), n, ghostCount);
+        System.arraycopy(ghostFlags, 0, field.getFlags(), n, ghostCount);
+
+        if (targets.length < n) {
+            int previous = targets.length;
+            targets = Arrays.copyOf(targets, Math.max(n, previous * 2));
+            for (int i = previous; i < targets.length; i++) {
+                targets[i] = i;
+            }
+        }
+        physicsEngine.calculateGravitationalForces(field, targets, n);
+        System.arraycopy(field.getFx(), 0, store.getFx(), 0, n);
+        System.arraycopy(field.getFy(), 0, store.getFy(), 0, n);
+        System.arraycopy(field.getFz(), 0, store.getFz(), 0, n);
+    }
+
+    /**
+     * Compte rendu du tick : temps de calcul hors attente des autres domaines, échantillon trié des x pour
+     * le rééquilibrage et état complet des corps pour le snapshot
+     */
+    private void report(long tick, long computeNanos) throws IOException {
+        int n = store.size();
+        int k = Math.min(SAMPLES, n);
+        float[] x = store.getX();
+        for (int s = 0; s < k; s++) {
+            samples[s] = x[(int) ((long) s * n / k)];
+        }
+        Arrays.sort(samples, 0, k);
+
+        out = ensureCapacity(out, 2 * Long.BYTES + 2 * Integer.BYTES + k * Float.BYTES + n * BODY_BYTES);
+        out.putLong(tick).putLong(computeNanos).putInt(n).putInt(k);
+        for (int s = 0; s < k; s++) {
+            out.putFloat(samples[s]);
+        }
+        for (int i = 0; i < n; i++) {
+            putBody(out, store, i);
+        }
+        transport.send(0, out.flip());
+    }
+
+    private void ensureGhostCapacity(int required) {
+        if (ghostX.length >= required) {
+            return;
+        }
+        int capacity = Math.max(required, ghostX.length * 2);
+        ghostX = Arrays.copyOf(ghostX, capacity);
+        ghostY = Arrays.copyOf(ghostY, capacity);
+        ghostZ = Arrays.copyOf(ghostZ, capacity);
+        ghostMass = Arrays.copyOf(ghostMass, capacity);
+        ghostFlags = Arrays.copyOf(ghostFlags, capacity);
+    }
+}
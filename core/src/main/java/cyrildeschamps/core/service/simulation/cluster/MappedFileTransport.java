@@ -0,0 +1,221 @@
+package cyrildeschamps.core.service.simulation.cluster;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transport par fichiers projetés en mémoire, pour des processus d'une même machine : aucune copie par le noyau
+ * ni pile réseau. Chaque paire orientée de rangs a son anneau "from-to.ring" dans un répertoire commun,
+ * avec une seule position d'écriture et une seule position de lecture (un producteur, un consommateur).
+ * Les messages plus grands que l'anneau passent par morceaux, le lecteur consommant pendant que l'écrivain produit.
+ * Le rang 0 supprime les anneaux à l'ouverture et en crée de nouveaux : un rang qui attend sur un anneau supprimé
+ * ou remplacé échoue au lieu d'attendre indéfiniment, et peut rouvrir le transport pour rejoindre le nouveau rang 0.
+ */
+public class MappedFileTransport extends QueuedTransport {
+    public static final int DEFAULT_RING_CAPACITY = 1 << 24;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    // Each position has its own cache line so the two sides do not invalidate each other
+    private static final int WRITE_POSITION = 0;
+    private static final int READ_POSITION = 64;
+    private static final int DATA = 128;
+    private static final String SUFFIX = ".ring";
+    private static final int SPINS = 200;
+    private static final long PARK_NANOS = 20_000;
+    // Parks between two checks that the ring file is still the one mapped, a few hundred milliseconds
+    private static final int PARKS_PER_CHECK = 5000;
+
+    private final Ring[] outgoing;
+    private final Ring[] incoming;
+    private final ByteBuffer[] lengthOut;
+    private final ByteBuffer[] lengthIn;
+    private final ByteBuffer[] received;
+
+    public MappedFileTransport(int rank, int size, Path directory) throws IOException {
+        this(rank, size, directory, DEFAULT_RING_CAPACITY);
+    }
+
+    /**
+     * @param ringCapacity Octets de chaque anneau, une puissance de deux
+     */
+    public MappedFileTransport(int rank, int size, Path directory, int ringCapacity) throws IOException {
+        super(rank, size);
+        if (Integer.bitCount(ringCapacity) != 1) {
+            throw new IllegalArgumentException("ringCapacity must be a power of two");
+        }
+        Files.createDirectories(directory);
+        if (rank == 0) {
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : stale) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        outgoing = new Ring[size];
+        incoming = new Ring[size];
+        lengthOut = new ByteBuffer[size];
+        lengthIn = new ByteBuffer[size];
+        received = new ByteBuffer[size];
+        for (int peer = 0; peer < size; peer++) {
+            if (peer != rank) {
+                outgoing[peer] = new Ring(directory.resolve(rank + "-" + peer + SUFFIX), ringCapacity);
+                incoming[peer] = new Ring(directory.resolve(peer + "-" + rank + SUFFIX), ringCapacity);
+                lengthOut[peer] = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                lengthIn[peer] = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                received[peer] = ByteBuffer.allocate(0);
+            }
+        }
+        startWriters();
+    }
+
+    @Override
+    protected void write(int to, ByteBuffer message) throws IOException {
+        // Only the writer thread of 'to' writes to this ring
+        Ring ring = outgoing[to];
+        ring.write(lengthOut[to].clear().putInt(0, message.remaining()));
+        ring.write(message);
+    }
+
+    @Override
+    public ByteBuffer receive(int from, long timeoutNanos) throws IOException {
+        checkPeer(from);
+        Ring ring = incoming[from];
+        ByteBuffer length = lengthIn[from].clear();
+        if (!ring.read(length, deadline(timeoutNanos))) {
+            throw new InterruptedIOException("No message from rank " + from + " within " + timeoutNanos / 1_000_000 + " ms");
+        }
+        int n = length.getInt(0);
+        if (received[from].capacity() < n) {
+            received[from] = ByteBuffer.allocate(Math.max(n, received[from].capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        ByteBuffer message = received[from].clear().limit(n);
+        // The length is published with the first chunk, the rest follows without a deadline
+        ring.read(message, NO_DEADLINE);
+        return message.flip();
+    }
+
+    @Override
+    protected void closeResources() {
+        // The mappings are released with the buffers, the files stay for post-mortem inspection until the next run
+    }
+
+    private final class Ring {
+        private final Path file;
+        private final Object fileKey;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final int mask;
+
+        Ring(Path file, int capacity) throws IOException {
+            this.file = file;
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+                // Mapping past the end grows the file with zeros, both positions start at 0
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, DATA + (long) capacity);
+            }
+            fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        }
+
+        private void idle(int spins) throws IOException {
+            if (closed) {
+                throw new IOException("Transport closed");
+            }
+            // parkNanos returns at once on an interrupted thread, waiting on would spin
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while waiting on ring " + file.getFileName());
+            }
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+                return;
+            }
+            LockSupport.parkNanos(PARK_NANOS);
+            if ((spins - SPINS) % PARKS_PER_CHECK == PARKS_PER_CHECK - 1) {
+                checkFile();
+            }
+        }
+
+        /**
+         * Échoue si le fichier de l'anneau a été supprimé ou remplacé depuis sa projection, par un nouveau rang 0
+         */
+        private void checkFile() throws IOException {
+            Object current;
+            try {
+                current = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+            } catch (NoSuchFileException e) {
+                throw new IOException("Ring " + file.getFileName() + " was removed by a new rank 0");
+            }
+            // Without file keys on this file system, only a removal can be detected
+            if (fileKey != null && !fileKey.equals(current)) {
+                throw new IOException("Ring " + file.getFileName() + " was replaced by a new rank 0");
+            }
+        }
+
+        /**
+         * Copie tous les octets restants de 'src' dans l'anneau, en attendant la place nécessaire
+         */
+        void write(ByteBuffer src) throws IOException {
+            long write = (long) LONGS.getOpaque(buffer, WRITE_POSITION);
+            int spins = 0;
+            while (src.hasRemaining()) {
+                long read = (long) LONGS.getAcquire(buffer, READ_POSITION);
+                int free = (int) (capacity - (write - read));
+                if (free == 0) {
+                    idle(spins++);
+                    continue;
+                }
+                spins = 0;
+                int offset = (int) (write & mask);
+                int chunk = Math.min(Math.min(free, src.remaining()), capacity - offset);
+                buffer.put(DATA + offset, src, src.position(), chunk);
+                src.position(src.position() + chunk);
+                write += chunk;
+                LONGS.setRelease(buffer, WRITE_POSITION, write);
+            }
+        }
+
+        /**
+         * Remplit 'dst' jusqu'à sa limite
+         * @return false si rien n'est arrivé avant la date limite (aucun octet n'a alors été lu)
+         */
+        boolean read(ByteBuffer dst, long deadline) throws IOException {
+            long read = (long) LONGS.getOpaque(buffer, READ_POSITION);
+            int spins = 0;
+            boolean started = false;
+            while (dst.hasRemaining()) {
+                long write = (long) LONGS.getAcquire(buffer, WRITE_POSITION);
+                int available = (int) (write - read);
+                if (available == 0) {
+                    if (!started && expired(deadline)) {
+                        return false;
+                    }
+                    idle(spins++);
+                    continue;
+                }
+                spins = 0;
+                started = true;
+                int offset = (int) (read & mask);
+                int chunk = Math.min(Math.min(available, dst.remaining()), capacity - offset);
+                dst.put(dst.position(), buffer, DATA + offset, chunk);
+                dst.position(dst.position() + chunk);
+                read += chunk;
+                LONGS.setRelease(buffer, READ_POSITION, read);
+            }
+            return true;
+        }
+    }
+}
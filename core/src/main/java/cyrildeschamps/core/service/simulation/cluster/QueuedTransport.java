@@ -0,0 +1,151 @@
+package cyrildeschamps.core.service.simulation.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base des transports : un thread d'écriture par rang destinataire vide une file de messages copiés,
+ * les sous-classes n'ont qu'à écrire un message de façon bloquante et à en lire un.
+ */
+@Slf4j
+abstract class QueuedTransport implements Transport {
+    /** Délai d'attente infini pour {@link #receive(int, long)} */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+
+    private final int rank;
+    private final int size;
+    private final BlockingQueue<ByteBuffer>[] outboxes;
+    private final Thread[] writers;
+    private volatile IOException failure;
+    protected volatile boolean closed;
+
+    @SuppressWarnings("unchecked")
+    QueuedTransport(int rank, int size) {
+        if (size < 2 || rank < 0 || rank >= size) {
+            throw new IllegalArgumentException("rank " + rank + " out of bounds for size " + size);
+        }
+        this.rank = rank;
+        this.size = size;
+        this.outboxes = new BlockingQueue[size];
+        this.writers = new Thread[size];
+    }
+
+    /**
+     * Démarre les threads d'écriture, une fois la sous-classe prête à écrire
+     */
+    protected void startWriters() {
+        for (int peer = 0; peer < size; peer++) {
+            if (peer == rank) {
+                continue;
+            }
+            int to = peer;
+            outboxes[to] = new LinkedBlockingQueue<>();
+            writers[to] = new Thread(() -> writeLoop(to), "NBodyTransport-" + rank + "-" + to);
+            writers[to].setDaemon(true);
+            writers[to].start();
+        }
+    }
+
+    @Override
+    public int rank() {
+        return rank;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void send(int to, ByteBuffer message) throws IOException {
+        checkPeer(to);
+        if (failure != null) {
+            throw new IOException("Transport to rank " + to + " failed", failure);
+        }
+        if (closed) {
+            throw new IOException("Transport closed");
+        }
+        ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+        copy.put(message.duplicate()).flip();
+        outboxes[to].add(copy);
+    }
+
+    /**
+     * Écrit un message entier, de façon bloquante
+     */
+    protected abstract void write(int to, ByteBuffer message) throws IOException;
+
+    /**
+     * Libère les ressources de la sous-classe, une fois les messages en file écrits
+     */
+    protected abstract void closeResources() throws IOException;
+
+    protected void checkPeer(int peer) {
+        if (peer < 0 || peer >= size || peer == rank) {
+            throw new IllegalArgumentException("Invalid peer " + peer + " for rank " + rank + " of " + size);
+        }
+    }
+
+    static long deadline(long timeoutNanos) {
+        return timeoutNanos == NO_DEADLINE ? NO_DEADLINE : System.nanoTime() + timeoutNanos;
+    }
+
+    static boolean expired(long deadline) {
+        return deadline != NO_DEADLINE && System.nanoTime() - deadline > 0;
+    }
+
+    static long remaining(long deadline) {
+        return deadline == NO_DEADLINE ? NO_DEADLINE : Math.max(0, deadline - System.nanoTime());
+    }
+
+    private void writeLoop(int to) {
+        BlockingQueue<ByteBuffer> outbox = outboxes[to];
+        try {
+            for (ByteBuffer message = outbox.take(); message != END; message = outbox.take()) {
+                write(to, message);
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                log.error("Échec d'envoi du rang {} vers le rang {} : {}", rank, to, e.getMessage());
+            }
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Écrit les messages déjà envoyés (dans la limite de quelques secondes) puis ferme le transport
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        for (int peer = 0; peer < size; peer++) {
+            if (outboxes[peer] != null) {
+                outboxes[peer].add(END);
+            }
+        }
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MS);
+            for (Thread writer : writers) {
+                if (writer != null) {
+                    writer.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closed = true;
+            closeResources();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package cyrildeschamps.core.service.simulation.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport TCP entre processus d'une même machine ou d'un réseau local, sans service externe.
+ * Chaque rang écoute sur sa propre adresse, se connecte aux rangs inférieurs et accepte les rangs supérieurs :
+ * une seule connexion par paire, établie en tâche de fond et réessayée tant que le pair n'écoute pas encore.
+ * Un message est précédé de sa longueur sur 4 octets.
+ */
+@Slf4j
+public class SocketTransport extends QueuedTransport {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long RETRY_MS = 200;
+
+    private final List<InetSocketAddress> addresses;
+    private final ServerSocket server;
+    private final Socket[] sockets;
+    private final DataInputStream[] inputs;
+    private final DataOutputStream[] outputs;
+    private final byte[][] received;
+    private final Thread acceptor;
+    private final Thread connector;
+
+    /**
+     * Commence à écouter sur addresses[rank] et à joindre les autres rangs, sans attendre qu'ils répondent
+     * @param addresses Adresse de chaque rang, dans l'ordre des rangs
+     */
+    public SocketTransport(int rank, List<InetSocketAddress> addresses) throws IOException {
+        super(rank, addresses.size());
+        this.addresses = List.copyOf(addresses);
+        int size = addresses.size();
+        sockets = new Socket[size];
+        inputs = new DataInputStream[size];
+        outputs = new DataOutputStream[size];
+        received = new byte[size][0];
+
+        server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress(addresses.get(rank).getPort()));
+        acceptor = new Thread(this::acceptLoop, "NBodyTransport-accept-" + rank);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        connector = new Thread(this::connectLoop, "NBodyTransport-connect-" + rank);
+        connector.setDaemon(true);
+        connector.start();
+        startWriters();
+    }
+
+    /**
+     * @param addresses "hôte:port" de chaque rang séparés par des virgules, le coordinateur en premier
+     */
+    public static List<InetSocketAddress> parseAddresses(String addresses) {
+        List<InetSocketAddress> result = new ArrayList<>();
+        for (String address : addresses.split(",")) {
+            String trimmed = address.trim();
+            int colon = trimmed.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Expected host:port, got: " + trimmed);
+            }
+            result.add(InetSocketAddress.createUnresolved(trimmed.substring(0, colon),
+                Integer.parseInt(trimmed.substring(colon + 1))));
+        }
+        return result;
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                int peer = new DataInputStream(socket.getInputStream()).readInt();
+                if (peer <= rank() || peer >= size()) {
+                    log.warn("Connexion refusée au rang {} : rang {} inattendu", rank(), peer);
+                    socket.close();
+                    continue;
+                }
+                register(peer, socket);
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Échec d'une connexion entrante au rang {} : {}", rank(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void connectLoop() {
+        for (int peer = 0; peer < rank() && !closed; peer++) {
+            InetSocketAddress address = addresses.get(peer);
+            while (!closed) {
+                try {
+                    Socket socket = new Socket();
+                    socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()));
+                    new DataOutputStream(socket.getOutputStream()).writeInt(rank());
+                    register(peer, socket);
+                    break;
+                } catch (IOException e) {
+                    // The peer is not listening yet
+                    try {
+                        Thread.sleep(RETRY_MS);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void register(int peer, Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        if (sockets[peer] != null) {
+            socket.close();
+            return;
+        }
+        sockets[peer] = socket;
+        inputs[peer] = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        outputs[peer] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        log.debug("Rang {} connecté au rang {}", rank(), peer);
+        notifyAll();
+    }
+
+    /**
+     * Attend la connexion avec 'peer'
+     * @return false si le délai expire avant
+     */
+    private synchronized boolean awaitPeer(int peer, long deadline) throws IOException {
+        try {
+            while (sockets[peer] == null) {
+                if (closed) {
+                    throw new IOException("Transport closed");
+                }
+                if (expired(deadline)) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, Math.min(remaining(deadline), TimeUnit.MILLISECONDS.toNanos(RETRY_MS)));
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for rank " + peer);
+        }
+    }
+
+    @Override
+    protected void write(int to, ByteBuffer message) throws IOException {
+        awaitPeer(to, NO_DEADLINE);
+        DataOutputStream out = outputs[to];
+        out.writeInt(message.remaining());
+        out.write(message.array(), message.arrayOffset() + message.position(), message.remaining());
+        out.flush();
+    }
+
+    @Override
+    public ByteBuffer receive(int from, long timeoutNanos) throws IOException {
+        checkPeer(from);
+        long deadline = deadline(timeoutNanos);
+        if (!awaitPeer(from, deadline)) {
+            throw new InterruptedIOException("No connection from rank " + from);
+        }
+        Socket socket = sockets[from];
+        DataInputStream in = inputs[from];
+        int length;
+        try {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(remaining(deadline));
+            socket.setSoTimeout(deadline == NO_DEADLINE ? 0 : (int) Math.max(1, Math.min(Integer.MAX_VALUE, remainingMs)));
+            length = in.readInt();
+        } catch (SocketTimeoutException e) {
+            throw new InterruptedIOException("No message from rank " + from + " within " + timeoutNanos / 1_000_000 + " ms");
+        }
+        // Once the length is read the rest of the message is on its way, a timeout now would desynchronize the stream
+        socket.setSoTimeout(0);
+        if (received[from].length < length) {
+            received[from] = new byte[Math.max(length, received[from].length * 2)];
+        }
+        in.readFully(received[from], 0, length);
+        return ByteBuffer.wrap(received[from], 0, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    protected void closeResources() throws IOException {
+        server.close();
+        acceptor.interrupt();
+        connector.interrupt();
+        synchronized (this) {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package cyrildeschamps.core.service.simulation.cluster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Messages point à point entre les processus d'une simulation répartie, chacun identifié par son rang :
+ * 0 pour le coordinateur, 1 à size() - 1 pour les domaines. Les messages d'un rang à un autre arrivent dans l'ordre.
+ * Voir {@link Transports} pour les implémentations disponibles.
+ */
+public interface Transport extends AutoCloseable {
+
+    int rank();
+
+    /**
+     * @return Le nombre de rangs, coordinateur compris
+     */
+    int size();
+
+    /**
+     * Envoie les octets restants du tampon sans attendre le destinataire : ils sont copiés, le tampon peut être
+     * réutilisé au retour. Deux rangs peuvent ainsi s'envoyer de gros messages en même temps sans se bloquer.
+     * @throws IOException si un envoi précédent vers ce rang a échoué ou si le transport est fermé
+     */
+    void send(int to, ByteBuffer message) throws IOException;
+
+    /**
+     * Attend le prochain message de 'from'
+     * @return Le message en petit boutiste, valable jusqu'à la prochaine réception depuis le même rang
+     * @throws java.io.InterruptedIOException si rien n'arrive dans le délai
+     */
+    ByteBuffer receive(int from, long timeoutNanos) throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,38 @@
+package cyrildeschamps.core.service.simulation.cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sélection d'un {@link Transport} par son nom de configuration
+ */
+public final class Transports {
+    public static final String SOCKET = "socket";
+    public static final String MAPPED_FILE = "mmap";
+
+    private Transports() { }
+
+    /**
+     * @param name "socket" (TCP, machines d'un réseau local) ou "mmap" (fichiers projetés, une seule machine)
+     * @param size Nombre de rangs, coordinateur compris
+     * @param addresses "hôte:port" de chaque rang séparés par des virgules, pour "socket"
+     * @param directory Répertoire des anneaux, pour "mmap"
+     * @throws IllegalArgumentException si le nom est inconnu ou si le nombre d'adresses ne correspond pas
+     */
+    public static Transport open(String name, int rank, int size, String addresses, Path directory) throws IOException {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case SOCKET -> {
+                List<InetSocketAddress> parsed = SocketTransport.parseAddresses(addresses);
+                if (parsed.size() != size) {
+                    throw new IllegalArgumentException("Expected " + size + " addresses, got " + parsed.size());
+                }
+                yield new SocketTransport(rank, parsed);
+            }
+            case MAPPED_FILE -> new MappedFileTransport(rank, size, directory);
+            default -> throw new IllegalArgumentException("Unknown transport: " + name);
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package cyrildeschamps.core.service.simulation.distribution;
+
+import cyrildeschamps.core.service.simulation.BodyBatch;
+
+import java.util.SplittableRandom;
+
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.G;
+
+/**
+ * Disque exponentiel mince dans le plan z = 0 : densité de surface en exp(-R / scaleLength), épaisseur en sech²,
+ * vitesses circulaires données par la masse centrale et la masse du disque intérieure au rayon, plus une petite
+ * dispersion. La masse centrale est supposée déjà présente à l'origine, elle n'est pas créée.
+ * @param thickness Hauteur d'échelle verticale
+ * @param centralMass Masse du bulbe ou trou noir central
+ */
+public record DiskGalaxy(float scaleLength, float thickness, float centralMass, float bodyMass) implements Distribution {
+    // Stars closer than this to the center would need very small steps, and stars beyond the cut are rare
+    private static final double INNER_CUT = 0.1;
+    private static final double OUTER_CUT = 8;
+    private static final double DISPERSION = 0.05;
+
+    public DiskGalaxy {
+        if (scaleLength <= 0 || thickness < 0) {
+            throw new IllegalArgumentException("scaleLength must be positive and thickness not negative");
+        }
+    }
+
+    @Override
+    public void fill(BodyBatch batch, int from, int to, SplittableRandom random) {
+        float[] x = batch.getX(), y = batch.getY(), z = batch.getZ();
+        float[] vx = batch.getVx(), vy = batch.getVy(), vz = batch.getVz();
+        float[] mass = batch.getMass();
+        double diskMass = (double) bodyMass * batch.size();
+        for (int i = from; i < to; i++) {
+            double radius = radius(random);
+            double angle = random.nextDouble(2 * Math.PI);
+            double cos = Math.cos(angle), sin = Math.sin(angle);
+            // Inverse CDF of sech²(z / h): z = h * atanh(2u - 1)
+            double u = random.nextDouble(1e-9, 1 - 1e-9);
+            double height = thickness * 0.5 * Math.log(u / (1 - u));
+
+            double s = radius / scaleLength;
+            double enclosed = centralMass + diskMass * (1 - (1 + s) * Math.exp(-s));
+            double speed = Math.sqrt(G * enclosed / radius);
+            double sigma = DISPERSION * speed;
+
+            x[i] = (float) (radius * cos);
+            y[i] = (float) (radius * sin);
+            z[i] = (float) height;
+            vx[i] = (float) (-speed * sin + sigma * random.nextDouble(-1, 1));
+            vy[i] = (float) (speed * cos + sigma * random.nextDouble(-1, 1));
+            vz[i] = (float) (sigma * random.nextDouble(-1, 1));
+            mass[i] = bodyMass;
+        }
+    }
+
+    /**
+     * Rayon de densité de surface exponentielle : R = -Rd ln(u1 u2) suit une loi Gamma(2, Rd), tronquée
+     */
+    private double radius(SplittableRandom random) {
+        while (true) {
+            double s = -Math.log((1 - random.nextDouble()) * (1 - random.nextDouble()));
+            if (s >= INNER_CUT && s <= OUTER_CUT) {
+                return s * scaleLength;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package cyrildeschamps.core.service.simulation.distribution;
+
+import cyrildeschamps.core.service.simulation.BodyBatch;
+
+import java.util.SplittableRandom;
+
+/**
+ * Distribution de conditions initiales, écrite directement dans les tableaux d'un {@link BodyBatch}.
+ * {@link #fill} est appelé en parallèle sur des tranches disjointes, chacune avec son propre générateur :
+ * une implémentation ne doit écrire que dans les slots [from, to) et ne garder aucun état mutable.
+ */
+public interface Distribution {
+
+    /**
+     * Remplit les slots [from, to) du lot
+     * @param batch Lot complet, batch.size() est le nombre total de corps de la distribution
+     */
+    void fill(BodyBatch batch, int from, int to, SplittableRandom random);
+}
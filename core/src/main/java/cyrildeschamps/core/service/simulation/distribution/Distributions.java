@@ -0,0 +1,60 @@
+package cyrildeschamps.core.service.simulation.distribution;
+
+import cyrildeschamps.core.service.simulation.BodyBatch;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Sélection d'une distribution par son nom et génération parallèle des lots
+ */
+public final class Distributions {
+    public static final String RING = "ring";
+    public static final String PLUMMER = "plummer";
+    public static final String CUBE = "cube";
+    public static final String DISK = "disk";
+
+    /** Corps générés par tranche, chaque tranche a son générateur */
+    static final int CHUNK_SIZE = 1 << 14;
+
+    private Distributions() { }
+
+    /**
+     * Distribution de taille caractéristique 'radius' avec ses réglages par défaut, étoiles de masse 1
+     * @param name "ring", "plummer", "cube" ou "disk"
+     * @param centralMass Masse déjà présente à l'origine, autour de laquelle orbitent l'anneau et le disque
+     * @throws IllegalArgumentException si le nom est inconnu
+     */
+    public static Distribution byName(String name, float radius, float centralMass) {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            // Same proportions as the historical 50 to 300 ring
+            case RING -> new Ring(radius / 6, radius, centralMass, 1);
+            case PLUMMER -> new PlummerSphere(radius / 5, 1);
+            case CUBE -> new UniformCube(radius, 2, 1, false);
+            case DISK -> new DiskGalaxy(radius / 4, radius / 50, centralMass, 1);
+            default -> throw new IllegalArgumentException("Unknown distribution: " + name);
+        };
+    }
+
+    /**
+     * Génère 'count' corps en parallèle sur le pool commun, par tranches de {@link #CHUNK_SIZE} écrites
+     * directement dans les tableaux du lot. Les générateurs des tranches sont dérivés de 'seed' dans l'ordre :
+     * le résultat ne dépend que de la graine, pas du nombre de threads.
+     */
+    public static BodyBatch generate(Distribution distribution, int count, long seed) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative");
+        }
+        BodyBatch batch = BodyBatch.ofSize(count);
+        int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[chunks];
+        for (int c = 0; c < chunks; c++) {
+            randoms[c] = root.split();
+        }
+        IntStream.range(0, chunks).parallel().forEach(c ->
+            distribution.fill(batch, c * CHUNK_SIZE, Math.min(count, (c + 1) * CHUNK_SIZE), randoms[c]));
+        return batch;
+    }
+}
@@ -0,0 +1,70 @@
+package cyrildeschamps.core.service.simulation.distribution;
+
+import cyrildeschamps.core.service.simulation.BodyBatch;
+
+import java.util.SplittableRandom;
+
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.G;
+
+/**
+ * Sphère de Plummer à l'équilibre (Aarseth, Hénon et Wielen, 1974) : densité en (1 + r²/a²)^(-5/2) et vitesses
+ * tirées de la fonction de distribution du modèle. Les étoiles ne sont liées que par leur propre gravité :
+ * elle reste stable avec un solveur qui calcule toutes les paires (direct ou Barnes-Hut).
+ * @param scaleRadius Rayon de Plummer a, la moitié de la masse est dans une sphère de rayon 1.3 a
+ * @param bodyMass Masse de chaque étoile, la masse totale est bodyMass * batch.size()
+ */
+public record PlummerSphere(float scaleRadius, float bodyMass) implements Distribution {
+    // The mass fraction is capped so that the rare far-away stars stay within ~10 scale radii
+    private static final double MAX_MASS_FRACTION = 0.99;
+
+    public PlummerSphere {
+        if (scaleRadius <= 0) {
+            throw new IllegalArgumentException("scaleRadius must be positive");
+        }
+    }
+
+    @Override
+    public void fill(BodyBatch batch, int from, int to, SplittableRandom random) {
+        float[] x = batch.getX(), y = batch.getY(), z = batch.getZ();
+        float[] vx = batch.getVx(), vy = batch.getVy(), vz = batch.getVz();
+        float[] mass = batch.getMass();
+        double totalMass = (double) bodyMass * batch.size();
+        for (int i = from; i < to; i++) {
+            // Radius from the inverse cumulative mass profile M(r) / M = r³ / (r² + a²)^(3/2)
+            double fraction = random.nextDouble(1e-9, MAX_MASS_FRACTION);
+            double r = scaleRadius / Math.sqrt(Math.pow(fraction, -2.0 / 3) - 1);
+            double escape = Math.sqrt(2 * G * totalMass) * Math.pow(r * r + scaleRadius * scaleRadius, -0.25);
+            double speed = velocityFraction(random) * escape;
+
+            isotropic(random, r, x, y, z, i);
+            isotropic(random, speed, vx, vy, vz, i);
+            mass[i] = bodyMass;
+        }
+    }
+
+    /**
+     * Fraction q = v / v_esc, par rejet sur g(q) = q² (1 - q²)^(7/2) dont le maximum est sous 0.1
+     */
+    private static double velocityFraction(SplittableRandom random) {
+        while (true) {
+            double q = random.nextDouble();
+            double rest = 1 - q * q;
+            double g = q * q * rest * rest * rest * Math.sqrt(rest);
+            if (random.nextDouble(0.1) < g) {
+                return q;
+            }
+        }
+    }
+
+    /**
+     * Écrit au slot i un vecteur de norme 'length' et de direction uniforme sur la sphère
+     */
+    private static void isotropic(SplittableRandom random, double length, float[] x, float[] y, float[] z, int i) {
+        double cosTheta = random.nextDouble(-1, 1);
+        double sinTheta = Math.sqrt(1 - cosTheta * cosTheta);
+        double phi = random.nextDouble(2 * Math.PI);
+        x[i] = (float) (length * sinTheta * Math.cos(phi));
+        y[i] = (float) (length * sinTheta * Math.sin(phi));
+        z[i] = (float) (length * cosTheta);
+    }
+}
@@ -0,0 +1,39 @@
+package cyrildeschamps.core.service.simulation.distribution;
+
+import cyrildeschamps.core.service.simulation.BodyBatch;
+
+import java.util.SplittableRandom;
+
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.G;
+
+/**
+ * Anneau plat d'étoiles en orbite circulaire autour d'une masse centrale placée à l'origine
+ * (la masse n'est pas créée, elle doit déjà exister dans le monde)
+ * @param centralMass Masse autour de laquelle les étoiles orbitent
+ */
+public record Ring(float innerRadius, float outerRadius, float centralMass, float bodyMass) implements Distribution {
+
+    public Ring {
+        if (innerRadius <= 0 || outerRadius < innerRadius) {
+            throw new IllegalArgumentException("Ring radii must satisfy 0 < inner <= outer");
+        }
+    }
+
+    @Override
+    public void fill(BodyBatch batch, int from, int to, SplittableRandom random) {
+        float[] x = batch.getX(), y = batch.getY();
+        float[] vx = batch.getVx(), vy = batch.getVy();
+        float[] mass = batch.getMass();
+        for (int i = from; i < to; i++) {
+            double r = random.nextDouble(innerRadius, outerRadius);
+            double angle = random.nextDouble(2 * Math.PI);
+            double cos = Math.cos(angle), sin = Math.sin(angle);
+            double speed = Math.sqrt(G * centralMass / r);
+            x[i] = (float) (r * cos);
+            y[i] = (float) (r * sin);
+            vx[i] = (float) (-speed * sin);
+            vy[i] = (float) (speed * cos);
+            mass[i] = bodyMass;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package cyrildeschamps.core.service.simulation.distribution;
+
+import cyrildeschamps.core.service.simulation.BodyBatch;
+import cyrildeschamps.core.service.simulation.BodyStore;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Positions uniformes dans le cube [-halfSize, halfSize]^3 et vitesses uniformes dans [-speed, speed]^3
+ * @param blackHoles true pour créer des trous noirs au lieu d'étoiles
+ */
+public record UniformCube(float halfSize, float speed, float bodyMass, boolean blackHoles) implements Distribution {
+
+    @Override
+    public void fill(BodyBatch batch, int from, int to, SplittableRandom random) {
+        float[] x = batch.getX(), y = batch.getY(), z = batch.getZ();
+        float[] vx = batch.getVx(), vy = batch.getVy(), vz = batch.getVz();
+        for (int i = from; i < to; i++) {
+            x[i] = symmetric(random, halfSize);
+            y[i] = symmetric(random, halfSize);
+            z[i] = symmetric(random, halfSize);
+            vx[i] = symmetric(random, speed);
+            vy[i] = symmetric(random, speed);
+            vz[i] = symmetric(random, speed);
+        }
+        Arrays.fill(batch.getMass(), from, to, bodyMass);
+        if (blackHoles) {
+            Arrays.fill(batch.getFlags(), from, to, BodyStore.FLAG_BLACK_HOLE);
+        }
+    }
+
+    private static float symmetric(SplittableRandom random, float range) {
+        return (float) ((random.nextDouble() * 2 - 1) * range);
+    }
+}
@@ -1,39 +1,307 @@
 package cyrildeschamps.core.service.simulation.physics;
 
-import cyrildeschamps.core.service.simulation.Body;
-import java.util.List;
+import cyrildeschamps.core.metrics.Timer;
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.collision.CollisionResolver;
+import cyrildeschamps.core.service.simulation.physics.force.BlackHoleForceSolver;
+import cyrildeschamps.core.service.simulation.physics.force.ForceSolver;
+import cyrildeschamps.core.service.simulation.physics.integration.Integrator;
+import cyrildeschamps.core.service.simulation.physics.integration.VelocityVerletIntegrator;
+import lombok.Getter;
+import lombok.Setter;
 
+/**
+ * Moteur physique travaillant directement sur les tableaux primitifs d'un {@link BodyStore}.
+ * Aucune allocation n'est faite pendant un tick une fois le moteur chauffé.
+ * Le calcul des forces est délégué à un {@link ForceSolver} interchangeable.
+ * Chaque phase peut être découpée en tranches sur plusieurs coeurs via {@link #setParallelism(int)}.
+ * Une phase de collision optionnelle fusionne les corps qui se chevauchent, voir {@link #setCollisionResolver}.
+ * Un tick ({@link #step(BodyStore)}) avance le monde de {@link #getTimeStep()} en 'substeps' pas de l'{@link Integrator}.
+ */
 public class PhysicsEngine {
-    private static final float G = 0.1F; // Simplified gravitational constant
-    private static final float TIME_STEP = 0.05F; // Time step for integration
+    public static final float G = 0.1F; // Simplified gravitational constant
+    public static final float SOFTENING = 1e-3F; // Added to distances to avoid singularities
+    private static final float TIME_STEP = 0.05F; // Simulated time per tick
 
-    public void updatePositions(List<Body> bodies) {
-        bodies.stream()
-              .filter(b -> !b.isBlackHole())
-              .forEach(b -> b.updatePosition(TIME_STEP));
+    @FunctionalInterface
+    private interface Phase {
+        void run(BodyStore store, int from, int to);
     }
 
-    public void calculateGravitationalForces(List<Body> bodies) {
-        bodies.forEach(Body::resetForce);
-        
-        // Pour chaque corps non trou noir
-        bodies.stream()
-              .filter(b -> !b.isBlackHole())
-              .forEach(body -> {
-                  // Appliquer la force de tous les trous noirs
-                  bodies.stream()
-                        .filter(Body::isBlackHole)
-                        .forEach(blackHole -> body.addForce(blackHole));
-              });
+    @Getter
+    @Setter
+    private ForceSolver forceSolver;
+    /** Null pour désactiver les collisions (par défaut) */
+    @Getter
+    @Setter
+    private CollisionResolver collisionResolver;
+    @Getter
+    @Setter
+    private Integrator integrator = new VelocityVerletIntegrator();
+    /** Nombre de pas d'intégration par tick */
+    @Getter
+    private int substeps = 1;
+    private volatile PhysicsExecutor executor;
+
+    // Bound once so the sequential path stays allocation free
+    private final Phase driftPhase = this::drift;
+    private final Phase forcesPhase = this::calculateGravitationalForces;
+    private final Phase kickPhase = this::kick;
+    private final Phase targetsForcesPhase = this::calculateTargetForces;
+    // Step of the running drift or kick, published to the workers by the fork
+    private float phaseStep;
+    // Bodies of the running partial force phase
+    private int[] phaseTargets;
+
+    // Forces in fx/fy/fz match the current positions of this store at this structure version
+    private boolean forcesCurrent;
+    private BodyStore forcesStore;
+    private long forcesVersion;
+    /** Nombre total d'évaluations des forces, pour comparer le coût des intégrateurs */
+    @Getter
+    private long forceEvaluations;
+    /** Nombre total d'évaluations partielles, une par instant de synchronisation des pas de temps par blocs */
+    @Getter
+    private long partialForceEvaluations;
+    /** Nombre total de forces calculées corps par corps, y compris par les évaluations partielles */
+    @Getter
+    private long bodyForceEvaluations;
+
+    // Duration of each phase, one record per call: a few per tick, negligible next to the phases themselves
+    @Getter
+    private final Timer collisionsTimer = new Timer();
+    /** Évaluations complètes et partielles, préparation du solveur comprise */
+    @Getter
+    private final Timer forcesTimer = new Timer();
+    @Getter
+    private final Timer driftTimer = new Timer();
+    @Getter
+    private final Timer kickTimer = new Timer();
+
+    public PhysicsEngine() {
+        this(new BlackHoleForceSolver());
+    }
+
+    public PhysicsEngine(ForceSolver forceSolver) {
+        this.forceSolver = forceSolver;
+    }
+
+    /**
+     * Exécute un tick : collisions éventuelles puis 'substeps' pas de l'intégrateur
+     */
+    public void step(BodyStore store) {
+        resolveCollisions(store);
+        float dt = TIME_STEP / substeps;
+        for (int s = 0; s < substeps; s++) {
+            integrator.step(this, store, dt);
+        }
+    }
+
+    public void updatePositions(BodyStore store) {
+        drift(store, TIME_STEP);
+    }
+
+    public void calculateGravitationalForces(BodyStore store) {
+        long start = System.nanoTime();
+        forceSolver.prepare(store);
+        forEach(store, forcesPhase);
+        forcesTimer.recordSince(start);
+        forcesCurrent = true;
+        forcesStore = store;
+        forcesVersion = store.getStructureVersion();
+        forceEvaluations++;
+        bodyForceEvaluations += store.size();
+    }
+
+    /**
+     * Calcule les forces des seuls corps 'targets[0..count)', à partir des positions de tous les corps.
+     * Les autres corps gardent leurs forces précédentes.
+     */
+    public void calculateGravitationalForces(BodyStore store, int[] targets, int count) {
+        if (count == store.size()) {
+            calculateGravitationalForces(store);
+            return;
+        }
+        long start = System.nanoTime();
+        forceSolver.preparePartial(store, count);
+        phaseTargets = targets;
+        forEach(store, count, targetsForcesPhase);
+        forcesTimer.recordSince(start);
+        forcesCurrent = false;
+        partialForceEvaluations++;
+        bodyForceEvaluations += count;
+    }
+
+    public void updateVelocities(BodyStore store) {
+        kick(store, TIME_STEP);
+    }
+
+    /**
+     * Avance les positions de v * dt (les trous noirs restent fixes)
+     */
+    public void drift(BodyStore store, float dt) {
+        long start = System.nanoTime();
+        phaseStep = dt;
+        forEach(store, driftPhase);
+        driftTimer.recordSince(start);
+        forcesCurrent = false;
+    }
+
+    /**
+     * Avance les vitesses de F / m * dt avec les forces courantes (les trous noirs restent fixes)
+     */
+    public void kick(BodyStore store, float dt) {
+        long start = System.nanoTime();
+        phaseStep = dt;
+        forEach(store, kickPhase);
+        kickTimer.recordSince(start);
+    }
+
+    /**
+     * Recalcule les forces seulement si elles ne correspondent plus aux positions (dérive, ajout ou suppression de corps)
+     */
+    public void ensureForces(BodyStore store) {
+        if (!forcesCurrent || forcesStore != store || forcesVersion != store.getStructureVersion()) {
+            calculateGravitationalForces(store);
+        }
+    }
+
+    /**
+     * A appeler quand des positions sont modifiées hors du moteur
+     */
+    public void invalidateForces() {
+        forcesCurrent = false;
     }
 
-    public void updateVelocities(List<Body> bodies) {
-        bodies.stream()
-              .filter(b -> !b.isBlackHole())
-              .forEach(b -> b.updateVelocity(TIME_STEP));
+    /**
+     * Énergie totale (cinétique des corps mobiles plus potentielle du {@link ForceSolver}), en double.
+     * Coûteux : sert aux mesures de dérive, pas à la boucle de tick.
+     */
+    public double totalEnergy(BodyStore store) {
+        float[] vx = store.getVx(), vy = store.getVy(), vz = store.getVz();
+        float[] mass = store.getMass();
+        double kinetic = 0;
+        for (int i = 0; i < store.size(); i++) {
+            if (!store.isBlackHole(i)) {
+                kinetic += 0.5 * mass[i] * ((double) vx[i] * vx[i] + (double) vy[i] * vy[i] + (double) vz[i] * vz[i]);
+            }
+        }
+        return kinetic + forceSolver.potentialEnergy(store);
+    }
+
+    /**
+     * Fusionne les corps qui se chevauchent si les collisions sont activées. Le nombre de corps peut diminuer :
+     * à appeler entre deux phases, jamais pendant.
+     * @return Le nombre de corps retirés
+     */
+    public int resolveCollisions(BodyStore store) {
+        CollisionResolver resolver = collisionResolver;
+        if (resolver == null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int removed = resolver.resolve(store);
+        collisionsTimer.recordSince(start);
+        return removed;
+    }
+
+    private void drift(BodyStore store, int from, int to) {
+        float dt = phaseStep;
+        float[] x = store.getX(), y = store.getY(), z = store.getZ();
+        float[] vx = store.getVx(), vy = store.getVy(), vz = store.getVz();
+        for (int i = from; i < to; i++) {
+            if (store.isBlackHole(i)) {
+                continue;
+            }
+            x[i] += vx[i] * dt;
+            y[i] += vy[i] * dt;
+            z[i] += vz[i] * dt;
+        }
+    }
+
+    private void calculateGravitationalForces(BodyStore store, int from, int to) {
+        for (int i = from; i < to; i++) {
+            forceSolver.computeForce(store, i);
+        }
+    }
+
+    private void calculateTargetForces(BodyStore store, int from, int to) {
+        int[] targets = phaseTargets;
+        for (int k = from; k < to; k++) {
+            forceSolver.computeForce(store, targets[k]);
+        }
+    }
+
+    private void kick(BodyStore store, int from, int to) {
+        float dt = phaseStep;
+        float[] vx = store.getVx(), vy = store.getVy(), vz = store.getVz();
+        float[] fx = store.getFx(), fy = store.getFy(), fz = store.getFz();
+        float[] mass = store.getMass();
+        for (int i = from; i < to; i++) {
+            if (store.isBlackHole(i)) {
+                continue;
+            }
+            float invMass = 1.0F / mass[i];
+            vx[i] += fx[i] * invMass * dt;
+            vy[i] += fy[i] * invMass * dt;
+            vz[i] += fz[i] * invMass * dt;
+        }
+    }
+
+    /**
+     * Exécute une phase sur tous les corps, en parallèle si un {@link PhysicsExecutor} est configuré.
+     * Le chemin séquentiel n'alloue rien.
+     */
+    private void forEach(BodyStore store, Phase phase) {
+        forEach(store, store.size(), phase);
+    }
+
+    private void forEach(BodyStore store, int n, Phase phase) {
+        PhysicsExecutor executor = this.executor;
+        if (executor == null) {
+            phase.run(store, 0, n);
+        } else {
+            executor.forEach(n, (from, to) -> phase.run(store, from, to));
+        }
+    }
+
+    /**
+     * Nombre de threads utilisés pour les phases du moteur, 1 pour un calcul séquentiel
+     */
+    public int getParallelism() {
+        return executor == null ? 1 : executor.getParallelism();
+    }
+
+    public void setParallelism(int parallelism) {
+        setParallelism(parallelism, PhysicsExecutor.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * A appeler entre deux ticks, l'ancien pool est arrêté
+     */
+    public void setParallelism(int parallelism, int chunkSize) {
+        shutdown();
+        executor = parallelism > 1 ? new PhysicsExecutor(parallelism, chunkSize) : null;
+    }
+
+    /**
+     * Libère les threads du mode parallèle, le moteur repasse en séquentiel
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.close();
+            executor = null;
+        }
     }
 
     public float getTimeStep() {
         return TIME_STEP;
     }
-} 
\ No newline at end of file
+
+    public void setSubsteps(int substeps) {
+        if (substeps < 1) {
+            throw new IllegalArgumentException("substeps must be at least 1");
+        }
+        this.substeps = substeps;
+    }
+}
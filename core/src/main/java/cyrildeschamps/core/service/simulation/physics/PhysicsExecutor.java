@@ -0,0 +1,97 @@
+package cyrildeschamps.core.service.simulation.physics;
+
+import lombok.Getter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exécute une boucle sur les corps par tranches contiguës sur un ForkJoinPool dédié.
+ * Chaque corps est traité par une seule tâche, le résultat ne dépend donc pas du nombre de threads.
+ */
+public class PhysicsExecutor implements AutoCloseable {
+    public static final int DEFAULT_CHUNK_SIZE = 2048;
+
+    // Chunk bounds are multiples of 16 floats (64 bytes) to reduce false sharing; the array header offsets them, so
+    // two neighbouring chunks may still share one cache line at their boundary
+    private static final int ALIGNMENT = 16;
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    @FunctionalInterface
+    public interface RangeTask {
+        void run(int from, int to);
+    }
+
+    @Getter
+    private final int parallelism;
+    @Getter
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    public PhysicsExecutor(int parallelism) {
+        this(parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    public PhysicsExecutor(int parallelism, int chunkSize) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        this.chunkSize = Math.max(ALIGNMENT, (chunkSize + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT);
+        if (parallelism == 1) {
+            this.pool = null;
+        } else {
+            int poolId = POOL_COUNTER.incrementAndGet();
+            this.pool = new ForkJoinPool(parallelism, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("NBodyPhysics-" + poolId + "-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+    }
+
+    /**
+     * Applique la tâche sur [0, n) découpé en tranches, et attend la fin de toutes les tranches
+     */
+    public void forEach(int n, RangeTask task) {
+        if (pool == null || n <= chunkSize) {
+            task.run(0, n);
+            return;
+        }
+        pool.invoke(new Chunk(task, 0, n));
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private class Chunk extends RecursiveAction {
+        private final RangeTask task;
+        private final int from;
+        private final int to;
+
+        Chunk(RangeTask task, int from, int to) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                task.run(from, to);
+                return;
+            }
+            int chunks = (to - from + chunkSize - 1) / chunkSize;
+            int mid = from + (chunks / 2) * chunkSize;
+            invokeAll(new Chunk(task, from, mid), new Chunk(task, mid, to));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package cyrildeschamps.core.service.simulation.physics.collision;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Détecte les corps qui se chevauchent avec une {@link SpatialHashGrid} et les fusionne.
+ * La fusion conserve la masse et la quantité de mouvement ; le corps le plus lourd survit,
+ * un trou noir survit toujours, absorbe l'autre corps et garde sa position.
+ * Les corps absorbés sont marqués puis retirés du stockage en une seule passe à la fin.
+ */
+public class CollisionResolver {
+    public static final float DEFAULT_BODY_RADIUS = 1f;
+    public static final float DEFAULT_BLACK_HOLE_RADIUS = 10f;
+
+    /** Rayon d'une étoile de masse 1, il grandit avec la racine cubique de la masse */
+    @Getter
+    private final float bodyRadius;
+    /** Rayon fixe des trous noirs (horizon) */
+    @Getter
+    private final float blackHoleRadius;
+
+    private final SpatialHashGrid grid = new SpatialHashGrid();
+    private float[] radius = new float[0];
+    private boolean[] absorbed = new boolean[0];
+    @Getter
+    private long mergeCount;
+
+    public CollisionResolver() {
+        this(DEFAULT_BODY_RADIUS, DEFAULT_BLACK_HOLE_RADIUS);
+    }
+
+    public CollisionResolver(float bodyRadius, float blackHoleRadius) {
+        this.bodyRadius = bodyRadius;
+        this.blackHoleRadius = blackHoleRadius;
+    }
+
+    /**
+     * Fusionne tous les corps qui se chevauchent. Un corps issu d'une fusion n'est pas re-testé avant le tick suivant.
+     * @return Le nombre de corps retirés du stockage
+     */
+    public int resolve(BodyStore store) {
+        int n = store.size();
+        if (n < 2) {
+            return 0;
+        }
+        if (radius.length < n) {
+            radius = new float[n];
+            absorbed = new boolean[n];
+        }
+        Arrays.fill(absorbed, 0, n, false);
+
+        float maxRadius = 0;
+        for (int i = 0; i < n; i++) {
+            radius[i] = radiusOf(store, i);
+            maxRadius = Math.max(maxRadius, radius[i]);
+        }
+        if (maxRadius <= 0) {
+            return 0;
+        }
+
+        float[] x = store.getX(), y = store.getY(), z = store.getZ();
+        grid.build(x, y, z, n, 2 * maxRadius);
+
+        int merged = 0;
+        for (int i = 0; i < n; i++) {
+            if (absorbed[i]) {
+                continue;
+            }
+            int cx = grid.cell(x[i]), cy = grid.cell(y[i]), cz = grid.cell(z[i]);
+            scan:
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        int bucket = grid.bucket(cx + dx, cy + dy, cz + dz);
+                        for (int k = grid.bucketStart(bucket), end = grid.bucketEnd(bucket); k < end; k++) {
+                            int j = grid.entry(k);
+                            // Each pair once; a bucket visited twice only yields duplicates already absorbed
+                            if (j <= i || absorbed[j] || !overlaps(x, y, z, i, j)) {
+                                continue;
+                            }
+                            merged++;
+                            if (merge(store, i, j) != i) {
+                                break scan;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if (merged > 0) {
+            mergeCount += merged;
+            store.removeMarked(absorbed);
+        }
+        return merged;
+    }
+
+    private boolean overlaps(float[] x, float[] y, float[] z, int i, int j) {
+        float dx = x[j] - x[i];
+        float dy = y[j] - y[i];
+        float dz = z[j] - z[i];
+        float reach = radius[i] + radius[j];
+        return dx * dx + dy * dy + dz * dz < reach * reach;
+    }
+
+    /**
+     * Fusionne i et j dans le survivant, marque l'autre comme absorbé
+     * @return L'index du survivant
+     */
+    private int merge(BodyStore store, int i, int j) {
+        int survivor = survivorOf(store, i, j);
+        int other = survivor == i ? j : i;
+
+        float[] x = store.getX(), y = store.getY(), z = store.getZ();
+        float[] vx = store.getVx(), vy = store.getVy(), vz = store.getVz();
+        float[] mass = store.getMass();
+        float ms = mass[survivor], mo = mass[other], total = ms + mo;
+
+        // Momentum conserving: velocity and position of the centre of mass
+        vx[survivor] = (vx[survivor] * ms + vx[other] * mo) / total;
+        vy[survivor] = (vy[survivor] * ms + vy[other] * mo) / total;
+        vz[survivor] = (vz[survivor] * ms + vz[other] * mo) / total;
+        if (!store.isBlackHole(survivor)) {
+            x[survivor] = (x[survivor] * ms + x[other] * mo) / total;
+            y[survivor] = (y[survivor] * ms + y[other] * mo) / total;
+            z[survivor] = (z[survivor] * ms + z[other] * mo) / total;
+        }
+        store.setMass(survivor, total);
+        radius[survivor] = radiusOf(store, survivor);
+        absorbed[other] = true;
+        return survivor;
+    }
+
+    private static int survivorOf(BodyStore store, int i, int j) {
+        boolean iBlackHole = store.isBlackHole(i), jBlackHole = store.isBlackHole(j);
+        if (iBlackHole != jBlackHole) {
+            return iBlackHole ? i : j;
+        }
+        return store.getMass()[j] > store.getMass()[i] ? j : i;
+    }
+
+    private float radiusOf(BodyStore store, int i) {
+        return store.isBlackHole(i) ? blackHoleRadius : bodyRadius * (float) Math.cbrt(store.getMass()[i]);
+    }
+}
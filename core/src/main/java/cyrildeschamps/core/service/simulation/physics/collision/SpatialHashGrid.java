@@ -0,0 +1,78 @@
+package cyrildeschamps.core.service.simulation.physics.collision;
+
+import java.util.Arrays;
+
+/**
+ * Grille uniforme hachée sur des tableaux primitifs. Les corps sont triés par case (tri par comptage),
+ * chaque case de la table donne une plage contiguë de {@link #entry(int)}.
+ * Deux cellules différentes peuvent partager une case : les candidats doivent être filtrés par distance.
+ * Les tableaux sont réutilisés d'une construction à l'autre.
+ */
+public class SpatialHashGrid {
+    // Large primes from Teschner et al., "Optimized Spatial Hashing for Collision Detection of Deformable Objects"
+    private static final int PRIME_X = 73_856_093;
+    private static final int PRIME_Y = 19_349_663;
+    private static final int PRIME_Z = 83_492_791;
+
+    private int[] bucketStart = new int[2];
+    private int[] bucketFill = new int[1];
+    private int[] bucketOf = new int[0];
+    private int[] entries = new int[0];
+    private int mask;
+    private float invCellSize = 1;
+
+    /**
+     * Range les 'n' premiers corps dans la grille
+     * @param cellSize Côté d'une cellule, au moins le diamètre du plus gros corps pour que les voisins suffisent
+     */
+    public void build(float[] x, float[] y, float[] z, int n, float cellSize) {
+        int buckets = Integer.highestOneBit(Math.max(1, 2 * n - 1)) << 1;
+        if (bucketFill.length < buckets) {
+            bucketStart = new int[buckets + 1];
+            bucketFill = new int[buckets];
+        }
+        if (entries.length < n) {
+            bucketOf = new int[n];
+            entries = new int[n];
+        }
+        mask = buckets - 1;
+        invCellSize = 1f / cellSize;
+
+        Arrays.fill(bucketStart, 0, buckets + 1, 0);
+        for (int i = 0; i < n; i++) {
+            int bucket = bucket(cell(x[i]), cell(y[i]), cell(z[i]));
+            bucketOf[i] = bucket;
+            bucketStart[bucket + 1]++;
+        }
+        for (int b = 0; b < buckets; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        System.arraycopy(bucketStart, 0, bucketFill, 0, buckets);
+        for (int i = 0; i < n; i++) {
+            entries[bucketFill[bucketOf[i]]++] = i;
+        }
+    }
+
+    public int cell(float coordinate) {
+        return (int) Math.floor(coordinate * invCellSize);
+    }
+
+    public int bucket(int cx, int cy, int cz) {
+        return ((cx * PRIME_X) ^ (cy * PRIME_Y) ^ (cz * PRIME_Z)) & mask;
+    }
+
+    public int bucketStart(int bucket) {
+        return bucketStart[bucket];
+    }
+
+    public int bucketEnd(int bucket) {
+        return bucketStart[bucket + 1];
+    }
+
+    /**
+     * @return L'index du corps à la position 'k' du tri par case
+     */
+    public int entry(int k) {
+        return entries[k];
+    }
+}
@@ -0,0 +1,315 @@
+package cyrildeschamps.core.service.simulation.physics.force;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.G;
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.SOFTENING;
+
+/**
+ * Solveur Barnes-Hut en O(n log n) basé sur un octree.
+ * Les noeuds vivent dans une arène de tableaux primitifs réutilisée d'un tick à l'autre :
+ * l'arbre est reconstruit à chaque {@link #prepare(BodyStore)} sans réallouer.
+ */
+public class BarnesHutForceSolver implements ForceSolver {
+    public static final float DEFAULT_THETA = 0.5F;
+
+    private static final int MAX_DEPTH = 32;
+    private static final int EMPTY = -1;
+    private static final int STACK_SIZE = 8 * (MAX_DEPTH + 2);
+    // A partial evaluation of at most this many targets per tree level sums them directly rather than rebuilding:
+    // a rebuild inserts all n bodies about log8(n) levels deep, a direct sum costs n interactions per target
+    private static final int DIRECT_TARGETS_PER_LEVEL = 4;
+
+    private final ThreadLocal<int[]> stacks = ThreadLocal.withInitial(() -> new int[STACK_SIZE]);
+
+    @Getter
+    private float theta;
+    private float thetaSquared;
+
+    // Node arena, one slot per node, children of a node are 8 consecutive slots
+    private float[] centerX, centerY, centerZ, halfSize;
+    private float[] nodeMass, comX, comY, comZ;
+    // A leaf holds the first of its bodies, the others follow through nextInLeaf (several only at MAX_DEPTH)
+    private int[] firstChild, body;
+    private int[] nextInLeaf = new int[0];
+    @Getter
+    private int nodeCount;
+    // Set by preparePartial when the tree is not rebuilt: forces are then summed directly over all bodies
+    private boolean direct;
+    private final ForceKernel directKernel = ForceKernels.preferred();
+
+    public BarnesHutForceSolver() {
+        this(DEFAULT_THETA);
+    }
+
+    public BarnesHutForceSolver(float theta) {
+        setTheta(theta);
+        allocate(1024);
+    }
+
+    /**
+     * Angle d'ouverture : 0 donne le calcul exact, plus il est grand plus l'approximation est grossière
+     */
+    public void setTheta(float theta) {
+        if (theta < 0) {
+            throw new IllegalArgumentException("theta must be positive");
+        }
+        this.theta = theta;
+        this.thetaSquared = theta * theta;
+    }
+
+    /**
+     * @return Le nombre de noeuds que l'arène peut contenir sans réallocation
+     */
+    public int getArenaCapacity() {
+        return firstChild.length;
+    }
+
+    @Override
+    public void preparePartial(BodyStore store, int count) {
+        int n = store.size();
+        int levels = Math.max(1, (int) Math.ceil(Math.log(Math.max(n, 2)) / Math.log(8)));
+        if (count <= DIRECT_TARGETS_PER_LEVEL * levels) {
+            direct = true;
+            return;
+        }
+        prepare(store);
+    }
+
+    @Override
+    public void prepare(BodyStore store) {
+        direct = false;
+        int n = store.size();
+        float[] x = store.getX(), y = store.getY(), z = store.getZ();
+        float[] mass = store.getMass();
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+            maxZ = Math.max(maxZ, z[i]);
+        }
+
+        nodeCount = 0;
+        int root = newNode(
+                (minX + maxX) * 0.5F, (minY + maxY) * 0.5F, (minZ + maxZ) * 0.5F,
+                Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) * 0.5F * 1.0001F + 1e-3F);
+        if (n == 0) {
+            return;
+        }
+
+        if (nextInLeaf.length < n) {
+            nextInLeaf = new int[Math.max(n, nextInLeaf.length * 2)];
+        }
+        for (int i = 0; i < n; i++) {
+            insert(root, i, x, y, z, mass);
+        }
+
+        // Convert mass moments to centers of mass
+        for (int node = 0; node < nodeCount; node++) {
+            float m = nodeMass[node];
+            if (m != 0) {
+                comX[node] /= m;
+                comY[node] /= m;
+                comZ[node] /= m;
+            } else {
+                comX[node] = centerX[node];
+                comY[node] = centerY[node];
+                comZ[node] = centerZ[node];
+            }
+        }
+    }
+
+    private void insert(int root, int i, float[] x, float[] y, float[] z, float[] mass) {
+        float px = x[i], py = y[i], pz = z[i], m = mass[i];
+        int node = root;
+        int depth = 0;
+        nextInLeaf[i] = EMPTY;
+        while (true) {
+            nodeMass[node] += m;
+            comX[node] += m * px;
+            comY[node] += m * py;
+            comZ[node] += m * pz;
+
+            if (firstChild[node] != EMPTY) {
+                node = firstChild[node] + octant(node, px, py, pz);
+                depth++;
+                continue;
+            }
+            int occupant = body[node];
+            if (occupant == EMPTY) {
+                body[node] = i;
+                return;
+            }
+            if (depth >= MAX_DEPTH) {
+                // Coincident bodies, keep them together in this leaf
+                nextInLeaf[i] = occupant;
+                body[node] = i;
+                return;
+            }
+
+            subdivide(node);
+            body[node] = EMPTY;
+            int child = firstChild[node] + octant(node, x[occupant], y[occupant], z[occupant]);
+            body[child] = occupant;
+            nodeMass[child] = mass[occupant];
+            comX[child] = mass[occupant] * x[occupant];
+            comY[child] = mass[occupant] * y[occupant];
+            comZ[child] = mass[occupant] * z[occupant];
+
+            node = firstChild[node] + octant(node, px, py, pz);
+            depth++;
+        }
+    }
+
+    private int octant(int node, float px, float py, float pz) {
+        int octant = 0;
+        if (px >= centerX[node]) octant |= 1;
+        if (py >= centerY[node]) octant |= 2;
+        if (pz >= centerZ[node]) octant |= 4;
+        return octant;
+    }
+
+    private void subdivide(int node) {
+        float half = halfSize[node] * 0.5F;
+        int first = nodeCount;
+        for (int octant = 0; octant < 8; octant++) {
+            newNode(
+                    centerX[node] + ((octant & 1) != 0 ? half : -half),
+                    centerY[node] + ((octant & 2) != 0 ? half : -half),
+                    centerZ[node] + ((octant & 4) != 0 ? half : -half),
+                    half);
+        }
+        firstChild[node] = first;
+    }
+
+    private int newNode(float cx, float cy, float cz, float half) {
+        if (nodeCount == firstChild.length) {
+            grow(nodeCount * 2);
+        }
+        int node = nodeCount++;
+        centerX[node] = cx;
+        centerY[node] = cy;
+        centerZ[node] = cz;
+        halfSize[node] = half;
+        nodeMass[node] = 0;
+        comX[node] = 0;
+        comY[node] = 0;
+        comZ[node] = 0;
+        firstChild[node] = EMPTY;
+        body[node] = EMPTY;
+        return node;
+    }
+
+    @Override
+    public void computeForce(BodyStore store, int target) {
+        if (direct) {
+            store.getFx()[target] = 0;
+            store.getFy()[target] = 0;
+            store.getFz()[target] = 0;
+            directKernel.accumulate(store, target, 0, store.size());
+            return;
+        }
+        float[] x = store.getX(), y = store.getY(), z = store.getZ();
+        float[] mass = store.getMass();
+        float xi = x[target], yi = y[target], zi = z[target];
+        float mi = mass[target];
+        float ax = 0, ay = 0, az = 0;
+
+        if (nodeCount > 0) {
+            int[] stack = stacks.get();
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                float m = nodeMass[node];
+                int occupant = body[node];
+                if (m == 0 && firstChild[node] == EMPTY) {
+                    continue;
+                }
+                if (occupant != EMPTY && nextInLeaf[occupant] != EMPTY) {
+                    // Several bodies in one leaf: their aggregate would include the target when it is one of them,
+                    // so each body pulls on its own
+                    for (int j = occupant; j != EMPTY; j = nextInLeaf[j]) {
+                        if (j != target) {
+                            float dx = x[j] - xi, dy = y[j] - yi, dz = z[j] - zi;
+                            float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) + SOFTENING;
+                            float scale = (G * mi * mass[j]) / (distance * distance * distance);
+                            ax += dx * scale;
+                            ay += dy * scale;
+                            az += dz * scale;
+                        }
+                    }
+                    continue;
+                }
+                if (occupant == target) {
+                    continue;
+                }
+
+                float dx = comX[node] - xi;
+                float dy = comY[node] - yi;
+                float dz = comZ[node] - zi;
+                float d2 = dx * dx + dy * dy + dz * dz;
+                float half = halfSize[node];
+                float size = half * 2;
+
+                // A cell holding the target is always opened, its aggregate would include the target's own mass
+                if (firstChild[node] == EMPTY
+                        || (size * size < thetaSquared * d2 && !contains(node, half, xi, yi, zi))) {
+                    float distance = (float) Math.sqrt(d2) + SOFTENING;
+                    float scale = (G * mi * m) / (distance * distance * distance);
+                    ax += dx * scale;
+                    ay += dy * scale;
+                    az += dz * scale;
+                } else {
+                    int first = firstChild[node];
+                    for (int c = 0; c < 8; c++) {
+                        stack[top++] = first + c;
+                    }
+                }
+            }
+        }
+
+        store.getFx()[target] = ax;
+        store.getFy()[target] = ay;
+        store.getFz()[target] = az;
+    }
+
+    private boolean contains(int node, float half, float px, float py, float pz) {
+        return Math.abs(px - centerX[node]) <= half && Math.abs(py - centerY[node]) <= half
+            && Math.abs(pz - centerZ[node]) <= half;
+    }
+
+    private void allocate(int capacity) {
+        centerX = new float[capacity];
+        centerY = new float[capacity];
+        centerZ = new float[capacity];
+        halfSize = new float[capacity];
+        nodeMass = new float[capacity];
+        comX = new float[capacity];
+        comY = new float[capacity];
+        comZ = new float[capacity];
+        firstChild = new int[capacity];
+        body = new int[capacity];
+    }
+
+    private void grow(int capacity) {
+        centerX = Arrays.copyOf(centerX, capacity);
+        centerY = Arrays.copyOf(centerY, capacity);
+        centerZ = Arrays.copyOf(centerZ, capacity);
+        halfSize = Arrays.copyOf(halfSize, capacity);
+        nodeMass = Arrays.copyOf(nodeMass, capacity);
+        comX = Arrays.copyOf(comX, capacity);
+        comY = Arrays.copyOf(comY, capacity);
+        comZ = Arrays.copyOf(comZ, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        body = Arrays.copyOf(body, capacity);
+    }
+}
@@ -0,0 +1,94 @@
+package cyrildeschamps.core.service.simulation.physics.force;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+
+import java.util.Arrays;
+
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.G;
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.SOFTENING;
+
+/**
+ * Seuls les trous noirs attirent les étoiles, les étoiles n'interagissent pas entre elles.
+ * C'est le comportement historique de la simulation, en O(n * trous noirs).
+ */
+public class BlackHoleForceSolver implements ForceSolver {
+    // Scratch buffer reused between ticks, only grows
+    private int[] blackHoles = new int[8];
+    private int holes;
+
+    @Override
+    public void prepare(BodyStore store) {
+        int count = 0;
+        int n = store.size();
+        for (int i = 0; i < n; i++) {
+            if (store.isBlackHole(i)) {
+                if (count == blackHoles.length) {
+                    blackHoles = Arrays.copyOf(blackHoles, count * 2);
+                }
+                blackHoles[count++] = i;
+            }
+        }
+        holes = count;
+    }
+
+    @Override
+    public void computeForce(BodyStore store, int target) {
+        float[] fx = store.getFx(), fy = store.getFy(), fz = store.getFz();
+        if (store.isBlackHole(target)) {
+            fx[target] = 0;
+            fy[target] = 0;
+            fz[target] = 0;
+            return;
+        }
+
+        float[] x = store.getX(), y = store.getY(), z = store.getZ();
+        float[] mass = store.getMass();
+        float xi = x[target], yi = y[target], zi = z[target];
+        float mi = mass[target];
+        float ax = 0, ay = 0, az = 0;
+        for (int h = 0; h < holes; h++) {
+            int j = blackHoles[h];
+            float dx = x[j] - xi;
+            float dy = y[j] - yi;
+            float dz = z[j] - zi;
+            float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) + SOFTENING;
+            float scale = (G * mi * mass[j]) / (distance * distance * distance);
+            ax += dx * scale;
+            ay += dy * scale;
+            az += dz * scale;
+        }
+        fx[target] = ax;
+        fy[target] = ay;
+        fz[target] = az;
+    }
+
+    /**
+     * Seuls les trous noirs agissent, d'après le dernier {@link #prepare(BodyStore)}
+     */
+    @Override
+    public int sourcesPerBody(BodyStore store) {
+        return holes;
+    }
+
+    /**
+     * Seules les paires étoile - trou noir comptent, comme pour les forces
+     */
+    @Override
+    public double potentialEnergy(BodyStore store) {
+        prepare(store);
+        float[] x = store.getX(), y = store.getY(), z = store.getZ();
+        float[] mass = store.getMass();
+        double energy = 0;
+        for (int i = 0; i < store.size(); i++) {
+            if (store.isBlackHole(i)) {
+                continue;
+            }
+            for (int h = 0; h < holes; h++) {
+                int j = blackHoles[h];
+                double dx = x[j] - x[i], dy = y[j] - y[i], dz = z[j] - z[i];
+                energy -= G * mass[i] * mass[j] / (Math.sqrt(dx * dx + dy * dy + dz * dz) + SOFTENING);
+            }
+        }
+        return energy;
+    }
+}
@@ -0,0 +1,30 @@
+package cyrildeschamps.core.service.simulation.physics.force;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import lombok.Getter;
+
+/**
+ * Gravité exacte entre toutes les paires de corps, en O(n²).
+ * Sert de référence pour valider les solveurs approchés. La boucle interne est confiée à un
+ * {@link ForceKernel}, SIMD par défaut quand l'API Vector est disponible.
+ */
+public class DirectForceSolver implements ForceSolver {
+    @Getter
+    private final ForceKernel kernel;
+
+    public DirectForceSolver() {
+        this(ForceKernels.preferred());
+    }
+
+    public DirectForceSolver(ForceKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    @Override
+    public void computeForce(BodyStore store, int target) {
+        store.getFx()[target] = 0;
+        store.getFy()[target] = 0;
+        store.getFz()[target] = 0;
+        kernel.accumulate(store, target, 0, store.size());
+    }
+}
@@ -0,0 +1,16 @@
+package cyrildeschamps.core.service.simulation.physics.force;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+
+/**
+ * Boucle interne du calcul de gravité : somme des forces d'une plage de corps sources sur un corps cible.
+ * Voir {@link ForceKernels} pour obtenir une implémentation.
+ */
+public interface ForceKernel {
+
+    /**
+     * Ajoute à fx/fy/fz[target] la force exercée par les corps [from, to) sur 'target'.
+     * Un corps n'exerce aucune force sur lui-même.
+     */
+    void accumulate(BodyStore store, int target, int from, int to);
+}
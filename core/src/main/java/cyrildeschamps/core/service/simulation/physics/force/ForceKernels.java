@@ -0,0 +1,53 @@
+package cyrildeschamps.core.service.simulation.physics.force;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sélection du noyau de calcul des forces.
+ * Le noyau SIMD n'est chargé que si le module jdk.incubator.vector est présent dans la JVM,
+ * sinon on retombe sur le noyau scalaire.
+ */
+@Slf4j
+public final class ForceKernels {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL = "cyrildeschamps.core.service.simulation.physics.force.VectorForceKernel";
+
+    private static final ForceKernel VECTOR = loadVectorKernel();
+
+    private ForceKernels() { }
+
+    public static ForceKernel scalar() {
+        return new ScalarForceKernel();
+    }
+
+    /**
+     * @return Le noyau SIMD, ou null si l'API Vector n'est pas disponible
+     */
+    public static ForceKernel vector() {
+        return VECTOR;
+    }
+
+    public static boolean isVectorAvailable() {
+        return VECTOR != null;
+    }
+
+    /**
+     * @return Le noyau SIMD s'il est disponible, le noyau scalaire sinon
+     */
+    public static ForceKernel preferred() {
+        return VECTOR != null ? VECTOR : scalar();
+    }
+
+    private static ForceKernel loadVectorKernel() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            log.info("Module {} non activé, noyau de force scalaire utilisé", VECTOR_MODULE);
+            return null;
+        }
+        try {
+            return (ForceKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Impossible de charger le noyau SIMD : {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package cyrildeschamps.core.service.simulation.physics.force;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+
+/**
+ * Stratégie de calcul des forces gravitationnelles.
+ * {@link #prepare(BodyStore)} est appelé une fois par tick, puis {@link #computeForce(BodyStore, int)}
+ * pour chaque corps ; une évaluation partielle passe par {@link #preparePartial(BodyStore, int)}. Ce dernier ne doit écrire que dans le slot 'target', ce qui permet de l'appeler
+ * depuis plusieurs threads sur des corps différents.
+ */
+public interface ForceSolver {
+
+    /**
+     * Prépare le solveur pour le tick courant (construction d'arbre, index...)
+     */
+    default void prepare(BodyStore store) { }
+
+    /**
+     * Prépare une évaluation partielle qui ne calculera la force que de 'count' corps (pas de temps par blocs).
+     * Par défaut {@link #prepare(BodyStore)} ; un solveur dont la préparation coûte plus que 'count' sommes directes
+     * peut s'en dispenser.
+     */
+    default void preparePartial(BodyStore store, int count) {
+        prepare(store);
+    }
+
+    /**
+     * Calcule la force totale subie par 'target' et l'écrit dans fx/fy/fz
+     */
+    void computeForce(BodyStore store, int target);
+
+    /**
+     * Nombre de sources qui agissent sur un corps, pour compter les interactions calculées.
+     * Par défaut celui de la somme directe, n - 1, dont les solveurs approchés donnent ainsi l'équivalent.
+     */
+    default int sourcesPerBody(BodyStore store) {
+        return Math.max(0, store.size() - 1);
+    }
+
+    /**
+     * Énergie potentielle correspondant à ces forces, en double. Par défaut toutes les paires, en O(n²).
+     */
+    default double potentialEnergy(BodyStore store) {
+        float[] x = store.getX(), y = store.getY(), z = store.getZ();
+        float[] mass = store.getMass();
+        int n = store.size();
+        double energy = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double dx = x[j] - x[i], dy = y[j] - y[i], dz = z[j] - z[i];
+                // Matches the softened force G m1 m2 / (r + SOFTENING)²
+                energy -= PhysicsEngine.G * mass[i] * mass[j] / (Math.sqrt(dx * dx + dy * dy + dz * dz) + PhysicsEngine.SOFTENING);
+            }
+        }
+        return energy;
+    }
+}
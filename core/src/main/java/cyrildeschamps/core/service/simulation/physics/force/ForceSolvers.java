@@ -0,0 +1,27 @@
+package cyrildeschamps.core.service.simulation.physics.force;
+
+import java.util.Locale;
+
+/**
+ * Sélection d'un solveur de forces par son nom de configuration
+ */
+public final class ForceSolvers {
+    public static final String BLACK_HOLE = "black-hole";
+    public static final String DIRECT = "direct";
+    public static final String BARNES_HUT = "barnes-hut";
+
+    private ForceSolvers() { }
+
+    /**
+     * @param name "black-hole" (par défaut du service), "direct" ou "barnes-hut"
+     * @throws IllegalArgumentException si le nom est inconnu
+     */
+    public static ForceSolver byName(String name) {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case BLACK_HOLE -> new BlackHoleForceSolver();
+            case DIRECT -> new DirectForceSolver();
+            case BARNES_HUT -> new BarnesHutForceSolver();
+            default -> throw new IllegalArgumentException("Unknown solver: " + name);
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package cyrildeschamps.core.service.simulation.physics.force;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.G;
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.SOFTENING;
+
+/**
+ * Noyau scalaire, une paire à la fois
+ */
+public class ScalarForceKernel implements ForceKernel {
+
+    @Override
+    public void accumulate(BodyStore store, int target, int from, int to) {
+        float[] x = store.getX(), y = store.getY(), z = store.getZ();
+        float[] mass = store.getMass();
+        float xi = x[target], yi = y[target], zi = z[target];
+        float gmi = G * mass[target];
+        float ax = 0, ay = 0, az = 0;
+        for (int j = from; j < to; j++) {
+            if (j == target) {
+                continue;
+            }
+            float dx = x[j] - xi;
+            float dy = y[j] - yi;
+            float dz = z[j] - zi;
+            float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) + SOFTENING;
+            float scale = (gmi * mass[j]) / (distance * distance * distance);
+            ax += dx * scale;
+            ay += dy * scale;
+            az += dz * scale;
+        }
+        store.getFx()[target] += ax;
+        store.getFy()[target] += ay;
+        store.getFz()[target] += az;
+    }
+}
@@ -0,0 +1,170 @@
+package cyrildeschamps.core.service.simulation.physics.integration;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Pas de temps individuels hiérarchiques (block timesteps) en kick-drift-kick.
+ * Chaque corps reçoit un niveau L et avance par pas de dt / 2^L, choisi d'après son temps caractéristique |v| / |a| :
+ * les étoiles qui frôlent un trou noir font beaucoup de petits pas, celles du bord de l'anneau un seul par tick.
+ * A chaque instant de synchronisation, tous les corps dérivent (O(n), peu coûteux) mais seules les forces des corps
+ * actifs, ceux dont le pas se termine, sont recalculées.
+ * Un corps ne peut allonger son pas qu'à un instant aligné sur ce nouveau pas : tous les corps sont synchronisés
+ * en fin de tick, ce qui permet de publier un snapshot cohérent.
+ */
+public class BlockTimestepIntegrator implements Integrator {
+    public static final int DEFAULT_MAX_LEVEL = 8;
+    public static final float DEFAULT_ACCURACY = 0.03F;
+
+    /** Niveau le plus fin : un tick est découpé en au plus 2^maxLevel pas */
+    @Getter
+    private final int maxLevel;
+    /** Fraction du temps caractéristique |v| / |a| couverte par un pas */
+    @Getter
+    private final float accuracy;
+
+    // Scratch buffers reused between ticks, only grow
+    private int[] levels = new int[0];
+    private int[] active = new int[0];
+    private final int[] levelCounts;
+    // Bodies currently at each level, the deepest occupied level sets the next synchronization
+    private final int[] population;
+    // Synchronization points of the last step, each one evaluates the forces of its active bodies
+    private int syncPoints = 1;
+
+    public BlockTimestepIntegrator() {
+        this(DEFAULT_MAX_LEVEL, DEFAULT_ACCURACY);
+    }
+
+    public BlockTimestepIntegrator(int maxLevel, float accuracy) {
+        if (maxLevel < 0 || maxLevel > 20) {
+            throw new IllegalArgumentException("maxLevel must be between 0 and 20");
+        }
+        this.maxLevel = maxLevel;
+        this.accuracy = accuracy;
+        this.levelCounts = new int[maxLevel + 1];
+        this.population = new int[maxLevel + 1];
+    }
+
+    @Override
+    public void step(PhysicsEngine engine, BodyStore store, float dt) {
+        int n = store.size();
+        if (levels.length < n) {
+            levels = new int[Math.max(n, levels.length * 2)];
+            active = new int[levels.length];
+        }
+        // Integer timeline: one tick is 2^maxLevel units, a body of level L moves by 2^(maxLevel - L) units
+        int units = 1 << maxLevel;
+        float unit = dt / units;
+
+        engine.ensureForces(store);
+        Arrays.fill(levelCounts, 0);
+        Arrays.fill(population, 0);
+        for (int i = 0; i < n; i++) {
+            levels[i] = level(store, i, dt, 0);
+            levelCounts[levels[i]]++;
+            population[levels[i]]++;
+            kick(store, i, 0.5F * unit * stride(levels[i]));
+        }
+
+        int t = 0;
+        syncPoints = 0;
+        while (t < units) {
+            syncPoints++;
+            // Every step starts on a multiple of its length, so the shortest one ends first
+            int shortest = stride(deepestLevel());
+            int next = (t / shortest + 1) * shortest;
+            engine.drift(store, (next - t) * unit);
+            t = next;
+
+            // Steps of level L end on multiples of 2^(maxLevel - L): t ends the steps of levels 'first' to maxLevel
+            int first = maxLevel - Integer.numberOfTrailingZeros(t);
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                if (levels[i] >= first) {
+                    active[count++] = i;
+                }
+            }
+            engine.calculateGravitationalForces(store, active, count);
+            for (int k = 0; k < count; k++) {
+                int i = active[k];
+                kick(store, i, 0.5F * unit * stride(levels[i]));
+                if (t < units) {
+                    population[levels[i]]--;
+                    levels[i] = level(store, i, dt, t);
+                    levelCounts[levels[i]]++;
+                    population[levels[i]]++;
+                    kick(store, i, 0.5F * unit * stride(levels[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Nombre de pas commencés à chaque niveau pendant le dernier tick, pour observer la répartition
+     */
+    public int[] getLevelCounts() {
+        return levelCounts.clone();
+    }
+
+    /**
+     * @return Le nombre d'instants de synchronisation du dernier pas : chacun évalue les forces de ses corps actifs,
+     * partiellement sauf le dernier où tous les corps se rejoignent. Il dépend des niveaux, donc de la configuration.
+     */
+    @Override
+    public int forceEvaluationsPerStep() {
+        return syncPoints;
+    }
+
+    private int deepestLevel() {
+        int level = maxLevel;
+        while (level > 0 && population[level] == 0) {
+            level--;
+        }
+        return level;
+    }
+
+    private int stride(int level) {
+        return 1 << (maxLevel - level);
+    }
+
+    /**
+     * Niveau voulu pour le corps i, rendu plus fin si besoin pour que son pas commence sur un multiple de sa longueur
+     */
+    private int level(BodyStore store, int i, float dt, int t) {
+        if (store.isBlackHole(i)) {
+            return 0;
+        }
+        float[] fx = store.getFx(), fy = store.getFy(), fz = store.getFz();
+        float[] vx = store.getVx(), vy = store.getVy(), vz = store.getVz();
+        float mass = store.getMass()[i];
+        double acceleration = Math.sqrt(fx[i] * fx[i] + fy[i] * fy[i] + fz[i] * fz[i]) / mass;
+        double speed = Math.sqrt(vx[i] * vx[i] + vy[i] * vy[i] + vz[i] * vz[i]);
+
+        int level = maxLevel;
+        if (acceleration == 0) {
+            level = 0;
+        } else if (speed > 0) {
+            double wanted = accuracy * speed / acceleration;
+            level = (int) Math.ceil(Math.log(dt / wanted) / Math.log(2));
+            level = Math.max(0, Math.min(maxLevel, level));
+        }
+        while (t % stride(level) != 0) {
+            level++;
+        }
+        return level;
+    }
+
+    private static void kick(BodyStore store, int i, float dt) {
+        if (store.isBlackHole(i)) {
+            return;
+        }
+        float scale = dt / store.getMass()[i];
+        store.getVx()[i] += store.getFx()[i] * scale;
+        store.getVy()[i] += store.getFy()[i] * scale;
+        store.getVz()[i] += store.getFz()[i] * scale;
+    }
+}
@@ -0,0 +1,22 @@
+package cyrildeschamps.core.service.simulation.physics.integration;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+
+/**
+ * Schéma d'intégration en temps. Un pas enchaîne des dérives (positions) et des poussées (vitesses)
+ * fournies par le {@link PhysicsEngine}, qui se charge du découpage parallèle et du calcul des forces.
+ * Voir {@link Integrators} pour obtenir une implémentation.
+ */
+public interface Integrator {
+
+    /**
+     * Avance tous les corps de 'dt'
+     */
+    void step(PhysicsEngine engine, BodyStore store, float dt);
+
+    /**
+     * @return Le nombre d'évaluations des forces par pas, en régime établi
+     */
+    int forceEvaluationsPerStep();
+}
@@ -0,0 +1,29 @@
+package cyrildeschamps.core.service.simulation.physics.integration;
+
+import java.util.Locale;
+
+/**
+ * Sélection d'un intégrateur par son nom de configuration
+ */
+public final class Integrators {
+    public static final String EULER = "euler";
+    public static final String VERLET = "verlet";
+    public static final String YOSHIDA4 = "yoshida4";
+    public static final String BLOCK = "block";
+
+    private Integrators() { }
+
+    /**
+     * @param name "euler", "verlet", "yoshida4" ("forest-ruth" est accepté comme alias) ou "block" (pas individuels)
+     * @throws IllegalArgumentException si le nom est inconnu
+     */
+    public static Integrator byName(String name) {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case EULER -> new SemiImplicitEulerIntegrator();
+            case VERLET -> new VelocityVerletIntegrator();
+            case YOSHIDA4, "forest-ruth" -> new Yoshida4Integrator();
+            case BLOCK -> new BlockTimestepIntegrator();
+            default -> throw new IllegalArgumentException("Unknown integrator: " + name);
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package cyrildeschamps.core.service.simulation.physics.integration;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+
+/**
+ * Euler semi-implicite (positions, forces, vitesses) : le schéma historique de la simulation.
+ * Ordre 1, l'énergie dérive vite sur les orbites serrées.
+ */
+public class SemiImplicitEulerIntegrator implements Integrator {
+
+    @Override
+    public void step(PhysicsEngine engine, BodyStore store, float dt) {
+        engine.drift(store, dt);
+        engine.calculateGravitationalForces(store);
+        engine.kick(store, dt);
+    }
+
+    @Override
+    public int forceEvaluationsPerStep() {
+        return 1;
+    }
+}
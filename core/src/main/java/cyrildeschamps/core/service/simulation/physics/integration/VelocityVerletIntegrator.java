@@ -0,0 +1,26 @@
+package cyrildeschamps.core.service.simulation.physics.integration;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+
+/**
+ * Velocity Verlet en kick-drift-kick : symplectique et d'ordre 2.
+ * Les forces de fin de pas servent au début du pas suivant, d'où une seule évaluation par pas comme Euler.
+ */
+public class VelocityVerletIntegrator implements Integrator {
+
+    @Override
+    public void step(PhysicsEngine engine, BodyStore store, float dt) {
+        float half = dt * 0.5F;
+        engine.ensureForces(store);
+        engine.kick(store, half);
+        engine.drift(store, dt);
+        engine.calculateGravitationalForces(store);
+        engine.kick(store, half);
+    }
+
+    @Override
+    public int forceEvaluationsPerStep() {
+        return 1;
+    }
+}
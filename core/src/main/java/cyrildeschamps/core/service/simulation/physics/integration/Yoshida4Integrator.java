@@ -0,0 +1,40 @@
+package cyrildeschamps.core.service.simulation.physics.integration;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+
+/**
+ * Intégrateur symplectique d'ordre 4 de Yoshida (identique à celui de Forest et Ruth) :
+ * trois pas de Verlet composés, dont un à rebours. Trois évaluations des forces par pas,
+ * mais une erreur en dt⁴ qui permet des pas bien plus longs à précision égale.
+ */
+public class Yoshida4Integrator implements Integrator {
+    private static final double CBRT2 = Math.cbrt(2);
+    private static final double W1 = 1 / (2 - CBRT2);
+    private static final double W0 = -CBRT2 / (2 - CBRT2);
+
+    // Drift (c) and kick (d) coefficients, c1 = c4 and c2 = c3
+    private static final float C1 = (float) (W1 / 2);
+    private static final float C2 = (float) ((W0 + W1) / 2);
+    private static final float D1 = (float) W1;
+    private static final float D2 = (float) W0;
+
+    @Override
+    public void step(PhysicsEngine engine, BodyStore store, float dt) {
+        engine.drift(store, C1 * dt);
+        engine.calculateGravitationalForces(store);
+        engine.kick(store, D1 * dt);
+        engine.drift(store, C2 * dt);
+        engine.calculateGravitationalForces(store);
+        engine.kick(store, D2 * dt);
+        engine.drift(store, C2 * dt);
+        engine.calculateGravitationalForces(store);
+        engine.kick(store, D1 * dt);
+        engine.drift(store, C1 * dt);
+    }
+
+    @Override
+    public int forceEvaluationsPerStep() {
+        return 3;
+    }
+}
@@ -0,0 +1,71 @@
+package cyrildeschamps.core.service.simulation.recording;
+
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+/**
+ * Format d'un enregistrement, little-endian, en ajout seul.
+ * En-tête de fichier : magic, version, période d'un tick en nanosecondes.
+ * Puis des records : type (u8), tick (u64), taille brute (u32), taille compressée (u32), contenu compressé (deflate).
+ * <ul>
+ *   <li>KEYFRAME : nombre de corps puis les ids en int, x, y, z, vx, vy, vz, mass en float et les flags</li>
+ *   <li>DELTA : nombre de corps, 6 pas en float puis x, y, z, vx, vy, vz quantifiés en int16 (écart à l'état reconstruit),
+ *   puis le nombre de corps trop rapides pour ces pas et, pour chacun, son index en int et ses 6 composantes en float
+ *   (leurs int16 valent 0)</li>
+ *   <li>COMMAND : type de commande (u8) puis son contenu (id du corps pour une suppression)</li>
+ * </ul>
+ * L'index creux (fichier .idx) contient un couple (tick, offset) en u64 par keyframe.
+ */
+final class RecordingFormat {
+    static final int MAGIC = 0x4352424E; // "NBRC"
+    static final int VERSION = 3;
+    static final int FILE_HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 17;
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    static final byte KEYFRAME = 1;
+    static final byte DELTA = 2;
+    static final byte COMMAND = 3;
+
+    static final byte CREATE_BODIES = 1;
+    static final byte DELETE_BODY = 2;
+    static final byte RESET = 3;
+
+    /** Composantes quantifiées des frames delta, dans l'ordre du format */
+    static final int COMPONENTS = 6;
+
+    /** Erreur maximale d'une composante quantifiée, en unités du monde, avant l'arrondi du float reconstruit */
+    static final float MAX_ERROR = 1e-4f;
+
+    private RecordingFormat() {
+    }
+
+    static Path indexFile(Path recording) {
+        return recording.resolveSibling(recording.getFileName() + ".idx");
+    }
+
+    static float component(WorldSnapshot snapshot, int component, int i) {
+        return switch (component) {
+            case 0 -> snapshot.getX(i);
+            case 1 -> snapshot.getY(i);
+            case 2 -> snapshot.getZ(i);
+            case 3 -> snapshot.getVx(i);
+            case 4 -> snapshot.getVy(i);
+            default -> snapshot.getVz(i);
+        };
+    }
+
+    /**
+     * Tampon little-endian d'au moins 'capacity' octets, réutilisé s'il est assez grand
+     */
+    static ByteBuffer ensureCapacity(ByteBuffer buffer, int capacity) {
+        if (buffer != null && buffer.capacity() >= capacity) {
+            return buffer.clear();
+        }
+        int size = buffer == null ? capacity : Math.max(capacity, buffer.capacity() * 2);
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,316 @@
+package cyrildeschamps.core.service.simulation.recording;
+
+import cyrildeschamps.core.service.simulation.BodyBatch;
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.SimulationCommand;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static cyrildeschamps.core.service.simulation.recording.RecordingFormat.*;
+
+/**
+ * Relit un enregistrement record par record en reconstruisant le monde, sans aucun calcul physique.
+ * Le déplacement vers un tick part de la keyframe précédente trouvée dans l'index creux.
+ * Un record incomplet en fin de fichier (enregistrement interrompu) est traité comme la fin du fichier.
+ */
+public class RecordingReader implements AutoCloseable {
+    private final FileChannel in;
+    private final long fileSize;
+    @Getter
+    private final long periodNanos;
+
+    // Sparse index: tick and file offset of every keyframe
+    private long[] keyframeTicks;
+    private long[] keyframeOffsets;
+
+    private final BodyStore world = new BodyStore();
+    private final Inflater inflater = new Inflater();
+    private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer compressed;
+    private ByteBuffer raw;
+
+    private long position = FILE_HEADER_SIZE;
+    /** Tick de l'état reconstruit, -1 avant la première keyframe */
+    @Getter
+    private long tick = -1;
+    /** Dernière commande lue par {@link #next()}, avec un résultat jamais complété */
+    @Getter
+    private SimulationCommand command;
+
+    public RecordingReader(Path file) throws IOException {
+        in = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            fileSize = in.size();
+            ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (!readFully(fileHeader, 0) || fileHeader.flip().getInt() != MAGIC) {
+                throw new IOException("Not a recording: " + file);
+            }
+            int version = fileHeader.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported recording version " + version);
+            }
+            periodNanos = fileHeader.getLong();
+            loadIndex(indexFile(file));
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Lit le record suivant
+     * @return Son type ({@link RecordingFormat#KEYFRAME}, {@link RecordingFormat#DELTA} ou
+     *         {@link RecordingFormat#COMMAND}), ou 0 en fin de fichier
+     */
+    public byte next() throws IOException {
+        header.clear();
+        if (!readFully(header, position)) {
+            return 0;
+        }
+        header.flip();
+        byte type = header.get();
+        long recordTick = header.getLong();
+        int rawLength = header.getInt();
+        int compressedLength = header.getInt();
+        compressed = ensureCapacity(compressed, compressedLength);
+        compressed.limit(compressedLength);
+        if (!readFully(compressed, position + RECORD_HEADER_SIZE)) {
+            return 0;
+        }
+        inflate(compressed.flip(), rawLength);
+        position += RECORD_HEADER_SIZE + compressedLength;
+
+        switch (type) {
+            case KEYFRAME -> {
+                world.load(raw.getInt(), raw);
+                tick = recordTick;
+            }
+            case DELTA -> {
+                applyDelta();
+                tick = recordTick;
+            }
+            case COMMAND -> command = decodeCommand();
+            default -> throw new IOException("Unknown record type " + type);
+        }
+        return type;
+    }
+
+    /**
+     * Avance jusqu'à la frame suivante en sautant les commandes
+     * @return false en fin de fichier
+     */
+    public boolean nextFrame() throws IOException {
+        byte type;
+        while ((type = next()) == COMMAND) {
+            // Commands are already reflected in the frames
+        }
+        return type != 0;
+    }
+
+    /**
+     * Place l'état sur la dernière frame de tick inférieur ou égal à 'target' (la première frame si 'target' la précède).
+     * Repart de la keyframe précédente de l'index, ou continue depuis l'état courant s'il est plus proche.
+     */
+    public void seek(long target) throws IOException {
+        if (keyframeTicks.length == 0) {
+            return;
+        }
+        int k = Arrays.binarySearch(keyframeTicks, target);
+        k = k >= 0 ? k : Math.max(0, -k - 2);
+        if (tick < keyframeTicks[k] || tick > target) {
+            position = keyframeOffsets[k];
+            tick = -1;
+            nextFrame();
+        }
+        long next;
+        while ((next = peekFrameTick()) >= 0 && next <= target) {
+            nextFrame();
+        }
+    }
+
+    /**
+     * @return true s'il ne reste aucune frame à lire
+     */
+    public boolean isAtEnd() throws IOException {
+        return peekFrameTick() < 0;
+    }
+
+    /**
+     * @return Le tick de la prochaine frame sans la lire (les commandes intermédiaires sont sautées), -1 en fin de fichier
+     */
+    private long peekFrameTick() throws IOException {
+        while (readFully(header.clear(), position)) {
+            header.flip();
+            byte type = header.get();
+            long recordTick = header.getLong();
+            header.getInt();
+            int compressedLength = header.getInt();
+            if (type != COMMAND) {
+                return position + RECORD_HEADER_SIZE + compressedLength <= fileSize ? recordTick : -1;
+            }
+            position += RECORD_HEADER_SIZE + compressedLength;
+        }
+        return -1;
+    }
+
+    /**
+     * Copie immuable de l'état reconstruit
+     * @param tick Numéro de tick à donner au snapshot
+     */
+    public WorldSnapshot snapshot(long tick) {
+        return WorldSnapshot.capture(world, tick, System.currentTimeMillis());
+    }
+
+    /**
+     * @return Le tick de la première keyframe, -1 si l'enregistrement n'en contient aucune
+     */
+    public long getFirstTick() {
+        return keyframeTicks.length == 0 ? -1 : keyframeTicks[0];
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    private void applyDelta() throws IOException {
+        int n = raw.getInt();
+        if (n != world.size()) {
+            throw new IOException("Delta for " + n + " bodies on a world of " + world.size());
+        }
+        float[] steps = new float[COMPONENTS];
+        for (int c = 0; c < COMPONENTS; c++) {
+            steps[c] = raw.getFloat();
+        }
+        float[][] targets = {world.getX(), world.getY(), world.getZ(), world.getVx(), world.getVy(), world.getVz()};
+        for (int c = 0; c < COMPONENTS; c++) {
+            float[] values = targets[c];
+            float step = steps[c];
+            for (int i = 0; i < n; i++) {
+                values[i] += raw.getShort() * step;
+            }
+        }
+        int outliers = raw.getInt();
+        for (int k = 0; k < outliers; k++) {
+            int i = raw.getInt();
+            if (i < 0 || i >= n) {
+                throw new IOException("Raw body " + i + " outside a world of " + n);
+            }
+            for (float[] values : targets) {
+                values[i] = raw.getFloat();
+            }
+        }
+    }
+
+    private SimulationCommand decodeCommand() throws IOException {
+        byte kind = raw.get();
+        return switch (kind) {
+            case CREATE_BODIES -> {
+                int n = raw.getInt();
+                float[][] arrays = new float[7][n];
+                for (float[] array : arrays) {
+                    for (int i = 0; i < n; i++) {
+                        array[i] = raw.getFloat();
+                    }
+                }
+                BodyBatch batch = new BodyBatch(n);
+                for (int i = 0; i < n; i++) {
+                    boolean blackHole = (raw.get() & BodyStore.FLAG_BLACK_HOLE) != 0;
+                    batch.add(arrays[0][i], arrays[1][i], arrays[2][i], arrays[3][i], arrays[4][i], arrays[5][i],
+                        arrays[6][i], blackHole);
+                }
+                yield new SimulationCommand.CreateBodies(batch, new CompletableFuture<>());
+            }
+            case DELETE_BODY -> new SimulationCommand.DeleteBody(raw.getInt(), new CompletableFuture<>());
+            case RESET -> new SimulationCommand.Reset(new CompletableFuture<>());
+            default -> throw new IOException("Unknown command " + kind);
+        };
+    }
+
+    private void inflate(ByteBuffer source, int rawLength) throws IOException {
+        raw = ensureCapacity(raw, rawLength);
+        raw.limit(rawLength);
+        inflater.reset();
+        inflater.setInput(source);
+        try {
+            while (raw.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(raw) == 0 && inflater.needsInput()) {
+                    throw new IOException("Truncated record at " + position);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted record at " + position, e);
+        }
+        raw.flip();
+    }
+
+    private void loadIndex(Path indexFile) throws IOException {
+        if (Files.exists(indexFile)) {
+            ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile)).order(ByteOrder.LITTLE_ENDIAN);
+            int entries = index.remaining() / INDEX_ENTRY_SIZE;
+            keyframeTicks = new long[entries];
+            keyframeOffsets = new long[entries];
+            int valid = 0;
+            for (int i = 0; i < entries; i++) {
+                long entryTick = index.getLong();
+                long offset = index.getLong();
+                if (offset < fileSize) {
+                    keyframeTicks[valid] = entryTick;
+                    keyframeOffsets[valid++] = offset;
+                }
+            }
+            keyframeTicks = Arrays.copyOf(keyframeTicks, valid);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, valid);
+            return;
+        }
+        // No sidecar index: scan the record headers once
+        long[] ticks = new long[16];
+        long[] offsets = new long[16];
+        int count = 0;
+        long offset = FILE_HEADER_SIZE;
+        while (readFully(header.clear(), offset)) {
+            header.flip();
+            byte type = header.get();
+            long recordTick = header.getLong();
+            header.getInt();
+            int compressedLength = header.getInt();
+            if (type == KEYFRAME) {
+                if (count == ticks.length) {
+                    ticks = Arrays.copyOf(ticks, count * 2);
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                ticks[count] = recordTick;
+                offsets[count++] = offset;
+            }
+            offset += RECORD_HEADER_SIZE + compressedLength;
+        }
+        keyframeTicks = Arrays.copyOf(ticks, count);
+        keyframeOffsets = Arrays.copyOf(offsets, count);
+    }
+
+    // Positional read, false when the file ends before the buffer is full
+    private boolean readFully(ByteBuffer buffer, long offset) throws IOException {
+        long at = offset;
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, at);
+            if (read < 0) {
+                return false;
+            }
+            at += read;
+        }
+        return true;
+    }
+}
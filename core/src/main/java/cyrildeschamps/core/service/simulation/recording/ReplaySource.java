@@ -0,0 +1,97 @@
+package cyrildeschamps.core.service.simulation.recording;
+
+import cyrildeschamps.core.service.simulation.SnapshotSource;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * Rejoue un enregistrement en temps réel, à la cadence d'origine, en boucle.
+ * Les snapshots portent un numéro de lecture croissant et non le tick enregistré : un retour en arrière
+ * (seek, nouvelle boucle) reste ainsi une frame "plus récente" pour les encodeurs de flux.
+ */
+@Slf4j
+public class ReplaySource implements SnapshotSource, AutoCloseable {
+    private final RecordingReader reader;
+    /** Période d'un tick enregistré */
+    @Getter
+    private final long periodNanos;
+
+    private long startTick;
+    private long startNanos;
+    private long playbackTick;
+    private WorldSnapshot current;
+
+    public ReplaySource(Path file) throws IOException {
+        reader = new RecordingReader(file);
+        periodNanos = Math.max(1, reader.getPeriodNanos());
+        if (!reader.nextFrame()) {
+            reader.close();
+            throw new IOException("Empty recording: " + file);
+        }
+        restart(reader.getTick());
+    }
+
+    /**
+     * Le snapshot correspondant au temps écoulé depuis le début de la lecture.
+     * Ne décode que les frames écoulées depuis l'appel précédent, quelle que soit la fréquence des appels.
+     */
+    @Override
+    public synchronized WorldSnapshot getSnapshot() {
+        long target = startTick + (System.nanoTime() - startNanos) / periodNanos;
+        if (target > reader.getTick()) {
+            long before = reader.getTick();
+            try {
+                reader.seek(target);
+                if (reader.getTick() == before && reader.isAtEnd()) {
+                    // Recording over: loop from the first frame
+                    reader.seek(reader.getFirstTick());
+                    restart(reader.getTick());
+                } else if (reader.getTick() != before) {
+                    publish();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Reprend la lecture au tick enregistré donné
+     */
+    public synchronized void seek(long tick) throws IOException {
+        reader.seek(tick);
+        restart(reader.getTick());
+    }
+
+    /**
+     * @return Le tick enregistré actuellement affiché
+     */
+    public synchronized long getRecordedTick() {
+        return reader.getTick();
+    }
+
+    private void restart(long tick) {
+        startTick = tick;
+        startNanos = System.nanoTime();
+        publish();
+    }
+
+    private void publish() {
+        current = reader.snapshot(++playbackTick);
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.warn("Fermeture de l'enregistrement impossible : {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package cyrildeschamps.core.service.simulation.recording;
+
+import cyrildeschamps.core.service.simulation.BodyBatch;
+import cyrildeschamps.core.service.simulation.SimulationCommand;
+import cyrildeschamps.core.service.simulation.SimulationListener;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import static cyrildeschamps.core.service.simulation.recording.RecordingFormat.*;
+
+/**
+ * Enregistre les snapshots et les commandes d'une simulation dans un fichier en ajout seul (voir {@link RecordingFormat}).
+ * Le thread de simulation ne fait que déposer des références dans une file bornée : si l'écriture prend du retard,
+ * les entrées en trop sont abandonnées et comptées au lieu de ralentir les ticks.
+ * En mode sans perte (simulation hors ligne), la simulation attend au contraire que la file se libère.
+ */
+@Slf4j
+public class SimulationRecorder implements SimulationListener, AutoCloseable {
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+    public static final int DEFAULT_BUFFER_CAPACITY = 256;
+
+    // Deltas are taken against what the reader reconstructs, so the quantization error never accumulates
+    private static final int MAX_QUANTIZED = Short.MAX_VALUE - 1;
+    private static final float MIN_STEP = 1e-6f;
+    // Rounding to the nearest step keeps the error under half a step
+    private static final float MAX_STEP = 2 * MAX_ERROR;
+    // Past one body in 8 written raw, a keyframe is about as large and resets the reconstruction
+    private static final int MAX_OUTLIER_FRACTION = 8;
+
+    private record CommandEntry(long tick, SimulationCommand command) { }
+
+    private final FileChannel out;
+    private final FileChannel index;
+    private final int keyframeInterval;
+    private final BlockingQueue<Object> queue;
+    private final boolean lossless;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+
+    // Writer thread only
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer raw;
+    private ByteBuffer compressed;
+    private float[][] reconstructed = new float[COMPONENTS][0];
+    private final float[] steps = new float[COMPONENTS];
+    private boolean[] outliers = new boolean[0];
+    private int outlierCount;
+    private int count = -1;
+    private long structureVersion;
+    private int sinceKeyframe;
+    private long position;
+
+    public SimulationRecorder(Path file, long periodNanos) throws IOException {
+        this(file, periodNanos, DEFAULT_KEYFRAME_INTERVAL, DEFAULT_BUFFER_CAPACITY);
+    }
+
+    public SimulationRecorder(Path file, long periodNanos, int keyframeInterval, int bufferCapacity) throws IOException {
+        this(file, periodNanos, keyframeInterval, bufferCapacity, false);
+    }
+
+    /**
+     * Crée (ou écrase) l'enregistrement et démarre son thread d'écriture
+     * @param periodNanos Période d'un tick, pour rejouer à la vitesse d'origine
+     * @param lossless true pour bloquer la simulation quand la file est pleine au lieu d'abandonner des entrées
+     */
+    public SimulationRecorder(Path file, long periodNanos, int keyframeInterval, int bufferCapacity, boolean lossless)
+        throws IOException {
+        this.lossless = lossless;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, bufferCapacity));
+        this.out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.index = FileChannel.open(indexFile(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(MAGIC).putInt(VERSION).putLong(periodNanos).flip();
+        writeFully(out, fileHeader);
+        position = FILE_HEADER_SIZE;
+
+        writer = new Thread(this::writeLoop, "NBodyRecorder-" + file.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void onSnapshot(WorldSnapshot snapshot) {
+        offer(snapshot);
+    }
+
+    @Override
+    public void onCommand(long tick, SimulationCommand command) {
+        offer(new CommandEntry(tick, command));
+    }
+
+    private void offer(Object entry) {
+        if (closed) {
+            dropped.incrementAndGet();
+        } else if (lossless) {
+            put(entry);
+        } else if (!queue.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void put(Object entry) {
+        try {
+            // The writer may stop on an I/O error, do not wait for it forever
+            while (!queue.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Le nombre de snapshots et de commandes abandonnés faute de place dans la file
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return Le nombre d'entrées en attente d'écriture
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return Le nombre de frames (keyframes et deltas) écrites
+     */
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    /**
+     * Écrit les entrées encore en file puis ferme le fichier
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        try (out; index) {
+            while (!closed || !queue.isEmpty()) {
+                Object entry = queue.poll(100, TimeUnit.MILLISECONDS);
+                switch (entry) {
+                    case null -> { }
+                    case WorldSnapshot snapshot -> writeFrame(snapshot);
+                    case CommandEntry command -> writeCommand(command.tick(), command.command());
+                    default -> throw new IllegalStateException("Unknown entry " + entry);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Échec de l'enregistrement : {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closed = true;
+            deflater.end();
+        }
+    }
+
+    private void writeFrame(WorldSnapshot snapshot) throws IOException {
+        int n = snapshot.size();
+        boolean keyframe = n != count || snapshot.getStructureVersion() != structureVersion
+            || sinceKeyframe >= keyframeInterval || !computeSteps(snapshot);
+        if (keyframe) {
+            raw = ensureCapacity(raw, Integer.BYTES + n * (Integer.BYTES + 7 * Float.BYTES + 1));
+            raw.putInt(n);
+            snapshot.writeArrays(raw);
+            resetReconstruction(snapshot);
+            writeRecord(KEYFRAME, snapshot.getTick(), raw.flip());
+            sinceKeyframe = 1;
+        } else {
+            raw = ensureCapacity(raw, Integer.BYTES + COMPONENTS * Float.BYTES + COMPONENTS * n * Short.BYTES
+                + Integer.BYTES + outlierCount * (Integer.BYTES + COMPONENTS * Float.BYTES));
+            raw.putInt(n);
+            for (float step : steps) {
+                raw.putFloat(step);
+            }
+            for (int c = 0; c < COMPONENTS; c++) {
+                float[] values = reconstructed[c];
+                float step = steps[c];
+                for (int i = 0; i < n; i++) {
+                    if (outliers[i]) {
+                        raw.putShort((short) 0);
+                        continue;
+                    }
+                    int q = Math.round((component(snapshot, c, i) - values[i]) / step);
+                    q = Math.max(-MAX_QUANTIZED, Math.min(MAX_QUANTIZED, q));
+                    raw.putShort((short) q);
+                    // Same arithmetic as the reader, so both sides stay bit-identical
+                    values[i] += q * step;
+                }
+            }
+            raw.putInt(outlierCount);
+            for (int i = 0; i < n && outlierCount > 0; i++) {
+                if (outliers[i]) {
+                    raw.putInt(i);
+                    for (int c = 0; c < COMPONENTS; c++) {
+                        float value = component(snapshot, c, i);
+                        raw.putFloat(value);
+                        reconstructed[c][i] = value;
+                    }
+                }
+            }
+            writeRecord(DELTA, snapshot.getTick(), raw.flip());
+            sinceKeyframe++;
+        }
+        frames.incrementAndGet();
+    }
+
+    /**
+     * Pas de quantification de chaque composante, borné pour que l'erreur reste sous {@link RecordingFormat#MAX_ERROR}.
+     * Les corps dont l'écart ne tient pas dans 16 bits avec ces pas (un passage près d'un trou noir) sont marqués
+     * pour être écrits tels quels, sans dégrader la précision des autres.
+     * @return false si un écart n'est pas fini ou si trop de corps sont marqués, il faut alors une keyframe
+     */
+    private boolean computeSteps(WorldSnapshot snapshot) {
+        int n = snapshot.size();
+        for (int c = 0; c < COMPONENTS; c++) {
+            float[] values = reconstructed[c];
+            float maxDelta = 0;
+            for (int i = 0; i < n; i++) {
+                maxDelta = Math.max(maxDelta, Math.abs(component(snapshot, c, i) - values[i]));
+            }
+            if (!Float.isFinite(maxDelta)) {
+                return false;
+            }
+            steps[c] = Math.min(Math.max(maxDelta / MAX_QUANTIZED, MIN_STEP), MAX_STEP);
+        }
+        if (outliers.length < n) {
+            outliers = new boolean[n];
+        }
+        outlierCount = 0;
+        for (int i = 0; i < n; i++) {
+            boolean outlier = false;
+            for (int c = 0; c < COMPONENTS && !outlier; c++) {
+                outlier = Math.abs(component(snapshot, c, i) - reconstructed[c][i]) > MAX_QUANTIZED * steps[c];
+            }
+            outliers[i] = outlier;
+            if (outlier) {
+                outlierCount++;
+            }
+        }
+        return outlierCount <= n / MAX_OUTLIER_FRACTION;
+    }
+
+    private void resetReconstruction(WorldSnapshot snapshot) {
+        int n = snapshot.size();
+        if (reconstructed[0].length < n) {
+            reconstructed = new float[COMPONENTS][n];
+        }
+        for (int c = 0; c < COMPONENTS; c++) {
+            for (int i = 0; i < n; i++) {
+                reconstructed[c][i] = component(snapshot, c, i);
+            }
+        }
+        count = n;
+        structureVersion = snapshot.getStructureVersion();
+    }
+
+    private void writeCommand(long tick, SimulationCommand command) throws IOException {
+        switch (command) {
+            case SimulationCommand.CreateBodies create -> {
+                BodyBatch batch = create.batch();
+                int n = batch.size();
+                raw = ensureCapacity(raw, 1 + Integer.BYTES + n * (7 * Float.BYTES + 1));
+                raw.put(CREATE_BODIES).putInt(n);
+                for (float[] array : new float[][]{batch.getX(), batch.getY(), batch.getZ(),
+                        batch.getVx(), batch.getVy(), batch.getVz(), batch.getMass()}) {
+                    for (int i = 0; i < n; i++) {
+                        raw.putFloat(array[i]);
+                    }
+                }
+                raw.put(batch.getFlags(), 0, n);
+            }
+            case SimulationCommand.DeleteBody delete -> {
+                raw = ensureCapacity(raw, 1 + Integer.BYTES);
+                raw.put(DELETE_BODY).putInt(delete.id());
+            }
+            case SimulationCommand.Reset reset -> {
+                raw = ensureCapacity(raw, 1);
+                raw.put(RESET);
+            }
+        }
+        writeRecord(COMMAND, tick, raw.flip());
+    }
+
+    private void writeRecord(byte type, long tick, ByteBuffer payload) throws IOException {
+        int rawLength = payload.remaining();
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        compressed = ensureCapacity(compressed, rawLength / 2 + 64);
+        while (!deflater.finished()) {
+            if (!compressed.hasRemaining()) {
+                compressed = grow(compressed);
+            }
+            deflater.deflate(compressed);
+        }
+        compressed.flip();
+
+        header.clear().put(type).putLong(tick).putInt(rawLength).putInt(compressed.remaining()).flip();
+        long offset = position;
+        position += header.remaining() + compressed.remaining();
+        writeFully(out, header);
+        writeFully(out, compressed);
+        // Indexed once written: the index never points past the data
+        if (type == KEYFRAME) {
+            indexEntry.clear().putLong(tick).putLong(offset).flip();
+            writeFully(index, indexEntry);
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+        return larger.put(buffer.flip());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package cyrildeschamps.core.metrics;
+
+import cyrildeschamps.core.service.simulation.Simulation;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+@QuarkusTest
+class PrometheusWriterTest {
+
+    @Test
+    void samplesOfOneMetricShouldShareASingleHeader() {
+        String page = new PrometheusWriter()
+            .counter("frames_total", "Frames", 3, "room", "a")
+            .gauge("bodies", "Bodies", 10)
+            .counter("frames_total", "Frames", 5, "room", "b")
+            .toString();
+
+        assert page.indexOf("# TYPE frames_total counter") == page.lastIndexOf("# TYPE frames_total counter")
+            : "A metric should be declared once";
+        assert page.contains("frames_total{room=\"a\"} 3\nframes_total{room=\"b\"} 5\n")
+            : "Samples should be grouped under their metric: " + page;
+        assert page.contains("bodies 10\n") : "Unlabelled samples should have no braces";
+    }
+
+    @Test
+    void summaryShouldExposeQuantilesInSeconds() {
+        Timer timer = new Timer();
+        for (int i = 1; i <= 100; i++) {
+            timer.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        String page = new PrometheusWriter().summary("phase_seconds", "Phase", timer, "phase", "forces").toString();
+
+        assert page.contains("# TYPE phase_seconds summary") : "Timers should be summaries";
+        double median = sampleValue(page, "phase_seconds{phase=\"forces\",quantile=\"0.5\"} ");
+        assert Math.abs(median - 0.05) <= 0.05 * 0.01 : "The median should be within the 2 digit precision: " + page;
+        assert page.contains("phase_seconds_count{phase=\"forces\"} 100") : page;
+        assert page.contains("phase_seconds_sum{phase=\"forces\"} 5.05") : page;
+    }
+
+    @Test
+    void labelValuesShouldBeEscaped() {
+        String page = new PrometheusWriter().gauge("g", "G", 1, "name", "a\"b\\c").toString();
+
+        assert page.contains("g{name=\"a\\\"b\\\\c\"} 1") : page;
+    }
+
+    @Test
+    void simulationShouldReportItsPhases() {
+        Simulation simulation = new Simulation("metrics");
+        simulation.getStore().add(0, 0, 0, 0, 0, 0, 10, false);
+        simulation.getStore().add(1, 0, 0, 0, 0, 0, 10, false);
+        simulation.getPhysicsEngine().calculateGravitationalForces(simulation.getStore());
+
+        String page = writeMetrics(simulation);
+
+        assert page.contains("nbody_physics_phase_seconds_count{room=\"metrics\",phase=\"forces\"} 1") : page;
+        assert page.contains("nbody_force_evaluations_total{room=\"metrics\"} 1") : page;
+    }
+
+    private static double sampleValue(String page, String prefix) {
+        int start = page.indexOf(prefix);
+        assert start >= 0 : "Missing sample " + prefix + " in " + page;
+        start += prefix.length();
+        return Double.parseDouble(page.substring(start, page.indexOf('\n', start)));
+    }
+
+    private static String writeMetrics(Simulation simulation) {
+        PrometheusWriter out = new PrometheusWriter();
+        simulation.writeMetrics(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package cyrildeschamps.core.service.simulation;
+
+import cyrildeschamps.core.service.simulation.recording.RecordingReader;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+@QuarkusTest
+class BatchRunTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void runShouldRecordOneFramePerSample() throws IOException {
+        Path output = dir.resolve("batch.nbrec");
+
+        BatchRun.Report report = BatchRun.run(BatchRun.Options.parse(
+            "--steps=20", "--warmup=3", "--bodies=200", "--solver=direct", "--sample-every=5", "--output=" + output));
+
+        assert report.steps() == 20 && report.bodies() == 200 : "The report should describe the measured run";
+        assert report.bodyForces() >= 20 * 200 : "Every step should compute the force of every body";
+        assert report.stepsPerSecond() > 0 && report.interactionsPerSecond() > report.stepsPerSecond() : report;
+        List<Long> ticks = new ArrayList<>();
+        try (RecordingReader reader = new RecordingReader(output)) {
+            while (reader.nextFrame()) {
+                ticks.add(reader.getTick());
+            }
+        }
+        // State after the warm-up, every fifth tick, then the last one
+        assert ticks.equals(List.of(3L, 5L, 10L, 15L, 20L, 23L)) : "Unexpected recorded ticks " + ticks;
+        assert report.framesWritten() == ticks.size() && report.framesDropped() == 0 : "A batch run should not drop frames";
+    }
+
+    @Test
+    void sameSeedShouldGiveTheSameWorld() throws IOException {
+        Path first = dir.resolve("first.nbck");
+        Path second = dir.resolve("second.nbck");
+
+        BatchRun.run(BatchRun.Options.parse("--steps=10", "--bodies=100", "--seed=7", "--save=" + first));
+        BatchRun.run(BatchRun.Options.parse("--steps=10", "--bodies=100", "--seed=7", "--save=" + second));
+
+        BodyStore a = new BodyStore();
+        BodyStore b = new BodyStore();
+        assert SimulationCheckpoint.restore(first, a) == 10 : "The checkpoint should hold the last tick";
+        SimulationCheckpoint.restore(second, b);
+        for (int i = 0; i < a.size(); i++) {
+            assert a.getX()[i] == b.getX()[i] && a.getVy()[i] == b.getVy()[i] : "Runs should be reproducible";
+        }
+    }
+
+    @Test
+    void defaultWorldShouldFollowTheSeed() throws IOException {
+        Path first = dir.resolve("default-first.nbck");
+        Path second = dir.resolve("default-second.nbck");
+
+        BatchRun.run(BatchRun.Options.parse("--steps=2", "--save=" + first));
+        BatchRun.run(BatchRun.Options.parse("--steps=2", "--save=" + second));
+
+        BodyStore a = new BodyStore();
+        BodyStore b = new BodyStore();
+        SimulationCheckpoint.restore(first, a);
+        SimulationCheckpoint.restore(second, b);
+        assert a.size() == Simulation.NB_PARTICLES + 1 : "The default world should have the service's size";
+        for (int i = 0; i < a.size(); i++) {
+            assert a.getX()[i] == b.getX()[i] && a.getVy()[i] == b.getVy()[i] : "Default runs should be reproducible";
+        }
+    }
+
+    @Test
+    void unknownOptionsShouldBeRejected() {
+        try {
+            BatchRun.Options.parse("--step=10");
+            assert false : "A misspelled option should be rejected";
+        } catch (IllegalArgumentException expected) {
+            assert expected.getMessage().contains("step") : expected.getMessage();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package cyrildeschamps.core.service.simulation;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class BodyStoreTest {
+
+    @Test
+    void addShouldGrowBeyondInitialCapacity() {
+        BodyStore store = new BodyStore(2);
+        for (int i = 0; i < 10; i++) {
+            store.add(i, i, i, 0, 0, 0, 1f, false);
+        }
+
+        assert store.size() == 10 : "All bodies should be stored";
+        assert store.capacity() >= 10 : "Capacity should grow";
+        assert store.getX()[9] == 9f : "Values should survive reallocation";
+    }
+
+    @Test
+    void viewShouldReturnSameInstanceForSameSlot() {
+        BodyStore store = new BodyStore();
+        store.add(1f, 2f, 3f, 0, 0, 0, 1f, false);
+
+        assert store.view(0) == store.view(0) : "Views should be cached per slot";
+        assert store.asList().contains(store.view(0)) : "List view should expose the cached view";
+    }
+
+    @Test
+    void viewShouldWriteThroughToArrays() {
+        BodyStore store = new BodyStore();
+        store.add(0, 0, 0, 0, 0, 0, 1f, false);
+
+        Body body = store.view(0);
+        body.setX(4f);
+        body.setVy(5f);
+        body.setBlackHole(true);
+
+        assert store.getX()[0] == 4f : "Position should be written in the store";
+        assert store.getVy()[0] == 5f : "Velocity should be written in the store";
+        assert store.isBlackHole(0) : "Flag should be written in the store";
+    }
+
+    @Test
+    void removeShouldShiftFollowingBodiesAndKeepViewsInSync() {
+        BodyStore store = new BodyStore();
+        store.add(0f, 0, 0, 0, 0, 0, 1f, false);
+        store.add(1f, 0, 0, 0, 0, 0, 1f, false);
+        store.add(2f, 0, 0, 0, 0, 0, 1f, false);
+        Body removed = store.view(1);
+        Body last = store.view(2);
+
+        boolean result = store.remove(1);
+
+        assert result : "Removal should succeed";
+        assert store.size() == 2 : "Size should shrink";
+        assert last.getX() == 2f : "Shifted view should still point to its body";
+        assert store.view(1) == last : "Shifted view should be reused at its new slot";
+        assert removed.getX() == 1f : "Removed view should keep its values";
+        removed.setX(10f);
+        assert store.getX()[0] == 0f && store.getX()[1] == 2f : "Removed view should be detached from the store";
+    }
+
+    @Test
+    void removeShouldRejectInvalidIndex() {
+        BodyStore store = new BodyStore();
+        store.add(0, 0, 0, 0, 0, 0, 1f, false);
+
+        assert !store.remove(-1) : "Negative index should be rejected";
+        assert !store.remove(1) : "Out of range index should be rejected";
+        assert store.size() == 1 : "No body should be removed";
+    }
+
+    @Test
+    void firstBlackHoleShouldFindFlaggedBody() {
+        BodyStore store = new BodyStore();
+        store.add(0, 0, 0, 0, 0, 0, 1f, false);
+        store.add(0, 0, 0, 0, 0, 0, 5e5f, true);
+
+        assert store.firstBlackHole() == 1 : "Black hole should be found at index 1";
+        store.clear();
+        assert store.firstBlackHole() == -1 : "Empty store has no black hole";
+    }
+
+    @Test
+    void addAllShouldAppendBatchInOnePass() {
+        BodyStore store = new BodyStore(1);
+        store.add(0, 0, 0, 0, 0, 0, 1f, false);
+        BodyBatch batch = new BodyBatch(1);
+        for (int i = 1; i <= 100; i++) {
+            batch.add(i, 0, 0, 0, 0, 0, 2f, i % 2 == 0);
+        }
+
+        int first = store.addAll(batch);
+
+        assert first == 1 : "Batch should start after existing bodies";
+        assert store.size() == 101 : "Every body of the batch should be inserted";
+        assert store.getX()[100] == 100f : "Positions should be copied";
+        assert store.isBlackHole(2) && !store.isBlackHole(1) : "Flags should be copied";
+    }
+
+    @Test
+    void removeMarkedShouldCompactInOnePassAndKeepOrder() {
+        BodyStore store = new BodyStore();
+        for (int i = 0; i < 6; i++) {
+            store.add(i, 0, 0, 0, 0, 0, 1f, false);
+        }
+        Body removed = store.view(1);
+        Body kept = store.view(4);
+        long version = store.getStructureVersion();
+
+        int count = store.removeMarked(new boolean[]{false, true, false, true, false, false});
+
+        assert count == 2 : "Two bodies should be removed";
+        assert store.size() == 4 : "Size should shrink";
+        assert store.getX()[0] == 0f && store.getX()[1] == 2f && store.getX()[2] == 4f && store.getX()[3] == 5f
+            : "Remaining bodies should keep their order";
+        assert kept.getX() == 4f && store.view(2) == kept : "Moved view should follow its body";
+        assert removed.getX() == 1f : "Removed view should keep its values";
+        assert store.getStructureVersion() != version : "Structure version should change";
+    }
+
+    @Test
+    void removeByIdShouldSwapTheLastBodyIntoTheHole() {
+        BodyStore store = new BodyStore();
+        for (int i = 0; i < 4; i++) {
+            store.add(i, 0, 0, 0, 0, 0, 1f, false);
+        }
+        Body removed = store.view(1);
+        Body last = store.view(3);
+        int removedId = removed.getId();
+        int lastId = last.getId();
+
+        boolean result = store.removeById(removedId);
+
+        assert result : "Removal should succeed";
+        assert store.size() == 3 : "Size should shrink";
+        assert store.getX()[1] == 3f && store.view(1) == last : "The last body should fill the hole";
+        assert last.getId() == lastId && store.slotOf(lastId) == 1 : "The moved body should keep its id";
+        assert store.slotOf(removedId) == -1 : "The removed id should be unknown";
+        assert removed.getId() == removedId && removed.getX() == 1f : "Removed view should keep its values";
+        assert !store.removeById(removedId) : "An id should only be removed once";
+    }
+
+    @Test
+    void idsShouldStayStableAndNeverBeReused() {
+        BodyStore store = new BodyStore(1);
+        store.add(0, 0, 0, 0, 0, 0, 1f, false);
+        store.add(1, 0, 0, 0, 0, 0, 1f, false);
+        store.addAll(new BodyBatch(2).add(2, 0, 0, 0, 0, 0, 1f, false).add(3, 0, 0, 0, 0, 0, 1f, false));
+        int thirdId = store.idOf(2);
+
+        store.remove(0);
+        store.removeMarked(new boolean[]{true, false, false});
+        int added = store.add(4, 0, 0, 0, 0, 0, 1f, false);
+
+        assert store.slotOf(thirdId) == 0 && store.getX()[0] == 2f : "Shifted bodies should be found by id";
+        for (int i = 0; i < added; i++) {
+            assert store.idOf(added) != store.idOf(i) : "Ids should be unique";
+        }
+        store.clear();
+        assert store.slotOf(thirdId) == -1 : "Cleared ids should be unknown";
+        assert store.idOf(store.add(0, 0, 0, 0, 0, 0, 1f, false)) > thirdId : "Ids should not be reused after clear";
+    }
+
+    @Test
+    void idLookupShouldSurviveManyDeletions() {
+        int n = 10_000;
+        BodyStore store = new BodyStore(n);
+        for (int i = 0; i < n; i++) {
+            store.add(i, 0, 0, 0, 0, 0, 1f, false);
+        }
+
+        for (int id = 0; id < n; id += 2) {
+            assert store.removeById(id) : "Body " + id + " should be removed";
+        }
+
+        assert store.size() == n / 2 : "Half of the bodies should remain";
+        for (int id = 1; id < n; id += 2) {
+            int slot = store.slotOf(id);
+            assert slot >= 0 && store.idOf(slot) == id && store.getX()[slot] == id : "Body " + id + " should be found";
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package cyrildeschamps.core.service.simulation;
 
 import cyrildeschamps.core.service.simulation.physics.Vector3D;
+import cyrildeschamps.core.service.simulation.physics.force.DirectForceSolver;
+import cyrildeschamps.core.service.simulation.physics.force.ForceSolvers;
 import io.quarkus.test.junit.QuarkusTest;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -137,6 +140,7 @@ class NBodyServiceTest {
     void createBodyShouldAddNewBodyWithCorrectProperties() {
         NBodyService service = new NBodyService();
         service.init();
+        service.stopSimulation();
         int initialSize = service.getBodies().size();
 
         Body newBody = service.createBody(
@@ -144,7 +148,7 @@ class NBodyServiceTest {
             1000f,             // mass
             false,             // not a black hole
             1f, 2f, 3f        // velocity
-        );
+        ).join();
 
         assert service.getBodies().size() == initialSize + 1 : "A new body should be added";
         assert service.getBodies().contains(newBody) : "The new body should be in the list";
@@ -157,33 +161,56 @@ class NBodyServiceTest {
     }
 
     @Test
-    void deleteBodyShouldRemoveBodyAtIndex() {
+    void deleteBodyShouldRemoveBodyWithId() {
         NBodyService service = new NBodyService();
         service.init();
         int initialSize = service.getBodies().size();
-        Body bodyToDelete = service.getBodies().get(1); // Get second body (not black hole)
+        int id = service.getBodies().get(1).getId(); // Second body, not the black hole
 
-        boolean result = service.deleteBody(1);
+        boolean result = service.deleteBody(id).join();
 
         assert result : "Deletion should be successful";
         assert service.getBodies().size() == initialSize - 1 : "One body should be removed";
-        assert !service.getBodies().contains(bodyToDelete) : "Body should no longer be in the list";
+        assert !ids(service).contains(id) : "Body should no longer be in the list";
     }
 
     @Test
-    void deleteBodyShouldHandleInvalidIndex() {
+    void deleteBodyShouldHandleUnknownIds() {
         NBodyService service = new NBodyService();
         service.init();
         int initialSize = service.getBodies().size();
+        int unused = ids(service).stream().max(Integer::compare).orElseThrow() + 1;
 
-        boolean resultNegative = service.deleteBody(-1);
-        boolean resultTooLarge = service.deleteBody(initialSize + 1);
+        boolean resultNegative = service.deleteBody(-1).join();
+        boolean resultUnused = service.deleteBody(unused).join();
 
-        assert !resultNegative : "Should not be able to delete at negative index";
-        assert !resultTooLarge : "Should not be able to delete at too large index";
+        assert !resultNegative : "Should not be able to delete a negative id";
+        assert !resultUnused : "Should not be able to delete an id that was never given";
         assert service.getBodies().size() == initialSize : "No body should be removed";
     }
 
+    @Test
+    void deleteBodyShouldFollowBodiesMovedByAnEarlierDeletion() {
+        NBodyService service = new NBodyService();
+        service.init();
+        List<Integer> before = ids(service);
+        int first = before.get(1);
+        // The last body fills the freed slot, its id must still reach it
+        int moved = before.getLast();
+
+        boolean firstDeleted = service.deleteBody(first).join();
+        assert service.getBodies().get(1).getId() == moved : "The last body should have been moved to the freed slot";
+        boolean movedDeleted = service.deleteBody(moved).join();
+        boolean deletedAgain = service.deleteBody(first).join();
+
+        List<Integer> expected = new ArrayList<>(before);
+        expected.removeAll(List.of(first, moved));
+        List<Integer> after = ids(service);
+        assert firstDeleted && movedDeleted : "Both deletions should be successful";
+        assert !deletedAgain : "A deleted id should not match the body now in its former slot";
+        assert after.size() == expected.size() && after.containsAll(expected) : "Only the two bodies should be removed";
+    }
+
     @Test
     void createBodyWithInvalidMassShouldStillWork() {
         NBodyService service = new NBodyService();
@@ -194,22 +221,33 @@ class NBodyServiceTest {
             -1f,               // negative mass
             false,             // not a black hole
             1f, 1f, 1f        // velocity
-        );
+        ).join();
 
         assert newBody.getMass() == -1f : "Should allow negative mass for experimental purposes";
     }
 
+    @Test
+    void initShouldApplyTheConfiguredSolver() {
+        NBodyService service = new NBodyService();
+        service.solver = ForceSolvers.DIRECT;
+        service.init();
+        service.stopSimulation();
+
+        assert service.getPhysicsEngine().getForceSolver() instanceof DirectForceSolver : "The default room should run the configured solver";
+    }
+
     @Test
     void createBodyAtOriginShouldWork() {
         NBodyService service = new NBodyService();
         service.init();
+        service.stopSimulation();
 
         Body newBody = service.createBody(
             0f, 0f, 0f,    // position at origin
             1f,            // mass
             false,         // not a black hole
             0f, 0f, 0f     // no velocity
-        );
+        ).join();
 
         assert newBody.getPosition().equals(new Vector3D(0f, 0f, 0f)) : "Should allow body at origin";
     }
@@ -218,17 +256,129 @@ class NBodyServiceTest {
     void createBodyWithExtremeValuesShouldWork() {
         NBodyService service = new NBodyService();
         service.init();
+        service.stopSimulation();
 
         Body newBody = service.createBody(
             Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,  // extreme position
             Float.MAX_VALUE,                                    // extreme mass
             false,                                             // not a black hole
             Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE  // extreme velocity
-        );
+        ).join();
 
         assert newBody.getX() == Float.MAX_VALUE : "Should handle extreme X position";
         assert newBody.getY() == Float.MAX_VALUE : "Should handle extreme Y position";
         assert newBody.getZ() == Float.MAX_VALUE : "Should handle extreme Z position";
         assert newBody.getMass() == Float.MAX_VALUE : "Should handle extreme mass";
     }
-} 
\ No newline at end of file
+
+    @Test
+    void snapshotShouldBePublishedAfterInit() {
+        NBodyService service = new NBodyService();
+        service.init();
+        service.stopSimulation();
+
+        WorldSnapshot snapshot = service.getSnapshot();
+
+        assert snapshot.size() == NBodyService.NB_PARTICLES + 1 : "Snapshot should contain every body";
+        assert snapshot.isBlackHole(0) : "First body should be the black hole";
+        assert snapshot.getTimestamp() > 0 : "Snapshot should be timestamped";
+    }
+
+    @Test
+    void snapshotShouldAdvanceWithTicksAndStayImmutable() {
+        NBodyService service = new NBodyService();
+        service.init();
+        WorldSnapshot first = service.getSnapshot();
+        float firstX = first.getX(1);
+
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        service.stopSimulation();
+        WorldSnapshot later = service.getSnapshot();
+
+        assert later.getTick() > first.getTick() : "Tick number should increase";
+        assert first.getX(1) == firstX : "A published snapshot should never change";
+        assert later.getX(1) != firstX : "Later snapshot should see the bodies move";
+    }
+
+    @Test
+    void createBodiesShouldInsertWholeBatchInOneCommand() {
+        NBodyService service = new NBodyService();
+        service.init();
+        int initialSize = service.getBodies().size();
+        BodyBatch batch = new BodyBatch(3)
+            .add(1f, 0, 0, 0, 0, 0, 1f, false)
+            .add(2f, 0, 0, 0, 0, 0, 1f, false)
+            .add(3f, 0, 0, 0, 0, 0, 1f, false);
+
+        int first = service.createBodies(batch).join();
+
+        assert first == initialSize : "Batch should be appended after existing bodies";
+        assert service.getBodies().size() == initialSize + 3 : "All bodies of the batch should be inserted";
+    }
+
+    @Test
+    void resetSimulationShouldRestoreInitialBodies() {
+        NBodyService service = new NBodyService();
+        service.init();
+        service.createBody(1f, 1f, 1f, 1f, false, 0f, 0f, 0f).join();
+
+        service.resetSimulation().join();
+
+        assert service.getBodies().size() == NBodyService.NB_PARTICLES + 1 : "Reset should restore the initial ring";
+    }
+
+    @Test
+    void commandsShouldBeAppliedWhenSimulationIsStopped() {
+        NBodyService service = new NBodyService();
+        service.init();
+        service.stopSimulation();
+        int initialSize = service.getSnapshot().size();
+
+        service.deleteBody(service.getBodies().get(1).getId()).join();
+
+        assert service.getSnapshot().size() == initialSize - 1 : "Snapshot should reflect the applied command";
+    }
+
+    @Test
+    void aFailingListenerShouldNotFailTheCommandNorSkipOtherListeners() {
+        NBodyService service = new NBodyService();
+        service.init();
+        service.stopSimulation();
+        List<SimulationCommand> seen = new ArrayList<>();
+        service.addListener(new SimulationListener() {
+            @Override
+            public void onSnapshot(WorldSnapshot snapshot) { }
+
+            @Override
+            public void onCommand(long tick, SimulationCommand command) {
+                throw new IllegalStateException("recorder failed");
+            }
+        });
+        service.addListener(new SimulationListener() {
+            @Override
+            public void onSnapshot(WorldSnapshot snapshot) { }
+
+            @Override
+            public void onCommand(long tick, SimulationCommand command) {
+                seen.add(command);
+            }
+        });
+
+        boolean deleted = service.deleteBody(service.getBodies().get(1).getId()).join();
+
+        assert deleted : "The command itself succeeded";
+        assert seen.size() == 1 : "The next listener should still be notified";
+    }
+
+    private static List<Integer> ids(Simulation service) {
+        List<Integer> ids = new ArrayList<>();
+        for (Body body : service.getBodies()) {
+            ids.add(body.getId());
+        }
+        return ids;
+    }
+}
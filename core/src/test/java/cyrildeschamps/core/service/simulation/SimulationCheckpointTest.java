@@ -0,0 +1,121 @@
+package cyrildeschamps.core.service.simulation;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+@QuarkusTest
+class SimulationCheckpointTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restoreShouldReturnTheCheckpointedWorld() throws IOException {
+        // Given
+        BodyStore source = new BodyStore();
+        source.add(0, 0, 0, 0, 0, 0, 5e5f, true);
+        source.add(1.5f, -2.5f, 3.5f, 0.1f, 0.2f, -0.3f, 2f, false);
+        WorldSnapshot snapshot = WorldSnapshot.capture(source, 1234, 42);
+        Path file = dir.resolve("world.ckpt");
+
+        // When
+        SimulationCheckpoint.write(snapshot, file);
+        BodyStore restored = new BodyStore();
+        restored.add(9, 9, 9, 9, 9, 9, 9, false);
+        Body stale = restored.view(0);
+        long tick = SimulationCheckpoint.restore(file, restored);
+
+        // Then
+        assert tick == 1234 : "The tick should be restored";
+        assert Files.size(file) == SimulationCheckpoint.fileSize(2) : "The file should hold exactly two bodies";
+        assert restored.size() == 2 : "Previous bodies should be replaced";
+        assert restored.isBlackHole(0) && restored.getMass()[0] == 5e5f;
+        Body body = restored.view(1);
+        assert body.getX() == 1.5f && body.getY() == -2.5f && body.getZ() == 3.5f : "Positions should be restored";
+        assert body.getVx() == 0.1f && body.getVy() == 0.2f && body.getVz() == -0.3f : "Velocities should be restored";
+        assert !body.isBlackHole() && body.getMass() == 2f;
+        assert stale.getX() == 9 : "Views of replaced bodies should be detached";
+        assert restored.slotOf(source.idOf(1)) == 1 : "Ids should be restored";
+        assert restored.idOf(restored.add(0, 0, 0, 0, 0, 0, 1, false)) > source.idOf(1) : "Restored ids should not be reused";
+    }
+
+    @Test
+    void restoreShouldRejectCorruptedFiles() throws IOException {
+        // Given
+        BodyStore source = new BodyStore();
+        source.add(1, 2, 3, 0, 0, 0, 1, false);
+        Path file = dir.resolve("world.ckpt");
+        SimulationCheckpoint.write(WorldSnapshot.capture(source, 1, 0), file);
+        Path truncated = dir.resolve("truncated.ckpt");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+
+        // When / Then
+        BodyStore target = new BodyStore();
+        assert fails(truncated, target) : "A truncated checkpoint should be rejected";
+        Files.write(truncated, new byte[SimulationCheckpoint.HEADER_SIZE]);
+        assert fails(truncated, target) : "A file without the magic number should be rejected";
+    }
+
+    @Test
+    void restoreShouldLoadAMillionBodiesQuickly() throws IOException {
+        // Given
+        int n = 1_000_000;
+        BodyStore source = new BodyStore(n);
+        SplittableRandom rand = new SplittableRandom(7);
+        for (int i = 0; i < n; i++) {
+            source.add((float) rand.nextDouble(), (float) rand.nextDouble(), (float) rand.nextDouble(), 0, 0, 0, 1, false);
+        }
+        Path file = dir.resolve("million.ckpt");
+        SimulationCheckpoint.write(WorldSnapshot.capture(source, 7, 0), file);
+
+        // When
+        BodyStore restored = new BodyStore();
+        long start = System.nanoTime();
+        SimulationCheckpoint.restore(file, restored);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // Then
+        assert restored.size() == n : "Every body should be restored";
+        assert restored.getX()[n - 1] == source.getX()[n - 1] : "The last body should be restored";
+        assert elapsedMs < 1000 : "Restoring a million bodies took " + elapsedMs + " ms";
+    }
+
+    @Test
+    void initializeShouldRestoreTheServiceCheckpoint() throws IOException {
+        // Given
+        Path file = dir.resolve("service.ckpt");
+        NBodyService first = new NBodyService();
+        first.init();
+        first.createBodies(new BodyBatch(1).add(1, 1, 1, 0, 0, 0, 1, false)).join();
+        first.stopSimulation();
+        first.checkpoint(file);
+        WorldSnapshot saved = first.getSnapshot();
+
+        // When
+        NBodyService second = new NBodyService();
+        second.initialize(file);
+        WorldSnapshot restored = second.getSnapshot();
+
+        // Then
+        assert restored.getTick() == saved.getTick() : "The tick should continue from the checkpoint";
+        assert restored.size() == saved.size() : "Every body should be restored";
+        assert restored.getX(saved.size() - 1) == saved.getX(saved.size() - 1) : "Positions should be restored";
+    }
+
+    private static boolean fails(Path file, BodyStore store) {
+        try {
+            SimulationCheckpoint.restore(file, store);
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package cyrildeschamps.core.service.simulation;
+
+import cyrildeschamps.core.service.simulation.physics.force.BarnesHutForceSolver;
+import cyrildeschamps.core.service.simulation.physics.force.ForceSolvers;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+@QuarkusTest
+class SimulationRegistryTest {
+
+    private SimulationRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimulationRegistry();
+        registry.poolSize = 2;
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    void roomsShouldBeIsolated() {
+        Simulation a = registry.getOrCreate("a");
+        Simulation b = registry.getOrCreate("b");
+
+        a.createBodies(new BodyBatch(10).add(1, 2, 3, 0, 0, 0, 1, false)).join();
+        a.resetSimulation().join();
+        a.createBodies(new BodyBatch(1).add(1, 2, 3, 0, 0, 0, 1, false)).join();
+
+        assert registry.getOrCreate("a") == a : "The same id should return the same room";
+        assert a.getBodies().size() == Simulation.NB_PARTICLES + 2 : "Room a should contain its own body";
+        assert b.getBodies().size() == Simulation.NB_PARTICLES + 1 : "Room b should not see bodies of room a";
+        assert registry.list().containsAll(List.of(NBodyService.DEFAULT_ROOM, "a", "b")) : "Every room should be listed";
+    }
+
+    @Test
+    void manyRoomsShouldTickOnTheSharedPool() throws InterruptedException {
+        int threadsBefore = Thread.activeCount();
+        Simulation[] rooms = new Simulation[100];
+        for (int i = 0; i < rooms.length; i++) {
+            rooms[i] = registry.getOrCreate("room-" + i);
+        }
+
+        Thread.sleep(300);
+
+        for (Simulation room : rooms) {
+            assert room.getSnapshot().getTick() > 0 : "Every room should advance on the shared pool";
+        }
+        assert Thread.activeCount() - threadsBefore <= 2 : "Rooms should not get a thread each";
+    }
+
+    @Test
+    void destroyShouldStopTheRoom() throws InterruptedException {
+        Simulation room = registry.getOrCreate("gone");
+
+        assert registry.destroy("gone") : "An existing room should be destroyed";
+        long tick = room.getSnapshot().getTick();
+        Thread.sleep(100);
+
+        assert room.getSnapshot().getTick() == tick : "A destroyed room should stop ticking";
+        assert registry.get("gone") == null : "A destroyed room should be forgotten";
+        assert !registry.destroy(NBodyService.DEFAULT_ROOM) : "The default room should never be destroyed";
+    }
+
+    @Test
+    void roomsShouldUseTheConfiguredSolver() {
+        registry.solver = ForceSolvers.BARNES_HUT;
+
+        Simulation room = registry.getOrCreate("galaxy");
+
+        assert room.getPhysicsEngine().getForceSolver() instanceof BarnesHutForceSolver : "The room should run the configured solver";
+    }
+
+    @Test
+    void invalidIdsAndTooManyRoomsShouldBeRejected() {
+        registry.maxRooms = 1;
+        registry.getOrCreate("first");
+
+        assert rejects(() -> registry.getOrCreate("../etc")) instanceof IllegalArgumentException : "Ids should be validated";
+        assert rejects(() -> registry.getOrCreate("second")) instanceof IllegalStateException : "The room limit should be enforced";
+    }
+
+    @Test
+    void aRoomThatFailsToStartShouldLeaveNothingBehind() {
+        registry.solver = "no-such-solver";
+
+        assert rejects(() -> registry.getOrCreate("broken")) instanceof IllegalArgumentException : "The failure should surface";
+        assert registry.get("broken") == null : "A room that failed to start should not be published";
+
+        registry.solver = ForceSolvers.DIRECT;
+        assert registry.getOrCreate("broken") != null : "The id should be usable again";
+    }
+
+    private static RuntimeException rejects(Runnable action) {
+        try {
+            action.run();
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package cyrildeschamps.core.service.simulation;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@QuarkusTest
+class SimulationSchedulerTest {
+
+    private static final long PERIOD = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static void runFor(SimulationScheduler scheduler, long millis) throws InterruptedException {
+        Thread thread = new Thread(scheduler::run);
+        thread.start();
+        Thread.sleep(millis);
+        scheduler.stop();
+        thread.join();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void tickRateShouldNotDriftWithComputeTime() throws InterruptedException {
+        // Each tick takes 2 ms out of a 5 ms period, a sleep based loop would run at 7 ms
+        SimulationScheduler scheduler = new SimulationScheduler(() -> sleep(2), PERIOD, 4);
+
+        runFor(scheduler, 600);
+
+        long ticks = scheduler.getTickCount();
+        assert ticks >= 100 && ticks <= 122 : "Expected about 120 ticks in 600 ms, got " + ticks;
+        assert scheduler.getTickDurationHistogram().getTotalCount() == ticks : "Every tick should be recorded";
+    }
+
+    @Test
+    void stallShouldBeCaughtUpWithinTheBudgetAndTheRestSkipped() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        // One 40 ms stall = 8 missed deadlines, only 4 can be caught up
+        SimulationScheduler scheduler = new SimulationScheduler(() -> {
+            if (calls.incrementAndGet() == 10) {
+                sleep(40);
+            }
+        }, PERIOD, 4);
+
+        runFor(scheduler, 300);
+
+        assert scheduler.getOverrunCount() >= 1 : "The stalled tick should be counted as an overrun";
+        assert scheduler.getSkippedTickCount() >= 3 : "Deadlines beyond the catch-up budget should be skipped, got "
+            + scheduler.getSkippedTickCount();
+        assert scheduler.getTickLatenessHistogram().getMaxValue() >= TimeUnit.MILLISECONDS.toNanos(20)
+            : "Late ticks should show in the lateness histogram";
+    }
+
+    @Test
+    void overloadShouldLowerTheTickRate() throws InterruptedException {
+        SimulationScheduler scheduler = new SimulationScheduler(() -> sleep(8), PERIOD, 4);
+
+        runFor(scheduler, 2200);
+
+        assert scheduler.getCurrentHz() < scheduler.getTargetHz() : "Tick rate should be lowered when ticks exceed the period";
+        assert scheduler.getAchievedHz() > 0 : "Achieved rate should be measured";
+        assert scheduler.getOverrunCount() > 0 : "Overruns should be counted";
+    }
+
+    @Test
+    void stopBeforeRunShouldReturnImmediately() {
+        SimulationScheduler scheduler = new SimulationScheduler(() -> { }, PERIOD, 4);
+
+        scheduler.stop();
+        scheduler.run();
+
+        assert scheduler.getTickCount() == 0 : "A stopped scheduler should not tick";
+    }
+}
@@ -0,0 +1,70 @@
+package cyrildeschamps.core.service.simulation;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+@QuarkusTest
+class WorldSnapshotTest {
+    private static final int BODIES = 100_000;
+
+    private final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static BodyStore store() {
+        BodyStore store = new BodyStore(BODIES);
+        for (int i = 0; i < BODIES; i++) {
+            store.add(i, -i, 0, 1, 0, 0, 1 + i % 7, i == 0);
+        }
+        return store;
+    }
+
+    @Test
+    void captureShouldShareIdsMassesAndFlagsWhileTheStructureIsUnchanged() {
+        BodyStore store = store();
+        SnapshotBuffers buffers = new SnapshotBuffers();
+        WorldSnapshot first = WorldSnapshot.capture(store, 1, 0, WorldSnapshot.EMPTY, buffers);
+        store.getX()[5] = 42;
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        WorldSnapshot second = WorldSnapshot.capture(store, 2, 0, first, buffers);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // Six fresh float arrays at most, a full copy would add ids, masses and flags (9 B per body)
+        assert allocated < 25L * BODIES : "Only positions and velocities should be copied, got " + allocated + " bytes";
+        assert second.getX(5) == 42 && first.getX(5) == 5 : "Positions should be copied, not shared";
+        assert second.getMass(6) == 7 && second.getId(6) == first.getId(6) && second.isBlackHole(0)
+            : "Shared arrays should hold the same bodies";
+
+        store.setMass(6, 3);
+        WorldSnapshot third = WorldSnapshot.capture(store, 3, 0, second, buffers);
+        assert third.getMass(6) == 3 && second.getMass(6) == 7 : "A new mass should not leak into older snapshots";
+    }
+
+    @Test
+    void unreachableSnapshotsShouldGiveTheirBuffersBack() throws InterruptedException {
+        BodyStore store = store();
+        SnapshotBuffers buffers = new SnapshotBuffers();
+        WorldSnapshot previous = WorldSnapshot.capture(store, 1, 0, WorldSnapshot.EMPTY, buffers);
+        for (int tick = 2; tick < 6; tick++) {
+            previous = WorldSnapshot.capture(store, tick, 0, previous, buffers);
+        }
+
+        // Only the last snapshot is still held
+        for (int i = 0; i < 100 && buffers.pooled() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assert buffers.pooled() > 0 : "Buffers of dropped snapshots should return to the pool";
+
+        store.getY()[3] = 7;
+        long before = threads.getCurrentThreadAllocatedBytes();
+        WorldSnapshot next = WorldSnapshot.capture(store, 6, 0, previous, buffers);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assert allocated < 64 * 1024 : "A recycled capture should not allocate arrays, got " + allocated + " bytes";
+        assert next.getY(3) == 7 && next.getX(BODIES - 1) == BODIES - 1 : "Recycled buffers should hold the new state";
+        assert previous.getY(3) == -3 : "The held snapshot should keep its own buffers";
+    }
+}
@@ -0,0 +1,215 @@
+package cyrildeschamps.core.service.simulation.cluster;
+
+import cyrildeschamps.core.service.simulation.BodyBatch;
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.distribution.Distribution;
+import cyrildeschamps.core.service.simulation.distribution.Distributions;
+import cyrildeschamps.core.service.simulation.distribution.PlummerSphere;
+import cyrildeschamps.core.service.simulation.distribution.Ring;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+import cyrildeschamps.core.service.simulation.physics.force.ForceSolvers;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@QuarkusTest
+class DomainCoordinatorTest {
+    private static final float DT = 0.05f;
+
+    @TempDir
+    Path dir;
+
+    private final List<Transport> transports = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private DomainCoordinator coordinator;
+
+    @AfterEach
+    void stopCluster() throws Exception {
+        if (coordinator != null) {
+            coordinator.close();
+        }
+        for (Thread worker : workers) {
+            worker.join(5000);
+        }
+        for (Transport transport : transports) {
+            transport.close();
+        }
+    }
+
+    @Test
+    void blackHoleOrbitsShouldMatchASingleProcessRun() throws IOException {
+        BodyStore world = world(new Ring(50, 300, 5e5f, 1), 2000, true);
+        BodyStore reference = copy(world);
+        start(3, ForceSolvers.BLACK_HOLE);
+
+        PhysicsEngine engine = new PhysicsEngine(ForceSolvers.byName(ForceSolvers.BLACK_HOLE));
+        for (int tick = 0; tick < 20; tick++) {
+            coordinator.step(world, DT, 1);
+            engine.step(reference);
+        }
+
+        // Black holes are always sent as they are: same forces, same arithmetic as one process
+        assert world.size() == reference.size() : "No body should be lost between the domains";
+        assert maxDistance(world, reference) < 1e-3 : "Positions drifted by " + maxDistance(world, reference);
+        int[] bodies = coordinator.getDomainBodies();
+        assert bodies[0] + bodies[1] + bodies[2] == world.size() && bodies[0] > 0 && bodies[2] > 0
+            : "Every domain should own a slab of the ring";
+    }
+
+    @Test
+    void farCellsShouldApproximateTheDirectSum() throws IOException {
+        BodyStore world = world(new PlummerSphere(20, 1), 1500, false);
+        BodyStore reference = copy(world);
+        start(3, ForceSolvers.DIRECT);
+        long version = world.getStructureVersion();
+
+        PhysicsEngine engine = new PhysicsEngine(ForceSolvers.byName(ForceSolvers.DIRECT));
+        engine.setSubsteps(2);
+        for (int tick = 0; tick < 10; tick++) {
+            coordinator.step(world, DT, 2);
+            engine.step(reference);
+        }
+
+        assert world.getStructureVersion() == version : "Gathered bodies should keep their slots";
+        float spread = (float) Math.sqrt(velocitySpread(reference)) * 10 * DT;
+        assert maxDistance(world, reference) < 0.05f * spread
+            : "Positions drifted by " + maxDistance(world, reference) + " for a travel of " + spread;
+    }
+
+    @Test
+    void addedBodiesShouldBeScatteredAgain() throws IOException {
+        BodyStore world = world(new Ring(50, 300, 5e5f, 1), 500, true);
+        start(2, ForceSolvers.BLACK_HOLE);
+        coordinator.step(world, DT, 1);
+
+        int id = world.idOf(world.add(-200, 0, 0, 0, 1, 0, 1, false));
+        coordinator.step(world, DT, 1);
+
+        assert world.size() == 502 && world.slotOf(id) >= 0 : "The new body should come back from its domain";
+        assert world.getY()[world.slotOf(id)] > 0 : "The new body should move";
+    }
+
+    @Test
+    void domainsShouldJoinANewCoordinator() throws IOException {
+        BodyStore world = world(new Ring(50, 300, 5e5f, 1), 500, true);
+        // Started before any coordinator: they wait on rings that rank 0 replaces when it opens
+        for (int rank = 1; rank <= 2; rank++) {
+            int domainRank = rank;
+            Thread worker = new Thread(() -> DomainWorker.serve(Transports.MAPPED_FILE, domainRank, 2, "", dir, 1),
+                "test-domain-" + rank);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        coordinator = new DomainCoordinator(Transports.open(Transports.MAPPED_FILE, 0, 3, "", dir), ForceSolvers.BLACK_HOLE);
+        assert coordinator.awaitDomains(TimeUnit.SECONDS.toNanos(10)) : "The domains should reopen their rings";
+        coordinator.step(world, DT, 1);
+
+        // A coordinator that gave up, e.g. after a timeout, leaves the domains waiting for the next one
+        coordinator.abandon();
+        coordinator = new DomainCoordinator(Transports.open(Transports.MAPPED_FILE, 0, 3, "", dir), ForceSolvers.BLACK_HOLE);
+        assert coordinator.awaitDomains(TimeUnit.SECONDS.toNanos(10)) : "The domains should join the new coordinator";
+        coordinator.step(world, DT, 1);
+
+        assert world.size() == 501 : "Every body should come back from the new domains";
+        int[] bodies = coordinator.getDomainBodies();
+        assert bodies[0] + bodies[1] == world.size() : "The world should be scattered again";
+    }
+
+    @Test
+    void slowDomainsShouldShrink() {
+        // Uniform bodies on [0, 100), the left half costs three times as much per body
+        int count = 1000;
+        float[] x = new float[count];
+        float[] weights = new float[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = i * 0.1f;
+            weights[i] = x[i] < 50 ? 3 : 1;
+        }
+
+        float[] cuts = DomainCoordinator.balancedCuts(x, weights, count, 2);
+
+        // 150 + 50 units of work, the first 100 end at x = 33.3
+        assert Math.abs(cuts[0] - 33.3f) < 0.2f : "Unexpected cut " + cuts[0];
+    }
+
+    @Test
+    void cutsShouldMoveWithTheMeasuredTime() throws IOException {
+        BodyStore world = world(new PlummerSphere(20, 1), 3000, false);
+        start(2, ForceSolvers.DIRECT);
+        coordinator.setRebalanceInterval(1);
+        coordinator.step(world, DT, 1);
+        float[] first = coordinator.getCuts();
+
+        for (int tick = 0; tick < 5; tick++) {
+            coordinator.step(world, DT, 1);
+        }
+
+        assert coordinator.getRebalanceCount() == 6 : "Every tick should rebalance";
+        assert coordinator.getCuts()[0] != first[0] : "The cut should follow the compute times";
+        assert Math.abs(coordinator.getCuts()[0]) < 20 : "A symmetric cluster should stay cut near its centre";
+        assert coordinator.getImbalance() >= 1 : "The imbalance is relative to the mean";
+    }
+
+    private void start(int domains, String solver) throws IOException {
+        int size = domains + 1;
+        Transport root = new MappedFileTransport(0, size, dir, 1 << 16);
+        transports.add(root);
+        coordinator = new DomainCoordinator(root, solver);
+        for (int rank = 1; rank < size; rank++) {
+            Transport transport = new MappedFileTransport(rank, size, dir, 1 << 16);
+            transports.add(transport);
+            Thread worker = new Thread(new DomainWorker(transport), "test-domain-" + rank);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    private static BodyStore world(Distribution distribution, int count, boolean blackHole) {
+        BodyStore world = new BodyStore();
+        if (blackHole) {
+            world.add(0, 0, 0, 0, 0, 0, 5e5f, true);
+        }
+        BodyBatch batch = Distributions.generate(distribution, count, 11);
+        world.addAll(batch);
+        return world;
+    }
+
+    private static BodyStore copy(BodyStore store) {
+        BodyStore copy = new BodyStore();
+        for (int i = 0; i < store.size(); i++) {
+            copy.addWithId(store.idOf(i), store.getX()[i], store.getY()[i], store.getZ()[i],
+                store.getVx()[i], store.getVy()[i], store.getVz()[i], store.getMass()[i], store.getFlags()[i]);
+        }
+        return copy;
+    }
+
+    private static float maxDistance(BodyStore world, BodyStore reference) {
+        float max = 0;
+        for (int i = 0; i < reference.size(); i++) {
+            int slot = world.slotOf(reference.idOf(i));
+            assert slot >= 0 : "Body " + reference.idOf(i) + " is missing";
+            float dx = world.getX()[slot] - reference.getX()[i];
+            float dy = world.getY()[slot] - reference.getY()[i];
+            float dz = world.getZ()[slot] - reference.getZ()[i];
+            max = Math.max(max, (float) Math.sqrt(dx * dx + dy * dy + dz * dz));
+        }
+        return max;
+    }
+
+    private static double velocitySpread(BodyStore store) {
+        double sum = 0;
+        for (int i = 0; i < store.size(); i++) {
+            sum += store.getVx()[i] * store.getVx()[i] + store.getVy()[i] * store.getVy()[i] + store.getVz()[i] * store.getVz()[i];
+        }
+        return sum / store.size();
+    }
+}
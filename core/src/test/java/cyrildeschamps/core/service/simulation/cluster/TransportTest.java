@@ -0,0 +1,108 @@
+package cyrildeschamps.core.service.simulation.cluster;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@QuarkusTest
+class TransportTest {
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void mappedFilesShouldCarryMessagesLargerThanTheRing() throws IOException {
+        try (Transport a = new MappedFileTransport(0, 2, dir, 1 << 12);
+             Transport b = new MappedFileTransport(1, 2, dir, 1 << 12)) {
+            exchangeBothWays(a, b);
+        }
+    }
+
+    @Test
+    void socketsShouldCarryMessagesBothWaysAtOnce() throws IOException {
+        List<InetSocketAddress> addresses = List.of(freeAddress(), freeAddress());
+        try (Transport a = new SocketTransport(0, addresses);
+             Transport b = new SocketTransport(1, addresses)) {
+            exchangeBothWays(a, b);
+        }
+    }
+
+    @Test
+    void receiveShouldGiveUpAfterItsTimeout() throws IOException {
+        try (Transport a = new MappedFileTransport(0, 2, dir, 1 << 12);
+             Transport b = new MappedFileTransport(1, 2, dir, 1 << 12)) {
+            long start = System.nanoTime();
+            try {
+                a.receive(1, TimeUnit.MILLISECONDS.toNanos(50));
+                assert false : "Nothing was sent";
+            } catch (InterruptedIOException expected) {
+                assert System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50) : "The timeout should be waited";
+            }
+            // The channel stays usable after a timeout
+            b.send(0, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 42));
+            assert a.receive(1, TIMEOUT).getInt() == 42 : "A later message should still arrive";
+        }
+    }
+
+    @Test
+    void waitingOnReplacedRingsShouldFail() throws IOException {
+        // Rank 1 first, as a worker left from an earlier run: a new rank 0 replaces its rings
+        try (Transport worker = new MappedFileTransport(1, 2, dir, 1 << 12);
+             Transport root = new MappedFileTransport(0, 2, dir, 1 << 12)) {
+            try {
+                worker.receive(0, TIMEOUT);
+                assert false : "Nothing can arrive on a replaced ring";
+            } catch (InterruptedIOException timeout) {
+                assert false : "The replaced ring should be noticed before the timeout";
+            } catch (IOException expected) {
+                assert expected.getMessage().contains("rank 0") : expected.getMessage();
+            }
+        }
+    }
+
+    /**
+     * Both sides send several large messages before reading: writes must not wait for the reader
+     */
+    private static void exchangeBothWays(Transport a, Transport b) throws IOException {
+        int messages = 5;
+        int ints = 100_000;
+        for (Transport from : List.of(a, b)) {
+            for (int m = 0; m < messages; m++) {
+                ByteBuffer message = ByteBuffer.allocate(ints * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < ints; i++) {
+                    message.putInt(from.rank() * 1_000_000 + m * ints + i);
+                }
+                from.send(1 - from.rank(), message.flip());
+            }
+        }
+        for (Transport to : List.of(a, b)) {
+            int from = 1 - to.rank();
+            for (int m = 0; m < messages; m++) {
+                ByteBuffer message = to.receive(from, TIMEOUT);
+                assert message.remaining() == ints * Integer.BYTES : "Messages should arrive whole";
+                for (int i = 0; i < ints; i++) {
+                    int value = message.getInt();
+                    assert value == from * 1_000_000 + m * ints + i : "Messages should arrive in order and intact";
+                }
+            }
+        }
+    }
+
+    private static InetSocketAddress freeAddress() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return new InetSocketAddress("localhost", socket.getLocalPort());
+        }
+    }
+}
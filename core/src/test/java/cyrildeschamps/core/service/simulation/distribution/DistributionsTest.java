@@ -0,0 +1,87 @@
+package cyrildeschamps.core.service.simulation.distribution;
+
+import cyrildeschamps.core.service.simulation.BodyBatch;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.G;
+
+@QuarkusTest
+class DistributionsTest {
+    // Several chunks, so the parallel split is exercised
+    private static final int COUNT = 3 * Distributions.CHUNK_SIZE + 123;
+
+    @Test
+    void generationShouldOnlyDependOnTheSeed() {
+        Distribution disk = Distributions.byName(Distributions.DISK, 300, 5e5f);
+
+        BodyBatch first = Distributions.generate(disk, COUNT, 7);
+        BodyBatch second = Distributions.generate(disk, COUNT, 7);
+        BodyBatch other = Distributions.generate(disk, COUNT, 8);
+
+        assert first.size() == COUNT : "Every requested body should be generated";
+        assert Arrays.equals(first.getX(), second.getX()) && Arrays.equals(first.getVz(), second.getVz())
+            : "The same seed should give the same bodies";
+        assert !Arrays.equals(first.getX(), other.getX()) : "Another seed should give other bodies";
+    }
+
+    @Test
+    void ringShouldOrbitTheCentralMass() {
+        BodyBatch ring = Distributions.generate(new Ring(50, 300, 5e5f, 1), COUNT, 1);
+
+        for (int i = 0; i < COUNT; i++) {
+            double r = Math.hypot(ring.getX()[i], ring.getY()[i]);
+            double v = Math.hypot(ring.getVx()[i], ring.getVy()[i]);
+            assert r >= 49.99 && r <= 300.01 && ring.getZ()[i] == 0 : "Stars should stay in the flat ring";
+            assert Math.abs(v * v * r - G * 5e5) < 1e-3 * G * 5e5 : "Orbits should be circular";
+        }
+    }
+
+    @Test
+    void plummerSphereShouldHaveItsHalfMassRadius() {
+        float a = 10;
+        BodyBatch sphere = Distributions.generate(new PlummerSphere(a, 1), COUNT, 3);
+
+        double[] radii = new double[COUNT];
+        double kinetic = 0;
+        for (int i = 0; i < COUNT; i++) {
+            radii[i] = Math.sqrt(sq(sphere.getX()[i]) + sq(sphere.getY()[i]) + sq(sphere.getZ()[i]));
+            kinetic += 0.5 * (sq(sphere.getVx()[i]) + sq(sphere.getVy()[i]) + sq(sphere.getVz()[i]));
+        }
+        Arrays.sort(radii);
+
+        // Half of the mass lies within a / sqrt(2^(2/3) - 1) = 1.305 a
+        double halfMass = radii[COUNT / 2];
+        assert Math.abs(halfMass - 1.305 * a) < 0.05 * a : "Unexpected half-mass radius " + halfMass;
+        // Virial equilibrium: kinetic energy is 3 pi G M² / (64 a)
+        double mass = COUNT;
+        double expected = 3 * Math.PI * G * mass * mass / (64 * a);
+        assert Math.abs(kinetic - expected) < 0.05 * expected : "Kinetic energy " + kinetic + " instead of " + expected;
+    }
+
+    @Test
+    void cubeShouldKeepTheBlackHoleFlag() {
+        BodyBatch holes = Distributions.generate(new UniformCube(100, 2, 5e5f, true), 10, 5);
+
+        for (int i = 0; i < 10; i++) {
+            assert holes.getFlags()[i] != 0 && holes.getMass()[i] == 5e5f : "Every body should be a black hole";
+            assert Math.abs(holes.getX()[i]) <= 100 && Math.abs(holes.getVz()[i]) <= 2 : "Bodies should stay in range";
+        }
+    }
+
+    @Test
+    void unknownDistributionShouldBeRejected() {
+        try {
+            Distributions.byName("spiral", 100, 0);
+            assert false : "An unknown name should be rejected";
+        } catch (IllegalArgumentException expected) {
+            assert expected.getMessage().contains("spiral") : expected.getMessage();
+        }
+    }
+
+    private static double sq(double value) {
+        return value * value;
+    }
+}
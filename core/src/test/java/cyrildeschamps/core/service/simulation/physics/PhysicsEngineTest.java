@@ -0,0 +1,116 @@
+package cyrildeschamps.core.service.simulation.physics;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.force.BarnesHutForceSolver;
+import cyrildeschamps.core.service.simulation.physics.integration.Integrators;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+class PhysicsEngineTest {
+
+    private static BodyStore ring(int count) {
+        BodyStore store = new BodyStore();
+        store.add(0, 0, 0, 0, 0, 0, 5e5f, true);
+        Random rand = new Random(42);
+        for (int i = 0; i < count; i++) {
+            float r = 50 + 250 * rand.nextFloat();
+            float angle = (float) (2 * Math.PI * rand.nextFloat());
+            float speed = (float) Math.sqrt(0.1 * 5e5 / r);
+            store.add((float) (r * Math.cos(angle)), (float) (r * Math.sin(angle)), 0,
+                    (float) (-speed * Math.sin(angle)), (float) (speed * Math.cos(angle)), 0, 1f, false);
+        }
+        return store;
+    }
+
+    private static void tick(PhysicsEngine engine, BodyStore store) {
+        engine.updatePositions(store);
+        engine.calculateGravitationalForces(store);
+        engine.updateVelocities(store);
+    }
+
+    @Test
+    void blackHoleShouldPullStarTowardsIt() {
+        BodyStore store = new BodyStore();
+        store.add(0, 0, 0, 0, 0, 0, 5e5f, true);
+        store.add(100f, 0, 0, 0, 0, 0, 1f, false);
+        PhysicsEngine engine = new PhysicsEngine();
+
+        engine.calculateGravitationalForces(store);
+
+        assert store.getFx()[1] < 0 : "Star should be attracted towards the black hole";
+        assert store.getFx()[0] == 0 : "Black hole should not receive any force";
+    }
+
+    @Test
+    void blackHoleShouldNotMove() {
+        BodyStore store = ring(10);
+        store.getVx()[0] = 1f;
+        PhysicsEngine engine = new PhysicsEngine();
+
+        tick(engine, store);
+
+        assert store.getX()[0] == 0 : "Black hole position should not be integrated";
+    }
+
+    @Test
+    void tickShouldNotAllocate() {
+        for (String integrator : new String[]{Integrators.EULER, Integrators.VERLET, Integrators.YOSHIDA4, Integrators.BLOCK}) {
+            BodyStore store = ring(10_000);
+            PhysicsEngine engine = new PhysicsEngine();
+            engine.setIntegrator(Integrators.byName(integrator));
+            engine.setSubsteps(2);
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+            // Warm up so scratch buffers and JIT are settled, the same step() as Simulation.advance
+            for (int i = 0; i < 200; i++) {
+                engine.step(store);
+            }
+
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < 500; i++) {
+                engine.step(store);
+            }
+            long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+            // A single Vector3D per body per tick would already be ~80 MB here
+            assert allocated < 1024 : "Physics tick with " + integrator + " should not allocate, got " + allocated + " bytes";
+        }
+    }
+
+    @Test
+    void parallelTicksShouldMatchSequentialTicksExactly() {
+        BodyStore sequential = ring(5_000);
+        BodyStore parallel = ring(5_000);
+        PhysicsEngine sequentialEngine = new PhysicsEngine(new BarnesHutForceSolver());
+        PhysicsEngine parallelEngine = new PhysicsEngine(new BarnesHutForceSolver());
+        parallelEngine.setParallelism(4, 64);
+
+        try {
+            for (int i = 0; i < 20; i++) {
+                tick(sequentialEngine, sequential);
+                tick(parallelEngine, parallel);
+            }
+        } finally {
+            parallelEngine.shutdown();
+        }
+
+        int n = sequential.size();
+        assert Arrays.equals(sequential.getX(), 0, n, parallel.getX(), 0, n) : "X positions should be identical";
+        assert Arrays.equals(sequential.getY(), 0, n, parallel.getY(), 0, n) : "Y positions should be identical";
+        assert Arrays.equals(sequential.getVx(), 0, n, parallel.getVx(), 0, n) : "Velocities should be identical";
+    }
+
+    @Test
+    void shutdownShouldFallBackToSequential() {
+        PhysicsEngine engine = new PhysicsEngine();
+        engine.setParallelism(2);
+        assert engine.getParallelism() == 2 : "Parallelism should be applied";
+
+        engine.shutdown();
+
+        assert engine.getParallelism() == 1 : "Engine should be sequential after shutdown";
+    }
+}
@@ -0,0 +1,112 @@
+package cyrildeschamps.core.service.simulation.physics.collision;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+@QuarkusTest
+class CollisionResolverTest {
+
+    @Test
+    void overlappingStarsShouldMergeConservingMassAndMomentum() {
+        BodyStore store = new BodyStore();
+        store.add(0, 0, 0, 1f, 0, 0, 3f, false);
+        store.add(1f, 0, 0, -1f, 2f, 0, 1f, false);
+        store.add(100f, 0, 0, 0, 0, 0, 1f, false);
+
+        int removed = new CollisionResolver().resolve(store);
+
+        assert removed == 1 : "One body should be absorbed";
+        assert store.size() == 2 : "Store should shrink";
+        assert store.getMass()[0] == 4f : "Mass should be conserved";
+        assert store.getVx()[0] == 0.5f && store.getVy()[0] == 0.5f : "Momentum should be conserved";
+        assert store.getX()[0] == 0.25f : "Survivor should sit at the centre of mass";
+        assert store.getX()[1] == 100f : "Distant body should be untouched";
+    }
+
+    @Test
+    void blackHoleShouldAbsorbStarAndKeepItsPosition() {
+        BodyStore store = new BodyStore();
+        store.add(5f, 0, 0, 0, 10f, 0, 1f, false);
+        store.add(0, 0, 0, 0, 0, 0, 1f, true);
+
+        new CollisionResolver().resolve(store);
+
+        assert store.size() == 1 : "Star should be absorbed";
+        assert store.isBlackHole(0) : "Black hole should survive";
+        assert store.getX()[0] == 0f : "Black hole should keep its position";
+        assert store.getMass()[0] == 2f : "Black hole should gain the star mass";
+        assert store.getVy()[0] == 5f : "Momentum should be conserved";
+    }
+
+    @Test
+    void gridShouldFindEveryOverlappingPair() {
+        int n = 5000;
+        float radius = 0.5f;
+        float[] x = new float[n], y = new float[n], z = new float[n];
+        SplittableRandom rand = new SplittableRandom(42);
+        for (int i = 0; i < n; i++) {
+            x[i] = (float) rand.nextDouble(-50, 50);
+            y[i] = (float) rand.nextDouble(-50, 50);
+            z[i] = (float) rand.nextDouble(-50, 50);
+        }
+        SpatialHashGrid grid = new SpatialHashGrid();
+        grid.build(x, y, z, n, 2 * radius);
+
+        int expected = 0, found = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (distanceSquared(x, y, z, i, j) < 4 * radius * radius) {
+                    expected++;
+                }
+            }
+            boolean[] seen = new boolean[n];
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        int bucket = grid.bucket(grid.cell(x[i]) + dx, grid.cell(y[i]) + dy, grid.cell(z[i]) + dz);
+                        for (int k = grid.bucketStart(bucket); k < grid.bucketEnd(bucket); k++) {
+                            int j = grid.entry(k);
+                            if (j > i && !seen[j] && distanceSquared(x, y, z, i, j) < 4 * radius * radius) {
+                                seen[j] = true;
+                                found++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        assert expected > 0 : "Test data should contain overlapping pairs";
+        assert found == expected : "Grid found " + found + " pairs, brute force " + expected;
+    }
+
+    @Test
+    void resolveShouldNotAllocateOnceWarm() {
+        BodyStore store = new BodyStore();
+        SplittableRandom rand = new SplittableRandom(7);
+        for (int i = 0; i < 10_000; i++) {
+            store.add((float) rand.nextDouble(-1000, 1000), (float) rand.nextDouble(-1000, 1000),
+                (float) rand.nextDouble(-1000, 1000), 0, 0, 0, 1f, false);
+        }
+        CollisionResolver resolver = new CollisionResolver();
+        resolver.resolve(store);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100; i++) {
+            resolver.resolve(store);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assert allocated < 1024 : "Collision phase should reuse its arrays, allocated " + allocated + " bytes";
+    }
+
+    private static float distanceSquared(float[] x, float[] y, float[] z, int i, int j) {
+        float dx = x[j] - x[i], dy = y[j] - y[i], dz = z[j] - z[i];
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
@@ -0,0 +1,165 @@
+package cyrildeschamps.core.service.simulation.physics.force;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+@QuarkusTest
+class BarnesHutForceSolverTest {
+
+    private static BodyStore cloud(int count, long seed) {
+        BodyStore store = new BodyStore();
+        Random rand = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            store.add(
+                (rand.nextFloat() * 2 - 1) * 300,
+                (rand.nextFloat() * 2 - 1) * 300,
+                (rand.nextFloat() * 2 - 1) * 300,
+                0, 0, 0,
+                1f + rand.nextFloat() * 10, false);
+        }
+        return store;
+    }
+
+    private static float[][] forces(ForceSolver solver, BodyStore store) {
+        solver.prepare(store);
+        int n = store.size();
+        float[][] result = new float[n][3];
+        for (int i = 0; i < n; i++) {
+            solver.computeForce(store, i);
+            result[i][0] = store.getFx()[i];
+            result[i][1] = store.getFy()[i];
+            result[i][2] = store.getFz()[i];
+        }
+        return result;
+    }
+
+    /**
+     * Erreur relative moyenne |F_approx - F_exact| / |F_exact|
+     */
+    private static double meanRelativeError(float[][] approx, float[][] exact) {
+        double sum = 0;
+        for (int i = 0; i < exact.length; i++) {
+            double ex = exact[i][0], ey = exact[i][1], ez = exact[i][2];
+            double dx = approx[i][0] - ex, dy = approx[i][1] - ey, dz = approx[i][2] - ez;
+            sum += Math.sqrt(dx * dx + dy * dy + dz * dz) / Math.sqrt(ex * ex + ey * ey + ez * ez);
+        }
+        return sum / exact.length;
+    }
+
+    @Test
+    void shouldMatchBruteForceReference() {
+        BodyStore store = cloud(2000, 1);
+        float[][] exact = forces(new DirectForceSolver(), store);
+        float[][] approx = forces(new BarnesHutForceSolver(0.5f), store);
+
+        double error = meanRelativeError(approx, exact);
+        assert error < 1e-2 : "Mean relative error with theta=0.5 should be below 1%, got " + error;
+    }
+
+    @Test
+    void zeroThetaShouldBeExact() {
+        BodyStore store = cloud(300, 2);
+        float[][] exact = forces(new DirectForceSolver(), store);
+        float[][] approx = forces(new BarnesHutForceSolver(0f), store);
+
+        double error = meanRelativeError(approx, exact);
+        assert error < 1e-4 : "theta=0 should reproduce the direct sum, got " + error;
+    }
+
+    @Test
+    void largerThetaShouldBeLessAccurate() {
+        BodyStore store = cloud(2000, 3);
+        float[][] exact = forces(new DirectForceSolver(), store);
+
+        double fine = meanRelativeError(forces(new BarnesHutForceSolver(0.3f), store), exact);
+        double coarse = meanRelativeError(forces(new BarnesHutForceSolver(1.0f), store), exact);
+        assert fine < coarse : "Error should grow with the opening angle";
+    }
+
+    @Test
+    void coincidentBodiesShouldNotLoopForever() {
+        BodyStore store = new BodyStore();
+        for (int i = 0; i < 100; i++) {
+            store.add(1f, 1f, 1f, 0, 0, 0, 1f, false);
+        }
+        store.add(10f, 0, 0, 0, 0, 0, 1f, false);
+
+        float[][] result = forces(new BarnesHutForceSolver(), store);
+
+        assert result[100][0] < 0 : "Isolated body should be attracted by the cluster";
+        assert Float.isFinite(result[0][0]) : "Coincident bodies should get finite forces";
+    }
+
+    @Test
+    void bodiesSharingALeafShouldNotPullOnThemselves() {
+        // The leaf's rounded centre of mass is not exactly on its bodies, its aggregate would pull them on themselves
+        BodyStore store = new BodyStore();
+        float[] masses = {1.1f, 2.3f, 0.7f, 5.9f};
+        for (float m : masses) {
+            store.add(0.1f, 0.2f, 0.3f, 0, 0, 0, m, false);
+        }
+        store.add(10f, -3f, 2f, 0, 0, 0, 1f, false);
+
+        float[][] exact = forces(new DirectForceSolver(), store);
+        float[][] approx = forces(new BarnesHutForceSolver(), store);
+
+        double error = meanRelativeError(approx, exact);
+        assert error < 1e-4 : "Coincident bodies should only feel the other bodies, got an error of " + error;
+    }
+
+    @Test
+    void smallPartialEvaluationShouldNotRebuildTheTree() {
+        BodyStore store = cloud(2000, 5);
+        BarnesHutForceSolver solver = new BarnesHutForceSolver();
+        solver.prepare(store);
+        int nodes = solver.getNodeCount();
+
+        // Given a tree built for other positions
+        store.getX()[0] = -store.getX()[0];
+        float[][] exact = forces(new DirectForceSolver(), store);
+
+        // When
+        solver.preparePartial(store, 2);
+        float[][] approx = new float[2][];
+        for (int i = 0; i < 2; i++) {
+            solver.computeForce(store, i);
+            approx[i] = new float[]{store.getFx()[i], store.getFy()[i], store.getFz()[i]};
+        }
+
+        // Then
+        assert solver.getNodeCount() == nodes : "The tree should not be rebuilt for a few targets";
+        double error = meanRelativeError(approx, new float[][]{exact[0], exact[1]});
+        assert error < 1e-4 : "Few targets should get the direct sum from the current positions, got " + error;
+    }
+
+    @Test
+    void arenaShouldBeReusedBetweenTicks() {
+        BodyStore store = cloud(5000, 4);
+        BarnesHutForceSolver solver = new BarnesHutForceSolver();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        for (int i = 0; i < 20; i++) {
+            solver.prepare(store);
+            for (int j = 0; j < store.size(); j++) {
+                solver.computeForce(store, j);
+            }
+        }
+        int capacity = solver.getArenaCapacity();
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 20; i++) {
+            solver.prepare(store);
+            for (int j = 0; j < store.size(); j++) {
+                solver.computeForce(store, j);
+            }
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assert solver.getArenaCapacity() == capacity : "Arena should not be reallocated";
+        assert allocated < 1024 : "Tree rebuild should not allocate, got " + allocated + " bytes";
+    }
+}
@@ -0,0 +1,70 @@
+package cyrildeschamps.core.service.simulation.physics.force;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@QuarkusTest
+class ForceKernelTest {
+
+    private static BodyStore cloud(int count) {
+        BodyStore store = new BodyStore();
+        Random rand = new Random(7);
+        for (int i = 0; i < count; i++) {
+            store.add(
+                (rand.nextFloat() * 2 - 1) * 300,
+                (rand.nextFloat() * 2 - 1) * 300,
+                (rand.nextFloat() * 2 - 1) * 300,
+                0, 0, 0,
+                1f + rand.nextFloat(), false);
+        }
+        return store;
+    }
+
+    @Test
+    void preferredKernelShouldAlwaysBeAvailable() {
+        assert ForceKernels.preferred() != null : "A kernel should always be available";
+    }
+
+    @Test
+    void vectorKernelShouldMatchScalarKernel() {
+        assumeTrue(ForceKernels.isVectorAvailable(), "jdk.incubator.vector not enabled");
+        // Odd count so the scalar tail of the SIMD loop is exercised
+        BodyStore store = cloud(1001);
+        int n = store.size();
+        float[] expected = new float[n * 3];
+
+        DirectForceSolver scalar = new DirectForceSolver(ForceKernels.scalar());
+        for (int i = 0; i < n; i++) {
+            scalar.computeForce(store, i);
+            expected[3 * i] = store.getFx()[i];
+            expected[3 * i + 1] = store.getFy()[i];
+            expected[3 * i + 2] = store.getFz()[i];
+        }
+
+        DirectForceSolver vector = new DirectForceSolver(ForceKernels.vector());
+        for (int i = 0; i < n; i++) {
+            vector.computeForce(store, i);
+            float ex = expected[3 * i], ey = expected[3 * i + 1], ez = expected[3 * i + 2];
+            double norm = Math.sqrt(ex * ex + ey * ey + ez * ez);
+            double dx = store.getFx()[i] - ex, dy = store.getFy()[i] - ey, dz = store.getFz()[i] - ez;
+            double error = Math.sqrt(dx * dx + dy * dy + dz * dz) / norm;
+            assert error < 1e-4 : "SIMD force should match scalar force, relative error " + error + " at " + i;
+        }
+    }
+
+    @Test
+    void kernelShouldIgnoreTargetItself() {
+        BodyStore store = new BodyStore();
+        store.add(0, 0, 0, 0, 0, 0, 1f, false);
+
+        ForceKernels.preferred().accumulate(store, 0, 0, 1);
+
+        assert store.getFx()[0] == 0 && store.getFy()[0] == 0 && store.getFz()[0] == 0
+            : "A body should not attract itself";
+    }
+}
@@ -0,0 +1,120 @@
+package cyrildeschamps.core.service.simulation.physics.integration;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+@QuarkusTest
+class BlockTimestepIntegratorTest {
+    private static final int TICKS = 1000;
+
+    // Far stars on circular orbits, plus one star diving close to the black hole
+    private static BodyStore world() {
+        BodyStore store = new BodyStore();
+        store.add(0, 0, 0, 0, 0, 0, 5e5f, true);
+        Random rand = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            float r = 200 + 100 * rand.nextFloat();
+            float angle = (float) (2 * Math.PI * rand.nextFloat());
+            float speed = (float) Math.sqrt(PhysicsEngine.G * 5e5 / r);
+            store.add((float) (r * Math.cos(angle)), (float) (r * Math.sin(angle)), 0,
+                (float) (-speed * Math.sin(angle)), (float) (speed * Math.cos(angle)), 0, 1f, false);
+        }
+        float circular = (float) Math.sqrt(PhysicsEngine.G * 5e5 / 100);
+        store.add(100, 0, 0, 0, 0.3f * circular, 0, 1f, false);
+        return store;
+    }
+
+    private static PhysicsEngine engine(Integrator integrator, int substeps) {
+        PhysicsEngine engine = new PhysicsEngine();
+        engine.setIntegrator(integrator);
+        engine.setSubsteps(substeps);
+        return engine;
+    }
+
+    /**
+     * @return La plus grande erreur relative sur l'énergie pendant TICKS ticks (la valeur finale oscille trop)
+     */
+    private static double maxEnergyError(PhysicsEngine engine, BodyStore store) {
+        double initial = engine.totalEnergy(store);
+        double max = 0;
+        for (int i = 0; i < TICKS; i++) {
+            engine.step(store);
+            max = Math.max(max, Math.abs((engine.totalEnergy(store) - initial) / initial));
+        }
+        return max;
+    }
+
+    @Test
+    void closeOrbitShouldBeAccurateForAFractionOfTheForceEvaluations() {
+        // A global step small enough for the close pass
+        PhysicsEngine global = engine(new VelocityVerletIntegrator(), 32);
+        double globalError = maxEnergyError(global, world());
+        PhysicsEngine block = engine(new BlockTimestepIntegrator(), 1);
+        double blockError = maxEnergyError(block, world());
+
+        assert blockError <= globalError * 1.5 : "Block error " + blockError + " should match the small global step " + globalError;
+        assert block.getBodyForceEvaluations() * 10 < global.getBodyForceEvaluations()
+            : "Only the close star should take the small steps, got " + block.getBodyForceEvaluations();
+    }
+
+    @Test
+    void singleLevelShouldMatchVelocityVerlet() {
+        BodyStore expected = world();
+        BodyStore actual = world();
+        PhysicsEngine verlet = engine(new VelocityVerletIntegrator(), 4);
+        // Level 2 for every body: four steps per tick, like four Verlet substeps
+        PhysicsEngine block = engine(new BlockTimestepIntegrator(2, 0), 1);
+
+        for (int i = 0; i < 50; i++) {
+            verlet.step(expected);
+            block.step(actual);
+        }
+
+        for (int i = 0; i < expected.size(); i++) {
+            assert expected.getX()[i] == actual.getX()[i] && expected.getVy()[i] == actual.getVy()[i]
+                : "Body " + i + " should follow the same trajectory";
+        }
+    }
+
+    @Test
+    void forceEvaluationsPerStepShouldCountTheSynchronizationPoints() {
+        BlockTimestepIntegrator integrator = new BlockTimestepIntegrator();
+        PhysicsEngine engine = engine(integrator, 1);
+        BodyStore store = world();
+        // The first tick also evaluates the initial forces
+        engine.step(store);
+
+        for (int i = 0; i < 100; i++) {
+            long before = engine.getPartialForceEvaluations() + engine.getForceEvaluations();
+            engine.step(store);
+            long evaluations = engine.getPartialForceEvaluations() + engine.getForceEvaluations() - before;
+            assert integrator.forceEvaluationsPerStep() == evaluations
+                : "Tick " + i + " ran " + evaluations + " evaluations, reported " + integrator.forceEvaluationsPerStep();
+        }
+        assert integrator.forceEvaluationsPerStep() > 1 : "The close pass should add partial evaluations";
+    }
+
+    @Test
+    void levelsShouldFollowTheAcceleration() {
+        BlockTimestepIntegrator integrator = new BlockTimestepIntegrator();
+        PhysicsEngine engine = engine(integrator, 1);
+        BodyStore store = world();
+
+        int deepest = 0;
+        for (int i = 0; i < TICKS; i++) {
+            engine.step(store);
+            int[] counts = integrator.getLevelCounts();
+            for (int level = counts.length - 1; level > deepest; level--) {
+                if (counts[level] > 0) {
+                    deepest = level;
+                }
+            }
+            assert counts[0] >= 200 : "Far stars should keep a single step per tick";
+        }
+        assert deepest >= 4 : "The close pass should use fine levels, deepest was " + deepest;
+    }
+}
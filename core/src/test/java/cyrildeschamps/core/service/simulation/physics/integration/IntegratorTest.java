@@ -0,0 +1,81 @@
+package cyrildeschamps.core.service.simulation.physics.integration;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.physics.PhysicsEngine;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class IntegratorTest {
+    private static final int TICKS = 2000;
+
+    // A star on an eccentric orbit around a fixed black hole, the close passes are where the energy drifts
+    private static BodyStore eccentricOrbit() {
+        BodyStore store = new BodyStore();
+        store.add(0, 0, 0, 0, 0, 0, 5e5f, true);
+        float circular = (float) Math.sqrt(PhysicsEngine.G * 5e5 / 100);
+        store.add(100, 0, 0, 0, 0.6f * circular, 0, 1f, false);
+        return store;
+    }
+
+    /**
+     * @return La dérive relative de l'énergie après TICKS ticks
+     */
+    private static double drift(Integrator integrator, int substeps) {
+        BodyStore store = eccentricOrbit();
+        PhysicsEngine engine = new PhysicsEngine();
+        engine.setIntegrator(integrator);
+        engine.setSubsteps(substeps);
+        double initial = engine.totalEnergy(store);
+        for (int i = 0; i < TICKS; i++) {
+            engine.step(store);
+        }
+        return Math.abs((engine.totalEnergy(store) - initial) / initial);
+    }
+
+    @Test
+    void verletShouldDriftLessThanEulerForTheSameCost() {
+        double euler = drift(new SemiImplicitEulerIntegrator(), 1);
+        double verlet = drift(new VelocityVerletIntegrator(), 1);
+
+        assert verlet < euler / 10 : "Verlet drift " + verlet + " should be well below Euler drift " + euler;
+    }
+
+    @Test
+    void yoshidaShouldBeatVerletAtEqualForceEvaluations() {
+        // Three Verlet substeps cost as many force evaluations as one Yoshida step
+        double verlet = drift(new VelocityVerletIntegrator(), 3);
+        double yoshida = drift(new Yoshida4Integrator(), 1);
+
+        assert yoshida < verlet : "Yoshida drift " + yoshida + " should be below Verlet drift " + verlet;
+    }
+
+    @Test
+    void verletShouldReuseTheForcesOfThePreviousStep() {
+        BodyStore store = eccentricOrbit();
+        PhysicsEngine engine = new PhysicsEngine(); // Verlet by default
+        engine.setSubsteps(4);
+
+        engine.step(store);
+        long first = engine.getForceEvaluations();
+        engine.step(store);
+
+        assert first == 5 : "The first step needs one extra evaluation, got " + first;
+        assert engine.getForceEvaluations() - first == 4 : "One evaluation per substep afterwards";
+        store.add(50, 0, 0, 0, 0, 0, 1f, false);
+        engine.step(store);
+        assert engine.getForceEvaluations() - first == 9 : "A new body should invalidate the forces";
+    }
+
+    @Test
+    void byNameShouldRejectUnknownIntegrators() {
+        assert Integrators.byName("VERLET") instanceof VelocityVerletIntegrator;
+        assert Integrators.byName("forest-ruth") instanceof Yoshida4Integrator;
+        try {
+            Integrators.byName("rk4");
+            assert false : "An unknown name should be rejected";
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+}
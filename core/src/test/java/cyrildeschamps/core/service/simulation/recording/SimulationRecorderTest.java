@@ -0,0 +1,208 @@
+package cyrildeschamps.core.service.simulation.recording;
+
+import cyrildeschamps.core.service.simulation.BodyBatch;
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.Simulation;
+import cyrildeschamps.core.service.simulation.SimulationCommand;
+import cyrildeschamps.core.service.simulation.SimulationListener;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+@QuarkusTest
+class SimulationRecorderTest {
+    private static final long PERIOD_NANOS = 15_000_000;
+    private static final float TOLERANCE = 1e-3f;
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private final List<WorldSnapshot> recorded = new ArrayList<>();
+    private int deletedId;
+
+    @BeforeEach
+    void record() throws IOException {
+        file = dir.resolve("run.nbrec");
+        Simulation service = new Simulation("recorded");
+        service.resetSimulation().join();
+        service.addListener(snapshot -> recorded.add(snapshot));
+        try (SimulationRecorder recorder = new SimulationRecorder(file, PERIOD_NANOS, 20, 1024)) {
+            service.addListener(recorder);
+            for (int i = 0; i < 100; i++) {
+                if (i == 40) {
+                    service.createBodies(new BodyBatch(1).add(10, 20, 30, 1, 0, 0, 2, false)).join();
+                }
+                if (i == 70) {
+                    deletedId = recorded.getLast().getId(5);
+                    service.deleteBody(deletedId).join();
+                }
+                service.updateSimulation();
+            }
+        }
+    }
+
+    @Test
+    void replayShouldMatchTheRecordedFramesWithoutPhysics() throws IOException {
+        try (RecordingReader reader = new RecordingReader(file)) {
+            assert reader.getPeriodNanos() == PERIOD_NANOS : "The tick period should be kept";
+            int frames = 0;
+            while (reader.nextFrame()) {
+                // Commands publish a snapshot too, frames come back in publication order
+                WorldSnapshot expected = recorded.get(frames++);
+                assert reader.getTick() == expected.getTick() : "Frames should keep their tick";
+                assertClose(expected, reader.snapshot(reader.getTick()));
+            }
+            assert frames == recorded.size() : "Every snapshot should be recorded, got " + frames;
+        }
+    }
+
+    @Test
+    void seekShouldJumpForwardAndBackward() throws IOException {
+        try (RecordingReader reader = new RecordingReader(file)) {
+            reader.seek(85);
+            assert reader.getTick() == 85 : "Seek should land on the requested tick";
+            assertClose(lastRecordedAt(85), reader.snapshot(85));
+
+            reader.seek(33);
+            assert reader.getTick() == 33 : "Seek should go back through the previous keyframe";
+            assertClose(lastRecordedAt(33), reader.snapshot(33));
+        }
+    }
+
+    @Test
+    void seekShouldWorkWithoutTheSparseIndex() throws IOException {
+        Files.delete(RecordingFormat.indexFile(file));
+
+        try (RecordingReader reader = new RecordingReader(file)) {
+            reader.seek(61);
+            assert reader.getTick() == 61 : "The index should be rebuilt from the record headers";
+            assertClose(lastRecordedAt(61), reader.snapshot(61));
+        }
+    }
+
+    @Test
+    void commandsShouldBeLogged() throws IOException {
+        List<SimulationCommand> commands = new ArrayList<>();
+        try (RecordingReader reader = new RecordingReader(file)) {
+            byte type;
+            while ((type = reader.next()) != 0) {
+                if (type == RecordingFormat.COMMAND) {
+                    commands.add(reader.getCommand());
+                }
+            }
+        }
+
+        assert commands.size() == 2 : "Both commands should be logged";
+        assert commands.get(0) instanceof SimulationCommand.CreateBodies create
+            && create.batch().size() == 1 && create.batch().getZ()[0] == 30 : "The created body should be logged";
+        assert commands.get(1) instanceof SimulationCommand.DeleteBody delete && delete.id() == deletedId;
+    }
+
+    @Test
+    void replaySourceShouldPlayInRealTimeAndSeek() throws IOException, InterruptedException {
+        try (ReplaySource replay = new ReplaySource(file)) {
+            WorldSnapshot first = replay.getSnapshot();
+            Thread.sleep(PERIOD_NANOS / 1_000_000 * 5);
+            WorldSnapshot later = replay.getSnapshot();
+
+            assert replay.getRecordedTick() > 0 : "Playback should advance with the wall clock";
+            assert later.getTick() > first.getTick() : "Each new frame should get a newer playback tick";
+
+            replay.seek(10);
+            WorldSnapshot rewound = replay.getSnapshot();
+            assert replay.getRecordedTick() == 10 : "Seek should move the playback";
+            assert rewound.getTick() > later.getTick() : "Seeking back should never rewind the stream tick";
+        }
+    }
+
+    @Test
+    void recorderShouldDropInsteadOfBlocking() throws IOException {
+        Path slow = dir.resolve("slow.nbrec");
+        WorldSnapshot snapshot = recorded.getLast();
+        long start = System.nanoTime();
+        try (SimulationRecorder recorder = new SimulationRecorder(slow, PERIOD_NANOS, 20, 1)) {
+            SimulationListener listener = recorder;
+            for (int i = 0; i < 10_000; i++) {
+                listener.onSnapshot(snapshot);
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            assert recorder.getDroppedCount() > 0 : "A full buffer should drop snapshots";
+            assert elapsedMs < 500 : "Offering snapshots should never wait for the disk, took " + elapsedMs + " ms";
+        }
+    }
+
+    @Test
+    void aFastBodyShouldBeWrittenRawWithoutCoarseningTheOthers() throws IOException {
+        Path fast = dir.resolve("fast.nbrec");
+        BodyStore store = new BodyStore();
+        for (int i = 0; i < 100; i++) {
+            store.add(i, 0, 0, 0, 0, 0, 1, false);
+        }
+        List<WorldSnapshot> written = new ArrayList<>();
+        try (SimulationRecorder recorder = new SimulationRecorder(fast, PERIOD_NANOS, 100, 64)) {
+            for (int tick = 0; tick < 10; tick++) {
+                // Body 0 jumps across the world while the others barely move
+                store.getX()[0] += 5000;
+                store.getVx()[0] = -store.getVx()[0] + 3000;
+                for (int i = 1; i < 100; i++) {
+                    store.getY()[i] += 0.01f * i;
+                }
+                WorldSnapshot snapshot = WorldSnapshot.capture(store, tick, 0);
+                written.add(snapshot);
+                recorder.onSnapshot(snapshot);
+            }
+        }
+
+        int keyframes = 0;
+        try (RecordingReader reader = new RecordingReader(fast)) {
+            byte type;
+            while ((type = reader.next()) != 0) {
+                if (type == RecordingFormat.KEYFRAME) {
+                    keyframes++;
+                }
+                WorldSnapshot expected = written.get((int) reader.getTick());
+                WorldSnapshot actual = reader.snapshot(reader.getTick());
+                assert actual.getX(0) == expected.getX(0) && actual.getVx(0) == expected.getVx(0)
+                    : "The fast body should be written raw";
+                for (int i = 1; i < 100; i++) {
+                    assert Math.abs(expected.getY(i) - actual.getY(i)) <= 2 * RecordingFormat.MAX_ERROR
+                        : "Body " + i + " should keep the fixed precision, error " + Math.abs(expected.getY(i) - actual.getY(i));
+                }
+            }
+        }
+        assert keyframes == 1 : "One fast body should not force keyframes, got " + keyframes;
+    }
+
+    private WorldSnapshot lastRecordedAt(long tick) {
+        WorldSnapshot found = null;
+        for (WorldSnapshot snapshot : recorded) {
+            if (snapshot.getTick() == tick) {
+                found = snapshot;
+            }
+        }
+        assert found != null : "No snapshot recorded at tick " + tick;
+        return found;
+    }
+
+    private static void assertClose(WorldSnapshot expected, WorldSnapshot actual) {
+        assert expected.size() == actual.size() : "Body count differs at tick " + expected.getTick();
+        for (int i = 0; i < expected.size(); i++) {
+            assert Math.abs(expected.getX(i) - actual.getX(i)) <= TOLERANCE
+                && Math.abs(expected.getY(i) - actual.getY(i)) <= TOLERANCE
+                && Math.abs(expected.getZ(i) - actual.getZ(i)) <= TOLERANCE : "Position of body " + i + " differs";
+            assert expected.getId(i) == actual.getId(i) : "Id of body " + i + " differs";
+            assert Math.abs(expected.getVx(i) - actual.getVx(i)) <= TOLERANCE : "Velocity of body " + i + " differs";
+            assert expected.getMass(i) == actual.getMass(i) && expected.isBlackHole(i) == actual.isBlackHole(i);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package cyrildeschamps.core.service.simulation.physics.force;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.G;
+import static cyrildeschamps.core.service.simulation.physics.PhysicsEngine.SOFTENING;
+
+/**
+ * Noyau SIMD basé sur l'API Vector du JDK : traite {@link FloatVector#SPECIES_PREFERRED} sources à la fois.
+ * Nécessite --add-modules jdk.incubator.vector, ne pas instancier directement mais passer par {@link ForceKernels}.
+ */
+class VectorForceKernel implements ForceKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private final ScalarForceKernel tail = new ScalarForceKernel();
+
+    @Override
+    public void accumulate(BodyStore store, int target, int from, int to) {
+        float[] x = store.getX(), y = store.getY(), z = store.getZ();
+        float[] mass = store.getMass();
+        float xi = x[target], yi = y[target], zi = z[target];
+        FloatVector px = FloatVector.broadcast(SPECIES, xi);
+        FloatVector py = FloatVector.broadcast(SPECIES, yi);
+        FloatVector pz = FloatVector.broadcast(SPECIES, zi);
+        FloatVector gmi = FloatVector.broadcast(SPECIES, G * mass[target]);
+        FloatVector ax = FloatVector.zero(SPECIES);
+        FloatVector ay = FloatVector.zero(SPECIES);
+        FloatVector az = FloatVector.zero(SPECIES);
+
+        // The target itself may fall in a lane: dx = dy = dz = 0 so its contribution is zero
+        int j = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; j < upper; j += SPECIES.length()) {
+            FloatVector dx = FloatVector.fromArray(SPECIES, x, j).sub(px);
+            FloatVector dy = FloatVector.fromArray(SPECIES, y, j).sub(py);
+            FloatVector dz = FloatVector.fromArray(SPECIES, z, j).sub(pz);
+            FloatVector distance = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz)).sqrt().add(SOFTENING);
+            FloatVector scale = FloatVector.fromArray(SPECIES, mass, j).mul(gmi)
+                    .div(distance.mul(distance).mul(distance));
+            ax = dx.fma(scale, ax);
+            ay = dy.fma(scale, ay);
+            az = dz.fma(scale, az);
+        }
+
+        store.getFx()[target] += ax.reduceLanes(VectorOperators.ADD);
+        store.getFy()[target] += ay.reduceLanes(VectorOperators.ADD);
+        store.getFz()[target] += az.reduceLanes(VectorOperators.ADD);
+        if (j < to) {
+            tail.accumulate(store, target, j, to);
+        }
+    }
+}
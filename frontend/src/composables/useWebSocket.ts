@@ -1,14 +1,141 @@
 import { ref, onMounted, onBeforeUnmount } from 'vue';
 
 interface Body {
+  // Id stable du corps, à utiliser pour suivre un corps d'une frame à l'autre
+  id: number;
   x: number;
   y: number;
   z: number;
   blackHole: boolean;
-  mass: number;
-  vx: number;
-  vy: number;
-  vz: number;
+  // Point agrégé (message 'viewport') : centre de masse et masse totale d'un amas lointain, id négatif
+  impostor: boolean;
+  // Absents en delta sauf si demandés dans le message 'protocol'
+  mass?: number;
+  vx?: number;
+  vy?: number;
+  vz?: number;
+}
+
+// Format binaire (voir BinaryFrameEncoder et DeltaFrameEncoder côté gateway), little-endian
+const FRAME_VERSION = 1;
+const FRAME_TYPE_STATE = 1;
+const FRAME_TYPE_DELTA = 2;
+const FRAME_FLAG_VELOCITIES = 1;
+const FRAME_FLAG_MASS = 2;
+const FRAME_FLAG_IDS = 4;
+const FRAME_HEADER_SIZE = 24;
+const DELTA_HEADER_SIZE = 44;
+const BODY_FLAG_BLACK_HOLE = 1;
+const BODY_FLAG_IMPOSTOR = 2;
+
+// État reconstruit du flux delta : dernière keyframe plus les deltas reçus depuis
+interface StreamState {
+  tick: number;
+  x: Float32Array;
+  y: Float32Array;
+  z: Float32Array;
+  ids: Int32Array;
+  bodyFlags: Uint8Array;
+}
+
+let stream: StreamState | null = null;
+// A resync was requested and no keyframe has arrived yet: later deltas must not ask again
+let resyncPending = false;
+
+function toBodies(state: StreamState, vx: Float32Array | null, vy: Float32Array | null, vz: Float32Array | null,
+                  mass: Float32Array | null): Body[] {
+  const count = state.x.length;
+  const result: Body[] = new Array(count);
+  for (let i = 0; i < count; i++) {
+    result[i] = {
+      id: state.ids[i],
+      x: state.x[i],
+      y: state.y[i],
+      z: state.z[i],
+      vx: vx ? vx[i] : undefined,
+      vy: vy ? vy[i] : undefined,
+      vz: vz ? vz[i] : undefined,
+      mass: mass ? mass[i] : undefined,
+      blackHole: (state.bodyFlags[i] & BODY_FLAG_BLACK_HOLE) !== 0,
+      impostor: (state.bodyFlags[i] & BODY_FLAG_IMPOSTOR) !== 0,
+    };
+  }
+  return result;
+}
+
+/**
+ * Décode une frame binaire (état complet ou delta) en liste de corps.
+ * Les Float32Array lisent directement le buffer, ce qui suppose un client little-endian (tous les navigateurs courants).
+ * Retourne null si la frame est inconnue, ou si c'est un delta dont l'état de référence manque : il faut alors demander une resynchronisation.
+ */
+function decodeFrame(buffer: ArrayBuffer): Body[] | null {
+  const view = new DataView(buffer);
+  const type = view.getUint8(1);
+  if (view.getUint8(0) !== FRAME_VERSION || (type !== FRAME_TYPE_STATE && type !== FRAME_TYPE_DELTA)) {
+    console.warn('Unsupported binary frame');
+    return null;
+  }
+  const flags = view.getUint16(2, true);
+  const count = view.getUint32(4, true);
+  const tick = Number(view.getBigUint64(8, true));
+  const hasVelocities = (flags & FRAME_FLAG_VELOCITIES) !== 0;
+  const hasMass = (flags & FRAME_FLAG_MASS) !== 0;
+
+  let offset: number;
+  const nextFloats = () => {
+    const array = new Float32Array(buffer, offset, count);
+    offset += count * 4;
+    return array;
+  };
+
+  if (type === FRAME_TYPE_STATE) {
+    offset = FRAME_HEADER_SIZE;
+    // Copies: the next deltas are applied in place
+    const x = nextFloats().slice();
+    const y = nextFloats().slice();
+    const z = nextFloats().slice();
+    const vx = hasVelocities ? nextFloats() : null;
+    const vy = hasVelocities ? nextFloats() : null;
+    const vz = hasVelocities ? nextFloats() : null;
+    const mass = hasMass ? nextFloats() : null;
+    // Older servers send no ids: fall back to the index
+    // Signed: impostors have negative ids
+    let ids: Int32Array;
+    if ((flags & FRAME_FLAG_IDS) !== 0) {
+      ids = new Int32Array(buffer, offset, count).slice();
+      offset += count * 4;
+    } else {
+      ids = Int32Array.from({ length: count }, (_, i) => i);
+    }
+    const bodyFlags = new Uint8Array(buffer, offset, count).slice();
+    stream = { tick, x, y, z, ids, bodyFlags };
+    resyncPending = false;
+    return toBodies(stream, vx, vy, vz, mass);
+  }
+
+  const baseTick = Number(view.getBigUint64(24, true));
+  if (!stream || stream.tick !== baseTick || stream.x.length !== count) {
+    stream = null;
+    return null;
+  }
+  const steps = [view.getFloat32(32, true), view.getFloat32(36, true), view.getFloat32(40, true)];
+  const axes = [stream.x, stream.y, stream.z];
+  for (let axis = 0; axis < 3; axis++) {
+    const deltas = new Int16Array(buffer, DELTA_HEADER_SIZE + axis * count * 2, count);
+    const positions = axes[axis];
+    const step = steps[axis];
+    for (let i = 0; i < count; i++) {
+      // Same float32 rounding as the server so both reconstructions stay identical
+      positions[i] = Math.fround(positions[i] + Math.fround(deltas[i] * step));
+    }
+  }
+  offset = DELTA_HEADER_SIZE + ((3 * count * 2 + 3) & ~3);
+  const vx = hasVelocities ? nextFloats() : null;
+  const vy = hasVelocities ? nextFloats() : null;
+  const vz = hasVelocities ? nextFloats() : null;
+  const mass = hasMass ? nextFloats() : null;
+  stream.tick = tick;
+  return toBodies(stream, vx, vy, vz, mass);
 }
 
 // Variables singleton partagées
@@ -28,9 +155,23 @@ function connect() {
     return;
   }
 
-  ws = new WebSocket('ws://localhost:8080/nbody');
+  // Open the page with ?room=<id> to get a private simulation
+  const room = new URLSearchParams(window.location.search).get('room');
+  ws = new WebSocket('ws://localhost:8080/nbody' + (room ? `?room=${encodeURIComponent(room)}` : ''));
+  ws.binaryType = 'arraybuffer';
 
   ws.onmessage = (event) => {
+    if (event.data instanceof ArrayBuffer) {
+      const decoded = decodeFrame(event.data);
+      if (decoded) {
+        bodies.value = decoded;
+      } else if (!stream && !resyncPending) {
+        // Missed a frame of the delta stream, the server answers with a keyframe
+        resyncPending = true;
+        sendMessage({ type: 'resync' });
+      }
+      return;
+    }
     const data = JSON.parse(event.data);
     if (data.bodies) {
       bodies.value = data.bodies;
@@ -51,10 +192,29 @@ function connect() {
   ws.onopen = () => {
     console.log('WebSocket connected');
     connectionAttempts = 0;
+    stream = null;
+    resyncPending = false;
+    // Masses size the impostors and fill the bodies panel, the delta defaults leave them out
+    sendMessage({ type: 'protocol', format: 'delta', mass: true });
+    if (lastViewport) {
+      sendMessage(lastViewport);
+    }
     sendMessage({ type: 'fps', fps: 60 });
   };
 }
 
+// Dernière région envoyée, renvoyée à la reconnexion
+let lastViewport: any = null;
+
+/**
+ * Restreint le flux à une boîte (par exemple la boîte englobante du frustum de la caméra) :
+ * le serveur n'envoie que les corps qu'elle contient et agrège les amas lointains, vus depuis 'eye'.
+ */
+function sendViewport(min: number[], max: number[], eye: number[], maxBodies?: number) {
+  lastViewport = { type: 'viewport', min, max, eye, maxBodies };
+  sendMessage(lastViewport);
+}
+
 function sendMessage(message: any) {
   if (ws?.readyState === WebSocket.OPEN) {
     ws.send(JSON.stringify(message));
@@ -81,6 +241,7 @@ export function useWebSocket() {
 
   return {
     sendMessage,
+    sendViewport,
     bodies
   };
 }
@@ -1,16 +1,21 @@
 package cyrildeschamps.gateway.DTO;
 
 import cyrildeschamps.core.service.simulation.Body;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
 import lombok.Data;
 
 @Data
 public class BodyDTO {
+    private int id;
     private float x, y, z;
     private float vx, vy, vz;
     private float mass;
     private boolean blackHole;
+    /** Point agrégé d'une vue réduite : masse totale et centre de masse de plusieurs corps */
+    private boolean impostor;
 
     public BodyDTO(Body body) {
+        this.id = body.getId();
         this.x = body.getX();
         this.y = body.getY();
         this.z = body.getZ();
@@ -20,4 +25,17 @@ public class BodyDTO {
         this.mass = body.getMass();
         this.blackHole = body.isBlackHole();
     }
+
+    public BodyDTO(WorldSnapshot snapshot, int index) {
+        this.id = snapshot.getId(index);
+        this.x = snapshot.getX(index);
+        this.y = snapshot.getY(index);
+        this.z = snapshot.getZ(index);
+        this.vx = snapshot.getVx(index);
+        this.vy = snapshot.getVy(index);
+        this.vz = snapshot.getVz(index);
+        this.mass = snapshot.getMass(index);
+        this.blackHole = snapshot.isBlackHole(index);
+        this.impostor = snapshot.isImpostor(index);
+    }
 }
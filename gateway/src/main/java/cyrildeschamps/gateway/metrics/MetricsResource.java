@@ -0,0 +1,36 @@
+package cyrildeschamps.gateway.metrics;
+
+import cyrildeschamps.core.metrics.PrometheusWriter;
+import cyrildeschamps.gateway.websocket.manager.NBodySessionManager;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Expose les métriques de la simulation et de la diffusion au format texte de Prometheus.
+ * La page est reconstruite à chaque lecture, l'enregistrement des mesures ne dépend pas de ce endpoint.
+ */
+@Path("/metrics")
+@ApplicationScoped
+public class MetricsResource {
+
+    @Inject
+    NBodySessionManager sessionManager;
+
+    @GET
+    @Produces(PrometheusWriter.CONTENT_TYPE)
+    public String scrape() {
+        PrometheusWriter out = new PrometheusWriter();
+        sessionManager.writeMetrics(out);
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        out.gauge("jvm_heap_used_bytes", "Used heap", heap.getUsed())
+            .gauge("jvm_heap_max_bytes", "Maximum heap", heap.getMax())
+            .gauge("jvm_threads", "Live threads", ManagementFactory.getThreadMXBean().getThreadCount());
+        return out.toString();
+    }
+}
@@ -0,0 +1,89 @@
+package cyrildeschamps.gateway.websocket.broadcast;
+
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame encodée une seule fois et partagée entre les sessions.
+ * Le buffer binaire n'est jamais modifié : chaque envoi travaille sur une vue dupliquée.
+ */
+public final class EncodedFrame {
+    private static final long NO_BASE = -1;
+
+    private final long tick;
+    private final long baseTick;
+    private final String text;
+    private final ByteBuffer binary;
+
+    private EncodedFrame(long tick, long baseTick, String text, ByteBuffer binary) {
+        this.tick = tick;
+        this.baseTick = baseTick;
+        this.text = text;
+        this.binary = binary;
+    }
+
+    public static EncodedFrame text(long tick, String text) {
+        return new EncodedFrame(tick, NO_BASE, text, null);
+    }
+
+    public static EncodedFrame binary(long tick, ByteBuffer binary) {
+        return new EncodedFrame(tick, NO_BASE, null, binary.asReadOnlyBuffer().order(binary.order()));
+    }
+
+    /**
+     * Frame qui ne peut être appliquée que par un client ayant déjà l'état du tick 'baseTick'
+     */
+    public static EncodedFrame delta(long tick, long baseTick, ByteBuffer binary) {
+        return new EncodedFrame(tick, baseTick, null, binary.asReadOnlyBuffer().order(binary.order()));
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return Le tick de référence d'une frame delta, -1 pour une frame autonome
+     */
+    public long getBaseTick() {
+        return baseTick;
+    }
+
+    public boolean isDelta() {
+        return baseTick != NO_BASE;
+    }
+
+    public boolean isBinary() {
+        return binary != null;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return Une vue indépendante du contenu binaire, positionnée au début
+     */
+    public ByteBuffer getBinary() {
+        return binary.duplicate().order(binary.order());
+    }
+
+    /**
+     * @return La taille de la frame en octets (caractères pour le texte)
+     */
+    public int size() {
+        return binary != null ? binary.remaining() : text.length();
+    }
+
+    /**
+     * Envoi non bloquant, 'handler' est appelé quand l'envoi est terminé
+     */
+    public void sendTo(RemoteEndpoint.Async remote, SendHandler handler) {
+        if (binary != null) {
+            remote.sendBinary(getBinary(), handler);
+        } else {
+            remote.sendText(text, handler);
+        }
+    }
+}
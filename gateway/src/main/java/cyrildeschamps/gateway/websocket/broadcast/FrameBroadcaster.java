@@ -0,0 +1,254 @@
+package cyrildeschamps.gateway.websocket.broadcast;
+
+import cyrildeschamps.core.metrics.PrometheusWriter;
+import cyrildeschamps.core.metrics.Timer;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.websocket.protocol.BinaryFrameEncoder;
+import cyrildeschamps.gateway.websocket.protocol.DeltaFrameEncoder;
+import cyrildeschamps.gateway.websocket.protocol.FrameEncoder;
+import cyrildeschamps.gateway.websocket.protocol.JsonFrameEncoder;
+import cyrildeschamps.gateway.websocket.protocol.StreamSettings;
+import cyrildeschamps.gateway.websocket.protocol.WireFormat;
+import cyrildeschamps.gateway.websocket.view.SnapshotIndex;
+import cyrildeschamps.gateway.websocket.view.Viewport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Étape de diffusion : chaque tick publié est encodé une seule fois par réglages de flux et par palier de fps,
+ * puis la même frame est remise à toutes les sessions concernées.
+ * Les sessions qui suivent une région ({@link Viewport}) ont leur propre flux, mais partagent l'index spatial
+ * du tick, construit une seule fois.
+ */
+public class FrameBroadcaster {
+
+    private record Key(StreamSettings settings, int fps) { }
+
+    /**
+     * Un flux par clé. Les encodeurs delta ont un état : toutes les frames d'un flux sont encodées à la suite,
+     * sous le verrou du flux.
+     */
+    private static final class Stream {
+        private final WireFormat format;
+        private final FrameEncoder encoder;
+        private final FrameEncoder keyframeEncoder;
+        private WorldSnapshot snapshot;
+        private EncodedFrame frame;
+        private EncodedFrame keyframe;
+
+        private Stream(StreamSettings settings) {
+            this.format = settings.format();
+            this.encoder = newEncoder(settings);
+            this.keyframeEncoder = new BinaryFrameEncoder(settings.velocities(), settings.mass());
+        }
+    }
+
+    /**
+     * Flux privé d'une session qui suit une région : sa vue réduite lui est propre et n'est pas mutualisée
+     */
+    public static final class View {
+        private final Stream stream;
+        private final Viewport viewport;
+
+        private View(StreamSettings settings, Viewport viewport) {
+            this.stream = new Stream(settings);
+            this.viewport = viewport;
+        }
+    }
+
+    private final ConcurrentMap<Key, Stream> streams = new ConcurrentHashMap<>();
+    private final LongAdder encodes = new LongAdder();
+    private final LongAdder sends = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder indexBuilds = new LongAdder();
+    // Filled once for every format, then only read
+    private final Map<WireFormat, Timer> encodeTimers = new EnumMap<>(WireFormat.class);
+    private final Timer sendTimer = new Timer();
+    private final Timer indexTimer = new Timer();
+    private volatile SnapshotIndex index;
+
+    public FrameBroadcaster() {
+        for (WireFormat format : WireFormat.values()) {
+            encodeTimers.put(format, new Timer());
+        }
+    }
+
+    private static FrameEncoder newEncoder(StreamSettings settings) {
+        return switch (settings.format()) {
+            case JSON -> new JsonFrameEncoder();
+            case BINARY -> new BinaryFrameEncoder(settings.velocities(), settings.mass());
+            case DELTA -> new DeltaFrameEncoder(settings.velocities(), settings.mass());
+        };
+    }
+
+    /**
+     * Retourne la frame du flux pour ce snapshot, en ne l'encodant que si le flux ne l'a pas déjà.
+     * Les appels concurrents sur le même flux attendent l'encodage en cours au lieu de le refaire.
+     * @param lastSentTick Dernier tick reçu par la session, -1 si aucun : une session qui n'a pas l'état
+     *                     de référence d'une frame delta reçoit une keyframe du même tick à la place
+     * @return La frame à envoyer, ou null si la session a déjà l'état de ce tick
+     */
+    public EncodedFrame frameFor(StreamSettings settings, int fps, WorldSnapshot snapshot, long lastSentTick) {
+        Stream stream = streams.computeIfAbsent(new Key(settings, fps), key -> new Stream(key.settings()));
+        return next(stream, snapshot, null, lastSentTick);
+    }
+
+    /**
+     * Ouvre le flux privé d'une session qui suit une région. Une nouvelle région ou de nouveaux réglages
+     * demandent un nouveau flux, qui repart d'une keyframe.
+     */
+    public View openView(StreamSettings settings, Viewport viewport) {
+        return new View(settings, viewport);
+    }
+
+    /**
+     * Comme {@link #frameFor(StreamSettings, int, WorldSnapshot, long)} pour le flux privé d'une session :
+     * le snapshot est réduit à la région de la vue avant d'être encodé
+     */
+    public EncodedFrame frameFor(View view, WorldSnapshot snapshot, long lastSentTick) {
+        return next(view.stream, snapshot, view.viewport, lastSentTick);
+    }
+
+    /**
+     * Index spatial du snapshot, construit par la première vue qui en a besoin puis partagé jusqu'au tick suivant
+     */
+    public SnapshotIndex indexFor(WorldSnapshot snapshot) {
+        SnapshotIndex current = index;
+        if (current != null && current.getSnapshot() == snapshot) {
+            return current;
+        }
+        synchronized (this) {
+            current = index;
+            if (current == null || current.getSnapshot() != snapshot) {
+                long start = System.nanoTime();
+                current = new SnapshotIndex(snapshot);
+                indexTimer.recordSince(start);
+                indexBuilds.increment();
+                // A late session must not replace the index of a newer tick
+                if (index == null || snapshot.getTick() >= index.getTick()) {
+                    index = current;
+                }
+            }
+            return current;
+        }
+    }
+
+    private EncodedFrame next(Stream stream, WorldSnapshot snapshot, Viewport viewport, long lastSentTick) {
+        synchronized (stream) {
+            // Never go back in time: a session may still hold an older snapshot than the stream
+            if (stream.frame == null || snapshot.getTick() > stream.frame.getTick()) {
+                WorldSnapshot visible = viewport == null ? snapshot : indexFor(snapshot).cull(viewport);
+                stream.frame = encode(stream.encoder, stream.format, visible);
+                stream.snapshot = visible;
+            }
+            EncodedFrame frame = stream.frame;
+            if (!frame.isDelta() || frame.getBaseTick() == lastSentTick) {
+                return frame;
+            }
+            if (frame.getTick() == lastSentTick) {
+                return null;
+            }
+            // Resync: the session missed the base frame. The keyframe carries exact positions, the stream's
+            // quantization error then stays bounded by half a step until its next keyframe
+            if (stream.keyframe == null || stream.keyframe.getTick() != frame.getTick()) {
+                stream.keyframe = encode(stream.keyframeEncoder, WireFormat.BINARY, stream.snapshot);
+            }
+            return stream.keyframe;
+        }
+    }
+
+    private EncodedFrame encode(FrameEncoder encoder, WireFormat format, WorldSnapshot snapshot) {
+        try {
+            long start = System.nanoTime();
+            EncodedFrame frame = encoder.encode(snapshot);
+            encodeTimers.get(format).recordSince(start);
+            encodes.increment();
+            return frame;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A appeler après chaque envoi réussi d'une frame à une session
+     * @param bytes Taille de la frame envoyée
+     * @param nanos Durée entre la remise de la frame au websocket et la confirmation de l'envoi
+     */
+    public void recordSend(int bytes, long nanos) {
+        sends.increment();
+        bytesSent.add(bytes);
+        sendTimer.record(nanos);
+    }
+
+    /**
+     * A appeler après chaque envoi en échec
+     */
+    public void recordFailure() {
+        sendFailures.increment();
+    }
+
+    public long getEncodeCount() {
+        return encodes.sum();
+    }
+
+    /**
+     * Nombre d'index spatiaux construits : au plus un par tick tant que les vues suivent le même snapshot
+     */
+    public long getIndexBuildCount() {
+        return indexBuilds.sum();
+    }
+
+    public long getSendCount() {
+        return sends.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public Timer getEncodeTimer(WireFormat format) {
+        return encodeTimers.get(format);
+    }
+
+    /**
+     * Nombre d'encodages par frame envoyée : 1 sans mutualisation, 1/n avec n sessions par palier
+     */
+    public double getEncodeToSendRatio() {
+        long sent = sends.sum();
+        return sent == 0 ? 0 : (double) encodes.sum() / sent;
+    }
+
+    /**
+     * Ajoute les compteurs de diffusion de toutes les sessions servies par cet encodeur
+     * @param labels Paires nom, valeur ajoutées à chaque échantillon (la room par exemple)
+     */
+    public void writeMetrics(PrometheusWriter out, String... labels) {
+        encodeTimers.forEach((format, timer) -> out.summary("nbody_frame_encode_seconds", "Time to encode one frame",
+            timer, with(labels, "format", format.name().toLowerCase(Locale.ROOT))));
+        out.summary("nbody_frame_send_seconds", "Time from handing a frame to the websocket to its completion",
+                sendTimer, labels)
+            .summary("nbody_spatial_index_build_seconds", "Time to build the octree shared by viewport sessions",
+                indexTimer, labels)
+            .counter("nbody_frames_encoded_total", "Frames encoded, shared by every session of a stream",
+                encodes.sum(), labels)
+            .counter("nbody_frames_sent_total", "Frames sent to sessions", sends.sum(), labels)
+            .counter("nbody_frame_send_failures_total", "Failed frame sends", sendFailures.sum(), labels)
+            .counter("nbody_frame_bytes_sent_total", "Bytes of frames sent (characters for JSON)", bytesSent.sum(), labels);
+    }
+
+    private static String[] with(String[] labels, String name, String value) {
+        String[] all = Arrays.copyOf(labels, labels.length + 2);
+        all[labels.length] = name;
+        all[labels.length + 1] = value;
+        return all;
+    }
+}
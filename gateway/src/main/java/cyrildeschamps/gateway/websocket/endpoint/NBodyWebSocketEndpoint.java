@@ -5,10 +5,16 @@ import cyrildeschamps.gateway.websocket.manager.NBodySessionManager;
 import cyrildeschamps.gateway.websocket.messages.CreateBodiesMessage;
 import cyrildeschamps.gateway.websocket.messages.DeleteBodyMessage;
 import cyrildeschamps.gateway.websocket.messages.FpsMessage;
+import cyrildeschamps.gateway.websocket.messages.ProtocolMessage;
+import cyrildeschamps.gateway.websocket.messages.RecordMessage;
 import cyrildeschamps.gateway.websocket.messages.ResetSimulationMessage;
+import cyrildeschamps.gateway.websocket.messages.ResyncMessage;
+import cyrildeschamps.gateway.websocket.messages.SeekMessage;
+import cyrildeschamps.gateway.websocket.messages.ViewportMessage;
 import cyrildeschamps.gateway.websocket.messages.WebSocketMessage;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.websocket.CloseReason;
 import jakarta.websocket.OnClose;
 import jakarta.websocket.OnError;
 import jakarta.websocket.OnMessage;
@@ -17,6 +23,11 @@ import jakarta.websocket.Session;
 import jakarta.websocket.server.ServerEndpoint;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @Slf4j
 @ServerEndpoint("/nbody")
 @ApplicationScoped
@@ -27,7 +38,30 @@ public class NBodyWebSocketEndpoint {
     NBodySessionManager sessionManager;
 
     @OnOpen
-    public void onOpen(Session session) { }
+    public void onOpen(Session session) {
+        // ws://host/nbody?room=<id> or ?replay=<name>, the default room when both are absent
+        String replay = parameter(session, "replay");
+        String room = parameter(session, "room");
+        try {
+            if (replay != null) {
+                sessionManager.watchReplay(session, replay);
+            } else if (room != null) {
+                sessionManager.join(session, room);
+            }
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            log.warn("Connexion refusée pour la session {} : {}", session.getId(), e.getMessage());
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, e.getMessage()));
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+    }
+
+    private static String parameter(Session session, String name) {
+        List<String> values = session.getRequestParameterMap().get(name);
+        return values == null || values.isEmpty() ? null : values.getFirst();
+    }
 
     @OnClose
     public void onClose(Session session) {
@@ -45,17 +79,46 @@ public class NBodyWebSocketEndpoint {
             WebSocketMessage wsMessage = objectMapper.readValue(message, WebSocketMessage.class);
             switch (wsMessage) {
                 case FpsMessage fpsMessage -> sessionManager.subscribe(session, fpsMessage.getFps());
-                case CreateBodiesMessage createMessage -> sessionManager.createBodies(
+                case CreateBodiesMessage createMessage -> logFailure(session, "createBodies", sessionManager.createBodies(
+                    session,
+                    createMessage.getDistribution(),
                     createMessage.getCount(),
                     createMessage.getRange(),
                     createMessage.isBlackHole()
-                );
-                case DeleteBodyMessage deleteMessage -> sessionManager.deleteBody(deleteMessage.getIndex());
-                case ResetSimulationMessage resetMessage -> sessionManager.resetSimulation();
+                ));
+                case DeleteBodyMessage deleteMessage ->
+                    logFailure(session, "deleteBody", sessionManager.deleteBody(session, deleteMessage.getId()));
+                case ResetSimulationMessage resetMessage ->
+                    logFailure(session, "resetSimulation", sessionManager.resetSimulation(session));
+                case ProtocolMessage protocolMessage -> sessionManager.setStreamSettings(session, protocolMessage.getStreamSettings());
+                case ResyncMessage resyncMessage -> sessionManager.requestResync(session);
+                case RecordMessage recordMessage -> {
+                    if (recordMessage.getName() != null) {
+                        sessionManager.startRecording(session, recordMessage.getName());
+                    } else {
+                        sessionManager.stopRecording(session);
+                    }
+                }
+                case SeekMessage seekMessage -> sessionManager.seek(session, seekMessage.getTick());
+                case ViewportMessage viewportMessage -> sessionManager.setViewport(session,
+                    viewportMessage.toViewport(sessionManager.getViewportMaxBodies()));
                 default -> log.warn("Type de message non supporté : {}", wsMessage.getClass().getSimpleName());
             }
         } catch (Exception e) {
             log.error("Erreur lors du traitement du message sur la session {} : {}", session.getId(), e.getMessage());
         }
     }
+
+    /**
+     * Journalise une commande refusée (lecture seule, nombre de corps trop grand) ou en échec dans la simulation.
+     * Les commandes sont asynchrones, leur échec n'arrive pas jusqu'au bloc catch de {@link #onMessage}.
+     */
+    private static void logFailure(Session session, String command, CompletableFuture<?> result) {
+        result.whenComplete((value, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                log.warn("Commande {} refusée pour la session {} : {}", command, session.getId(), cause.getMessage());
+            }
+        });
+    }
 }
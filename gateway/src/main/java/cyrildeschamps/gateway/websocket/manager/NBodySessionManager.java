@@ -1,97 +1,514 @@
 package cyrildeschamps.gateway.websocket.manager;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import cyrildeschamps.gateway.DTO.BodyDTO;
-import cyrildeschamps.core.service.simulation.Body;
+import cyrildeschamps.core.metrics.PrometheusWriter;
+import cyrildeschamps.core.service.simulation.BodyBatch;
 import cyrildeschamps.core.service.simulation.NBodyService;
+import cyrildeschamps.core.service.simulation.Simulation;
+import cyrildeschamps.core.service.simulation.SimulationRegistry;
+import cyrildeschamps.core.service.simulation.SnapshotSource;
+import cyrildeschamps.core.service.simulation.distribution.Distribution;
+import cyrildeschamps.core.service.simulation.distribution.Distributions;
+import cyrildeschamps.core.service.simulation.distribution.UniformCube;
+import cyrildeschamps.core.service.simulation.recording.ReplaySource;
+import cyrildeschamps.core.service.simulation.recording.SimulationRecorder;
+import cyrildeschamps.gateway.websocket.broadcast.FrameBroadcaster;
+import cyrildeschamps.gateway.websocket.protocol.StreamSettings;
+import cyrildeschamps.gateway.websocket.protocol.WireFormat;
+import cyrildeschamps.gateway.websocket.view.Viewport;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.websocket.Session;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import java.io.IOException;
-import java.util.List;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Slf4j
 @ApplicationScoped
 public class NBodySessionManager {
+    private static final Pattern RECORDING_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final String RECORDING_EXTENSION = ".nbrec";
+    private static final long REPLAY_POLL_MS = 5;
+    private static final float DEFAULT_SPEED = 2.0f;
+    // Mass of the default world's central black hole, which rings and disks orbit
+    private static final float BLACK_HOLE_MASS = 5e5f;
+    private static final int ROOM_LOCK_STRIPES = 64;
 
-    private final ConcurrentMap<Session, ScheduledFuture<?>> sessionTasks = new ConcurrentHashMap<>();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConcurrentMap<Session, SessionState> sessionStates = new ConcurrentHashMap<>();
     private final Random random = new Random();
 
+    // Sessions of each named room, the room is destroyed when its last session leaves
+    private final ConcurrentMap<Session, String> sessionRooms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<Session>> roomSessions = new ConcurrentHashMap<>();
+    // Joins and teardowns of one room id are serialized, so a join never lands on a room being destroyed
+    private final Object[] roomLocks = Stream.generate(Object::new).limit(ROOM_LOCK_STRIPES).toArray();
+    private final ConcurrentMap<String, FrameBroadcaster> roomBroadcasters = new ConcurrentHashMap<>();
+    // One tick-driven publisher per room, replays get theirs fed by a single shared pump
+    private final ConcurrentMap<String, TickPublisher> roomPublishers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Session, TickPublisher> replayPublishers = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> replayPump;
+
     @Inject
     NBodyService nBodyService;
 
+    @Inject
+    SimulationRegistry registry;
+
+    @ConfigProperty(name = "nbody.recording.dir", defaultValue = "recordings")
+    String recordingDir;
+
+    /** Nombre maximum de corps créés par un seul message */
+    @ConfigProperty(name = "nbody.bodies.max-per-request", defaultValue = "1000000")
+    int maxBodiesPerRequest;
+
+    /** Budget de points par frame d'une session qui suit une région, et budget maximum qu'elle peut demander */
+    @Getter
+    @ConfigProperty(name = "nbody.viewport.max-bodies", defaultValue = "20000")
+    int viewportMaxBodies;
+
+    // One recorder per room, replays are per session so each viewer has its own playback position
+    private final ConcurrentMap<String, SimulationRecorder> recorders = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Session, ReplaySource> replays = new ConcurrentHashMap<>();
+
+    // Encodes and sends for every tier, plus the replay pump
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(10);
 
-    public void subscribe(Session session, int fps) {
+    /** Encodeurs de la room par défaut */
+    @Getter
+    private final FrameBroadcaster broadcaster = new FrameBroadcaster();
+
+    /**
+     * Rattache la session à une room, créée si besoin. Sans appel, la session suit la room par défaut.
+     * @throws IllegalArgumentException si l'identifiant est invalide
+     * @throws IllegalStateException si le nombre maximum de rooms est atteint
+     */
+    public void join(Session session, String roomId) {
         cancelSubscription(session);
+        if (roomId == null || NBodyService.DEFAULT_ROOM.equals(roomId)) {
+            return;
+        }
+        // Only the membership is updated under the map's lock, starting the room generates its bodies
+        synchronized (roomLock(roomId)) {
+            roomSessions.compute(roomId, (id, sessions) -> {
+                Set<Session> members = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+                members.add(session);
+                return members;
+            });
+            try {
+                registry.getOrCreate(roomId);
+            } catch (RuntimeException e) {
+                removeMember(roomId, session);
+                throw e;
+            }
+            sessionRooms.put(session, roomId);
+        }
+    }
 
-        Runnable task = () -> {
-            if (!session.isOpen()) {
-                cancelSubscription(session);
+    /**
+     * @return L'identifiant de la room de la session
+     */
+    public String getRoom(Session session) {
+        return sessionRooms.getOrDefault(session, NBodyService.DEFAULT_ROOM);
+    }
+
+    private void leave(Session session) {
+        String roomId = sessionRooms.remove(session);
+        if (roomId == null) {
+            return;
+        }
+        // The room is torn down outside of the map's lock: destroying it waits for a running tick
+        synchronized (roomLock(roomId)) {
+            if (!removeMember(roomId, session)) {
+                return;
+            }
+            closeRecorder(roomId);
+            TickPublisher publisher = roomPublishers.remove(roomId);
+            Simulation simulation = registry.get(roomId);
+            if (publisher != null && simulation != null) {
+                simulation.removeListener(publisher);
+            }
+            registry.destroy(roomId);
+            roomBroadcasters.remove(roomId);
+        }
+    }
+
+    private Object roomLock(String roomId) {
+        return roomLocks[Math.floorMod(roomId.hashCode(), roomLocks.length)];
+    }
+
+    /**
+     * @return true si la session était la dernière de la room
+     */
+    private boolean removeMember(String roomId, Session session) {
+        boolean[] emptied = new boolean[1];
+        roomSessions.computeIfPresent(roomId, (id, sessions) -> {
+            sessions.remove(session);
+            emptied[0] = sessions.isEmpty();
+            return emptied[0] ? null : sessions;
+        });
+        return emptied[0];
+    }
+
+    private Simulation simulationOf(Session session) {
+        String roomId = sessionRooms.get(session);
+        Simulation room = roomId != null ? registry.get(roomId) : null;
+        return room != null ? room : nBodyService;
+    }
+
+    /**
+     * Remplace le flux de la session par la relecture d'un enregistrement, sans physique.
+     * Les commandes de la session sont alors refusées.
+     */
+    public void watchReplay(Session session, String name) throws IOException {
+        cancelSubscription(session);
+        ReplaySource replay = new ReplaySource(recordingFile(name));
+        replays.put(session, replay);
+        replayPublishers.put(session, new TickPublisher(replay.getPeriodNanos(), scheduler));
+        startReplayPump();
+        // Own broadcaster: the replay's frames are never shared with a live room
+        sessionStates.put(session, new SessionState(session, new FrameBroadcaster()));
+    }
+
+    /**
+     * Reprend la relecture de la session au tick enregistré donné
+     */
+    public void seek(Session session, long tick) throws IOException {
+        ReplaySource replay = replays.get(session);
+        if (replay == null) {
+            throw new IllegalStateException("Session " + session.getId() + " is not watching a replay");
+        }
+        replay.seek(tick);
+    }
+
+    /**
+     * Enregistre la room de la session jusqu'à {@link #stopRecording(Session)} ou la destruction de la room.
+     * Un enregistrement déjà en cours dans la room est arrêté.
+     */
+    public void startRecording(Session session, String name) throws IOException {
+        Path file = recordingFile(name);
+        Files.createDirectories(file.getParent());
+        Simulation simulation = simulationOf(session);
+        SimulationRecorder recorder = new SimulationRecorder(file, simulation.getTickPeriodNanos());
+        closeRecorder(getRoom(session));
+        recorders.put(getRoom(session), recorder);
+        simulation.addListener(recorder);
+        log.info("Enregistrement de la room {} dans {}", getRoom(session), file);
+    }
+
+    public void stopRecording(Session session) {
+        closeRecorder(getRoom(session));
+    }
+
+    private void closeRecorder(String roomId) {
+        SimulationRecorder recorder = recorders.remove(roomId);
+        if (recorder == null) {
+            return;
+        }
+        Simulation simulation = registry.get(roomId);
+        if (simulation != null) {
+            simulation.removeListener(recorder);
+        }
+        recorder.close();
+        log.info("Enregistrement de la room {} terminé : {} frames, {} abandonnées",
+            roomId, recorder.getFrameCount(), recorder.getDroppedCount());
+    }
+
+    Path recordingFile(String name) {
+        if (name == null || !RECORDING_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid recording name: " + name);
+        }
+        return Path.of(recordingDir).resolve(name + RECORDING_EXTENSION);
+    }
+
+    /**
+     * Abonne la session au palier de fps le plus proche sans le dépasser (voir {@link TickPublisher}).
+     * Coûte O(1) : aucune tâche n'est planifiée, les frames suivent les ticks de la simulation.
+     * @throws IllegalStateException si la room de la session vient d'être détruite
+     */
+    public void subscribe(Session session, int fps) {
+        TickPublisher publisher = publisherOf(session);
+        SessionState state = stateOf(session);
+        int divisor = publisher.subscribe(state, fps);
+        // Sessions of a tier share their encoded frames
+        state.setFps(publisher.tierFps(divisor));
+        state.requestResync();
+        if (session.isOpen()) {
+            // The current state right away, the next ones come with the ticks
+            ReplaySource replay = replays.get(session);
+            state.offer((replay != null ? replay : simulationOf(session)).getSnapshot());
+        }
+    }
+
+    private TickPublisher publisherOf(Session session) {
+        TickPublisher replay = replayPublishers.get(session);
+        if (replay != null) {
+            return replay;
+        }
+        String roomId = sessionRooms.get(session);
+        if (roomId == null) {
+            return roomPublishers.computeIfAbsent(NBodyService.DEFAULT_ROOM, id -> newPublisher(nBodyService));
+        }
+        // Under the room's lock, so the publisher is attached to the simulation that leave() tears down
+        synchronized (roomLock(roomId)) {
+            Simulation simulation = registry.get(roomId);
+            if (simulation == null || !roomId.equals(sessionRooms.get(session))) {
+                throw new IllegalStateException("Room " + roomId + " no longer exists");
+            }
+            return roomPublishers.computeIfAbsent(roomId, id -> newPublisher(simulation));
+        }
+    }
+
+    private TickPublisher newPublisher(Simulation simulation) {
+        TickPublisher publisher = new TickPublisher(simulation.getTickPeriodNanos(), scheduler);
+        simulation.addListener(publisher);
+        return publisher;
+    }
+
+    /**
+     * Une seule tâche pour toutes les relectures : chacune avance avec l'horloge et publie ses nouvelles frames
+     */
+    private synchronized void startReplayPump() {
+        if (replayPump != null) {
+            return;
+        }
+        replayPump = scheduler.scheduleAtFixedRate(() -> replayPublishers.forEach((session, publisher) -> {
+            ReplaySource replay = replays.get(session);
+            if (replay == null) {
                 return;
             }
             try {
-                List<Body> bodies = nBodyService.getBodies();
-                List<BodyDTO> dtos = bodies.stream().map(BodyDTO::new).toList();
-                session.getBasicRemote().sendText(objectMapper.writeValueAsString(Map.of("bodies", dtos)));
-            } catch (IOException e) {
-                // Ignore, websocket interrupted
+                publisher.onSnapshot(replay.getSnapshot());
+            } catch (RuntimeException e) {
+                log.warn("Relecture interrompue pour la session {} : {}", session.getId(), e.getMessage());
+                cancelSubscription(session);
             }
-        };
+        }), 0, REPLAY_POLL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Arrête la tâche des relectures quand plus aucune session n'en regarde
+     */
+    private synchronized void stopReplayPumpIfIdle() {
+        // Under the same monitor as startReplayPump: a replay added meanwhile restarts the pump after this check
+        if (replayPump != null && replayPublishers.isEmpty()) {
+            replayPump.cancel(false);
+            replayPump = null;
+        }
+    }
+
+    private SessionState stateOf(Session session) {
+        return sessionStates.computeIfAbsent(session, s -> new SessionState(s, broadcasterOf(s)));
+    }
+
+    private FrameBroadcaster broadcasterOf(Session session) {
+        String roomId = sessionRooms.get(session);
+        // Encoded frames are only shared between sessions watching the same world
+        return roomId == null ? broadcaster : roomBroadcasters.computeIfAbsent(roomId, id -> new FrameBroadcaster());
+    }
+
+    /**
+     * Choisit le format des frames envoyées à la session, avec ses champs par défaut (JSON par défaut)
+     */
+    public void setWireFormat(Session session, WireFormat format) {
+        setStreamSettings(session, StreamSettings.defaults(format));
+    }
+
+    /**
+     * Choisit le format et les champs envoyés à la session. Le flux repart d'une keyframe.
+     */
+    public void setStreamSettings(Session session, StreamSettings settings) {
+        SessionState state = stateOf(session);
+        state.setSettings(settings);
+        state.requestResync();
+    }
+
+    /**
+     * Restreint les frames de la session à une région, les amas lointains étant agrégés.
+     * null rétablit l'envoi de tout le monde. Le flux repart d'une keyframe.
+     */
+    public void setViewport(Session session, Viewport viewport) {
+        SessionState state = stateOf(session);
+        state.setViewport(viewport);
+        state.requestResync();
+    }
 
-        ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(task, 0, 1000 / fps, TimeUnit.MILLISECONDS);
-        sessionTasks.put(session, future);
+    public Viewport getViewport(Session session) {
+        SessionState state = sessionStates.get(session);
+        return state != null ? state.getViewport() : null;
+    }
+
+    public WireFormat getWireFormat(Session session) {
+        return getStreamSettings(session).format();
+    }
+
+    public StreamSettings getStreamSettings(Session session) {
+        SessionState state = sessionStates.get(session);
+        return state != null ? state.getSettings() : StreamSettings.DEFAULT;
+    }
+
+    /**
+     * Le client a manqué une frame : la prochaine frame envoyée sera une keyframe
+     */
+    public void requestResync(Session session) {
+        stateOf(session).requestResync();
+    }
+
+    /**
+     * @return Le nombre de frames envoyées à la session, 0 si elle n'est pas abonnée
+     */
+    public long getSentFrames(Session session) {
+        SessionState state = sessionStates.get(session);
+        return state != null ? state.getSentFrames() : 0;
+    }
+
+    /**
+     * @return Le nombre de frames abandonnées pour la session (remplacées par une plus récente ou en échec)
+     */
+    public long getDroppedFrames(Session session) {
+        SessionState state = sessionStates.get(session);
+        return state != null ? state.getDroppedFrames() : 0;
+    }
+
+    /**
+     * Ajoute les métriques de chaque room (simulation, diffusion, enregistrement) et de chaque session abonnée
+     */
+    public void writeMetrics(PrometheusWriter out) {
+        writeRoomMetrics(out, NBodyService.DEFAULT_ROOM, nBodyService, broadcaster);
+        for (String roomId : roomSessions.keySet()) {
+            Simulation room = registry.get(roomId);
+            if (room != null) {
+                writeRoomMetrics(out, roomId, room, roomBroadcasters.get(roomId));
+            }
+        }
+        out.gauge("nbody_sessions", "Subscribed sessions", sessionStates.size())
+            .gauge("nbody_replay_sessions", "Sessions watching a recording", replayPublishers.size());
+        sessionStates.forEach((session, state) -> {
+            String[] labels = {"room", getRoom(session), "session", session.getId()};
+            out.counter("nbody_session_frames_sent_total", "Frames sent to the session", state.getSentFrames(), labels)
+                .counter("nbody_session_frames_dropped_total", "Frames replaced by a newer one or failed",
+                    state.getDroppedFrames(), labels)
+                .counter("nbody_session_send_failures_total", "Failed sends", state.getFailedSends(), labels)
+                .counter("nbody_session_bytes_sent_total", "Bytes sent to the session", state.getBytesSent(), labels)
+                .gauge("nbody_session_backlog_frames", "Frames in flight or waiting for the session (0 to 2)",
+                    state.getBacklog(), labels);
+        });
+    }
+
+    private void writeRoomMetrics(PrometheusWriter out, String roomId, Simulation simulation, FrameBroadcaster roomBroadcaster) {
+        simulation.writeMetrics(out);
+        if (roomBroadcaster != null) {
+            roomBroadcaster.writeMetrics(out, "room", roomId);
+        }
+        TickPublisher publisher = roomPublishers.get(roomId);
+        out.gauge("nbody_room_sessions", "Sessions receiving the room's ticks", publisher != null ? publisher.size() : 0,
+            "room", roomId);
+        SimulationRecorder recorder = recorders.get(roomId);
+        if (recorder != null) {
+            out.gauge("nbody_recorder_queue_depth", "Entries waiting to be written to the recording",
+                    recorder.getQueueDepth(), "room", roomId)
+                .counter("nbody_recorder_frames_total", "Frames written to the recording", recorder.getFrameCount(), "room", roomId)
+                .counter("nbody_recorder_dropped_total", "Entries dropped by a full recording queue",
+                    recorder.getDroppedCount(), "room", roomId);
+        }
     }
 
     public void cancelSubscription(Session session) {
-        ScheduledFuture<?> future = sessionTasks.remove(session);
-        if (future != null) {
-            future.cancel(true);
+        SessionState state = sessionStates.remove(session);
+        if (state != null) {
+            TickPublisher publisher = replayPublishers.containsKey(session)
+                ? replayPublishers.get(session) : roomPublishers.get(getRoom(session));
+            if (publisher != null) {
+                publisher.unsubscribe(state);
+            }
+            log.info("Session {} terminée : {} frames envoyées ({} octets), {} abandonnées dont {} envois en échec",
+                session.getId(), state.getSentFrames(), state.getBytesSent(), state.getDroppedFrames(),
+                state.getFailedSends());
         }
+        if (replayPublishers.remove(session) != null) {
+            stopReplayPumpIfIdle();
+        }
+        ReplaySource replay = replays.remove(session);
+        if (replay != null) {
+            replay.close();
+        }
+        leave(session);
+    }
+
+    /**
+     * Crée plusieurs corps dans la room de la session, générés en parallèle puis insérés en un seul lot
+     * @param distribution Nom de la distribution (voir {@link Distributions#byName}), null pour le cube uniforme
+     */
+    public CompletableFuture<Integer> createBodies(Session session, String distribution, int count, float range,
+                                                   boolean blackHole) {
+        if (replays.containsKey(session)) {
+            return CompletableFuture.failedFuture(readOnly(session));
+        }
+        if (count < 1 || count > maxBodiesPerRequest) {
+            return CompletableFuture.failedFuture(
+                new IllegalArgumentException("count must be between 1 and " + maxBodiesPerRequest));
+        }
+        if (blackHole && !isCube(distribution)) {
+            // The other distributions orbit the central black hole, their stars cannot be black holes
+            return CompletableFuture.failedFuture(
+                new IllegalArgumentException("blackHole only applies to the cube distribution, not " + distribution));
+        }
+        return simulationOf(session).createBodies(generate(distribution, count, range, blackHole));
     }
 
-    private float randomInRange(float range) {
-        return (random.nextFloat() * 2 - 1) * range;
+    private static IllegalStateException readOnly(Session session) {
+        return new IllegalStateException("Session " + session.getId() + " is watching a replay");
+    }
+
+    private BodyBatch generate(String distribution, int count, float range, boolean blackHole) {
+        Distribution generator = isCube(distribution)
+            ? new UniformCube(range, DEFAULT_SPEED, blackHole ? BLACK_HOLE_MASS : 1, blackHole)
+            : Distributions.byName(distribution, range, BLACK_HOLE_MASS);
+        return Distributions.generate(generator, count, random.nextLong());
+    }
+
+    private static boolean isCube(String distribution) {
+        return distribution == null || Distributions.CUBE.equalsIgnoreCase(distribution);
     }
 
     /**
-     * Crée plusieurs corps dans la simulation avec des positions aléatoires
+     * Réinitialise la simulation par défaut à son état initial
      */
-    public void createBodies(int count, float range, boolean blackHole) {
-        float defaultVelocity = 2.0f;
-        float mass = blackHole ? 5e5f : 1.0f;
+    public CompletableFuture<Void> resetSimulation() {
+        return nBodyService.resetSimulation();
+    }
 
-        for (int i = 0; i < count; i++) {
-            nBodyService.createBody(
-                randomInRange(range),  // x
-                randomInRange(range),  // y
-                randomInRange(range),  // z
-                mass,
-                blackHole,
-                randomInRange(defaultVelocity),  // vx
-                randomInRange(defaultVelocity),  // vy
-                randomInRange(defaultVelocity)   // vz
-            );
+    /**
+     * Réinitialise la room de la session, sans toucher aux autres rooms
+     */
+    public CompletableFuture<Void> resetSimulation(Session session) {
+        if (replays.containsKey(session)) {
+            return CompletableFuture.failedFuture(readOnly(session));
         }
+        return simulationOf(session).resetSimulation();
     }
 
     /**
-     * Réinitialise la simulation à son état initial
+     * Supprime un corps de la simulation par défaut d'après son id stable
      */
-    public void resetSimulation() {
-        nBodyService.resetSimulation();
+    public CompletableFuture<Boolean> deleteBody(int id) {
+        return nBodyService.deleteBody(id);
     }
 
     /**
-     * Supprime un corps de la simulation
+     * Supprime un corps de la room de la session d'après son id stable
      */
-    public boolean deleteBody(int index) {
-        return nBodyService.deleteBody(index);
+    public CompletableFuture<Boolean> deleteBody(Session session, int id) {
+        if (replays.containsKey(session)) {
+            return CompletableFuture.failedFuture(readOnly(session));
+        }
+        return simulationOf(session).deleteBody(id);
     }
 }
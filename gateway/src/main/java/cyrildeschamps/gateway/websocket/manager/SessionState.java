@@ -0,0 +1,164 @@
+package cyrildeschamps.gateway.websocket.manager;
+
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.websocket.broadcast.EncodedFrame;
+import cyrildeschamps.gateway.websocket.broadcast.FrameBroadcaster;
+import cyrildeschamps.gateway.websocket.protocol.StreamSettings;
+import cyrildeschamps.gateway.websocket.view.Viewport;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * État d'envoi d'une session. Les envois sont asynchrones avec au plus une frame en vol :
+ * tant qu'elle n'est pas confirmée, le snapshot en attente est remplacé par le plus récent au lieu d'être mis en file.
+ */
+@Slf4j
+class SessionState {
+    private final Session session;
+    private final FrameBroadcaster broadcaster;
+
+    @Getter
+    private volatile StreamSettings settings = StreamSettings.DEFAULT;
+    @Setter
+    private volatile int fps = 1;
+    /** Région suivie par le client, null pour recevoir tout le monde */
+    @Getter
+    private volatile Viewport viewport;
+    private volatile FrameBroadcaster.View view;
+
+    /** Tick de la dernière frame reçue par le client, -1 si aucune */
+    @Getter
+    private volatile long lastSentTick = -1;
+    private final AtomicBoolean resyncRequested = new AtomicBoolean();
+
+    // One frame in flight: the websocket API does not allow concurrent sends on a session
+    private final AtomicReference<WorldSnapshot> pending = new AtomicReference<>();
+    private final AtomicBoolean inFlight = new AtomicBoolean();
+    // Start of the send in flight, only written by the thread that won 'inFlight'
+    private long sendStartNanos;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    SessionState(Session session, FrameBroadcaster broadcaster) {
+        this.session = session;
+        this.broadcaster = broadcaster;
+    }
+
+    void setSettings(StreamSettings settings) {
+        this.settings = settings;
+        openView();
+    }
+
+    void setViewport(Viewport viewport) {
+        this.viewport = viewport;
+        openView();
+    }
+
+    // A private stream only encodes for one session: open a new one whenever what it encodes changes
+    private synchronized void openView() {
+        view = viewport == null ? null : broadcaster.openView(settings, viewport);
+    }
+
+    boolean isOpen() {
+        return session.isOpen();
+    }
+
+    /**
+     * La prochaine frame envoyée sera autonome (keyframe pour un flux delta)
+     */
+    void requestResync() {
+        resyncRequested.set(true);
+    }
+
+    /**
+     * Propose le dernier snapshot publié. Ne bloque jamais : si un envoi est en cours,
+     * le snapshot attend et remplace celui qui attendait déjà.
+     */
+    void offer(WorldSnapshot snapshot) {
+        if (pending.getAndSet(snapshot) != null) {
+            dropped.increment();
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (pending.get() != null && inFlight.compareAndSet(false, true)) {
+            WorldSnapshot snapshot = pending.getAndSet(null);
+            long knownTick = resyncRequested.getAndSet(false) ? -1 : lastSentTick;
+            try {
+                FrameBroadcaster.View current = view;
+                EncodedFrame frame = snapshot == null ? null
+                    : current != null ? broadcaster.frameFor(current, snapshot, knownTick)
+                    : broadcaster.frameFor(settings, fps, snapshot, knownTick);
+                if (frame == null) {
+                    inFlight.set(false);
+                    continue;
+                }
+                sendStartNanos = System.nanoTime();
+                frame.sendTo(session.getAsyncRemote(), result -> onSent(frame, result));
+            } catch (RuntimeException e) {
+                onFailure(e);
+            }
+            return;
+        }
+    }
+
+    private void onSent(EncodedFrame frame, SendResult result) {
+        if (result.isOK()) {
+            lastSentTick = frame.getTick();
+            sent.increment();
+            bytesSent.add(frame.size());
+            broadcaster.recordSend(frame.size(), System.nanoTime() - sendStartNanos);
+            inFlight.set(false);
+            drain();
+        } else {
+            onFailure(result.getException());
+        }
+    }
+
+    private void onFailure(Throwable cause) {
+        // The client state is unknown after a failed send
+        lastSentTick = -1;
+        dropped.increment();
+        failures.increment();
+        broadcaster.recordFailure();
+        inFlight.set(false);
+        log.debug("Échec d'envoi sur la session {} : {}", session.getId(), cause != null ? cause.getMessage() : null);
+        if (session.isOpen()) {
+            drain();
+        }
+    }
+
+    public long getSentFrames() {
+        return sent.sum();
+    }
+
+    public long getDroppedFrames() {
+        return dropped.sum();
+    }
+
+    public long getFailedSends() {
+        return failures.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * @return Le nombre de frames pas encore confirmées par le websocket : celle en vol et celle en attente (0 à 2)
+     */
+    public int getBacklog() {
+        return (inFlight.get() ? 1 : 0) + (pending.get() != null ? 1 : 0);
+    }
+}
@@ -0,0 +1,132 @@
+package cyrildeschamps.gateway.websocket.manager;
+
+import cyrildeschamps.core.service.simulation.SimulationListener;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import lombok.Getter;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Diffuse les snapshots d'une source à ses sessions au rythme des ticks, sans minuterie par session.
+ * Les sessions sont regroupées par palier : un palier reçoit un tick sur 'divisor' (1, 2, 4, ...),
+ * soit 66, 33, 16... frames par seconde avec des ticks de 15 ms. Chaque période d'un palier livre exactement
+ * un snapshot, toujours le plus récent, et le même à toutes ses sessions.
+ * <p>
+ * {@link #onSnapshot(WorldSnapshot)} est appelé par le thread de tick et ne fait que déposer le snapshot :
+ * l'encodage et les envois se font sur l'exécuteur, avec au plus une livraison en cours par palier.
+ */
+class TickPublisher implements SimulationListener {
+    private static final int MAX_DIVISOR = 1 << 10;
+
+    private static final class Tier {
+        private final int divisor;
+        private final Set<SessionState> sessions = ConcurrentHashMap.newKeySet();
+        // Latest-wins hand-off from the tick thread, like SessionState does for sends
+        private final AtomicReference<WorldSnapshot> pending = new AtomicReference<>();
+        private final AtomicBoolean delivering = new AtomicBoolean();
+        private long lastTick = -1;
+
+        private Tier(int divisor) {
+            this.divisor = divisor;
+        }
+
+        private void deliver() {
+            while (pending.get() != null && delivering.compareAndSet(false, true)) {
+                try {
+                    WorldSnapshot snapshot = pending.getAndSet(null);
+                    if (snapshot != null) {
+                        for (SessionState session : sessions) {
+                            if (session.isOpen()) {
+                                session.offer(snapshot);
+                            }
+                        }
+                    }
+                } finally {
+                    delivering.set(false);
+                }
+            }
+        }
+    }
+
+    /** Durée d'un tick de la source, qui fixe la fréquence de chaque palier */
+    @Getter
+    private final long tickPeriodNanos;
+    private final Executor executor;
+    private final ConcurrentMap<Integer, Tier> tiers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SessionState, Tier> tierOf = new ConcurrentHashMap<>();
+
+    TickPublisher(long tickPeriodNanos, Executor executor) {
+        this.tickPeriodNanos = tickPeriodNanos > 0 ? tickPeriodNanos : TimeUnit.MILLISECONDS.toNanos(15);
+        this.executor = executor;
+    }
+
+    /**
+     * Diviseur (une puissance de deux) du palier le plus proche du fps demandé, en échelle logarithmique
+     */
+    int divisorFor(int fps) {
+        double tickRate = TimeUnit.SECONDS.toNanos(1) / (double) tickPeriodNanos;
+        int divisor = 1;
+        // Halving the rate is closer once the current tier is more than sqrt(2) above the request
+        while (divisor < MAX_DIVISOR && tickRate / divisor > Math.max(1, fps) * Math.sqrt(2)) {
+            divisor *= 2;
+        }
+        return divisor;
+    }
+
+    /**
+     * Frames par seconde effectivement reçues par un palier
+     */
+    int tierFps(int divisor) {
+        return (int) Math.round(TimeUnit.SECONDS.toNanos(1) / (double) (tickPeriodNanos * divisor));
+    }
+
+    /**
+     * Place la session dans le palier de son fps, en O(1) : aucune tâche n'est créée
+     * @return Le diviseur du palier choisi
+     */
+    int subscribe(SessionState session, int fps) {
+        int divisor = divisorFor(fps);
+        Tier tier = tiers.computeIfAbsent(divisor, Tier::new);
+        Tier previous = tierOf.put(session, tier);
+        if (previous != null && previous != tier) {
+            previous.sessions.remove(session);
+        }
+        tier.sessions.add(session);
+        return divisor;
+    }
+
+    void unsubscribe(SessionState session) {
+        Tier tier = tierOf.remove(session);
+        if (tier != null) {
+            tier.sessions.remove(session);
+        }
+    }
+
+    /**
+     * @return Le nombre de sessions abonnées
+     */
+    int size() {
+        return tierOf.size();
+    }
+
+    @Override
+    public void onSnapshot(WorldSnapshot snapshot) {
+        long tick = snapshot.getTick();
+        for (Tier tier : tiers.values()) {
+            // Decimation on the tick number: snapshots published by commands keep the tick and are skipped
+            if (tier.sessions.isEmpty() || tick <= tier.lastTick || tick % tier.divisor != 0) {
+                continue;
+            }
+            tier.lastTick = tick;
+            if (tier.pending.getAndSet(snapshot) == null && !tier.delivering.get()) {
+                executor.execute(tier::deliver);
+            }
+        }
+    }
+}
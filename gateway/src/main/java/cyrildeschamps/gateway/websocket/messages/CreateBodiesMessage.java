@@ -5,20 +5,29 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonTypeName;
 import lombok.Getter;
 
+/**
+ * Crée 'count' corps en un lot. Sans 'distribution' (ou avec "cube"), positions et vitesses sont uniformes
+ * dans ±range ; "ring", "plummer" et "disk" utilisent 'range' comme taille caractéristique.
+ * 'blackHole' ne s'applique qu'au cube, il est refusé pour les autres distributions.
+ */
 @Getter
 @JsonTypeName("createBodies")
 public class CreateBodiesMessage extends WebSocketMessage {
     private final int count;
     private final float range;
     private final boolean blackHole;
+    /** Nom de la distribution, null pour le cube uniforme */
+    private final String distribution;
 
     @JsonCreator
     public CreateBodiesMessage(
             @JsonProperty("count") int count,
             @JsonProperty("range") float range,
-            @JsonProperty("blackHole") boolean blackHole) {
+            @JsonProperty("blackHole") boolean blackHole,
+            @JsonProperty("distribution") String distribution) {
         this.count = count;
         this.range = range;
         this.blackHole = blackHole;
+        this.distribution = distribution;
     }
 } 
\ No newline at end of file
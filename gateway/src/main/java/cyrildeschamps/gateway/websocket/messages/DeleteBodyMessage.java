@@ -5,13 +5,17 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonTypeName;
 import lombok.Getter;
 
+/**
+ * Suppression d'un corps par son id stable. Un message sans 'id' est refusé : l'ancien champ 'index' désignait
+ * une position dans la liste, qui ne correspond plus au même corps après des suppressions.
+ */
 @Getter
 @JsonTypeName("deleteBody")
 public class DeleteBodyMessage extends WebSocketMessage {
-    private final int index;
+    private final int id;
 
     @JsonCreator
-    public DeleteBodyMessage(@JsonProperty("index") int index) {
-        this.index = index;
+    public DeleteBodyMessage(@JsonProperty(value = "id", required = true) int id) {
+        this.id = id;
     }
 } 
\ No newline at end of file
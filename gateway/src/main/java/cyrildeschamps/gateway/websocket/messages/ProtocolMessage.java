@@ -0,0 +1,46 @@
+package cyrildeschamps.gateway.websocket.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import cyrildeschamps.gateway.websocket.protocol.StreamSettings;
+import cyrildeschamps.gateway.websocket.protocol.WireFormat;
+import lombok.Getter;
+
+@Getter
+@JsonTypeName("protocol")
+public class ProtocolMessage extends WebSocketMessage {
+    private final String format;
+    // Optional, defaults depend on the format (see StreamSettings.defaults)
+    private final Boolean velocities;
+    private final Boolean mass;
+
+    public ProtocolMessage(String format) {
+        this(format, null, null);
+    }
+
+    @JsonCreator
+    public ProtocolMessage(@JsonProperty("format") String format,
+                           @JsonProperty("velocities") Boolean velocities,
+                           @JsonProperty("mass") Boolean mass) {
+        this.format = format;
+        this.velocities = velocities;
+        this.mass = mass;
+    }
+
+    @JsonIgnore
+    public WireFormat getWireFormat() {
+        return WireFormat.parse(format);
+    }
+
+    @JsonIgnore
+    public StreamSettings getStreamSettings() {
+        StreamSettings defaults = StreamSettings.defaults(getWireFormat());
+        return new StreamSettings(
+            defaults.format(),
+            velocities != null ? velocities : defaults.velocities(),
+            mass != null ? mass : defaults.mass()
+        );
+    }
+}
@@ -0,0 +1,20 @@
+package cyrildeschamps.gateway.websocket.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import lombok.Getter;
+
+/**
+ * Démarre l'enregistrement de la room de la session sous ce nom, ou l'arrête si le nom est absent
+ */
+@Getter
+@JsonTypeName("record")
+public class RecordMessage extends WebSocketMessage {
+    private final String name;
+
+    @JsonCreator
+    public RecordMessage(@JsonProperty("name") String name) {
+        this.name = name;
+    }
+}
@@ -0,0 +1,10 @@
+package cyrildeschamps.gateway.websocket.messages;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+/**
+ * Envoyé par un client qui a reçu une frame delta sans avoir son état de référence
+ */
+@JsonTypeName("resync")
+public class ResyncMessage extends WebSocketMessage {
+}
@@ -0,0 +1,20 @@
+package cyrildeschamps.gateway.websocket.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import lombok.Getter;
+
+/**
+ * Reprend la relecture de la session au tick enregistré donné
+ */
+@Getter
+@JsonTypeName("seek")
+public class SeekMessage extends WebSocketMessage {
+    private final long tick;
+
+    @JsonCreator
+    public SeekMessage(@JsonProperty("tick") long tick) {
+        this.tick = tick;
+    }
+}
@@ -0,0 +1,52 @@
+package cyrildeschamps.gateway.websocket.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import cyrildeschamps.gateway.websocket.view.Viewport;
+import lombok.Getter;
+
+/**
+ * Région suivie par le client : {"type": "viewport", "min": [x, y, z], "max": [x, y, z], "eye": [x, y, z], "maxBodies": n}.
+ * Sans 'min' ni 'max', le client reçoit à nouveau tout le monde.
+ */
+@Getter
+@JsonTypeName("viewport")
+public class ViewportMessage extends WebSocketMessage {
+    private final float[] min;
+    private final float[] max;
+    // Optional: the center of the bounds, and the server's budget
+    private final float[] eye;
+    private final Integer maxBodies;
+
+    @JsonCreator
+    public ViewportMessage(@JsonProperty("min") float[] min,
+                           @JsonProperty("max") float[] max,
+                           @JsonProperty("eye") float[] eye,
+                           @JsonProperty("maxBodies") Integer maxBodies) {
+        this.min = min;
+        this.max = max;
+        this.eye = eye;
+        this.maxBodies = maxBodies;
+    }
+
+    /**
+     * @param defaultMaxBodies Budget si le client n'en donne pas, et budget maximum sinon
+     * @return La région demandée, ou null si le client n'en suit plus
+     * @throws IllegalArgumentException si la région est invalide
+     */
+    @JsonIgnore
+    public Viewport toViewport(int defaultMaxBodies) {
+        if (min == null && max == null) {
+            return null;
+        }
+        if (min == null || max == null || min.length != 3 || max.length != 3 || (eye != null && eye.length != 3)) {
+            throw new IllegalArgumentException("Viewport min, max and eye must be [x, y, z]");
+        }
+        float[] at = eye != null ? eye
+            : new float[]{(min[0] + max[0]) / 2, (min[1] + max[1]) / 2, (min[2] + max[2]) / 2};
+        int budget = maxBodies != null ? Math.min(maxBodies, defaultMaxBodies) : defaultMaxBodies;
+        return new Viewport(min[0], min[1], min[2], max[0], max[1], max[2], at[0], at[1], at[2], budget);
+    }
+}
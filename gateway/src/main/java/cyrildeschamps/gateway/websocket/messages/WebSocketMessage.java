@@ -8,6 +8,11 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
         @JsonSubTypes.Type(value = FpsMessage.class, name = "fps"),
         @JsonSubTypes.Type(value = CreateBodiesMessage.class, name = "createBodies"),
         @JsonSubTypes.Type(value = DeleteBodyMessage.class, name = "deleteBody"),
-        @JsonSubTypes.Type(value = ResetSimulationMessage.class, name = "reset")
+        @JsonSubTypes.Type(value = ResetSimulationMessage.class, name = "reset"),
+        @JsonSubTypes.Type(value = ProtocolMessage.class, name = "protocol"),
+        @JsonSubTypes.Type(value = ResyncMessage.class, name = "resync"),
+        @JsonSubTypes.Type(value = RecordMessage.class, name = "record"),
+        @JsonSubTypes.Type(value = SeekMessage.class, name = "seek"),
+        @JsonSubTypes.Type(value = ViewportMessage.class, name = "viewport")
 })
 public abstract class WebSocketMessage { }
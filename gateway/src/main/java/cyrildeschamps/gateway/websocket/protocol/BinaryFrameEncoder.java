@@ -0,0 +1,106 @@
+package cyrildeschamps.gateway.websocket.protocol;
+
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.websocket.broadcast.EncodedFrame;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encode un {@link WorldSnapshot} en frame binaire little-endian :
+ * <pre>
+ * u8 version | u8 type | u16 flags | u32 count | u64 tick | f64 timestamp (ms)
+ * f32 x[count] | f32 y[count] | f32 z[count]
+ * [f32 vx[count] | f32 vy[count] | f32 vz[count]]  si FLAG_VELOCITIES
+ * [f32 mass[count]]  si FLAG_MASS
+ * u32 ids[count]  (FLAG_IDS, toujours présent)
+ * u8 flags[count]
+ * </pre>
+ * Les ids sont stables d'une frame à l'autre : le client peut associer ses objets 3D à un id plutôt qu'à un index.
+ * Dans une vue réduite (voir {@link cyrildeschamps.gateway.websocket.view.SnapshotIndex}), les imposteurs ont le flag
+ * BODY_FLAG_IMPOSTOR et un id négatif propre à leur cellule, lu en u32 par les clients qui ne les distinguent pas.
+ * Chaque frame a son propre buffer, dimensionné exactement : elle est encodée une fois par tick
+ * puis partagée entre toutes les sessions abonnées.
+ */
+public class BinaryFrameEncoder implements FrameEncoder {
+    public static final byte VERSION = 1;
+    public static final byte TYPE_STATE = 1;
+    public static final short FLAG_VELOCITIES = 1;
+    public static final short FLAG_MASS = 2;
+    public static final short FLAG_IDS = 4;
+    public static final int HEADER_SIZE = 24;
+
+    static final byte BODY_FLAG_BLACK_HOLE = 1;
+    static final byte BODY_FLAG_IMPOSTOR = 2;
+
+    private final boolean velocities;
+    private final boolean mass;
+
+    public BinaryFrameEncoder() {
+        this(true, true);
+    }
+
+    public BinaryFrameEncoder(boolean velocities, boolean mass) {
+        this.velocities = velocities;
+        this.mass = mass;
+    }
+
+    public static int frameSize(int count, boolean velocities) {
+        return frameSize(count, velocities, true);
+    }
+
+    public static int frameSize(int count, boolean velocities, boolean mass) {
+        int floatsPerBody = 3 + (velocities ? 3 : 0) + (mass ? 1 : 0);
+        return HEADER_SIZE + count * (floatsPerBody * Float.BYTES + Integer.BYTES + 1);
+    }
+
+    @Override
+    public WireFormat getFormat() {
+        return WireFormat.BINARY;
+    }
+
+    @Override
+    public EncodedFrame encode(WorldSnapshot snapshot) {
+        return EncodedFrame.binary(snapshot.getTick(), encodeBuffer(snapshot));
+    }
+
+    ByteBuffer encodeBuffer(WorldSnapshot snapshot) {
+        int n = snapshot.size();
+        ByteBuffer buffer = ByteBuffer.allocate(frameSize(n, velocities, mass)).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.put(VERSION);
+        buffer.put(TYPE_STATE);
+        buffer.putShort((short) ((velocities ? FLAG_VELOCITIES : 0) | (mass ? FLAG_MASS : 0) | FLAG_IDS));
+        buffer.putInt(n);
+        buffer.putLong(snapshot.getTick());
+        buffer.putDouble(snapshot.getTimestamp());
+
+        for (int i = 0; i < n; i++) buffer.putFloat(snapshot.getX(i));
+        for (int i = 0; i < n; i++) buffer.putFloat(snapshot.getY(i));
+        for (int i = 0; i < n; i++) buffer.putFloat(snapshot.getZ(i));
+        if (velocities) {
+            putVelocities(buffer, snapshot);
+        }
+        if (mass) {
+            putMasses(buffer, snapshot);
+        }
+        for (int i = 0; i < n; i++) buffer.putInt(snapshot.getId(i));
+        for (int i = 0; i < n; i++) {
+            buffer.put((byte) ((snapshot.isBlackHole(i) ? BODY_FLAG_BLACK_HOLE : 0) | (snapshot.isImpostor(i) ? BODY_FLAG_IMPOSTOR : 0)));
+        }
+
+        return buffer.flip();
+    }
+
+    static void putVelocities(ByteBuffer buffer, WorldSnapshot snapshot) {
+        int n = snapshot.size();
+        for (int i = 0; i < n; i++) buffer.putFloat(snapshot.getVx(i));
+        for (int i = 0; i < n; i++) buffer.putFloat(snapshot.getVy(i));
+        for (int i = 0; i < n; i++) buffer.putFloat(snapshot.getVz(i));
+    }
+
+    static void putMasses(ByteBuffer buffer, WorldSnapshot snapshot) {
+        int n = snapshot.size();
+        for (int i = 0; i < n; i++) buffer.putFloat(snapshot.getMass(i));
+    }
+}
@@ -0,0 +1,190 @@
+package cyrildeschamps.gateway.websocket.protocol;
+
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.websocket.broadcast.EncodedFrame;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Flux avec état : une keyframe binaire complète (voir {@link BinaryFrameEncoder}) toutes les
+ * 'keyframeInterval' frames, et entre deux keyframes des deltas de positions en virgule fixe 16 bits :
+ * <pre>
+ * u8 version | u8 type=2 | u16 flags | u32 count | u64 tick | f64 timestamp (ms)
+ * u64 baseTick | f32 stepX | f32 stepY | f32 stepZ
+ * i16 dx[count] | i16 dy[count] | i16 dz[count] | padding jusqu'à un multiple de 4
+ * [f32 vx[count] | f32 vy[count] | f32 vz[count]]  si FLAG_VELOCITIES
+ * [f32 mass[count]]  si FLAG_MASS
+ * </pre>
+ * Les deltas ne portent pas d'ids : l'ordre des corps est celui de la keyframe de référence.
+ * Le client calcule x = fround(x + fround(dx * stepX)) à partir de l'état du tick 'baseTick'.
+ * Le pas de chaque axe est l'étendue du snapshot sur cet axe divisée par 65535, élargi pour la frame
+ * si un corps s'est déplacé de plus de la moitié de cette étendue.
+ * Une keyframe est forcée quand les corps changent (ajout, suppression) ou quand une position n'est pas finie.
+ */
+public class DeltaFrameEncoder implements FrameEncoder {
+    public static final byte TYPE_DELTA = 2;
+    public static final int DELTA_HEADER_SIZE = 44;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+
+    private static final float QUANTUM_STEPS = 65535f;
+    private static final float MIN_STEP = 1e-6f;
+
+    private final int keyframeInterval;
+    private final boolean velocities;
+    private final boolean mass;
+    private final BinaryFrameEncoder keyframeEncoder;
+
+    // Positions as reconstructed by the clients, deltas are computed against them so errors never accumulate
+    private float[] rx = new float[0], ry = new float[0], rz = new float[0];
+    private short[] qx = new short[0], qy = new short[0], qz = new short[0];
+    private long lastTick = -1;
+    private long structureVersion = -1;
+    private int count = -1;
+    private int sinceKeyframe;
+
+    public DeltaFrameEncoder(boolean velocities, boolean mass) {
+        this(DEFAULT_KEYFRAME_INTERVAL, velocities, mass);
+    }
+
+    public DeltaFrameEncoder(int keyframeInterval, boolean velocities, boolean mass) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("keyframeInterval must be at least 1");
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.velocities = velocities;
+        this.mass = mass;
+        this.keyframeEncoder = new BinaryFrameEncoder(velocities, mass);
+    }
+
+    public static int deltaFrameSize(int count, boolean velocities, boolean mass) {
+        int floatsPerBody = (velocities ? 3 : 0) + (mass ? 1 : 0);
+        return DELTA_HEADER_SIZE + align4(3 * count * Short.BYTES) + count * floatsPerBody * Float.BYTES;
+    }
+
+    private static int align4(int size) {
+        return (size + 3) & ~3;
+    }
+
+    @Override
+    public WireFormat getFormat() {
+        return WireFormat.DELTA;
+    }
+
+    /**
+     * Encode la frame suivante du flux. Les snapshots doivent être fournis dans l'ordre des ticks.
+     */
+    @Override
+    public EncodedFrame encode(WorldSnapshot snapshot) {
+        boolean keyframeDue = lastTick < 0
+            || sinceKeyframe + 1 >= keyframeInterval
+            || snapshot.size() != count
+            || snapshot.getStructureVersion() != structureVersion;
+        if (!keyframeDue) {
+            EncodedFrame delta = encodeDelta(snapshot);
+            if (delta != null) {
+                return delta;
+            }
+        }
+        return encodeKeyframe(snapshot);
+    }
+
+    private EncodedFrame encodeKeyframe(WorldSnapshot snapshot) {
+        int n = snapshot.size();
+        if (rx.length < n) {
+            rx = new float[n];
+            ry = new float[n];
+            rz = new float[n];
+            qx = new short[n];
+            qy = new short[n];
+            qz = new short[n];
+        }
+        for (int i = 0; i < n; i++) {
+            rx[i] = snapshot.getX(i);
+            ry[i] = snapshot.getY(i);
+            rz[i] = snapshot.getZ(i);
+        }
+        count = n;
+        structureVersion = snapshot.getStructureVersion();
+        lastTick = snapshot.getTick();
+        sinceKeyframe = 0;
+        return EncodedFrame.binary(snapshot.getTick(), keyframeEncoder.encodeBuffer(snapshot));
+    }
+
+    /**
+     * @return La frame delta, ou null si une position n'est pas finie
+     */
+    private EncodedFrame encodeDelta(WorldSnapshot snapshot) {
+        int n = snapshot.size();
+        float stepX = step(snapshot, rx, 0), stepY = step(snapshot, ry, 1), stepZ = step(snapshot, rz, 2);
+        if (!Float.isFinite(stepX) || !Float.isFinite(stepY) || !Float.isFinite(stepZ)) {
+            return null;
+        }
+        for (int i = 0; i < n; i++) {
+            int dx = Math.round((snapshot.getX(i) - rx[i]) / stepX);
+            int dy = Math.round((snapshot.getY(i) - ry[i]) / stepY);
+            int dz = Math.round((snapshot.getZ(i) - rz[i]) / stepZ);
+            if (!fitsInShort(dx) || !fitsInShort(dy) || !fitsInShort(dz)) {
+                return null;
+            }
+            qx[i] = (short) dx;
+            qy[i] = (short) dy;
+            qz[i] = (short) dz;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(deltaFrameSize(n, velocities, mass)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(BinaryFrameEncoder.VERSION);
+        buffer.put(TYPE_DELTA);
+        buffer.putShort((short) ((velocities ? BinaryFrameEncoder.FLAG_VELOCITIES : 0) | (mass ? BinaryFrameEncoder.FLAG_MASS : 0)));
+        buffer.putInt(n);
+        buffer.putLong(snapshot.getTick());
+        buffer.putDouble(snapshot.getTimestamp());
+        buffer.putLong(lastTick);
+        buffer.putFloat(stepX);
+        buffer.putFloat(stepY);
+        buffer.putFloat(stepZ);
+
+        for (int i = 0; i < n; i++) buffer.putShort(qx[i]);
+        for (int i = 0; i < n; i++) buffer.putShort(qy[i]);
+        for (int i = 0; i < n; i++) buffer.putShort(qz[i]);
+        buffer.position(DELTA_HEADER_SIZE + align4(3 * n * Short.BYTES));
+        if (velocities) {
+            BinaryFrameEncoder.putVelocities(buffer, snapshot);
+        }
+        if (mass) {
+            BinaryFrameEncoder.putMasses(buffer, snapshot);
+        }
+
+        // Same float operations as the client so both reconstructions stay identical
+        for (int i = 0; i < n; i++) {
+            rx[i] += qx[i] * stepX;
+            ry[i] += qy[i] * stepY;
+            rz[i] += qz[i] * stepZ;
+        }
+        EncodedFrame frame = EncodedFrame.delta(snapshot.getTick(), lastTick, buffer.flip());
+        lastTick = snapshot.getTick();
+        sinceKeyframe++;
+        return frame;
+    }
+
+    private static boolean fitsInShort(int value) {
+        return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+    }
+
+    /**
+     * Pas de quantification d'un axe : l'étendue du snapshot sur 65535 pas, élargi si un déplacement
+     * ne tiendrait pas sur 16 bits signés
+     */
+    private static float step(WorldSnapshot snapshot, float[] reconstructed, int axis) {
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY, maxDelta = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            float value = axis == 0 ? snapshot.getX(i) : axis == 1 ? snapshot.getY(i) : snapshot.getZ(i);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            maxDelta = Math.max(maxDelta, Math.abs(value - reconstructed[i]));
+        }
+        // Slightly above maxDelta / 32767 so the largest delta cannot round past the 16 bits range
+        float step = Math.max((max - min) / QUANTUM_STEPS, maxDelta / (Short.MAX_VALUE - 1));
+        return Math.max(step, MIN_STEP);
+    }
+}
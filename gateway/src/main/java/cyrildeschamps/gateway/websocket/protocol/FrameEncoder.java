@@ -0,0 +1,17 @@
+package cyrildeschamps.gateway.websocket.protocol;
+
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.websocket.broadcast.EncodedFrame;
+
+import java.io.IOException;
+
+/**
+ * Encode un snapshot dans un format de fil. La frame produite est immuable et peut être
+ * envoyée à plusieurs sessions.
+ */
+public interface FrameEncoder {
+
+    WireFormat getFormat();
+
+    EncodedFrame encode(WorldSnapshot snapshot) throws IOException;
+}
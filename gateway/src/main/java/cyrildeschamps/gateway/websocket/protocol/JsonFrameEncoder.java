@@ -0,0 +1,36 @@
+package cyrildeschamps.gateway.websocket.protocol;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.DTO.BodyDTO;
+import cyrildeschamps.gateway.websocket.broadcast.EncodedFrame;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Format historique : {"tick": .., "timestamp": .., "bodies": [BodyDTO...]}
+ */
+public class JsonFrameEncoder implements FrameEncoder {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public WireFormat getFormat() {
+        return WireFormat.JSON;
+    }
+
+    @Override
+    public EncodedFrame encode(WorldSnapshot snapshot) throws IOException {
+        List<BodyDTO> dtos = IntStream.range(0, snapshot.size())
+            .mapToObj(i -> new BodyDTO(snapshot, i))
+            .toList();
+        String json = objectMapper.writeValueAsString(Map.of(
+            "tick", snapshot.getTick(),
+            "timestamp", snapshot.getTimestamp(),
+            "bodies", dtos
+        ));
+        return EncodedFrame.text(snapshot.getTick(), json);
+    }
+}
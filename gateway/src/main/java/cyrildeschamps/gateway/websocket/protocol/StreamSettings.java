@@ -0,0 +1,20 @@
+package cyrildeschamps.gateway.websocket.protocol;
+
+/**
+ * Ce qu'une session reçoit : le format des frames et les champs optionnels.
+ * Le JSON contient toujours tous les champs ; en binaire, vitesses et masses peuvent être omises.
+ * @param format Format des frames
+ * @param velocities Envoyer les vitesses
+ * @param mass Envoyer les masses
+ */
+public record StreamSettings(WireFormat format, boolean velocities, boolean mass) {
+    public static final StreamSettings DEFAULT = defaults(WireFormat.JSON);
+
+    /**
+     * Réglages par défaut d'un format : tous les champs, sauf en delta où seules les positions sont envoyées
+     */
+    public static StreamSettings defaults(WireFormat format) {
+        boolean full = format != WireFormat.DELTA;
+        return new StreamSettings(format, full, full);
+    }
+}
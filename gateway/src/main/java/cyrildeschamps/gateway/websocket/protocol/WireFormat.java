@@ -0,0 +1,19 @@
+package cyrildeschamps.gateway.websocket.protocol;
+
+import java.util.Locale;
+
+/**
+ * Format des frames d'état envoyées aux clients
+ */
+public enum WireFormat {
+    /** Texte JSON, un objet par corps (format historique) */
+    JSON,
+    /** Frame binaire compacte, voir {@link BinaryFrameEncoder} */
+    BINARY,
+    /** Keyframes binaires périodiques et deltas de positions quantifiés, voir {@link DeltaFrameEncoder} */
+    DELTA;
+
+    public static WireFormat parse(String name) {
+        return name == null ? JSON : valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
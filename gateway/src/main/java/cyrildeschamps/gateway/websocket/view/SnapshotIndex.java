@@ -0,0 +1,381 @@
+package cyrildeschamps.gateway.websocket.view;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Octree implicite d'un snapshot, construit une fois par tick puis partagé par toutes les vues des clients.
+ * Les étoiles sont triées par code de Morton : chaque cellule de l'octree est un intervalle du tableau trié,
+ * et des sommes préfixes donnent la masse, le centre de masse et la quantité de mouvement de n'importe
+ * quelle cellule en O(1). Les trous noirs sont à part et toujours envoyés individuellement.
+ * <p>
+ * La racine est un cube centré sur l'origine dont le côté est une puissance de deux : tant que le monde ne
+ * double pas de taille, une cellule garde les mêmes coordonnées d'un tick à l'autre, et donc le même id d'imposteur.
+ */
+public final class SnapshotIndex {
+    /** Profondeur de l'octree : 2^DEPTH cellules par axe, codes de Morton sur 3 * DEPTH bits */
+    public static final int DEPTH = 10;
+
+    private static final int CELLS = 1 << DEPTH;
+    private static final int RADIX_BITS = DEPTH;
+
+    private record Node(int level, int prefix, int lo, int hi, float priority, boolean expanded) {
+        int count() {
+            return hi - lo;
+        }
+
+        Node expand() {
+            return new Node(level, prefix, lo, hi, priority, true);
+        }
+
+        int cost() {
+            return expanded ? count() : 1;
+        }
+    }
+
+    @Getter
+    private final WorldSnapshot snapshot;
+    private final float rootMin;
+    private final float rootSize;
+
+    // Stars sorted by Morton code, 'order' maps a sorted position back to the snapshot index
+    private final int[] codes;
+    private final int[] order;
+    // Prefix sums over the sorted stars: mass, mass * position and mass * velocity
+    private final double[] mass, mx, my, mz, px, py, pz;
+    private final int[] blackHoles;
+
+    public SnapshotIndex(WorldSnapshot snapshot) {
+        this.snapshot = snapshot;
+        int n = snapshot.size();
+
+        // Power-of-two root centered on the origin: cells keep their place while the world grows
+        float extent = 1;
+        int holes = 0;
+        int stars = 0;
+        for (int i = 0; i < n; i++) {
+            float x = snapshot.getX(i), y = snapshot.getY(i), z = snapshot.getZ(i);
+            if (!Float.isFinite(x) || !Float.isFinite(y) || !Float.isFinite(z)) {
+                continue;
+            }
+            if (snapshot.isBlackHole(i)) {
+                holes++;
+            } else {
+                stars++;
+                extent = Math.max(extent, Math.max(Math.abs(x), Math.max(Math.abs(y), Math.abs(z))));
+            }
+        }
+        float half = 1;
+        while (half <= extent) {
+            half *= 2;
+        }
+        rootMin = -half;
+        rootSize = 2 * half;
+
+        blackHoles = new int[holes];
+        int[] unsortedCodes = new int[stars];
+        int[] unsortedOrder = new int[stars];
+        int h = 0, s = 0;
+        for (int i = 0; i < n; i++) {
+            float x = snapshot.getX(i), y = snapshot.getY(i), z = snapshot.getZ(i);
+            if (!Float.isFinite(x) || !Float.isFinite(y) || !Float.isFinite(z)) {
+                continue;
+            }
+            if (snapshot.isBlackHole(i)) {
+                blackHoles[h++] = i;
+            } else {
+                unsortedCodes[s] = morton(cell(x), cell(y), cell(z));
+                unsortedOrder[s++] = i;
+            }
+        }
+        codes = new int[stars];
+        order = new int[stars];
+        radixSort(unsortedCodes, unsortedOrder, codes, order);
+
+        mass = new double[stars + 1];
+        mx = new double[stars + 1];
+        my = new double[stars + 1];
+        mz = new double[stars + 1];
+        px = new double[stars + 1];
+        py = new double[stars + 1];
+        pz = new double[stars + 1];
+        for (int k = 0; k < stars; k++) {
+            int i = order[k];
+            double m = snapshot.getMass(i);
+            mass[k + 1] = mass[k] + m;
+            mx[k + 1] = mx[k] + m * snapshot.getX(i);
+            my[k + 1] = my[k] + m * snapshot.getY(i);
+            mz[k + 1] = mz[k] + m * snapshot.getZ(i);
+            px[k + 1] = px[k] + m * snapshot.getVx(i);
+            py[k + 1] = py[k] + m * snapshot.getVy(i);
+            pz[k + 1] = pz[k] + m * snapshot.getVz(i);
+        }
+    }
+
+    public long getTick() {
+        return snapshot.getTick();
+    }
+
+    /**
+     * Vue réduite du snapshot pour une région : les corps de la région tant que le budget le permet,
+     * sinon des imposteurs (flag {@link WorldSnapshot#FLAG_IMPOSTOR}, id négatif) placés au centre de masse
+     * de leur cellule, avec sa masse totale et sa vitesse moyenne pondérée.
+     * Les cellules sont raffinées de la plus grande vue depuis l'œil à la plus petite, jusqu'à épuiser le budget.
+     * Les trous noirs de la région sont toujours envoyés individuellement.
+     * Les points sont dans l'ordre de Morton : la même sélection donne le même ordre d'un tick à l'autre.
+     */
+    public WorldSnapshot cull(Viewport viewport) {
+        List<Node> selected = new ArrayList<>();
+        int visibleHoles = 0;
+        for (int i : blackHoles) {
+            if (viewport.contains(snapshot.getX(i), snapshot.getY(i), snapshot.getZ(i))) {
+                visibleHoles++;
+            }
+        }
+        int budget = Math.max(1, viewport.maxBodies() - visibleHoles);
+
+        PriorityQueue<Node> frontier = new PriorityQueue<>(Comparator.comparingDouble(Node::priority).reversed());
+        if (codes.length > 0 && viewport.intersects(rootMin, rootMin, rootMin, rootSize)) {
+            frontier.add(node(viewport, 0, 0, 0, codes.length));
+        }
+        // Every node of the frontier costs one point, a selected node one point or its number of stars
+        List<Node> children = new ArrayList<>(8);
+        int points = 0;
+        while (!frontier.isEmpty()) {
+            Node node = frontier.poll();
+            int free = budget - points - frontier.size();
+            if (node.count() == 1 || node.level() == DEPTH) {
+                // Finest cell: its stars one by one if they fit, an impostor otherwise
+                Node finest = node.count() <= free ? node.expand() : node;
+                selected.add(finest);
+                points += finest.cost();
+                continue;
+            }
+            split(viewport, node, children);
+            if (children.size() > free) {
+                selected.add(node);
+                points++;
+            } else {
+                frontier.addAll(children);
+            }
+        }
+        selected.sort(Comparator.comparingInt(Node::lo));
+        return build(viewport, selected, visibleHoles + points);
+    }
+
+    private WorldSnapshot build(Viewport viewport, List<Node> selected, int capacity) {
+        float[] x = new float[capacity], y = new float[capacity], z = new float[capacity];
+        float[] vx = new float[capacity], vy = new float[capacity], vz = new float[capacity];
+        float[] m = new float[capacity];
+        byte[] flags = new byte[capacity];
+        int[] ids = new int[capacity];
+        int count = 0;
+
+        for (int i : blackHoles) {
+            if (viewport.contains(snapshot.getX(i), snapshot.getY(i), snapshot.getZ(i))) {
+                count = copy(i, count, x, y, z, vx, vy, vz, m, flags, ids);
+            }
+        }
+        for (Node node : selected) {
+            if (node.expanded()) {
+                for (int k = node.lo(); k < node.hi(); k++) {
+                    int i = order[k];
+                    if (viewport.contains(snapshot.getX(i), snapshot.getY(i), snapshot.getZ(i))) {
+                        count = copy(i, count, x, y, z, vx, vy, vz, m, flags, ids);
+                    }
+                }
+                continue;
+            }
+            double total = mass[node.hi()] - mass[node.lo()];
+            if (total <= 0) {
+                continue;
+            }
+            float cx = (float) ((mx[node.hi()] - mx[node.lo()]) / total);
+            float cy = (float) ((my[node.hi()] - my[node.lo()]) / total);
+            float cz = (float) ((mz[node.hi()] - mz[node.lo()]) / total);
+            if (!viewport.contains(cx, cy, cz)) {
+                continue;
+            }
+            x[count] = cx;
+            y[count] = cy;
+            z[count] = cz;
+            vx[count] = (float) ((px[node.hi()] - px[node.lo()]) / total);
+            vy[count] = (float) ((py[node.hi()] - py[node.lo()]) / total);
+            vz[count] = (float) ((pz[node.hi()] - pz[node.lo()]) / total);
+            m[count] = (float) total;
+            flags[count] = WorldSnapshot.FLAG_IMPOSTOR;
+            ids[count++] = impostorId(node);
+        }
+
+        if (count < capacity) {
+            x = Arrays.copyOf(x, count);
+            y = Arrays.copyOf(y, count);
+            z = Arrays.copyOf(z, count);
+            vx = Arrays.copyOf(vx, count);
+            vy = Arrays.copyOf(vy, count);
+            vz = Arrays.copyOf(vz, count);
+            m = Arrays.copyOf(m, count);
+            flags = Arrays.copyOf(flags, count);
+            ids = Arrays.copyOf(ids, count);
+        }
+        return WorldSnapshot.of(snapshot.getTick(), snapshot.getTimestamp(), structureVersion(ids),
+            x, y, z, vx, vy, vz, m, flags, ids);
+    }
+
+    private int copy(int i, int at, float[] x, float[] y, float[] z, float[] vx, float[] vy, float[] vz,
+                     float[] m, byte[] flags, int[] ids) {
+        x[at] = snapshot.getX(i);
+        y[at] = snapshot.getY(i);
+        z[at] = snapshot.getZ(i);
+        vx[at] = snapshot.getVx(i);
+        vy[at] = snapshot.getVy(i);
+        vz[at] = snapshot.getVz(i);
+        m[at] = snapshot.getMass(i);
+        flags[at] = snapshot.isBlackHole(i) ? BodyStore.FLAG_BLACK_HOLE : 0;
+        ids[at] = snapshot.getId(i);
+        return at + 1;
+    }
+
+    /**
+     * La vue garde les mêmes points dans le même ordre tant que sa sélection ne change pas : les flux delta
+     * n'envoient alors que les déplacements, sinon ils repartent d'une keyframe
+     */
+    private long structureVersion(int[] ids) {
+        long hash = snapshot.getStructureVersion() * 0x9E3779B97F4A7C15L;
+        for (int id : ids) {
+            hash = (hash ^ id) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Children of the node that hold stars and touch the viewport
+     */
+    private void split(Viewport viewport, Node node, List<Node> children) {
+        children.clear();
+        int shift = 3 * (DEPTH - node.level() - 1);
+        int lo = node.lo();
+        for (int c = 0; c < 8 && lo < node.hi(); c++) {
+            int prefix = (node.prefix() << 3) | c;
+            int hi = lowerBound(lo, node.hi(), (prefix + 1) << shift);
+            if (hi > lo && intersects(viewport, node.level() + 1, prefix)) {
+                children.add(node(viewport, node.level() + 1, prefix, lo, hi));
+            }
+            lo = hi;
+        }
+    }
+
+    private Node node(Viewport viewport, int level, int prefix, int lo, int hi) {
+        float size = rootSize / (1 << level);
+        float half = size / 2;
+        float dx = origin(prefix, level, 0) + half - viewport.eyeX();
+        float dy = origin(prefix, level, 1) + half - viewport.eyeY();
+        float dz = origin(prefix, level, 2) + half - viewport.eyeZ();
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        // Apparent size, cells around the eye come first
+        return new Node(level, prefix, lo, hi, size / Math.max(distance, half), false);
+    }
+
+    private boolean intersects(Viewport viewport, int level, int prefix) {
+        float size = rootSize / (1 << level);
+        return viewport.intersects(origin(prefix, level, 0), origin(prefix, level, 1), origin(prefix, level, 2), size);
+    }
+
+    /**
+     * Coin minimal de la cellule sur un axe (0 = x, 1 = y, 2 = z)
+     */
+    private float origin(int prefix, int level, int axis) {
+        int coordinate = compact(prefix >>> (2 - axis));
+        return rootMin + coordinate * (rootSize / (1 << level));
+    }
+
+    /**
+     * Id négatif et stable d'une cellule : son code de localisation (un bit sentinelle suivi du préfixe de Morton)
+     */
+    private static int impostorId(Node node) {
+        return -((1 << (3 * node.level())) | node.prefix());
+    }
+
+    private int lowerBound(int from, int to, int code) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (codes[mid] < code) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int cell(float value) {
+        int cell = (int) ((value - rootMin) / rootSize * CELLS);
+        return Math.max(0, Math.min(CELLS - 1, cell));
+    }
+
+    // x in the highest bit of each triplet, so a 3-bit child index is (x << 2) | (y << 1) | z
+    private static int morton(int x, int y, int z) {
+        return (spread(x) << 2) | (spread(y) << 1) | spread(z);
+    }
+
+    private static int spread(int value) {
+        int v = value & 0x3FF;
+        v = (v | (v << 16)) & 0x030000FF;
+        v = (v | (v << 8)) & 0x0300F00F;
+        v = (v | (v << 4)) & 0x030C30C3;
+        v = (v | (v << 2)) & 0x09249249;
+        return v;
+    }
+
+    private static int compact(int value) {
+        int v = value & 0x09249249;
+        v = (v | (v >>> 2)) & 0x030C30C3;
+        v = (v | (v >>> 4)) & 0x0300F00F;
+        v = (v | (v >>> 8)) & 0x030000FF;
+        v = (v | (v >>> 16)) & 0x000003FF;
+        return v;
+    }
+
+    /**
+     * Tri par base (LSD, 3 passes de DEPTH bits) des codes et des indices associés, en O(n)
+     */
+    private static void radixSort(int[] keys, int[] values, int[] sortedKeys, int[] sortedValues) {
+        int n = keys.length;
+        int[] srcKeys = keys, srcValues = values;
+        int[] dstKeys = new int[n], dstValues = new int[n];
+        int[] counts = new int[1 << RADIX_BITS];
+        for (int pass = 0; pass < 3; pass++) {
+            int shift = pass * RADIX_BITS;
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[(srcKeys[i] >>> shift) & (counts.length - 1)]++;
+            }
+            int sum = 0;
+            for (int b = 0; b < counts.length; b++) {
+                int c = counts[b];
+                counts[b] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int at = counts[(srcKeys[i] >>> shift) & (counts.length - 1)]++;
+                dstKeys[at] = srcKeys[i];
+                dstValues[at] = srcValues[i];
+            }
+            int[] swapKeys = srcKeys, swapValues = srcValues;
+            srcKeys = dstKeys;
+            srcValues = dstValues;
+            dstKeys = swapKeys;
+            dstValues = swapValues;
+        }
+        System.arraycopy(srcKeys, 0, sortedKeys, 0, n);
+        System.arraycopy(srcValues, 0, sortedValues, 0, n);
+    }
+}
@@ -0,0 +1,35 @@
+package cyrildeschamps.gateway.websocket.view;
+
+/**
+ * Région du monde suivie par un client : une boîte alignée sur les axes (par exemple la boîte englobante
+ * du frustum de sa caméra), la position de l'œil et le nombre maximum de points à recevoir par frame.
+ * Les régions proches de l'œil sont détaillées en priorité, les amas lointains sont agrégés.
+ */
+public record Viewport(float minX, float minY, float minZ,
+                       float maxX, float maxY, float maxZ,
+                       float eyeX, float eyeY, float eyeZ,
+                       int maxBodies) {
+
+    public Viewport {
+        if (!(minX <= maxX && minY <= maxY && minZ <= maxZ)) {
+            throw new IllegalArgumentException("Viewport bounds are empty or not finite");
+        }
+        if (!Float.isFinite(eyeX) || !Float.isFinite(eyeY) || !Float.isFinite(eyeZ)) {
+            throw new IllegalArgumentException("Viewport eye must be finite");
+        }
+        if (maxBodies < 1) {
+            throw new IllegalArgumentException("maxBodies must be at least 1");
+        }
+    }
+
+    public boolean contains(float x, float y, float z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    /**
+     * @return true si le cube [x, x + size]^3 touche la région
+     */
+    public boolean intersects(float x, float y, float z, float size) {
+        return x <= maxX && x + size >= minX && y <= maxY && y + size >= minY && z <= maxZ && z + size >= minZ;
+    }
+}
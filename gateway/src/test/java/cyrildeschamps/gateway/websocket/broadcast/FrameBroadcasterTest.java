@@ -0,0 +1,113 @@
+package cyrildeschamps.gateway.websocket.broadcast;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.websocket.protocol.StreamSettings;
+import cyrildeschamps.gateway.websocket.protocol.WireFormat;
+import cyrildeschamps.gateway.websocket.view.Viewport;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class FrameBroadcasterTest {
+
+    private static final StreamSettings BINARY = StreamSettings.defaults(WireFormat.BINARY);
+    private static final StreamSettings JSON = StreamSettings.defaults(WireFormat.JSON);
+    private static final StreamSettings DELTA = StreamSettings.defaults(WireFormat.DELTA);
+
+    private final BodyStore store = new BodyStore();
+
+    {
+        store.add(1f, 2f, 3f, 0, 0, 0, 1f, false);
+    }
+
+    private WorldSnapshot snapshot(long tick) {
+        store.getX()[0] += 0.5f;
+        return WorldSnapshot.capture(store, tick, 0);
+    }
+
+    @Test
+    void sameTickShouldBeEncodedOnlyOnce() {
+        FrameBroadcaster broadcaster = new FrameBroadcaster();
+        WorldSnapshot snapshot = snapshot(1);
+
+        EncodedFrame first = broadcaster.frameFor(BINARY, 60, snapshot, -1);
+        EncodedFrame second = broadcaster.frameFor(BINARY, 60, snapshot, -1);
+
+        assert first == second : "Sessions of the same tier should share the encoded frame";
+        assert broadcaster.getEncodeCount() == 1 : "Tick should be encoded once";
+    }
+
+    @Test
+    void newTickOrOtherFormatShouldBeEncodedAgain() {
+        FrameBroadcaster broadcaster = new FrameBroadcaster();
+        WorldSnapshot tick1 = snapshot(1);
+
+        EncodedFrame binary = broadcaster.frameFor(BINARY, 60, tick1, -1);
+        EncodedFrame json = broadcaster.frameFor(JSON, 60, tick1, -1);
+        EncodedFrame next = broadcaster.frameFor(BINARY, 60, snapshot(2), -1);
+
+        assert binary.isBinary() && !json.isBinary() : "Each format should have its own frame";
+        assert next.getTick() == 2 : "A new tick should replace the cached frame";
+        assert broadcaster.getEncodeCount() == 3 : "Each (tick, format) pair should be encoded once";
+    }
+
+    @Test
+    void olderSnapshotShouldNotRewindTheStream() {
+        FrameBroadcaster broadcaster = new FrameBroadcaster();
+        WorldSnapshot tick1 = snapshot(1);
+        WorldSnapshot tick2 = snapshot(2);
+
+        broadcaster.frameFor(BINARY, 60, tick2, -1);
+        EncodedFrame frame = broadcaster.frameFor(BINARY, 60, tick1, -1);
+
+        assert frame.getTick() == 2 : "A late reader should get the newest frame";
+    }
+
+    @Test
+    void encodeToSendRatioShouldDropWithSubscribers() {
+        FrameBroadcaster broadcaster = new FrameBroadcaster();
+        WorldSnapshot snapshot = snapshot(1);
+
+        for (int session = 0; session < 4; session++) {
+            EncodedFrame frame = broadcaster.frameFor(JSON, 30, snapshot, -1);
+            broadcaster.recordSend(frame.size(), 0);
+        }
+
+        assert broadcaster.getEncodeToSendRatio() == 0.25 : "Four sends should share a single encode";
+        assert broadcaster.getEncodeTimer(WireFormat.JSON).getCount() == 1 : "The single encode should be timed";
+        assert broadcaster.getBytesSent() == 4L * broadcaster.frameFor(JSON, 30, snapshot, -1).size()
+            : "Every send should count its bytes";
+    }
+
+    @Test
+    void deltaStreamShouldResyncSessionsThatMissedTheBaseFrame() {
+        FrameBroadcaster broadcaster = new FrameBroadcaster();
+
+        EncodedFrame first = broadcaster.frameFor(DELTA, 60, snapshot(1), -1);
+        EncodedFrame delta = broadcaster.frameFor(DELTA, 60, snapshot(2), first.getTick());
+        EncodedFrame late = broadcaster.frameFor(DELTA, 60, snapshot(2), -1);
+        EncodedFrame duplicate = broadcaster.frameFor(DELTA, 60, snapshot(2), delta.getTick());
+
+        assert !first.isDelta() : "A delta stream should start with a keyframe";
+        assert delta.isDelta() && delta.getBaseTick() == 1 : "Up to date sessions should receive the delta";
+        assert !late.isDelta() && late.getTick() == 2 : "Sessions without the base state should receive a keyframe";
+        assert duplicate == null : "Nothing should be sent twice for the same tick";
+    }
+
+    @Test
+    void viewsShouldShareOneSpatialIndexPerTick() {
+        FrameBroadcaster broadcaster = new FrameBroadcaster();
+        WorldSnapshot snapshot = snapshot(1);
+        FrameBroadcaster.View near = broadcaster.openView(BINARY, new Viewport(0, 0, 0, 10, 10, 10, 0, 0, 0, 100));
+        FrameBroadcaster.View far = broadcaster.openView(BINARY, new Viewport(50, 50, 50, 60, 60, 60, 55, 55, 55, 100));
+
+        EncodedFrame nearFrame = broadcaster.frameFor(near, snapshot, -1);
+        EncodedFrame farFrame = broadcaster.frameFor(far, snapshot, -1);
+        broadcaster.frameFor(near, snapshot(2), nearFrame.getTick());
+
+        assert nearFrame != farFrame : "Each view should get its own frame";
+        assert nearFrame.size() > farFrame.size() : "Only the near view sees the body";
+        assert broadcaster.getIndexBuildCount() == 2 : "The index should be built once per tick, got " + broadcaster.getIndexBuildCount();
+    }
+}
@@ -3,6 +3,9 @@ package cyrildeschamps.gateway.websocket.endpoint;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import cyrildeschamps.gateway.websocket.manager.NBodySessionManager;
 import cyrildeschamps.gateway.websocket.messages.FpsMessage;
+import cyrildeschamps.gateway.websocket.messages.ProtocolMessage;
+import cyrildeschamps.gateway.websocket.protocol.StreamSettings;
+import cyrildeschamps.gateway.websocket.protocol.WireFormat;
 import io.quarkus.test.InjectMock;
 import io.quarkus.test.junit.QuarkusTest;
 import jakarta.inject.Inject;
@@ -10,6 +13,9 @@ import jakarta.websocket.Session;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.Map;
+
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -47,6 +53,58 @@ class NBodyWebSocketEndpointTest {
         verify(sessionManager).subscribe(eq(session), eq(30));
     }
 
+    @Test
+    void onMessageShouldHandleProtocolMessage() throws Exception {
+        // Given
+        String message = objectMapper.writeValueAsString(new ProtocolMessage("binary"));
+
+        // When
+        endpoint.onMessage(message, session);
+
+        // Then
+        verify(sessionManager).setStreamSettings(eq(session), eq(StreamSettings.defaults(WireFormat.BINARY)));
+    }
+
+    @Test
+    void onMessageShouldHandleDeltaProtocolWithOptionalFields() {
+        // Given
+        String message = "{\"type\":\"protocol\",\"format\":\"delta\",\"mass\":true}";
+
+        // When
+        endpoint.onMessage(message, session);
+
+        // Then
+        verify(sessionManager).setStreamSettings(eq(session), eq(new StreamSettings(WireFormat.DELTA, false, true)));
+    }
+
+    @Test
+    void onMessageShouldHandleResyncMessage() {
+        // When
+        endpoint.onMessage("{\"type\":\"resync\"}", session);
+
+        // Then
+        verify(sessionManager).requestResync(session);
+    }
+
+    @Test
+    void onMessageShouldDeleteBodiesById() {
+        // When
+        endpoint.onMessage("{\"type\":\"deleteBody\",\"id\":42}", session);
+
+        // Then
+        verify(sessionManager).deleteBody(session, 42);
+    }
+
+    @Test
+    void onMessageShouldRejectDeletesWithoutId() {
+        // When - an index is not an id, it would delete another body
+        endpoint.onMessage("{\"type\":\"deleteBody\",\"index\":3}", session);
+        endpoint.onMessage("{\"type\":\"deleteBody\"}", session);
+
+        // Then
+        verify(sessionManager, never()).deleteBody(any(), anyInt());
+    }
+
     @Test
     void onCloseShouldCancelSubscription() {
         // When
@@ -74,6 +132,44 @@ class NBodyWebSocketEndpointTest {
         endpoint.onOpen(session);
     }
 
+    @Test
+    void onOpenShouldJoinTheRequestedRoom() {
+        // Given
+        when(session.getRequestParameterMap()).thenReturn(Map.of("room", List.of("lobby")));
+
+        // When
+        endpoint.onOpen(session);
+
+        // Then
+        verify(sessionManager).join(session, "lobby");
+    }
+
+    @Test
+    void onOpenShouldStartTheRequestedReplay() throws Exception {
+        // Given
+        when(session.getRequestParameterMap()).thenReturn(Map.of("replay", List.of("demo")));
+
+        // When
+        endpoint.onOpen(session);
+
+        // Then
+        verify(sessionManager).watchReplay(session, "demo");
+        verify(sessionManager, never()).join(any(), any());
+    }
+
+    @Test
+    void onMessageShouldHandleRecordAndSeekMessages() throws Exception {
+        // When
+        endpoint.onMessage("{\"type\":\"record\",\"name\":\"demo\"}", session);
+        endpoint.onMessage("{\"type\":\"record\"}", session);
+        endpoint.onMessage("{\"type\":\"seek\",\"tick\":120}", session);
+
+        // Then
+        verify(sessionManager).startRecording(session, "demo");
+        verify(sessionManager).stopRecording(session);
+        verify(sessionManager).seek(session, 120);
+    }
+
     @Test
     void onErrorShouldNotThrowException() {
         // Given
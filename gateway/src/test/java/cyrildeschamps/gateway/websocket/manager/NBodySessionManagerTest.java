@@ -1,19 +1,29 @@
 package cyrildeschamps.gateway.websocket.manager;
 
-import cyrildeschamps.core.service.simulation.Body;
 import cyrildeschamps.core.service.simulation.NBodyService;
+import cyrildeschamps.core.service.simulation.SimulationRegistry;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.websocket.protocol.WireFormat;
 import io.quarkus.test.InjectMock;
 import io.quarkus.test.junit.QuarkusTest;
 import jakarta.inject.Inject;
 import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
 import jakarta.websocket.Session;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -27,22 +37,29 @@ class NBodySessionManagerTest {
     @InjectMock
     NBodyService nBodyService;
 
+    @Inject
+    SimulationRegistry registry;
+
     private Session session;
-    private RemoteEndpoint.Basic basicRemote;
+    private RemoteEndpoint.Async asyncRemote;
 
     @BeforeEach
     void setUp() {
         session = mock(Session.class);
-        basicRemote = mock(RemoteEndpoint.Basic.class);
-        when(session.getBasicRemote()).thenReturn(basicRemote);
+        asyncRemote = mock(RemoteEndpoint.Async.class);
+        when(session.getAsyncRemote()).thenReturn(asyncRemote);
         when(session.isOpen()).thenReturn(true);
-        
-        List<Body> mockBodies = new ArrayList<>();
-        when(nBodyService.getBodies()).thenReturn(mockBodies);
+        // Complete every send right away
+        doAnswer(invocation -> {
+            invocation.<SendHandler>getArgument(1).onResult(new SendResult());
+            return null;
+        }).when(asyncRemote).sendText(anyString(), any(SendHandler.class));
+
+        when(nBodyService.getSnapshot()).thenReturn(WorldSnapshot.EMPTY);
     }
 
     @Test
-    void subscribeShouldStartSendingUpdates() throws IOException, InterruptedException {
+    void subscribeShouldStartSendingUpdates() throws InterruptedException {
         // Given
         int fps = 30;
 
@@ -51,11 +68,11 @@ class NBodySessionManagerTest {
 
         // Then - Wait a bit to ensure at least one message is sent
         Thread.sleep(100);
-        verify(basicRemote, atLeastOnce()).sendText(anyString());
+        verify(asyncRemote, atLeastOnce()).sendText(anyString(), any(SendHandler.class));
     }
 
     @Test
-    void cancelSubscriptionShouldStopSendingUpdates() throws IOException, InterruptedException {
+    void cancelSubscriptionShouldStopSendingUpdates() throws InterruptedException {
         // Given
         int fps = 30;
         sessionManager.subscribe(session, fps);
@@ -64,13 +81,13 @@ class NBodySessionManagerTest {
         sessionManager.cancelSubscription(session);
 
         // Then
-        Mockito.reset(basicRemote);
+        Mockito.reset(asyncRemote);
         Thread.sleep(100);
-        verify(basicRemote, never()).sendText(anyString());
+        verify(asyncRemote, never()).sendText(anyString(), any(SendHandler.class));
     }
 
     @Test
-    void shouldStopSendingUpdatesWhenSessionIsClosed() throws IOException, InterruptedException {
+    void shouldStopSendingUpdatesWhenSessionIsClosed() throws InterruptedException {
         // Given
         int fps = 30;
         when(session.isOpen()).thenReturn(false);
@@ -80,30 +97,43 @@ class NBodySessionManagerTest {
 
         // Then
         Thread.sleep(100);
-        verify(basicRemote, never()).sendText(anyString());
+        verify(asyncRemote, never()).sendText(anyString(), any(SendHandler.class));
     }
 
     @Test
-    void subscribingTwiceShouldCancelPreviousSubscription() throws IOException, InterruptedException {
+    void subscribingTwiceShouldCancelPreviousSubscription() throws InterruptedException {
         // Given
         sessionManager.subscribe(session, 30);
-        Mockito.reset(basicRemote);
+        Mockito.reset(asyncRemote);
 
         // When
         sessionManager.subscribe(session, 60);
         Thread.sleep(100);
 
         // Then - Should only have messages from the second subscription
-        verify(basicRemote, atLeastOnce()).sendText(anyString());
+        verify(asyncRemote, atLeastOnce()).sendText(anyString(), any(SendHandler.class));
+    }
+
+    @Test
+    void sentFramesShouldBeCountedPerSession() throws InterruptedException {
+        // Given
+        sessionManager.subscribe(session, 30);
+
+        // When
+        Thread.sleep(100);
+
+        // Then
+        assert sessionManager.getSentFrames(session) > 0 : "Completed sends should be counted";
+        assert sessionManager.getDroppedFrames(session) == 0 : "A fast client should not drop frames";
     }
 
     @Test
     void deleteBodyShouldDelegateToService() {
         // Given
-        when(nBodyService.deleteBody(anyInt())).thenReturn(true);
+        when(nBodyService.deleteBody(anyInt())).thenReturn(CompletableFuture.completedFuture(true));
 
         // When
-        boolean result = sessionManager.deleteBody(1);
+        boolean result = sessionManager.deleteBody(1).join();
 
         // Then
         verify(nBodyService).deleteBody(1);
@@ -113,13 +143,150 @@ class NBodySessionManagerTest {
     @Test
     void deleteBodyShouldHandleFailure() {
         // Given
-        when(nBodyService.deleteBody(anyInt())).thenReturn(false);
+        when(nBodyService.deleteBody(anyInt())).thenReturn(CompletableFuture.completedFuture(false));
 
         // When
-        boolean result = sessionManager.deleteBody(1);
+        boolean result = sessionManager.deleteBody(1).join();
 
         // Then
         verify(nBodyService).deleteBody(1);
         assert !result : "Should return false when service fails to delete";
     }
-} 
\ No newline at end of file
+
+    @Test
+    void createBodiesShouldSubmitASingleBatch() {
+        // Given
+        when(nBodyService.createBodies(any())).thenReturn(CompletableFuture.completedFuture(0));
+
+        // When
+        sessionManager.createBodies(session, null, 50, 100f, false);
+
+        // Then
+        verify(nBodyService, times(1)).createBodies(argThat(batch -> batch.size() == 50));
+    }
+
+    @Test
+    void createBodiesShouldUseTheRequestedDistribution() {
+        // Given
+        when(nBodyService.createBodies(any())).thenReturn(CompletableFuture.completedFuture(0));
+
+        // When
+        sessionManager.createBodies(session, "ring", 200, 300f, false);
+
+        // Then
+        verify(nBodyService).createBodies(argThat(batch -> batch.size() == 200 && batch.getZ()[0] == 0
+            && Math.hypot(batch.getX()[0], batch.getY()[0]) >= 50));
+    }
+
+    @Test
+    void createBodiesShouldRejectUnboundedRequests() {
+        // When
+        CompletableFuture<Integer> result = sessionManager.createBodies(session, null, Integer.MAX_VALUE, 100f, false);
+
+        // Then
+        assert result.isCompletedExceptionally() : "A request above nbody.bodies.max-per-request should fail";
+        verify(nBodyService, never()).createBodies(any());
+    }
+
+    @Test
+    void createBodiesShouldRejectBlackHolesOutsideTheCube() {
+        // When
+        CompletableFuture<Integer> result = sessionManager.createBodies(session, "ring", 200, 300f, true);
+
+        // Then
+        assert result.isCompletedExceptionally() : "Only the cube should accept blackHole";
+        verify(nBodyService, never()).createBodies(any());
+    }
+
+    @Test
+    void roomSessionsShouldUseTheirOwnSimulation() {
+        // Given
+        Session other = mock(Session.class);
+        sessionManager.join(session, "test-room");
+        sessionManager.join(other, "test-room");
+
+        // When
+        sessionManager.resetSimulation(session).join();
+        sessionManager.cancelSubscription(session);
+
+        // Then
+        verify(nBodyService, never()).resetSimulation();
+        assert "test-room".equals(sessionManager.getRoom(other)) : "The session should stay in its room";
+        assert registry.get("test-room") != null : "The room should live while a session remains";
+
+        sessionManager.cancelSubscription(other);
+        assert registry.get("test-room") == null : "The last session leaving should destroy the room";
+    }
+
+    @Test
+    void joiningWhileTheLastSessionLeavesShouldFollowTheLiveRoom() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 20; i++) {
+                // Given - a room whose only session is leaving
+                Session leaver = mock(Session.class);
+                sessionManager.join(leaver, "busy-room");
+                CountDownLatch start = new CountDownLatch(1);
+
+                // When - another session joins and subscribes meanwhile
+                Future<?> leaving = threads.submit(() -> {
+                    start.await();
+                    sessionManager.cancelSubscription(leaver);
+                    return null;
+                });
+                Future<?> joining = threads.submit(() -> {
+                    start.await();
+                    sessionManager.join(session, "busy-room");
+                    sessionManager.subscribe(session, 30);
+                    return null;
+                });
+                start.countDown();
+                leaving.get(5, TimeUnit.SECONDS);
+                joining.get(5, TimeUnit.SECONDS);
+                clearInvocations(asyncRemote);
+                Thread.sleep(100);
+
+                // Then - its frames come from the ticks of the room it sends its commands to
+                assert registry.get("busy-room") != null : "The room should live while a session remains";
+                verify(asyncRemote, atLeastOnce()).sendText(anyString(), any(SendHandler.class));
+                sessionManager.cancelSubscription(session);
+            }
+        } finally {
+            threads.shutdownNow();
+            sessionManager.cancelSubscription(session);
+        }
+    }
+
+    @Test
+    void replaySessionsShouldStreamTheRecordingAndRefuseCommands() throws Exception {
+        // Given - a few ticks of a live room recorded to disk
+        Session recorder = mock(Session.class);
+        sessionManager.join(recorder, "recorded-room");
+        sessionManager.startRecording(recorder, "test-demo");
+        Thread.sleep(100);
+        sessionManager.stopRecording(recorder);
+        sessionManager.cancelSubscription(recorder);
+        doAnswer(invocation -> {
+            invocation.<SendHandler>getArgument(1).onResult(new SendResult());
+            return null;
+        }).when(asyncRemote).sendBinary(any(ByteBuffer.class), any(SendHandler.class));
+
+        try {
+            // When
+            sessionManager.watchReplay(session, "test-demo");
+            sessionManager.setWireFormat(session, WireFormat.BINARY);
+            sessionManager.subscribe(session, 30);
+            Thread.sleep(100);
+
+            // Then
+            verify(asyncRemote, atLeastOnce()).sendBinary(any(ByteBuffer.class), any(SendHandler.class));
+            verify(nBodyService, never()).getSnapshot();
+            assert sessionManager.resetSimulation(session).isCompletedExceptionally() : "A replay should be read-only";
+        } finally {
+            sessionManager.cancelSubscription(session);
+            Path file = sessionManager.recordingFile("test-demo");
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".idx"));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package cyrildeschamps.gateway.websocket.manager;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.websocket.broadcast.FrameBroadcaster;
+import cyrildeschamps.gateway.websocket.protocol.StreamSettings;
+import cyrildeschamps.gateway.websocket.protocol.WireFormat;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@QuarkusTest
+class SessionStateTest {
+
+    private final BodyStore store = new BodyStore();
+    private Session session;
+    private RemoteEndpoint.Async asyncRemote;
+    private SessionState state;
+
+    @BeforeEach
+    void setUp() {
+        store.add(1f, 2f, 3f, 0, 0, 0, 1f, false);
+        session = mock(Session.class);
+        asyncRemote = mock(RemoteEndpoint.Async.class);
+        when(session.getAsyncRemote()).thenReturn(asyncRemote);
+        when(session.isOpen()).thenReturn(true);
+
+        state = new SessionState(session, new FrameBroadcaster());
+        state.setSettings(StreamSettings.defaults(WireFormat.BINARY));
+        state.setFps(60);
+    }
+
+    private WorldSnapshot snapshot(long tick) {
+        return WorldSnapshot.capture(store, tick, 0);
+    }
+
+    /**
+     * Termine l'envoi en cours (le dernier reçu par le mock)
+     */
+    private void completeLastSend(SendResult result) {
+        ArgumentCaptor<SendHandler> handler = ArgumentCaptor.forClass(SendHandler.class);
+        verify(asyncRemote, atLeastOnce()).sendBinary(any(ByteBuffer.class), handler.capture());
+        handler.getValue().onResult(result);
+    }
+
+    @Test
+    void slowClientShouldOnlyReceiveTheNewestSnapshot() {
+        // Given - first send never acknowledged yet
+        state.offer(snapshot(1));
+
+        // When
+        state.offer(snapshot(2));
+        state.offer(snapshot(3));
+
+        // Then
+        verify(asyncRemote, times(1)).sendBinary(any(ByteBuffer.class), any(SendHandler.class));
+        assert state.getDroppedFrames() == 1 : "Tick 2 should have been replaced by tick 3";
+
+        // When - the socket catches up
+        completeLastSend(new SendResult());
+
+        // Then
+        verify(asyncRemote, times(2)).sendBinary(any(ByteBuffer.class), any(SendHandler.class));
+        completeLastSend(new SendResult());
+        assert state.getSentFrames() == 2 : "Ticks 1 and 3 should have been sent";
+        assert state.getLastSentTick() == 3 : "Client should be at the newest tick";
+    }
+
+    @Test
+    void failedSendShouldCountAsDroppedAndForceResync() {
+        // Given
+        state.offer(snapshot(1));
+
+        // When
+        completeLastSend(new SendResult(new IOException("Broken pipe")));
+
+        // Then
+        assert state.getDroppedFrames() == 1 : "Failed send should be counted as dropped";
+        assert state.getSentFrames() == 0 : "Failed send should not be counted as sent";
+        assert state.getLastSentTick() == -1 : "Client state should be unknown after a failure";
+    }
+
+    @Test
+    void synchronousSendErrorShouldReleaseTheWindow() {
+        // Given
+        doThrow(new IllegalStateException("Session closed"))
+            .doNothing()
+            .when(asyncRemote).sendBinary(any(ByteBuffer.class), any(SendHandler.class));
+
+        // When
+        state.offer(snapshot(1));
+        state.offer(snapshot(2));
+
+        // Then
+        verify(asyncRemote, times(2)).sendBinary(any(ByteBuffer.class), any(SendHandler.class));
+        assert state.getDroppedFrames() == 1 : "Only the failed frame should be dropped";
+    }
+}
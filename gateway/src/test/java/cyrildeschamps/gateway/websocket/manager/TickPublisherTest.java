@@ -0,0 +1,108 @@
+package cyrildeschamps.gateway.websocket.manager;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.websocket.broadcast.FrameBroadcaster;
+import cyrildeschamps.gateway.websocket.protocol.StreamSettings;
+import cyrildeschamps.gateway.websocket.protocol.WireFormat;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@QuarkusTest
+class TickPublisherTest {
+    private static final long PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(15);
+
+    private final BodyStore store = new BodyStore();
+    private final FrameBroadcaster broadcaster = new FrameBroadcaster();
+
+    {
+        store.add(1f, 2f, 3f, 0, 0, 0, 1f, false);
+    }
+
+    /**
+     * Session dont chaque envoi est confirmé aussitôt, avec les ticks reçus
+     */
+    private SessionState session(List<Long> received) {
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+        when(session.getAsyncRemote()).thenReturn(remote);
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            ByteBuffer frame = invocation.getArgument(0);
+            received.add(frame.getLong(8));
+            invocation.<SendHandler>getArgument(1).onResult(new SendResult());
+            return null;
+        }).when(remote).sendBinary(any(ByteBuffer.class), any(SendHandler.class));
+        SessionState state = new SessionState(session, broadcaster);
+        state.setSettings(StreamSettings.defaults(WireFormat.BINARY));
+        return state;
+    }
+
+    @Test
+    void fpsShouldMapToTheNearestTickTier() {
+        TickPublisher publisher = new TickPublisher(PERIOD_NANOS, Runnable::run);
+
+        assert publisher.divisorFor(60) == 1 : "60 fps should get every tick";
+        assert publisher.divisorFor(30) == 2 : "30 fps should get one tick out of two";
+        assert publisher.divisorFor(15) == 4 : "15 fps should get one tick out of four";
+        assert publisher.tierFps(2) == 33 : "Tiers should report their real rate";
+    }
+
+    @Test
+    void tiersShouldReceiveExactlyOneFreshSnapshotPerPeriod() {
+        TickPublisher publisher = new TickPublisher(PERIOD_NANOS, Runnable::run);
+        List<Long> fast = new ArrayList<>(), slow = new ArrayList<>(), slower = new ArrayList<>();
+        publisher.subscribe(session(fast), 60);
+        publisher.subscribe(session(slow), 30);
+        publisher.subscribe(session(slower), 15);
+
+        for (long tick = 1; tick <= 8; tick++) {
+            WorldSnapshot snapshot = WorldSnapshot.capture(store, tick, 0);
+            publisher.onSnapshot(snapshot);
+            // A command publishes the same tick again, it should not be sent twice
+            publisher.onSnapshot(snapshot);
+        }
+
+        assert fast.equals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L)) : "Every tick once, got " + fast;
+        assert slow.equals(List.of(2L, 4L, 6L, 8L)) : "Every other tick, got " + slow;
+        assert slower.equals(List.of(4L, 8L)) : "One tick out of four, got " + slower;
+    }
+
+    @Test
+    void subscribingShouldNotScheduleAnything() {
+        AtomicInteger tasks = new AtomicInteger();
+        TickPublisher publisher = new TickPublisher(PERIOD_NANOS, task -> {
+            tasks.incrementAndGet();
+            task.run();
+        });
+        List<Long> received = new ArrayList<>();
+        SessionState state = session(received);
+
+        for (int i = 0; i < 1000; i++) {
+            publisher.subscribe(session(new ArrayList<>()), 30);
+        }
+        publisher.subscribe(state, 30);
+        assert tasks.get() == 0 : "Subscribers should not create tasks";
+
+        publisher.onSnapshot(WorldSnapshot.capture(store, 2, 0));
+        publisher.unsubscribe(state);
+        publisher.onSnapshot(WorldSnapshot.capture(store, 4, 0));
+
+        assert tasks.get() == 2 : "One delivery per tier period, whatever the number of sessions";
+        assert received.equals(List.of(2L)) : "An unsubscribed session should receive nothing, got " + received;
+        assert publisher.size() == 1000;
+    }
+}
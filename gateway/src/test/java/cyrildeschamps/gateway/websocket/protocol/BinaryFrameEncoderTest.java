@@ -0,0 +1,56 @@
+package cyrildeschamps.gateway.websocket.protocol;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.websocket.broadcast.EncodedFrame;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+@QuarkusTest
+class BinaryFrameEncoderTest {
+
+    private static WorldSnapshot snapshot() {
+        BodyStore store = new BodyStore();
+        store.add(0, 0, 0, 0, 0, 0, 5e5f, true);
+        store.add(1f, 2f, 3f, 4f, 5f, 6f, 7f, false);
+        return WorldSnapshot.capture(store, 42, 1_700_000_000_000L);
+    }
+
+    @Test
+    void encodeShouldWriteHeaderAndPackedArrays() {
+        ByteBuffer frame = new BinaryFrameEncoder().encode(snapshot()).getBinary();
+
+        assert frame.order() == ByteOrder.LITTLE_ENDIAN : "Frame should be little-endian";
+        assert frame.remaining() == BinaryFrameEncoder.frameSize(2, true) : "Frame size should match the layout";
+        assert frame.get(0) == BinaryFrameEncoder.VERSION : "Version should be written first";
+        assert frame.get(1) == BinaryFrameEncoder.TYPE_STATE : "Type should follow the version";
+        assert frame.getInt(4) == 2 : "Body count should be written";
+        assert frame.getLong(8) == 42 : "Tick should be written";
+        assert frame.getDouble(16) == 1_700_000_000_000.0 : "Timestamp should be written";
+
+        int header = BinaryFrameEncoder.HEADER_SIZE;
+        assert frame.getFloat(header + 4) == 1f : "x of second body should follow x of first body";
+        assert frame.getFloat(header + 2 * 4 * 2 + 4) == 3f : "z array should follow y array";
+        assert frame.getFloat(header + 6 * 4 * 2 + 4) == 7f : "Mass array should follow velocities";
+        assert (frame.getShort(2) & BinaryFrameEncoder.FLAG_IDS) != 0 : "Ids should always be sent";
+        assert frame.getInt(header + 7 * 4 * 2 + 4) == 1 : "Ids should follow the mass array";
+        assert frame.get(header + 8 * 4 * 2) == 1 : "Black hole flag should be set";
+        assert frame.get(header + 8 * 4 * 2 + 1) == 0 : "Star flag should be clear";
+    }
+
+    @Test
+    void encodedFrameShouldBeSharableBetweenSessions() {
+        EncodedFrame frame = new BinaryFrameEncoder().encode(snapshot());
+
+        ByteBuffer first = frame.getBinary();
+        first.position(first.limit());
+        ByteBuffer second = frame.getBinary();
+
+        assert second.remaining() == BinaryFrameEncoder.frameSize(2, true) : "Each send should get its own view of the frame";
+        assert second.isReadOnly() : "Shared frame should not be writable";
+        assert second.order() == ByteOrder.LITTLE_ENDIAN : "Views should keep the byte order";
+    }
+}
@@ -0,0 +1,165 @@
+package cyrildeschamps.gateway.websocket.protocol;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import cyrildeschamps.gateway.websocket.broadcast.EncodedFrame;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+@QuarkusTest
+class DeltaFrameEncoderTest {
+
+    private static final int BODIES = 500;
+
+    private BodyStore store;
+    private long tick;
+
+    @BeforeEach
+    void setUp() {
+        store = new BodyStore();
+        Random random = new Random(42);
+        store.add(0, 0, 0, 0, 0, 0, 5e5f, true);
+        for (int i = 1; i < BODIES; i++) {
+            store.add(random.nextFloat(-300, 300), random.nextFloat(-300, 300), random.nextFloat(-30, 30),
+                random.nextFloat(-4, 4), random.nextFloat(-4, 4), random.nextFloat(-1, 1), 1f, false);
+        }
+        tick = 0;
+    }
+
+    /**
+     * Avance la simulation d'un pas de 1/60 s (mouvement rectiligne)
+     */
+    private WorldSnapshot step() {
+        for (int i = 0; i < store.size(); i++) {
+            store.getX()[i] += store.getVx()[i] / 60f;
+            store.getY()[i] += store.getVy()[i] / 60f;
+            store.getZ()[i] += store.getVz()[i] / 60f;
+        }
+        return WorldSnapshot.capture(store, ++tick, 0);
+    }
+
+    /**
+     * Applique une frame comme le client : keyframe complète, ou delta à partir de l'état courant
+     */
+    private static void apply(EncodedFrame frame, float[][] positions) {
+        ByteBuffer buffer = frame.getBinary();
+        int count = buffer.getInt(4);
+        if (buffer.get(1) == BinaryFrameEncoder.TYPE_STATE) {
+            for (int axis = 0; axis < 3; axis++) {
+                for (int i = 0; i < count; i++) {
+                    positions[axis][i] = buffer.getFloat(BinaryFrameEncoder.HEADER_SIZE + (axis * count + i) * 4);
+                }
+            }
+            return;
+        }
+        for (int axis = 0; axis < 3; axis++) {
+            float step = buffer.getFloat(32 + axis * 4);
+            for (int i = 0; i < count; i++) {
+                short delta = buffer.getShort(DeltaFrameEncoder.DELTA_HEADER_SIZE + (axis * count + i) * 2);
+                positions[axis][i] += delta * step;
+            }
+        }
+    }
+
+    @Test
+    void streamShouldStartWithKeyframeAndThenSendDeltas() {
+        DeltaFrameEncoder encoder = new DeltaFrameEncoder(10, false, false);
+
+        EncodedFrame keyframe = encoder.encode(step());
+        EncodedFrame delta = encoder.encode(step());
+
+        assert !keyframe.isDelta() : "First frame should be a keyframe";
+        assert delta.isDelta() && delta.getBaseTick() == keyframe.getTick() : "Next frame should be a delta on the keyframe";
+        assert delta.size() == DeltaFrameEncoder.deltaFrameSize(BODIES, false, false) : "Delta size should match the layout";
+    }
+
+    @Test
+    void keyframeShouldBeSentEveryInterval() {
+        DeltaFrameEncoder encoder = new DeltaFrameEncoder(10, false, false);
+
+        int keyframes = 0;
+        for (int frame = 0; frame < 30; frame++) {
+            if (!encoder.encode(step()).isDelta()) {
+                keyframes++;
+            }
+        }
+
+        assert keyframes == 3 : "Expected one keyframe every 10 frames, got " + keyframes;
+    }
+
+    @Test
+    void structuralChangeShouldForceKeyframe() {
+        DeltaFrameEncoder encoder = new DeltaFrameEncoder(false, false);
+        encoder.encode(step());
+        encoder.encode(step());
+
+        store.remove(10);
+        store.add(1f, 1f, 1f, 0, 0, 0, 1f, false);
+
+        assert !encoder.encode(step()).isDelta() : "Replacing a body should restart from a keyframe";
+    }
+
+    @Test
+    void largeMoveShouldWidenTheStepInsteadOfOverflowing() {
+        DeltaFrameEncoder encoder = new DeltaFrameEncoder(false, false);
+        float[][] positions = new float[3][BODIES];
+        apply(encoder.encode(step()), positions);
+
+        store.getZ()[1] = 1e6f;
+        WorldSnapshot snapshot = step();
+        EncodedFrame frame = encoder.encode(snapshot);
+        apply(frame, positions);
+
+        float stepZ = frame.getBinary().getFloat(40);
+        assert frame.isDelta() : "A large move should still be sent as a delta";
+        assert Math.abs(positions[2][1] - snapshot.getZ(1)) <= stepZ : "Teleported body should land within one step";
+    }
+
+    @Test
+    void nonFinitePositionShouldForceKeyframe() {
+        DeltaFrameEncoder encoder = new DeltaFrameEncoder(false, false);
+        encoder.encode(step());
+
+        store.getX()[1] = Float.POSITIVE_INFINITY;
+
+        assert !encoder.encode(step()).isDelta() : "Non finite positions cannot be quantized";
+    }
+
+    @Test
+    void reconstructedPositionsShouldStayWithinHalfAStep() {
+        DeltaFrameEncoder encoder = new DeltaFrameEncoder(false, false);
+        float[][] positions = new float[3][BODIES];
+
+        float maxError = 0;
+        for (int frame = 0; frame < 59; frame++) {
+            WorldSnapshot snapshot = step();
+            apply(encoder.encode(snapshot), positions);
+            for (int i = 0; i < BODIES; i++) {
+                maxError = Math.max(maxError, Math.abs(positions[0][i] - snapshot.getX(i)));
+                maxError = Math.max(maxError, Math.abs(positions[1][i] - snapshot.getY(i)));
+            }
+        }
+
+        // Extent is about 600 units, so half a step is about 0.005
+        assert maxError < 0.01f : "Reconstruction error should not accumulate, got " + maxError;
+    }
+
+    @Test
+    void deltaStreamShouldUseAtLeastFiveTimesLessBandwidthThanJson() throws Exception {
+        DeltaFrameEncoder delta = new DeltaFrameEncoder(false, false);
+        JsonFrameEncoder json = new JsonFrameEncoder();
+
+        long deltaBytes = 0, jsonBytes = 0;
+        for (int frame = 0; frame < 120; frame++) {
+            WorldSnapshot snapshot = step();
+            deltaBytes += delta.encode(snapshot).size();
+            jsonBytes += json.encode(snapshot).size();
+        }
+
+        assert deltaBytes * 5 <= jsonBytes : "Delta stream used " + deltaBytes + " bytes against " + jsonBytes + " for JSON";
+    }
+}
@@ -0,0 +1,116 @@
+package cyrildeschamps.gateway.websocket.view;
+
+import cyrildeschamps.core.service.simulation.BodyStore;
+import cyrildeschamps.core.service.simulation.WorldSnapshot;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+@QuarkusTest
+class SnapshotIndexTest {
+    private static final float INFINITY = Float.POSITIVE_INFINITY;
+
+    private static Viewport everything(int maxBodies) {
+        return new Viewport(-INFINITY, -INFINITY, -INFINITY, INFINITY, INFINITY, INFINITY, 0, 0, 0, maxBodies);
+    }
+
+    private static void addCluster(BodyStore store, Random random, int count, float cx, float cy, float cz, float radius) {
+        for (int i = 0; i < count; i++) {
+            store.add(cx + (random.nextFloat() * 2 - 1) * radius, cy + (random.nextFloat() * 2 - 1) * radius,
+                cz + (random.nextFloat() * 2 - 1) * radius, 1, 0, 0, 1, false);
+        }
+    }
+
+    @Test
+    void regionWithinBudgetShouldBeSentExactly() {
+        BodyStore store = new BodyStore();
+        store.add(1, 1, 1, 0, 0, 0, 1, false);
+        store.add(2, 2, 2, 0, 0, 0, 1, false);
+        store.add(500, 0, 0, 0, 0, 0, 1, false);
+        store.add(3, 3, 3, 0, 0, 0, 5e5f, true);
+        WorldSnapshot snapshot = WorldSnapshot.capture(store, 1, 0);
+
+        WorldSnapshot view = new SnapshotIndex(snapshot).cull(new Viewport(0, 0, 0, 10, 10, 10, 0, 0, 0, 100));
+
+        assert view.size() == 3 : "Only the bodies inside the region should be sent, got " + view.size();
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < view.size(); i++) {
+            assert !view.isImpostor(i) : "Nothing should be aggregated within the budget";
+            ids.add(view.getId(i));
+        }
+        assert ids.equals(Set.of(store.idOf(0), store.idOf(1), store.idOf(3))) : "Bodies should keep their ids";
+        assert view.isBlackHole(0) : "Black holes should be sent first";
+    }
+
+    @Test
+    void largeWorldShouldFitTheBudgetAndKeepItsMass() {
+        BodyStore store = new BodyStore();
+        addCluster(store, new Random(1), 100_000, 0, 0, 0, 1000);
+        WorldSnapshot snapshot = WorldSnapshot.capture(store, 1, 0);
+
+        WorldSnapshot view = new SnapshotIndex(snapshot).cull(everything(1000));
+
+        assert view.size() <= 1000 && view.size() > 500 : "The budget should be used but not exceeded, got " + view.size();
+        double mass = 0;
+        int impostors = 0;
+        for (int i = 0; i < view.size(); i++) {
+            mass += view.getMass(i);
+            if (view.isImpostor(i)) {
+                impostors++;
+                assert view.getId(i) < 0 : "Impostors should have negative ids";
+                assert Math.abs(view.getVx(i) - 1) < 1e-4 : "Impostors should move with their bodies";
+            }
+        }
+        assert impostors > 0 : "Clusters should be aggregated";
+        assert Math.abs(mass - 100_000) < 1 : "Aggregation should keep the total mass, got " + mass;
+    }
+
+    @Test
+    void clustersNearTheEyeShouldBeDetailedFirst() {
+        BodyStore store = new BodyStore();
+        Random random = new Random(2);
+        addCluster(store, random, 200, 100, 100, 100, 20);
+        int near = store.size();
+        addCluster(store, random, 20_000, -3000, -3000, -3000, 200);
+        WorldSnapshot snapshot = WorldSnapshot.capture(store, 1, 0);
+
+        Viewport viewport = new Viewport(-INFINITY, -INFINITY, -INFINITY, INFINITY, INFINITY, INFINITY, 100, 100, 100, 500);
+        WorldSnapshot view = new SnapshotIndex(snapshot).cull(viewport);
+
+        Set<Integer> sent = new HashSet<>();
+        int farPoints = 0;
+        for (int i = 0; i < view.size(); i++) {
+            sent.add(view.getId(i));
+            if (view.getX(i) < -1000) {
+                farPoints++;
+            }
+        }
+        for (int i = 0; i < near; i++) {
+            assert sent.contains(store.idOf(i)) : "Every body near the eye should be sent individually";
+        }
+        assert farPoints > 0 && farPoints <= 300 : "The far cluster should be aggregated, got " + farPoints + " points";
+    }
+
+    @Test
+    void unchangedSelectionShouldKeepItsStructure() {
+        BodyStore store = new BodyStore();
+        addCluster(store, new Random(3), 10_000, 0, 0, 0, 1000);
+        WorldSnapshot first = WorldSnapshot.capture(store, 1, 0);
+        for (int i = 0; i < store.size(); i++) {
+            store.getX()[i] += 0.01f;
+        }
+        WorldSnapshot second = WorldSnapshot.capture(store, 2, 0);
+
+        WorldSnapshot a = new SnapshotIndex(first).cull(everything(200));
+        WorldSnapshot b = new SnapshotIndex(second).cull(everything(200));
+
+        assert a.size() == b.size() && a.getStructureVersion() == b.getStructureVersion()
+            : "Small moves should keep the same points, so delta streams can go on";
+        for (int i = 0; i < a.size(); i++) {
+            assert a.getId(i) == b.getId(i) : "Points should stay in the same order";
+        }
+    }
+}